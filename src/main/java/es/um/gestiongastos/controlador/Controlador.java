@@ -3,33 +3,47 @@ package es.um.gestiongastos.controlador;
 import es.um.gestiongastos.model.*;
 import es.um.gestiongastos.ui.*;
 import es.um.gestiongastos.importer.*;
-// Importamos directamente la clase concreta, sin interfaz
-import es.um.gestiongastos.persistencia.RepositorioJSON;
+import es.um.gestiongastos.persistencia.FactoriaRepositorio;
+import es.um.gestiongastos.persistencia.FiltroGastos;
+import es.um.gestiongastos.persistencia.LoteGastos;
+import es.um.gestiongastos.persistencia.Repositorio;
 
 import javafx.application.Platform;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.math.BigDecimal;
 import java.io.File;
 import java.time.LocalDateTime;
-import java.time.temporal.WeekFields;
+import java.time.YearMonth;
 
 public class Controlador {
 
     private static Controlador instancia;
 
-    // Referencia directa a la clase concreta
-    private final RepositorioJSON repositorio;
+    // JSON o SQL según la configuración (ver FactoriaRepositorio)
+    private final Repositorio repositorio;
+
+    // Índice id de gasto -> cuenta que lo contiene; el gasto se saca del índice
+    // por id de la propia cuenta. Así no retiene el historial de las cuentas archivadas.
+    private final Map<String, GastosCompartidos> cuentaPorGasto = new ConcurrentHashMap<>();
     
     private Persona usuarioAutenticado;
+
+    // Totales en curso de las alertas del usuario actual (se crea al comprobarlas)
+    private MotorAlertas motorAlertas;
+    // Comprueba las alertas al terminar sus periodos, aunque no haya cambios de gastos
+    private final PlanificadorAlertas planificador = new PlanificadorAlertas(this::alVencerPeriodos);
+    // Entrega asíncrona de las notificaciones a los listeners registrados
+    private final DespachadorNotificaciones despachador = new DespachadorNotificaciones();
     
     private Runnable onModeloCambiado;
     private Runnable onConsolaRefrescar;
 
     private Controlador() {
-        this.repositorio = new RepositorioJSON();
-        
+        this.repositorio = FactoriaRepositorio.crear();
+        indexarGastos();
     }
 
     public static synchronized Controlador getInstancia() {
@@ -50,7 +64,7 @@ public class Controlador {
         Persona p = repositorio.buscarUsuarioPorNombre(nombreUsuario);
         
         if (p != null && contraseña.equals(p.getContraseña())) {
-            this.usuarioAutenticado = p; 
+            cambiarUsuario(p);
             return Optional.of(p);
         }
         return Optional.empty();
@@ -94,11 +108,12 @@ public class Controlador {
         String id = UUID.randomUUID().toString();
         GastosCompartidos nuevaCuenta = new GastosCompartidos(id, nombre, participantes, porcentajes);
         
-        // Vinculamos la cuenta a los participantes y guardamos los cambios de cada persona
+        // Vinculamos la cuenta a los participantes y anotamos la cuenta nueva
         for (Persona p : participantes) {
             p.agregarCuenta(nuevaCuenta);
-            repositorio.actualizarUsuario(p); // Forzamos guardado del usuario modificado
         }
+        repositorio.registrarCuenta(nuevaCuenta);
+        indexarCuenta(nuevaCuenta);
         notificarModeloCambiado();
     }
 
@@ -134,12 +149,13 @@ public class Controlador {
         
         // Modificamos el modelo en memoria
         cuentaDestino.agregarGasto(nuevoGasto);
+        cuentaPorGasto.put(idGasto, cuentaDestino);
+        sumarEnAlertas(nuevoGasto);
         
         System.out.println(">> [Controlador] Gasto creado en cuenta '" + cuentaDestino.getNombre() + "': " + nuevoGasto);
         
-        // PERSISTENCIA: Al añadir un gasto, cambia el estado de la Cuenta y del Usuario.
-        // Guardamos el usuario actual (que contiene la cuenta) para persistir todo el árbol.
-        repositorio.actualizarUsuario(usuarioAutenticado);
+        // PERSISTENCIA: solo se anota el gasto nuevo, no se reescribe todo el árbol.
+        repositorio.registrarGasto(nuevoGasto);
         
         notificarModeloCambiado();
         comprobarAlertas();
@@ -148,21 +164,19 @@ public class Controlador {
     public void borrarGasto(String idGasto) {
         if (usuarioAutenticado == null) return;
 
-        for (GastosCompartidos cuenta : usuarioAutenticado.getCuentas()) {
-            Optional<Gasto> target = cuenta.getGastos().stream()
-                    .filter(g -> g.getId().equals(idGasto))
-                    .findFirst();
+        Gasto target = obtenerGastoPorId(idGasto);
+        if (target != null) {
+            GastosCompartidos cuenta = target.getCuenta();
+            restarEnAlertas(target);
+            cuenta.eliminarGasto(target);
+            cuentaPorGasto.remove(idGasto);
+            System.out.println(">> [Controlador] Gasto eliminado de la cuenta " + cuenta.getNombre());
             
-            if (target.isPresent()) {
-                cuenta.eliminarGasto(target.get());
-                System.out.println(">> [Controlador] Gasto eliminado de la cuenta " + cuenta.getNombre());
-                
-                // Guardamos cambios
-                repositorio.actualizarUsuario(usuarioAutenticado);
-                
-                notificarModeloCambiado();
-                return;
-            }
+            // Guardamos cambios
+            repositorio.eliminarGasto(target);
+            
+            notificarModeloCambiado();
+            return;
         }
         System.out.println(">> [Controlador] No se encontró gasto con ID " + idGasto);
     }
@@ -175,63 +189,260 @@ public class Controlador {
                 .collect(Collectors.toList());
     }
     
+    /**
+     * Gastos del usuario actual que cumplen los filtros (los null no filtran).
+     * El repositorio resuelve la búsqueda (en el SQL, con sus índices).
+     */
+    public List<Gasto> buscarGastos(String nombreCategoria, GastosCompartidos cuenta, LocalDate desde, LocalDate hasta) {
+        if (usuarioAutenticado == null) return Collections.emptyList();
+
+        FiltroGastos filtro = new FiltroGastos(cuenta != null ? List.of(cuenta) : usuarioAutenticado.getCuentas());
+        filtro.categoria = nombreCategoria;
+        filtro.desde = desde;
+        filtro.hasta = hasta;
+        return repositorio.buscarGastos(filtro);
+    }
+
+    /** Gasto de alguna cuenta del usuario actual con ese id, o null. */
     public Gasto obtenerGastoPorId(String idGasto) {
-        return getGastosUsuarioActual().stream()
-                .filter(g -> g.getId().equals(idGasto))
-                .findFirst()
-                .orElse(null);
+        if (usuarioAutenticado == null || idGasto == null) return null;
+
+        GastosCompartidos cuenta = cuentaPorGasto.get(idGasto);
+        if (cuenta == null) {
+            cuenta = buscarEnArchivadas(idGasto);
+            if (cuenta == null) return null;
+        }
+        if (!usuarioAutenticado.getCuentas().contains(cuenta)) return null;
+        return cuenta.buscarGasto(idGasto);
+    }
+
+    // --- ÍNDICE DE GASTOS ---
+
+    /**
+     * Indexa los gastos de todas las cuentas cargadas. Las archivadas se dejan
+     * fuera para no hidratarlas; se indexan cuando se busca en ellas.
+     */
+    private void indexarGastos() {
+        Set<GastosCompartidos> vistas = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Persona p : repositorio.getUsuarios()) {
+            for (GastosCompartidos cuenta : p.getCuentas()) {
+                if (vistas.add(cuenta) && !cuenta.isArchivada()) indexarCuenta(cuenta);
+            }
+        }
+    }
+
+    private void indexarCuenta(GastosCompartidos cuenta) {
+        for (Gasto g : cuenta.getGastos()) {
+            cuentaPorGasto.put(g.getId(), cuenta);
+        }
+    }
+
+    /** Un gasto que no está en el índice solo puede estar en una cuenta archivada del usuario. */
+    private GastosCompartidos buscarEnArchivadas(String idGasto) {
+        for (GastosCompartidos cuenta : usuarioAutenticado.getCuentas()) {
+            if (cuenta.isArchivada() && cuenta.buscarGasto(idGasto) != null) {
+                indexarCuenta(cuenta);
+                return cuenta;
+            }
+        }
+        return null;
     }
 
     public void modificarGasto(String idGasto, String nuevoConcepto, Double nuevoImporte, 
             LocalDate nuevaFecha, String nombreCategoria, 
             GastosCompartidos nuevaCuenta, Persona nuevoPagador) {
 
-        Gasto gasto = obtenerGastoPorId(idGasto);
-        if (gasto == null) throw new IllegalArgumentException("No se encontró el gasto.");
-        
-        GastosCompartidos cuentaOriginal = gasto.getCuenta();
-        
-        // 1. Sacamos el gasto temporalmente
-        cuentaOriginal.eliminarGasto(gasto);
-        
-        // 2. Aplicamos cambios
-        if (nuevoConcepto != null && !nuevoConcepto.isEmpty()) gasto.setDescripcion(nuevoConcepto);
-        if (nuevoImporte != null) gasto.setImporte(BigDecimal.valueOf(nuevoImporte));
-        if (nuevaFecha != null) {
-            if (nuevaFecha.isAfter(LocalDate.now())) throw new IllegalArgumentException("Fecha futura no permitida");
-            gasto.setFecha(nuevaFecha);
+        // Un lote de un solo cambio: se quita con sus datos de antes y se vuelve a poner con los nuevos
+        Lote lote = abrirLote();
+        lote.modificarGasto(idGasto, nuevoConcepto, nuevoImporte, nuevaFecha, nombreCategoria, nuevaCuenta, nuevoPagador);
+        lote.confirmar();
+    }
+
+    // --- LOTES DE CAMBIOS ---
+
+    /** Abre un lote para aplicar varios cambios de gastos de una vez (ver {@link Lote}). */
+    public Lote abrirLote() {
+        return new Lote();
+    }
+
+    /**
+     * Unidad de trabajo sobre gastos: las altas, modificaciones y bajas se
+     * validan al anotarlas pero no tocan el modelo hasta {@link #confirmar()}.
+     * Al confirmar, cada cuenta afectada actualiza sus saldos una sola vez, el
+     * repositorio guarda todo en una escritura, y se avisa a la vista y se
+     * comprueban las alertas una sola vez.
+     *
+     * Se usa desde el hilo que lo abre y solo se confirma una vez.
+     */
+    public final class Lote {
+        private final Map<String, Gasto> altas = new LinkedHashMap<>();
+        private final Map<String, Modificacion> modificaciones = new LinkedHashMap<>();
+        private final Map<String, Gasto> bajas = new LinkedHashMap<>();
+        private boolean confirmado;
+
+        private Lote() {}
+
+        /** Como {@link Controlador#registrarGasto}: lo paga el usuario actual. */
+        public Gasto registrarGasto(String concepto, double importe, LocalDate fecha, String nombreCategoria, GastosCompartidos cuentaDestino) {
+            if (usuarioAutenticado == null) throw new IllegalStateException("No hay usuario identificado.");
+            if (fecha.isAfter(LocalDate.now())) {
+                throw new IllegalArgumentException("La fecha del gasto no puede ser futura.");
+            }
+            return registrarGasto(concepto, importe, fecha, nombreCategoria, usuarioAutenticado, cuentaDestino);
         }
-        
-        if (nombreCategoria != null && !nombreCategoria.isEmpty()) {
-            gasto.setCategoria(crearCategoriaSiNoExiste(nombreCategoria));
+
+        /** Alta con otro pagador y sin comprobar la fecha (importaciones). */
+        public Gasto registrarGasto(String concepto, double importe, LocalDate fecha, String nombreCategoria,
+                                    Persona pagador, GastosCompartidos cuentaDestino) {
+            comprobarAbierto();
+            if (cuentaDestino == null) {
+                throw new IllegalArgumentException("Debe seleccionar una cuenta para el gasto.");
+            }
+            Categoria categoria = crearCategoriaSiNoExiste(nombreCategoria);
+            Gasto nuevo = new Gasto(UUID.randomUUID().toString(), BigDecimal.valueOf(importe), fecha, categoria,
+                    pagador, concepto, cuentaDestino);
+            altas.put(nuevo.getId(), nuevo);
+            return nuevo;
         }
-        
-        if (nuevoPagador != null) {
-            gasto.setPagador(nuevoPagador);
+
+        /** Como {@link Controlador#modificarGasto}; los null no cambian nada. */
+        public void modificarGasto(String idGasto, String nuevoConcepto, Double nuevoImporte,
+                                   LocalDate nuevaFecha, String nombreCategoria,
+                                   GastosCompartidos nuevaCuenta, Persona nuevoPagador) {
+            comprobarAbierto();
+            if (nuevaFecha != null && nuevaFecha.isAfter(LocalDate.now())) throw new IllegalArgumentException("Fecha futura no permitida");
+
+            Gasto alta = altas.get(idGasto);
+            Modificacion m = modificaciones.get(idGasto);
+            if (alta == null && m == null) {
+                Gasto gasto = bajas.containsKey(idGasto) ? null : obtenerGastoPorId(idGasto);
+                if (gasto == null) throw new IllegalArgumentException("No se encontró el gasto.");
+                m = new Modificacion(gasto);
+            }
+
+            GastosCompartidos cuentaActual = (alta != null) ? alta.getCuenta() : m.cuentaFinal();
+            if (nuevaCuenta != null && !nuevaCuenta.equals(cuentaActual)) {
+                Persona pagadorFinal = (nuevoPagador != null) ? nuevoPagador
+                        : (alta != null) ? alta.getPagador() : m.pagadorFinal();
+                boolean esMiembro = nuevaCuenta.getParticipantes().stream()
+                        .anyMatch(p -> p.getPersona().equals(pagadorFinal));
+                if (!esMiembro) throw new IllegalArgumentException("El pagador no pertenece a la cuenta destino.");
+            }
+            Categoria categoria = (nombreCategoria != null && !nombreCategoria.isEmpty())
+                    ? crearCategoriaSiNoExiste(nombreCategoria) : null;
+
+            if (alta != null) {
+                // Aún no está en el modelo: se cambia directamente
+                if (nuevoConcepto != null && !nuevoConcepto.isEmpty()) alta.setDescripcion(nuevoConcepto);
+                if (nuevoImporte != null) alta.setImporte(BigDecimal.valueOf(nuevoImporte));
+                if (nuevaFecha != null) alta.setFecha(nuevaFecha);
+                if (categoria != null) alta.setCategoria(categoria);
+                if (nuevoPagador != null) alta.setPagador(nuevoPagador);
+                if (nuevaCuenta != null) alta.setCuenta(nuevaCuenta);
+                return;
+            }
+            if (nuevoConcepto != null && !nuevoConcepto.isEmpty()) m.descripcion = nuevoConcepto;
+            if (nuevoImporte != null) m.importe = BigDecimal.valueOf(nuevoImporte);
+            if (nuevaFecha != null) m.fecha = nuevaFecha;
+            if (categoria != null) m.categoria = categoria;
+            if (nuevoPagador != null) m.pagador = nuevoPagador;
+            if (nuevaCuenta != null) m.cuenta = nuevaCuenta;
+            modificaciones.put(idGasto, m);
         }
-        
-        // 3. Gestionamos cambio de cuenta
-        if (nuevaCuenta != null && !nuevaCuenta.equals(cuentaOriginal)) {
-            Persona pagadorFinal = (nuevoPagador != null) ? nuevoPagador : gasto.getPagador();
-            boolean esMiembro = nuevaCuenta.getParticipantes().stream()
-             .anyMatch(p -> p.getPersona().equals(pagadorFinal));
-            
-            if (!esMiembro) {
-                cuentaOriginal.agregarGasto(gasto); // Restaurar si falla
-                throw new IllegalArgumentException("El pagador no pertenece a la cuenta destino.");
+
+        public void borrarGasto(String idGasto) {
+            comprobarAbierto();
+            if (altas.remove(idGasto) != null) return;
+            Modificacion m = modificaciones.remove(idGasto);
+            Gasto gasto = (m != null) ? m.gasto : bajas.containsKey(idGasto) ? null : obtenerGastoPorId(idGasto);
+            if (gasto != null) bajas.put(idGasto, gasto);
+        }
+
+        public boolean estaVacio() {
+            return altas.isEmpty() && modificaciones.isEmpty() && bajas.isEmpty();
+        }
+
+        /**
+         * Aplica el lote: quita de sus cuentas las bajas y los gastos
+         * modificados (con sus datos de antes), aplica las modificaciones y
+         * añade a su cuenta final las altas y los modificados.
+         */
+        public void confirmar() {
+            comprobarAbierto();
+            confirmado = true;
+            if (estaVacio()) return;
+
+            LoteGastos guardar = new LoteGastos();
+
+            // Las alertas se actualizan con los datos de antes y de después de cada gasto
+            for (Gasto g : bajas.values()) restarEnAlertas(g);
+            for (Modificacion m : modificaciones.values()) restarEnAlertas(m.gasto);
+
+            Map<GastosCompartidos, List<Gasto>> quitar = new LinkedHashMap<>();
+            for (Gasto g : bajas.values()) quitar.computeIfAbsent(g.getCuenta(), c -> new ArrayList<>()).add(g);
+            for (Modificacion m : modificaciones.values()) quitar.computeIfAbsent(m.gasto.getCuenta(), c -> new ArrayList<>()).add(m.gasto);
+            quitar.forEach(GastosCompartidos::eliminarGastos);
+            guardar.cuentas.addAll(quitar.keySet());
+
+            for (Modificacion m : modificaciones.values()) m.aplicar();
+
+            Map<GastosCompartidos, List<Gasto>> poner = new LinkedHashMap<>();
+            for (Modificacion m : modificaciones.values()) poner.computeIfAbsent(m.gasto.getCuenta(), c -> new ArrayList<>()).add(m.gasto);
+            for (Gasto g : altas.values()) poner.computeIfAbsent(g.getCuenta(), c -> new ArrayList<>()).add(g);
+            poner.forEach(GastosCompartidos::agregarGastos);
+            guardar.cuentas.addAll(poner.keySet());
+            for (Modificacion m : modificaciones.values()) sumarEnAlertas(m.gasto);
+            for (Gasto g : altas.values()) sumarEnAlertas(g);
+
+            for (String id : bajas.keySet()) cuentaPorGasto.remove(id);
+            for (Modificacion m : modificaciones.values()) {
+                cuentaPorGasto.put(m.gasto.getId(), m.gasto.getCuenta());
+                guardar.modificados.add(m.gasto);
             }
-            
-            gasto.setCuenta(nuevaCuenta);
-            nuevaCuenta.agregarGasto(gasto);
-        } else {
-            cuentaOriginal.agregarGasto(gasto);
+            for (Gasto g : altas.values()) {
+                cuentaPorGasto.put(g.getId(), g.getCuenta());
+                guardar.altas.add(g);
+            }
+            guardar.bajas.addAll(bajas.values());
+
+            System.out.println(">> [Controlador] Lote confirmado: " + altas.size() + " altas, "
+                    + modificaciones.size() + " modificaciones, " + bajas.size() + " bajas.");
+
+            repositorio.guardarLote(guardar);
+            notificarModeloCambiado();
+            comprobarAlertas();
+        }
+
+        private void comprobarAbierto() {
+            if (confirmado) throw new IllegalStateException("El lote ya se ha confirmado.");
+        }
+    }
+
+    /** Cambios pendientes de un gasto que ya está en el modelo; los null no cambian. */
+    private static final class Modificacion {
+        final Gasto gasto;
+        String descripcion;
+        BigDecimal importe;
+        LocalDate fecha;
+        Categoria categoria;
+        Persona pagador;
+        GastosCompartidos cuenta;
+
+        Modificacion(Gasto gasto) {
+            this.gasto = gasto;
+        }
+
+        GastosCompartidos cuentaFinal() { return (cuenta != null) ? cuenta : gasto.getCuenta(); }
+        Persona pagadorFinal() { return (pagador != null) ? pagador : gasto.getPagador(); }
+
+        void aplicar() {
+            if (descripcion != null) gasto.setDescripcion(descripcion);
+            if (importe != null) gasto.setImporte(importe);
+            if (fecha != null) gasto.setFecha(fecha);
+            if (categoria != null) gasto.setCategoria(categoria);
+            if (pagador != null) gasto.setPagador(pagador);
+            if (cuenta != null) gasto.setCuenta(cuenta);
         }
-        
-        // Guardamos cambios
-        repositorio.actualizarUsuario(usuarioAutenticado);
-        
-        notificarModeloCambiado();
-        comprobarAlertas();
     }
     
     // --- GESTIÓN DE CATEGORÍAS ---
@@ -249,6 +460,111 @@ public class Controlador {
         return existente;
     }
 
+    /**
+     * Recalcula desde cero los saldos de las cuentas del usuario actual y
+     * guarda las que no cuadraban. Normalmente los saldos se mantienen
+     * gasto a gasto; esto es solo una comprobación/reparación.
+     *
+     * @return número de cuentas corregidas
+     */
+    public int verificarSaldos() {
+        if (usuarioAutenticado == null) return 0;
+        int corregidas = 0;
+        for (GastosCompartidos cuenta : usuarioAutenticado.getCuentas()) {
+            if (cuenta.recalcularSaldos()) {
+                System.out.println(">> [Controlador] Saldos corregidos en la cuenta " + cuenta.getNombre());
+                repositorio.actualizarCuenta(cuenta);
+                corregidas++;
+            }
+        }
+        if (corregidas > 0) notificarModeloCambiado();
+        return corregidas;
+    }
+
+    // --- LIQUIDACIÓN ---
+
+    /**
+     * Anota que {@code deudor} le ha pagado {@code importe} a {@code acreedor}
+     * dentro de la cuenta. Solo mueve saldo entre los dos: no es un gasto.
+     */
+    public Pago registrarPago(GastosCompartidos cuenta, Persona deudor, Persona acreedor, double importe) {
+        if (cuenta == null) throw new IllegalArgumentException("Debe seleccionar una cuenta para el pago.");
+
+        Pago pago = new Pago(UUID.randomUUID().toString(), deudor, acreedor, BigDecimal.valueOf(importe), LocalDate.now(), cuenta);
+        cuenta.registrarPago(pago);
+        System.out.println(">> [Controlador] Pago registrado en cuenta '" + cuenta.getNombre() + "': " + pago);
+
+        repositorio.registrarPago(pago);
+        notificarModeloCambiado();
+        return pago;
+    }
+
+    public void eliminarPago(Pago pago) {
+        GastosCompartidos cuenta = pago.getCuenta();
+        cuenta.eliminarPago(pago);
+        repositorio.eliminarPago(pago);
+        notificarModeloCambiado();
+    }
+
+    /**
+     * Nuevos porcentajes de la cuenta a partir de una fecha. Solo se
+     * recalculan los saldos de los gastos desde esa fecha (hasta la siguiente
+     * versión); los anteriores se quedan con el reparto que tenían.
+     */
+    public void cambiarPorcentajes(GastosCompartidos cuenta, LocalDate desde, Map<Persona, Double> porcentajes) {
+        if (cuenta == null) throw new IllegalArgumentException("Debe seleccionar una cuenta.");
+        if (desde == null) throw new IllegalArgumentException("Debe indicar desde qué fecha rigen los porcentajes.");
+
+        cuenta.cambiarPorcentajes(desde, porcentajes);
+        if (motorAlertas != null) motorAlertas.reconstruir(); // Cambia lo que le toca a cada uno
+        System.out.println(">> [Controlador] Porcentajes de la cuenta '" + cuenta.getNombre() + "' cambiados desde " + desde);
+
+        repositorio.registrarVersionPorcentajes(cuenta, desde);
+        notificarModeloCambiado();
+        comprobarAlertas();
+    }
+
+    // --- INFORMES ---
+
+    /**
+     * Lo que le toca pagar al usuario actual en cada mes entre dos fechas
+     * (null = desde su primer gasto / hasta el último), en una cuenta o en
+     * todas las suyas. Cada mes es una resta de sumas acumuladas del índice
+     * por fecha: O(meses × cuentas × log n), sin recorrer los gastos.
+     */
+    public Map<YearMonth, Dinero> costePorMes(GastosCompartidos cuenta, LocalDate desde, LocalDate hasta) {
+        Map<YearMonth, Dinero> porMes = new TreeMap<>();
+        if (usuarioAutenticado == null) return porMes;
+
+        List<GastosCompartidos> cuentas = (cuenta != null) ? List.of(cuenta) : usuarioAutenticado.getCuentas();
+        LocalDate primera = desde;
+        LocalDate ultima = hasta;
+        for (GastosCompartidos c : cuentas) {
+            if (desde == null && c.getPrimeraFecha() != null && (primera == null || c.getPrimeraFecha().isBefore(primera))) primera = c.getPrimeraFecha();
+            if (hasta == null && c.getUltimaFecha() != null && (ultima == null || c.getUltimaFecha().isAfter(ultima))) ultima = c.getUltimaFecha();
+        }
+        if (primera == null || ultima == null || primera.isAfter(ultima)) return porMes;
+
+        for (YearMonth mes = YearMonth.from(primera); !mes.isAfter(YearMonth.from(ultima)); mes = mes.plusMonths(1)) {
+            LocalDate inicio = mes.atDay(1).isBefore(primera) ? primera : mes.atDay(1);
+            LocalDate fin = mes.atEndOfMonth().isAfter(ultima) ? ultima : mes.atEndOfMonth();
+            Dinero coste = GastosCompartidos.costeEntre(cuentas, usuarioAutenticado, inicio, fin);
+            if (coste.centimos() > 0) porMes.put(mes, coste);
+        }
+        return porMes;
+    }
+
+    /** Pagos que dejan a cero los saldos de una cuenta (ver {@link Liquidador}). */
+    public List<Transferencia> liquidarCuenta(GastosCompartidos cuenta) {
+        return Liquidador.liquidar(cuenta);
+    }
+
+    /** Pagos que dejan a cero todas las cuentas del usuario actual a la vez. */
+    public List<Transferencia> liquidarCuentasUsuario() {
+        if (usuarioAutenticado == null) return Collections.emptyList();
+        return Liquidador.liquidar(usuarioAutenticado.getCuentas());
+    }
+
     public List<String> getNombresCategorias() {
         return repositorio.getCategorias().stream()
                 .map(Categoria::getNombre)
@@ -274,7 +590,8 @@ public class Controlador {
     // --- UI Y APP ---
     
     public void abrirVentanaPrincipalPersona(Persona autenticado) {
-        this.usuarioAutenticado = autenticado;
+        cambiarUsuario(autenticado);
+        motorAlertas(); // Calcula los totales de sus alertas y programa sus finales de periodo
         // Obtenemos lista actualizada del repo
         List<Persona> lista = repositorio.getUsuarios();
         Platform.runLater(() -> VentanaPrincipalPersona.mostrar(lista, autenticado));
@@ -292,6 +609,11 @@ public class Controlador {
     public Persona getUsuarioAutenticado() {
         return this.usuarioAutenticado;
     }
+
+    /** Cierra la sesión: para el planificador de alertas. Se llama también al salir. */
+    public void cerrarSesion() {
+        cambiarUsuario(null);
+    }
     
     // --- IMPORTACIÓN ---
 
@@ -301,14 +623,10 @@ public class Controlador {
             CuentaDTO dto = importador.importar(archivo);
             System.out.println(">> [Controlador] Importando cuenta: " + dto.nombre);
 
+            // Los gastos se guardan en un solo lote;
+            // esperamos a que el volcador lo haya escrito antes de dar la importación por buena
             procesarDTOImportado(dto);
-            
-            // Persistir tras importar
-            if (usuarioAutenticado != null) {
-                repositorio.actualizarUsuario(usuarioAutenticado);
-            }
-            
-            notificarModeloCambiado();
+            repositorio.esperarVolcado();
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -316,6 +634,20 @@ public class Controlador {
         }
     }
 
+    /**
+     * Exporta todos los datos a un JSON legible (copia de seguridad o
+     * intercambio), sea cual sea el almacenamiento configurado.
+     */
+    public void exportarDatos(File destino) {
+        try {
+            repositorio.exportarJSON(destino);
+            System.out.println(">> [Controlador] Datos exportados a " + destino.getAbsolutePath());
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new RuntimeException("Error al exportar: " + e.getMessage());
+        }
+    }
+
     private void procesarDTOImportado(CuentaDTO dto) {
         Map<Persona, Double> mapaPorcentajes = new HashMap<>();
         List<Persona> listaParticipantes = new ArrayList<>();
@@ -343,27 +675,36 @@ public class Controlador {
         
         for (Persona p : listaParticipantes) {
             p.agregarCuenta(nuevaCuenta);
-            repositorio.actualizarUsuario(p); // Importante: guardar cada participante modificado
         }
+        repositorio.registrarCuenta(nuevaCuenta);
+        indexarCuenta(nuevaCuenta);
 
+        // Todos los gastos en un lote: un solo reparto de saldos y una sola escritura
+        Lote lote = abrirLote();
         if (dto.gastos != null) {
             for (GastoDTO gDto : dto.gastos) {
-                Categoria cat = crearCategoriaSiNoExiste(gDto.categoria);
                 Persona pagador = repositorio.buscarUsuarioPorNombre(gDto.nombreUsuarioPagador);
                 if (pagador == null && !listaParticipantes.isEmpty()) pagador = listaParticipantes.get(0);
                 
                 LocalDate fecha = LocalDate.parse(gDto.fecha);
-                String idGasto = UUID.randomUUID().toString();
-                Gasto nuevoGasto = new Gasto(idGasto, BigDecimal.valueOf(gDto.importe), fecha, cat, pagador, gDto.descripcion, nuevaCuenta);
-                nuevaCuenta.agregarGasto(nuevoGasto);
+                lote.registrarGasto(gDto.descripcion, gDto.importe, fecha, gDto.categoria, pagador, nuevaCuenta);
             }
         }
-        comprobarAlertas();
+        if (lote.estaVacio()) {
+            notificarModeloCambiado(); // La cuenta nueva, aunque no traiga gastos
+        } else {
+            lote.confirmar();
+        }
     }
     
     // --- ALERTAS ---
 
     public void crearAlerta(String nombre, Periodicidad periodicidad, String nombreCategoria, double umbralMaximo) {
+        crearAlerta(nombre, periodicidad, null, nombreCategoria, umbralMaximo);
+    }
+
+    /** @param dias días de la ventana si la periodicidad es ULTIMOS_N_DIAS */
+    public void crearAlerta(String nombre, Periodicidad periodicidad, Integer dias, String nombreCategoria, double umbralMaximo) {
         if (usuarioAutenticado == null) return;
         
         Categoria cat = null;
@@ -372,12 +713,14 @@ public class Controlador {
         }
 
         String id = UUID.randomUUID().toString();
-        Alerta alerta = new Alerta(id, nombre, periodicidad, cat, new EstrategiaPorUmbral(umbralMaximo));
+        Alerta alerta = new Alerta(id, nombre, periodicidad, dias, cat, new EstrategiaPorUmbral(umbralMaximo));
         
         usuarioAutenticado.agregarAlerta(alerta);
+        motorAlertas().agregarAlerta(alerta);
+        planificador.programar(alerta);
         
         // Guardamos cambios
-        repositorio.actualizarUsuario(usuarioAutenticado);
+        repositorio.registrarAlerta(usuarioAutenticado, alerta);
         
         System.out.println(">> [Controlador] Alerta creada y guardada: " + alerta);
         comprobarAlertas();
@@ -387,52 +730,96 @@ public class Controlador {
     public void borrarAlerta(Alerta alerta) {
         if (usuarioAutenticado != null) {
             usuarioAutenticado.eliminarAlerta(alerta);
-            repositorio.actualizarUsuario(usuarioAutenticado); // Guardamos cambios
+            motorAlertas().eliminarAlerta(alerta);
+            planificador.cancelar(alerta);
+            repositorio.eliminarAlerta(usuarioAutenticado, alerta); // Guardamos cambios
             notificarModeloCambiado();
         }
     }
 
-    private void comprobarAlertas() {
-        if (usuarioAutenticado == null) return;
+    /**
+     * Notifica las alertas que se pasan del umbral. Solo se evalúan las que
+     * han cambiado de total desde la última vez (ver {@link MotorAlertas}).
+     */
+    private int comprobarAlertas() {
+        if (usuarioAutenticado == null) return 0;
+        List<MotorAlertas.Disparo> saltan = motorAlertas().comprobar();
+        saltan.forEach(this::generarNotificacion);
+        return saltan.size();
+    }
 
-        List<Gasto> todosLosGastos = getGastosUsuarioActual();
-        LocalDate hoy = LocalDate.now();
-        boolean algunaDisparada = false;
-
-        for (Alerta alerta : usuarioAutenticado.getAlertas()) {
-            double totalAcumulado = todosLosGastos.stream()
-                .filter(g -> {
-                    if (alerta.getCategoriaOpcional().isPresent()) {
-                        if (!g.getCategoria().equals(alerta.getCategoriaOpcional().get())) return false;
-                    }
-                    if (alerta.getPeriodicidad() == Periodicidad.MENSUAL) {
-                        return g.getFecha().getMonth() == hoy.getMonth() && g.getFecha().getYear() == hoy.getYear();
-                    } else {
-                        WeekFields weekFields = WeekFields.of(Locale.getDefault());
-                        int semanaGasto = g.getFecha().get(weekFields.weekOfWeekBasedYear());
-                        int semanaHoy = hoy.get(weekFields.weekOfWeekBasedYear());
-                        return semanaGasto == semanaHoy && g.getFecha().getYear() == hoy.getYear();
-                    }
-                })
-                .mapToDouble(g -> g.getCostePara(usuarioAutenticado).doubleValue())
-                .sum();
-
-            if (alerta.comprobar(totalAcumulado)) {
-                generarNotificacion(alerta, totalAcumulado);
-                algunaDisparada = true;
-            }
-        }
-        
-        if (algunaDisparada) {
-            repositorio.actualizarUsuario(usuarioAutenticado); // Guardamos las nuevas notificaciones
+    /**
+     * Desde el hilo del planificador: han terminado los periodos de esas
+     * alertas. Comprobarlas toca el modelo y el repositorio, así que se pasa
+     * al hilo de JavaFX, el mismo en el que la ventana hace sus cambios. El
+     * motor solo recalcula las que han cambiado de periodo.
+     */
+    private void alVencerPeriodos(Set<Alerta> alertas) {
+        System.out.println(">> [Controlador] Fin de periodo en " + alertas.size() + " alerta(s); comprobando.");
+        Platform.runLater(() -> {
+            if (comprobarAlertas() > 0) notificarModeloCambiado();
+        });
+    }
+
+    /** Al cambiar de usuario (o cerrar sesión) se deja de vigilar las alertas del anterior. */
+    private synchronized void cambiarUsuario(Persona nuevo) {
+        if (nuevo == usuarioAutenticado) return;
+        planificador.detener();
+        motorAlertas = null;
+        usuarioAutenticado = nuevo;
+    }
+
+    /** Motor de alertas del usuario actual; se reconstruye si ha cambiado de usuario. */
+    private synchronized MotorAlertas motorAlertas() {
+        if (motorAlertas == null || motorAlertas.getUsuario() != usuarioAutenticado) {
+            motorAlertas = new MotorAlertas(usuarioAutenticado);
+            planificador.programarTodas(usuarioAutenticado.getAlertas());
         }
+        return motorAlertas;
     }
 
-    private void generarNotificacion(Alerta alerta, double totalActual) {
-        String mensaje = String.format("¡Cuidado! Has superado tu límite en '%s'. Llevas %.2f €.", 
-                                       alerta.getNombre(), totalActual);
+    // Mientras no se ha creado el motor no hay nada que actualizar: se calcula entero al crearlo
+    private void sumarEnAlertas(Gasto gasto) {
+        MotorAlertas motor = motorAlertas;
+        if (motor != null && motor.getUsuario() == usuarioAutenticado) motor.sumar(gasto);
+    }
+
+    private void restarEnAlertas(Gasto gasto) {
+        MotorAlertas motor = motorAlertas;
+        if (motor != null && motor.getUsuario() == usuarioAutenticado) motor.restar(gasto);
+    }
+
+    private void generarNotificacion(MotorAlertas.Disparo disparo) {
+        String formato = (disparo.nivel > 1)
+                ? "¡Cuidado! Sigues subiendo por encima de tu límite en '%s'. Llevas %.2f €."
+                : "¡Cuidado! Has superado tu límite en '%s'. Llevas %.2f €.";
+        String mensaje = String.format(formato, disparo.alerta.getNombre(), disparo.total);
         
-        Notificacion notif = new Notificacion(UUID.randomUUID().toString(), LocalDateTime.now(), mensaje);
+        Notificacion notif = new Notificacion(UUID.randomUUID().toString(), LocalDateTime.now(), mensaje,
+                disparo.alerta.getId(), disparo.nivel);
         usuarioAutenticado.agregarNotificacion(notif);
+        repositorio.registrarNotificacion(usuarioAutenticado, notif); // Guardamos la nueva notificación
+        despachador.publicar(notif, disparo.alerta); // Solo encola: los listeners van en sus hilos
+    }
+
+    // --- LISTENERS DE NOTIFICACIONES ---
+
+    /** Recibirá las notificaciones nuevas en su propio hilo (ver {@link DespachadorNotificaciones}). */
+    public void registrarListenerNotificaciones(String nombre, NotificacionListener listener) {
+        despachador.registrar(nombre, listener);
+    }
+
+    /** Con cola de {@code capacidad} notificaciones y qué hacer si se llena. */
+    public void registrarListenerNotificaciones(String nombre, NotificacionListener listener, int capacidad,
+                                                DespachadorNotificaciones.PoliticaDescarte politica) {
+        despachador.registrar(nombre, listener, capacidad, politica);
+    }
+
+    public void eliminarListenerNotificaciones(NotificacionListener listener) {
+        despachador.eliminar(listener);
+    }
+
+    public List<DespachadorNotificaciones.Metricas> getMetricasNotificaciones() {
+        return despachador.getMetricas();
     }
 }
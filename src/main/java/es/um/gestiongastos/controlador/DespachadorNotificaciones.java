@@ -0,0 +1,220 @@
+package es.um.gestiongastos.controlador;
+
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.NotificacionListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reparte las notificaciones de las alertas a los {@link NotificacionListener}
+ * registrados sin bloquear a quien las genera.
+ *
+ * - Cada listener tiene su propia cola acotada y su propio hilo virtual de
+ *   entrega: uno lento (un fichero, un webhook...) solo retrasa sus
+ *   notificaciones, y un listener parado en E/S no ocupa un hilo del sistema.
+ * - Publicar solo encola, O(listeners). Si la cola de un listener está llena
+ *   se aplica su {@link PoliticaDescarte}; nunca se espera.
+ * - Cada listener lleva sus métricas de entrega ({@link Metricas}).
+ */
+public class DespachadorNotificaciones {
+
+    public static final int CAPACIDAD_POR_DEFECTO = 100;
+
+    /** Qué se hace cuando llega una notificación y la cola del listener está llena. */
+    public enum PoliticaDescarte {
+        /** Se descarta la que llega. */
+        DESCARTAR_NUEVA,
+        /** Se descarta la más antigua de la cola y entra la nueva. */
+        DESCARTAR_ANTIGUA
+    }
+
+    /** Foto de las métricas de un listener. */
+    public static final class Metricas {
+        public final String listener;
+        public final long publicadas;
+        public final long entregadas;
+        public final long descartadas;
+        public final long fallidas;
+        public final int pendientes;
+        /** Desde que se publica hasta que el listener termina, en milisegundos. */
+        public final double msMedioEntrega;
+        public final double msMaximoEntrega;
+
+        Metricas(Suscripcion s) {
+            this.listener = s.nombre;
+            this.publicadas = s.publicadas;
+            this.entregadas = s.entregadas;
+            this.descartadas = s.descartadas;
+            this.fallidas = s.fallidas;
+            this.pendientes = s.cola.size();
+            long atendidas = s.entregadas + s.fallidas;
+            this.msMedioEntrega = (atendidas == 0) ? 0 : s.nanosEntrega / 1e6 / atendidas;
+            this.msMaximoEntrega = s.nanosMaximo / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d publicadas, %d entregadas, %d descartadas, %d fallidas, %d pendientes, %.1f ms de media (máx. %.1f ms)",
+                    listener, publicadas, entregadas, descartadas, fallidas, pendientes, msMedioEntrega, msMaximoEntrega);
+        }
+    }
+
+    private static final class Pendiente {
+        final Notificacion notificacion;
+        final Alerta fuente;
+        final long publicada = System.nanoTime();
+
+        Pendiente(Notificacion notificacion, Alerta fuente) {
+            this.notificacion = notificacion;
+            this.fuente = fuente;
+        }
+    }
+
+    /**
+     * Listener registrado, con su cola, su hilo y sus contadores, protegidos
+     * por {@code cerrojo}: con un ReentrantLock el hilo virtual que espera no
+     * se queda clavado a su hilo portador, como pasaría con wait().
+     */
+    private static final class Suscripcion implements Runnable {
+        final String nombre;
+        final NotificacionListener listener;
+        final int capacidad;
+        final PoliticaDescarte politica;
+        final ArrayDeque<Pendiente> cola = new ArrayDeque<>();
+        final ReentrantLock cerrojo = new ReentrantLock();
+        private final Condition hayPendientes = cerrojo.newCondition();
+        boolean activa = true;
+        long publicadas, entregadas, descartadas, fallidas, nanosEntrega, nanosMaximo;
+
+        Suscripcion(String nombre, NotificacionListener listener, int capacidad, PoliticaDescarte politica) {
+            this.nombre = nombre;
+            this.listener = listener;
+            this.capacidad = Math.max(1, capacidad);
+            this.politica = politica;
+        }
+
+        void ofrecer(Pendiente p) {
+            cerrojo.lock();
+            try {
+                if (!activa) return;
+                publicadas++;
+                if (cola.size() >= capacidad) {
+                    descartadas++;
+                    if (politica == PoliticaDescarte.DESCARTAR_NUEVA) return;
+                    cola.pollFirst();
+                }
+                cola.addLast(p);
+                hayPendientes.signal();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        void detener() {
+            cerrojo.lock();
+            try {
+                activa = false;
+                hayPendientes.signal();
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        private Pendiente siguiente() throws InterruptedException {
+            cerrojo.lock();
+            try {
+                while (activa && cola.isEmpty()) hayPendientes.await();
+                return activa ? cola.pollFirst() : null;
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        Metricas metricas() {
+            cerrojo.lock();
+            try {
+                return new Metricas(this);
+            } finally {
+                cerrojo.unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Pendiente p;
+                try {
+                    p = siguiente();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (p == null) return;
+
+                boolean ok = true;
+                try {
+                    listener.onNotificacion(p.notificacion, p.fuente);
+                } catch (RuntimeException e) {
+                    ok = false;
+                    System.err.println("Aviso: el listener de notificaciones '" + nombre + "' ha fallado: " + e.getMessage());
+                }
+                long nanos = System.nanoTime() - p.publicada;
+                cerrojo.lock();
+                try {
+                    if (ok) entregadas++; else fallidas++;
+                    nanosEntrega += nanos;
+                    nanosMaximo = Math.max(nanosMaximo, nanos);
+                } finally {
+                    cerrojo.unlock();
+                }
+            }
+        }
+    }
+
+    private final List<Suscripcion> suscripciones = new CopyOnWriteArrayList<>();
+
+    /** Registra un listener con la cola y la política por defecto. */
+    public void registrar(String nombre, NotificacionListener listener) {
+        registrar(nombre, listener, CAPACIDAD_POR_DEFECTO, PoliticaDescarte.DESCARTAR_ANTIGUA);
+    }
+
+    public void registrar(String nombre, NotificacionListener listener, int capacidad, PoliticaDescarte politica) {
+        if (listener == null || politica == null) throw new IllegalArgumentException("Faltan el listener o la política.");
+        Suscripcion s = new Suscripcion(nombre, listener, capacidad, politica);
+        Thread.ofVirtual().name("Notificaciones-" + nombre).start(s);
+        suscripciones.add(s);
+        System.out.println(">> [Notificaciones] Listener registrado: " + nombre + " (cola " + s.capacidad + ", " + politica + ")");
+    }
+
+    /** Da de baja el listener; lo que tenía en cola ya no se entrega. */
+    public void eliminar(NotificacionListener listener) {
+        for (Suscripcion s : suscripciones) {
+            if (s.listener == listener) {
+                suscripciones.remove(s);
+                s.detener();
+            }
+        }
+    }
+
+    /** Encola la notificación para cada listener; vuelve enseguida. */
+    public void publicar(Notificacion notificacion, Alerta fuente) {
+        if (suscripciones.isEmpty()) return;
+        Pendiente p = new Pendiente(notificacion, fuente);
+        for (Suscripcion s : suscripciones) {
+            s.ofrecer(p);
+        }
+    }
+
+    public List<Metricas> getMetricas() {
+        List<Metricas> metricas = new ArrayList<>(suscripciones.size());
+        for (Suscripcion s : suscripciones) {
+            metricas.add(s.metricas());
+        }
+        return metricas;
+    }
+}
@@ -0,0 +1,154 @@
+package es.um.gestiongastos.controlador;
+
+import es.um.gestiongastos.model.Alerta;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Despierta cuando termina el periodo de alguna alerta (a medianoche del día
+ * siguiente a su último día, según {@link Alerta#finPeriodo}) y avisa con las
+ * alertas que han cambiado de periodo, para que se evalúen aunque nadie toque
+ * los gastos.
+ *
+ * Un solo hilo en segundo plano y una cola de prioridad por instante: el hilo
+ * duerme hasta el primero que vence, sin sondear. Al vencer, cada alerta se
+ * vuelve a programar para el final de su nuevo periodo. {@link #detener()}
+ * vacía la cola y termina el hilo; si después se programa algo, arranca otro.
+ */
+class PlanificadorAlertas {
+
+    // Tope de cada espera, solo para notar cambios de hora del sistema (o suspensiones)
+    private static final long ESPERA_MAXIMA_MS = 60 * 60 * 1000L;
+
+    private static final class Despertar implements Comparable<Despertar> {
+        final long instante; // epoch millis
+        final Alerta alerta;
+
+        Despertar(long instante, Alerta alerta) {
+            this.instante = instante;
+            this.alerta = alerta;
+        }
+
+        @Override
+        public int compareTo(Despertar o) {
+            return Long.compare(instante, o.instante);
+        }
+    }
+
+    private final Consumer<Set<Alerta>> alVencer;
+    // Instante (epoch millis) en que vence el periodo actual de una alerta
+    private final ToLongFunction<Alerta> limite;
+    private final PriorityQueue<Despertar> cola = new PriorityQueue<>();
+    // Despertar vigente de cada alerta; los de la cola que no están aquí se han cancelado
+    private final Map<Alerta, Despertar> programados = new IdentityHashMap<>();
+    // Hilo vigente; uno que ya no lo es (tras detener) termina al despertar
+    private Thread hilo;
+
+    PlanificadorAlertas(Consumer<Set<Alerta>> alVencer) {
+        this(alVencer, PlanificadorAlertas::siguienteLimite);
+    }
+
+    /** Con otro cálculo del vencimiento (en las pruebas, para no esperar a medianoche). */
+    PlanificadorAlertas(Consumer<Set<Alerta>> alVencer, ToLongFunction<Alerta> limite) {
+        this.alVencer = alVencer;
+        this.limite = limite;
+    }
+
+    /** Programa (o vuelve a programar) el final del periodo actual de la alerta. */
+    synchronized void programar(Alerta alerta) {
+        Despertar d = new Despertar(limite.applyAsLong(alerta), alerta);
+        programados.put(alerta, d);
+        cola.add(d);
+        arrancar();
+        notifyAll();
+    }
+
+    synchronized void cancelar(Alerta alerta) {
+        programados.remove(alerta); // Se descarta al salir de la cola
+    }
+
+    /** Sustituye lo programado por las alertas dadas (p. ej. al cambiar de usuario). */
+    synchronized void programarTodas(Collection<Alerta> alertas) {
+        cola.clear();
+        programados.clear();
+        for (Alerta a : alertas) {
+            programar(a);
+        }
+        notifyAll();
+    }
+
+    /** Olvida lo programado y termina el hilo (al cerrar sesión, cambiar de usuario o salir). */
+    synchronized void detener() {
+        cola.clear();
+        programados.clear();
+        hilo = null;
+        notifyAll();
+    }
+
+    /** Medianoche del día siguiente al último del periodo actual de la alerta. */
+    private static long siguienteLimite(Alerta alerta) {
+        LocalDate fin = alerta.finPeriodo(LocalDate.now());
+        return fin.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void arrancar() {
+        if (hilo != null) return;
+        hilo = new Thread(this::bucle, "Alertas-Planificador");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    private void bucle() {
+        while (true) {
+            Set<Alerta> vencidas;
+            try {
+                vencidas = esperarVencidas();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (vencidas == null) return;
+            if (vencidas.isEmpty()) continue;
+            try {
+                alVencer.accept(vencidas);
+            } catch (Exception e) {
+                e.printStackTrace();
+                System.err.println("Error grave: no se pudieron comprobar las alertas programadas.");
+            }
+        }
+    }
+
+    /** Duerme hasta que vence algo; devuelve las alertas vencidas (null si este hilo se ha detenido). */
+    private synchronized Set<Alerta> esperarVencidas() throws InterruptedException {
+        while (hilo == Thread.currentThread()) {
+            long ahora = System.currentTimeMillis();
+            Despertar primero = cola.peek();
+            if (primero != null && primero.instante <= ahora) break;
+            long espera = (primero == null) ? ESPERA_MAXIMA_MS : Math.min(primero.instante - ahora, ESPERA_MAXIMA_MS);
+            wait(espera);
+        }
+        if (hilo != Thread.currentThread()) return null;
+
+        long ahora = System.currentTimeMillis();
+        Set<Alerta> vencidas = new LinkedHashSet<>();
+        while (!cola.isEmpty() && cola.peek().instante <= ahora) {
+            Despertar d = cola.poll();
+            if (programados.get(d.alerta) != d) continue; // Cancelado o reprogramado
+            vencidas.add(d.alerta);
+        }
+        for (Alerta a : vencidas) {
+            Despertar siguiente = new Despertar(limite.applyAsLong(a), a);
+            programados.put(a, siguiente);
+            cola.add(siguiente);
+        }
+        return vencidas;
+    }
+}
@@ -1,18 +1,41 @@
 package es.um.gestiongastos.model;
 
+import java.time.LocalDate;
 import java.util.Optional;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 public class Alerta {
     private String id;
     private String nombre;
     private Periodicidad periodicidad;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer dias; // Solo en ULTIMOS_N_DIAS
+    @JsonProperty("categoriaOpcional")
     private Categoria categoriaOpcional; // Puede ser null
     private EstrategiaAlerta estrategia; // Patrón Estrategia
 
     public Alerta(String id, String nombre, Periodicidad periodicidad, Categoria categoriaOpcional, EstrategiaAlerta estrategia) {
+        this(id, nombre, periodicidad, null, categoriaOpcional, estrategia);
+    }
+
+    /**
+     * @param dias días de la ventana en ULTIMOS_N_DIAS (se ignora en el resto)
+     */
+    public Alerta(String id, String nombre, Periodicidad periodicidad, Integer dias, Categoria categoriaOpcional, EstrategiaAlerta estrategia) {
+        if (periodicidad == Periodicidad.ULTIMOS_N_DIAS) {
+            if (dias == null || dias < 1 || dias > Periodicidad.MAX_DIAS) {
+                throw new IllegalArgumentException("La ventana debe ser de 1 a " + Periodicidad.MAX_DIAS + " días.");
+            }
+        } else {
+            dias = null;
+        }
         this.id = id;
         this.nombre = nombre;
         this.periodicidad = periodicidad;
+        this.dias = dias;
         this.categoriaOpcional = categoriaOpcional;
         this.estrategia = estrategia;
     }
@@ -22,6 +45,8 @@ public class Alerta {
     public String getId() { return id; }
     public String getNombre() { return nombre; }
     public Periodicidad getPeriodicidad() { return periodicidad; }
+    public Integer getDias() { return dias; }
+    @JsonIgnore
     public Optional<Categoria> getCategoriaOpcional() { return Optional.ofNullable(categoriaOpcional); }
     public EstrategiaAlerta getEstrategia() { return estrategia; }
 
@@ -32,9 +57,35 @@ public class Alerta {
         return estrategia.comprobar(importeTotalCalculado, periodicidad, categoriaOpcional);
     }
 
+    /** Escalón alcanzado según la estrategia (0 = no salta). */
+    public int nivel(double importeTotalCalculado) {
+        return estrategia.nivel(importeTotalCalculado, periodicidad, categoriaOpcional);
+    }
+
+    /** Días de la ventana móvil; 0 si el periodo es una semana o mes natural. */
+    public int longitudVentana() {
+        if (periodicidad == Periodicidad.ULTIMOS_N_DIAS) return (dias != null) ? dias : 0;
+        return periodicidad.getDias();
+    }
+
+    /** Primer día del periodo de la alerta que acaba o contiene {@code hoy}. */
+    public LocalDate inicioPeriodo(LocalDate hoy) {
+        return periodicidad.esMovil() ? hoy.minusDays(longitudVentana() - 1) : periodicidad.inicioPeriodo(hoy);
+    }
+
+    public LocalDate finPeriodo(LocalDate hoy) {
+        return periodicidad.finPeriodo(hoy);
+    }
+
+    /** Periodo para mostrar, p. ej. "Mensual" o "Últimos 45 días". */
+    public String descripcionPeriodo() {
+        if (periodicidad == Periodicidad.ULTIMOS_N_DIAS) return "Últimos " + dias + " días";
+        return periodicidad.getDescripcion();
+    }
+
     @Override
     public String toString() {
         String catStr = (categoriaOpcional != null) ? " (" + categoriaOpcional.getNombre() + ")" : " (Global)";
-        return nombre + " [" + periodicidad + "]" + catStr + " -> " + estrategia.toString();
+        return nombre + " [" + descripcionPeriodo() + "]" + catStr + " -> " + estrategia.toString();
     }
 }
\ No newline at end of file
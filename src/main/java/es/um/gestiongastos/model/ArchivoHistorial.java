@@ -0,0 +1,26 @@
+package es.um.gestiongastos.model;
+
+import java.util.List;
+
+/**
+ * Almacén del que una cuenta archivada (inactiva) recupera su historial de
+ * gastos cuando se consulta. La cuenta no guarda los gastos en memoria
+ * hasta entonces.
+ */
+public interface ArchivoHistorial {
+    /**
+     * Lee del archivo los gastos de la cuenta.
+     *
+     * @param cuenta cuenta archivada
+     * @return gastos de la cuenta, en el orden en que se guardaron
+     */
+    List<Gasto> leer(GastosCompartidos cuenta);
+
+    /**
+     * Invocado en cada acceso al historial de una cuenta archivada. Permite
+     * liberar de memoria las que lleven más tiempo sin usarse.
+     *
+     * @param cuenta cuenta archivada cuyo historial se acaba de usar
+     */
+    void usada(GastosCompartidos cuenta);
+}
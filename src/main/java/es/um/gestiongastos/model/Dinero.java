@@ -0,0 +1,112 @@
+package es.um.gestiongastos.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Cantidad de dinero en céntimos (long). Inmutable.
+ *
+ * Es el tipo con el que el modelo hace las cuentas (repartos, saldos,
+ * totales); BigDecimal solo aparece al entrar o salir del modelo (getters
+ * públicos, persistencia).
+ *
+ * Redondeo: al pasar un BigDecimal/double a céntimos y al repartir, se
+ * redondea al céntimo más cercano y los medios se alejan del cero
+ * (como RoundingMode.HALF_UP).
+ */
+public final class Dinero implements Comparable<Dinero> {
+
+    public static final Dinero CERO = new Dinero(0);
+
+    /** 100 % en puntos básicos (1 punto básico = 0,01 %). */
+    public static final int PUNTOS_BASICOS_TOTAL = 10_000;
+
+    private final long centimos;
+
+    private Dinero(long centimos) {
+        this.centimos = centimos;
+    }
+
+    public static Dinero deCentimos(long centimos) {
+        return centimos == 0 ? CERO : new Dinero(centimos);
+    }
+
+    public static Dinero de(BigDecimal importe) {
+        if (importe == null) return CERO;
+        return deCentimos(importe.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact());
+    }
+
+    public static Dinero de(double importe) {
+        return de(BigDecimal.valueOf(importe));
+    }
+
+    /** Porcentaje (0-100) a puntos básicos, redondeando a la centésima. */
+    public static int puntosBasicos(double porcentaje) {
+        return (int) Math.round(porcentaje * 100);
+    }
+
+    /**
+     * Parte de {@code centimos} que corresponde a {@code parte} sobre {@code total}:
+     * centimos × parte / total redondeado al céntimo (medios lejos del cero).
+     */
+    public static long repartir(long centimos, long parte, long total) {
+        if (total <= 0) throw new IllegalArgumentException("El total del reparto debe ser positivo");
+        long producto = Math.multiplyExact(centimos, parte);
+        long cociente = producto / total;
+        long resto = producto % total;
+        if (Math.abs(resto) * 2 >= total) {
+            cociente += Long.signum(producto);
+        }
+        return cociente;
+    }
+
+    public long centimos() { return centimos; }
+
+    public Dinero sumar(Dinero otro) {
+        return deCentimos(Math.addExact(centimos, otro.centimos));
+    }
+
+    public Dinero restar(Dinero otro) {
+        return deCentimos(Math.subtractExact(centimos, otro.centimos));
+    }
+
+    public Dinero negar() {
+        return deCentimos(-centimos);
+    }
+
+    /** Ver {@link #repartir(long, long, long)}. */
+    public Dinero parte(long parte, long total) {
+        return deCentimos(repartir(centimos, parte, total));
+    }
+
+    public boolean esNegativo() { return centimos < 0; }
+
+    public BigDecimal aBigDecimal() {
+        return BigDecimal.valueOf(centimos, 2);
+    }
+
+    public double doubleValue() {
+        return centimos / 100.0;
+    }
+
+    @Override
+    public int compareTo(Dinero o) {
+        return Long.compare(centimos, o.centimos);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Dinero d && d.centimos == centimos;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(centimos);
+    }
+
+    /** Con dos decimales y punto, como el BigDecimal equivalente (ej: "-3.05"). */
+    @Override
+    public String toString() {
+        return aBigDecimal().toPlainString();
+    }
+}
@@ -13,4 +13,13 @@ public interface EstrategiaAlerta {
      * @return true si debe dispararse la alerta
      */
     boolean comprobar(double importeTotal, Periodicidad period, Categoria categoriaOpcional);
+
+    /**
+     * Escalón alcanzado: 0 si no salta, 1 al saltar y más si se sigue
+     * subiendo. La alerta vuelve a avisar en el mismo periodo solo al pasar
+     * a un escalón mayor.
+     */
+    default int nivel(double importeTotal, Periodicidad period, Categoria categoriaOpcional) {
+        return comprobar(importeTotal, period, categoriaOpcional) ? 1 : 0;
+    }
 }
@@ -1,21 +1,39 @@
 package es.um.gestiongastos.model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 /**
  * Estrategia sencilla: dispara si importeTotal > umbral.
  * Si la alerta tiene categoría, esta estrategia ignora la categoría (pero podría ampliarse).
  */
 public class EstrategiaPorUmbral implements EstrategiaAlerta {
+    // Escalones: el umbral y luego cada medio umbral más (100 %, 150 %, 200 %...)
+    private static final double ESCALON = 0.5;
+    private static final int MAX_NIVEL = 1000;
+
     private final double umbral;
 
-    public EstrategiaPorUmbral(double umbral) {
+    @JsonCreator
+    public EstrategiaPorUmbral(@JsonProperty("umbral") double umbral) {
         this.umbral = umbral;
     }
 
+    public double getUmbral() { return umbral; }
+
     @Override
     public boolean comprobar(double importeTotal, Periodicidad period, Categoria categoriaOpcional) {
         return importeTotal > umbral;
     }
 
+    @Override
+    public int nivel(double importeTotal, Periodicidad period, Categoria categoriaOpcional) {
+        if (!comprobar(importeTotal, period, categoriaOpcional)) return 0;
+        if (umbral <= 0) return 1;
+        double escalones = Math.floor((importeTotal - umbral) / (umbral * ESCALON));
+        return 1 + (int) Math.min(escalones, MAX_NIVEL - 1);
+    }
+
     @Override
     public String toString() {
         return "Umbral(" + umbral + ")";
@@ -2,15 +2,15 @@ package es.um.gestiongastos.model;
 
 import java.math.BigDecimal;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
-import java.math.RoundingMode;
 import java.time.LocalDate;
 import java.util.Objects;
 
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
 public class Gasto {
     private String id;
-    private BigDecimal importe;
+    private Dinero importe = Dinero.CERO;
     @com.fasterxml.jackson.annotation.JsonFormat(shape = com.fasterxml.jackson.annotation.JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
     private LocalDate fecha;
     private Categoria categoria;
@@ -18,11 +18,15 @@ public class Gasto {
     private String descripcion;    
     private GastosCompartidos cuenta;
 
+    // Parte de cada participante de la cuenta, calculada con su tabla de reparto. No se guarda.
+    @JsonIgnore
+    private transient volatile Partes partes;
+
     public Gasto(String id, BigDecimal importe, LocalDate fecha, Categoria categoria, 
                  Persona pagador, String descripcion, GastosCompartidos cuenta) {
         if (cuenta == null) throw new IllegalArgumentException("El gasto debe pertenecer a una cuenta.");
         this.id = id;
-        this.importe = importe;
+        this.importe = Dinero.de(importe);
         this.fecha = fecha;
         this.categoria = categoria;
         this.pagador = pagador;
@@ -33,20 +37,24 @@ public class Gasto {
 
     public String getId() { return id; }
     
-    public BigDecimal getImporte() { return importe; }
-    public void setImporte(BigDecimal importe) { this.importe = importe; }
+    // El importe se guarda en céntimos: lo que entra se redondea al céntimo (ver Dinero)
+    public BigDecimal getImporte() { return importe.aBigDecimal(); }
+    public void setImporte(BigDecimal importe) { this.importe = Dinero.de(importe); this.partes = null; marcarCuentaModificada(); }
+
+    @JsonIgnore
+    public Dinero getImporteDinero() { return importe; }
     
     public LocalDate getFecha() { return fecha; }
-    public void setFecha(LocalDate fecha) { this.fecha = fecha; }
+    public void setFecha(LocalDate fecha) { this.fecha = fecha; marcarCuentaModificada(); }
     
     public Categoria getCategoria() { return categoria; }
-    public void setCategoria(Categoria categoria) { this.categoria = categoria; }
+    public void setCategoria(Categoria categoria) { this.categoria = categoria; marcarCuentaModificada(); }
     
     public Persona getPagador() { return pagador; }
-    public void setPagador(Persona pagador) { this.pagador = pagador; }
+    public void setPagador(Persona pagador) { this.pagador = pagador; marcarCuentaModificada(); }
     
     public String getDescripcion() { return descripcion; }
-    public void setDescripcion(String descripcion) { this.descripcion = descripcion; }
+    public void setDescripcion(String descripcion) { this.descripcion = descripcion; marcarCuentaModificada(); }
 
     public GastosCompartidos getCuenta() { return cuenta; }
     public void setCuenta(GastosCompartidos cuenta) {
@@ -54,18 +62,54 @@ public class Gasto {
         this.cuenta = cuenta;
     }
 
+    // El gasto se guarda dentro de su cuenta: tocarlo es tocar la cuenta
+    private void marcarCuentaModificada() {
+        if (cuenta != null) cuenta.marcarModificada();
+    }
+
     /**
      * Calcula cuánto le corresponde pagar a una persona específica de este gasto
      * basándose en su porcentaje de participación en la cuenta.
      */
     public BigDecimal getCostePara(Persona p) {
-        double porcentaje = cuenta.getPorcentaje(p);
-        // Si no está en la cuenta o porcentaje 0, retorna 0
-        if (porcentaje <= 0.001) return BigDecimal.ZERO;
-        
-        // Cálculo: Importe * (Porcentaje / 100)
-        return importe.multiply(BigDecimal.valueOf(porcentaje))
-                      .divide(BigDecimal.valueOf(100.0), 2, RoundingMode.HALF_UP);
+        return getCosteDineroPara(p).aBigDecimal();
+    }
+
+    /**
+     * Como {@link #getCostePara(Persona)}, en céntimos (para sumar sin BigDecimal).
+     * Si no está en la cuenta o su porcentaje es 0, es cero.
+     */
+    public Dinero getCosteDineroPara(Persona p) {
+        return Dinero.deCentimos(getCosteCentimosPara(p));
+    }
+
+    /**
+     * Como {@link #getCostePara(Persona)}, en céntimos y sin crear objetos
+     * (salvo la primera vez): las partes de todos los participantes se
+     * calculan juntas y se guardan hasta que cambie el importe o la tabla de
+     * reparto que rige en su fecha (participantes, versión de porcentajes o
+     * la propia cuenta).
+     */
+    public long getCosteCentimosPara(Persona p) {
+        TablaReparto tabla = cuenta.tablaReparto(fecha);
+        int i = tabla.indiceDe(p);
+        if (i < 0) return 0;
+        Partes c = partes;
+        if (c == null || c.tabla != tabla) {
+            c = new Partes(tabla, tabla.partes(importe.centimos()));
+            partes = c;
+        }
+        return c.centimos[i];
+    }
+
+    private static final class Partes {
+        final TablaReparto tabla;
+        final long[] centimos;
+
+        Partes(TablaReparto tabla, long[] centimos) {
+            this.tabla = tabla;
+            this.centimos = centimos;
+        }
     }
 
     @Override
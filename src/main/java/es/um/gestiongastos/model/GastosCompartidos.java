@@ -2,9 +2,12 @@ package es.um.gestiongastos.model;
 
 import java.math.BigDecimal;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
-import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
@@ -14,7 +17,40 @@ public class GastosCompartidos {
     private List<Participante> participantes;
     private boolean porcentajesFijos;
     
-    private List<Gasto> historialGastos = new ArrayList<>();
+    // Historial indexado por id del gasto, en orden de inserción
+    private LinkedHashMap<String, Gasto> historialGastos = new LinkedHashMap<>();
+
+    // Pagos entre participantes para saldar deudas, por id y en orden de registro.
+    // No son gastos: no entran en informes ni alertas, y no se archivan.
+    private LinkedHashMap<String, Pago> pagos = new LinkedHashMap<>();
+
+    // Vista ordenada de solo lectura del historial; se rehace tras cada cambio. No se guarda.
+    @JsonIgnore
+    private transient List<Gasto> vistaGastos;
+
+    // Gastos por día con totales por rango (ver IndiceFechas). Se crea al
+    // consultarlo y se mantiene con cada alta, baja y cambio de reparto; si se
+    // sustituye el historial entero se descarta. Solo bajo el cerrojo. No se guarda.
+    @JsonIgnore
+    private transient IndiceFechas indiceFechas;
+
+    // Marca de cambios sin guardar (gastos o saldos). No se guarda.
+    @JsonIgnore
+    private transient volatile boolean modificada = true;
+
+    // Si la cuenta está archivada (inactiva), de aquí se hidrata el historial
+    // al consultarlo; mientras tanto historialGastos es null. No se guarda.
+    @JsonIgnore
+    private transient volatile ArchivoHistorial archivo;
+
+    // Cambios de porcentajes con fecha de efecto, ordenados por fecha. Antes de
+    // la primera versión rigen los porcentajes de los participantes.
+    private List<VersionPorcentajes> versiones = new ArrayList<>();
+
+    // Tablas de reparto (la inicial y una por versión); se rehacen si cambian
+    // los participantes o las versiones. No se guarda.
+    @JsonIgnore
+    private transient volatile Repartos repartos;
 
     private static final double EPS = 0.011;
 
@@ -50,140 +86,679 @@ public class GastosCompartidos {
     }
 
     public GastosCompartidos() {
-        // Inicializamos las listas como ArrayList editables
-        this.historialGastos = new ArrayList<>();
+        // Inicializamos las colecciones editables
+        this.historialGastos = new LinkedHashMap<>();
         this.participantes = new ArrayList<>();
     }
 
     public String getId() { return id; }
     public String getNombre() { return nombre; }
-    public void setNombre(String nombre) { this.nombre = nombre; }
+    public void setNombre(String nombre) { this.nombre = nombre; marcarModificada(); }
     public List<Participante> getParticipantes() { return participantes; }
+    public boolean isPorcentajesFijos() { return porcentajesFijos; }
 
     public BigDecimal getSaldo(Persona persona) {
+        return getSaldoDinero(persona).aBigDecimal();
+    }
+
+    public Dinero getSaldoDinero(Persona persona) {
         Participante p = findParticipante(persona);
-        return (p == null) ? BigDecimal.ZERO : p.getSaldo();
+        return (p == null) ? Dinero.CERO : p.getSaldoDinero();
     }
     
+    /** Porcentaje que rige hoy (el de la última versión con fecha pasada). */
     public double getPorcentaje(Persona persona) {
-        Participante p = findParticipante(persona);
-        return (p == null) ? 0.0 : p.getPorcentaje();
+        return getPorcentaje(persona, LocalDate.now());
     }
 
-    private Participante findParticipante(Persona persona) {
-        for (Participante p : participantes) {
-            if (p.getPersona().equals(persona)) return p;
+    /** Porcentaje que rige en una fecha. */
+    public double getPorcentaje(Persona persona, LocalDate fecha) {
+        TablaReparto t = tablaReparto(fecha);
+        int i = t.indiceDe(persona);
+        return (i < 0) ? 0.0 : t.puntos[i] / 100.0;
+    }
+
+    /**
+     * Tabla de reparto inicial de la cuenta (los porcentajes de los
+     * participantes). Las partes se calculan sobre la suma de puntos básicos
+     * de la tabla (10000, o algo menos si los porcentajes no son exactos, como
+     * los tercios), así que a partes iguales salen iguales.
+     */
+    TablaReparto tablaReparto() {
+        return repartos().inicial;
+    }
+
+    /** Tabla de reparto que rige en una fecha (búsqueda binaria entre las versiones). */
+    TablaReparto tablaReparto(LocalDate fecha) {
+        return repartos().en(fecha);
+    }
+
+    private Repartos repartos() {
+        Repartos r = repartos;
+        if (r == null) {
+            synchronized (this) {
+                r = repartos;
+                if (r == null) {
+                    r = new Repartos(participantes, versiones);
+                    repartos = r;
+                }
+            }
         }
-        return null;
+        return r;
     }
 
+    private Participante findParticipante(Persona persona) {
+        TablaReparto t = tablaReparto();
+        int i = t.indiceDe(persona);
+        return (i < 0) ? null : t.participante(i);
+    }
+
+    /** Gastos de la cuenta en orden de inserción (copia de solo lectura, estable ante cambios). */
     public List<Gasto> getGastos() {
-        return Collections.unmodifiableList(historialGastos);
+        return historial();
+    }
+
+    /** Gasto de la cuenta con ese id, o null si no está. */
+    public Gasto buscarGasto(String idGasto) {
+        ArchivoHistorial a;
+        Gasto g;
+        synchronized (this) {
+            a = archivo;
+            if (historialGastos == null) {
+                historialGastos = indexar(a.leer(this));
+            }
+            g = historialGastos.get(idGasto);
+        }
+        if (a != null) a.usada(this);
+        return g;
+    }
+
+    /**
+     * Historial en memoria, hidratándolo desde el archivo si hace falta.
+     * El aviso de uso al archivo se hace fuera del cerrojo de la cuenta,
+     * porque puede liberar el historial de otras cuentas.
+     */
+    private List<Gasto> historial() {
+        ArchivoHistorial a;
+        List<Gasto> h;
+        synchronized (this) {
+            a = archivo;
+            if (historialGastos == null) {
+                historialGastos = indexar(a.leer(this));
+            }
+            if (vistaGastos == null) {
+                vistaGastos = Collections.unmodifiableList(new ArrayList<>(historialGastos.values()));
+            }
+            h = vistaGastos;
+        }
+        if (a != null) a.usada(this);
+        return h;
+    }
+
+    /**
+     * Una cuenta archivada que se modifica vuelve a estar activa: su historial
+     * se queda en memoria y se guarda con el resto de cuentas.
+     */
+    private synchronized void desarchivar() {
+        if (archivo != null) {
+            if (historialGastos == null) {
+                historialGastos = indexar(archivo.leer(this));
+            }
+            archivo = null;
+        }
+    }
+
+    public synchronized void agregarGasto(Gasto gasto) {
+        desarchivar();
+        if (historialGastos.putIfAbsent(gasto.getId(), gasto) == null) {
+            ponerEnDia(gasto);
+            historialCambiado();
+            aplicarReparto(gasto, 1);
+            marcarModificada();
+        }
+    }
+
+    public synchronized void eliminarGasto(Gasto gasto) {
+        desarchivar();
+        // Se revierte con los datos del gasto guardado (el que se pasa puede ser otra copia)
+        Gasto guardado = historialGastos.remove(gasto.getId());
+        if (guardado != null) {
+            quitarDelDia(guardado);
+            historialCambiado();
+            aplicarReparto(guardado, -1);
+            marcarModificada();
+        }
+    }
+
+    /**
+     * Alta de varios gastos de una vez (importaciones, lotes del controlador):
+     * las partes se acumulan por participante y los saldos se escriben una
+     * sola vez al final. Los que ya estaban se ignoran.
+     */
+    public synchronized void agregarGastos(Collection<Gasto> gastos) {
+        desarchivar();
+        long[] delta = new long[participantes.size()];
+        boolean alguno = false;
+        for (Gasto g : gastos) {
+            if (historialGastos.putIfAbsent(g.getId(), g) == null) {
+                ponerEnDia(g);
+                acumularReparto(g, 1, delta);
+                alguno = true;
+            }
+        }
+        if (alguno) {
+            historialCambiado();
+            volcarSaldos(delta);
+            marcarModificada();
+        }
+    }
+
+    /** Como {@link #agregarGastos(Collection)}, para quitar varios gastos. */
+    public synchronized void eliminarGastos(Collection<Gasto> gastos) {
+        desarchivar();
+        long[] delta = new long[participantes.size()];
+        boolean alguno = false;
+        for (Gasto g : gastos) {
+            Gasto guardado = historialGastos.remove(g.getId());
+            if (guardado != null) {
+                quitarDelDia(guardado);
+                acumularReparto(guardado, -1, delta);
+                alguno = true;
+            }
+        }
+        if (alguno) {
+            historialCambiado();
+            volcarSaldos(delta);
+            marcarModificada();
+        }
+    }
+
+    private void historialCambiado() {
+        vistaGastos = null;
+    }
+
+    private void ponerEnDia(Gasto g) {
+        if (indiceFechas != null) indiceFechas.agregar(g);
+    }
+
+    private void quitarDelDia(Gasto g) {
+        if (indiceFechas != null) indiceFechas.quitar(g);
+    }
+
+    // --- CONSULTAS POR FECHA ---
+
+    /**
+     * Gastos con fecha entre {@code desde} y {@code hasta} (incluidas; null no
+     * limita), ordenados por fecha. O(log d + k) sobre el índice por fecha.
+     */
+    public List<Gasto> getGastosEntre(LocalDate desde, LocalDate hasta) {
+        return porFecha(ix -> ix.entre(desde, hasta));
+    }
+
+    /** Suma de los importes entre dos fechas (incluidas), O(log D). */
+    public Dinero getImporteEntre(LocalDate desde, LocalDate hasta) {
+        return Dinero.deCentimos(porFecha(ix -> ix.importeEntre(desde, hasta)));
+    }
+
+    /** Lo que le toca pagar a la persona de los gastos entre dos fechas (incluidas), O(log D). */
+    public Dinero getCosteEntre(Persona persona, LocalDate desde, LocalDate hasta) {
+        return Dinero.deCentimos(porFecha(ix -> ix.costeEntre(persona, desde, hasta)));
+    }
+
+    /** Fecha del gasto más antiguo, o null si no hay gastos. */
+    @JsonIgnore
+    public LocalDate getPrimeraFecha() {
+        return porFecha(IndiceFechas::primeraFecha);
+    }
+
+    /** Fecha del gasto más reciente, o null si no hay gastos. */
+    @JsonIgnore
+    public LocalDate getUltimaFecha() {
+        return porFecha(IndiceFechas::ultimaFecha);
+    }
+
+    /**
+     * Como {@link #getGastosEntre}, juntando varias cuentas (por ejemplo las
+     * de un usuario) en un solo listado por fecha: mezcla de las listas ya
+     * ordenadas de cada cuenta, O(k log c).
+     */
+    public static List<Gasto> gastosEntre(Collection<GastosCompartidos> cuentas, LocalDate desde, LocalDate hasta) {
+        List<List<Gasto>> listas = new ArrayList<>(cuentas.size());
+        int total = 0;
+        for (GastosCompartidos c : cuentas) {
+            List<Gasto> l = c.getGastosEntre(desde, hasta);
+            if (!l.isEmpty()) {
+                listas.add(l);
+                total += l.size();
+            }
+        }
+        if (listas.size() == 1) return listas.get(0);
+
+        // Cursor = {lista, posición}; a igual fecha, primero la cuenta anterior
+        PriorityQueue<int[]> cola = new PriorityQueue<>((a, b) -> {
+            int c = Long.compare(IndiceFechas.dia(listas.get(a[0]).get(a[1])), IndiceFechas.dia(listas.get(b[0]).get(b[1])));
+            return (c != 0) ? c : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < listas.size(); i++) cola.add(new int[] {i, 0});
+        List<Gasto> resultado = new ArrayList<>(total);
+        while (!cola.isEmpty()) {
+            int[] cursor = cola.poll();
+            List<Gasto> l = listas.get(cursor[0]);
+            resultado.add(l.get(cursor[1]));
+            if (++cursor[1] < l.size()) cola.add(cursor);
+        }
+        return resultado;
+    }
+
+    /** Como {@link #getCosteEntre}, sumando varias cuentas: O(c log D). */
+    public static Dinero costeEntre(Collection<GastosCompartidos> cuentas, Persona persona, LocalDate desde, LocalDate hasta) {
+        long centimos = 0;
+        for (GastosCompartidos c : cuentas) {
+            centimos += c.porFecha(ix -> ix.costeEntre(persona, desde, hasta));
+        }
+        return Dinero.deCentimos(centimos);
     }
 
-    public void agregarGasto(Gasto gasto) {
-        if (!historialGastos.contains(gasto)) {
-            historialGastos.add(gasto);
-            recalcularSaldos();
+    /**
+     * Consulta el índice por fecha bajo el cerrojo de la cuenta, hidratando
+     * el historial si hace falta (el aviso de uso al archivo, fuera).
+     */
+    private <T> T porFecha(Function<IndiceFechas, T> consulta) {
+        ArchivoHistorial a;
+        T resultado;
+        synchronized (this) {
+            a = archivo;
+            if (historialGastos == null) {
+                historialGastos = indexar(a.leer(this));
+            }
+            resultado = consulta.apply(indiceFechas());
+        }
+        if (a != null) a.usada(this);
+        return resultado;
+    }
+
+    /** Índice por fecha, creándolo si no está. Con el cerrojo y el historial en memoria. */
+    private IndiceFechas indiceFechas() {
+        if (indiceFechas == null) indiceFechas = new IndiceFechas(historialGastos.values());
+        return indiceFechas;
+    }
+
+    // --- PAGOS ENTRE PARTICIPANTES ---
+
+    public synchronized List<Pago> getPagos() {
+        return List.copyOf(pagos.values());
+    }
+
+    public synchronized Pago buscarPago(String idPago) {
+        return pagos.get(idPago);
+    }
+
+    /**
+     * Registra un pago: el saldo del deudor sube y el del acreedor baja en su
+     * importe (O(1)). Los dos tienen que ser participantes de la cuenta.
+     */
+    public synchronized void registrarPago(Pago pago) {
+        TablaReparto t = tablaReparto();
+        if (t.indiceDe(pago.getDeudor()) < 0 || t.indiceDe(pago.getAcreedor()) < 0) {
+            throw new IllegalArgumentException("El deudor y el acreedor del pago deben participar en la cuenta.");
+        }
+        if (pagos.putIfAbsent(pago.getId(), pago) == null) {
+            aplicarPago(pago, 1);
+            marcarModificada();
         }
     }
 
-    public void eliminarGasto(Gasto gasto) {
-        if (historialGastos.remove(gasto)) {
-            recalcularSaldos();
+    public synchronized void eliminarPago(Pago pago) {
+        Pago guardado = pagos.remove(pago.getId());
+        if (guardado != null) {
+            aplicarPago(guardado, -1);
+            marcarModificada();
         }
     }
 
-    private void recalcularSaldos() {
+    private void aplicarPago(Pago pago, int signo) {
+        TablaReparto t = tablaReparto();
+        int iDeudor = t.indiceDe(pago.getDeudor());
+        int iAcreedor = t.indiceDe(pago.getAcreedor());
+        if (iDeudor < 0 || iAcreedor < 0) return;
+        long centimos = signo * pago.getImporteDinero().centimos();
+        Participante deudor = t.participante(iDeudor);
+        Participante acreedor = t.participante(iAcreedor);
+        deudor.saldo = Dinero.deCentimos(deudor.saldo.centimos() + centimos);
+        acreedor.saldo = Dinero.deCentimos(acreedor.saldo.centimos() - centimos);
+    }
+
+    /**
+     * Verificación/reparación: pone los saldos a cero y reaplica todo el
+     * historial y los pagos (O(gastos × participantes)). Al añadir o quitar gastos los
+     * saldos ya se actualizan solo con la parte de ese gasto.
+     *
+     * @return true si algún saldo no cuadraba (y ha quedado corregido)
+     */
+    public synchronized boolean recalcularSaldos() {
+        List<Gasto> gastos = historial();
+        Map<Participante, Dinero> anteriores = new HashMap<>();
         // 1. Resetear saldos a 0
         for (Participante p : participantes) {
-            p.setSaldo(BigDecimal.ZERO);
+            anteriores.put(p, p.saldo);
+            p.saldo = Dinero.CERO;
         }
         // 2. Reaplicar todos los gastos
-        for (Gasto g : historialGastos) {
-            aplicarReparto(g.getImporte(), g.getPagador());
+        long[] delta = new long[participantes.size()];
+        for (Gasto g : gastos) {
+            acumularReparto(g, 1, delta);
+        }
+        volcarSaldos(delta);
+        // 3. Y los pagos
+        for (Pago p : pagos.values()) {
+            aplicarPago(p, 1);
         }
+
+        boolean corregido = false;
+        for (Participante p : participantes) {
+            if (!anteriores.get(p).equals(p.saldo)) corregido = true;
+        }
+        if (corregido) marcarModificada();
+        return corregido;
     }
 
-    private void aplicarReparto(BigDecimal importe, Persona pagador) {
-        Participante pag = findParticipante(pagador);
-        if (pag == null) return; 
+    // --- VERSIONES DE PORCENTAJES ---
 
-        BigDecimal totalAsignado = BigDecimal.ZERO;
-        
-        for (Participante par : participantes) {
-            BigDecimal porcentajeBD = BigDecimal.valueOf(par.getPorcentaje());
-            // Calcula cuánto le toca pagar a este participante
-            BigDecimal share = importe.multiply(porcentajeBD).divide(BigDecimal.valueOf(100.0), 2, RoundingMode.HALF_UP);
-            
-            // Si NO es el pagador, su saldo baja (debe dinero)
-            if (!par.getPersona().equals(pagador)) {
-                par.setSaldo(par.getSaldo().subtract(share));
-            } else {
-                // Si ES el pagador, su saldo subirá por la parte que pagan los OTROS.
-                // Lo gestionamos sumando todo lo que "deben los otros" al final o restando su propia parte del total pagado?
-                // En el modelo anterior: pagador sube saldo por la suma de shares de los otros.
-                // Equivalente matemático: Saldo += Pagado - SuParte.
-            }
-            
-            // Para el cálculo de ajuste de céntimos, sumamos lo asignado
-            totalAsignado = totalAsignado.add(share);
+    /** Cambios de porcentajes, por fecha de efecto (copia de solo lectura). */
+    @JsonIgnore
+    public synchronized List<VersionPorcentajes> getVersiones() {
+        return List.copyOf(versiones);
+    }
+
+    /**
+     * Cambia los porcentajes a partir de una fecha (incluida), hasta la
+     * siguiente versión si la hay; si ya había una versión en esa fecha, se
+     * sustituye. Solo se vuelven a repartir los gastos de ese tramo de fechas:
+     * se revierten con la tabla anterior y se aplican con la nueva. La cuenta
+     * pasa a tener porcentajes fijos.
+     */
+    public synchronized void cambiarPorcentajes(LocalDate desde, Map<Persona, Double> porcentajes) {
+        if (desde == null) throw new IllegalArgumentException("La versión de porcentajes debe tener fecha de efecto.");
+        if (porcentajes == null || !new HashSet<>(porcentajes.keySet()).equals(
+                participantes.stream().map(Participante::getPersona).collect(Collectors.toSet()))) {
+            throw new IllegalArgumentException("Las claves de porcentajes deben coincidir con los participantes");
         }
+        double sum = porcentajes.values().stream().mapToDouble(Double::doubleValue).sum();
+        if (Math.abs(sum - 100.0) > EPS) throw new IllegalArgumentException("Los porcentajes deben sumar 100");
 
-        // Ajuste de céntimos (diferencia) se lo asignamos al pagador para cuadrar
-        BigDecimal diferencia = importe.subtract(totalAsignado);
-        
-        BigDecimal suParteTeorica = importe.multiply(BigDecimal.valueOf(pag.getPorcentaje())).divide(BigDecimal.valueOf(100.0), 2, RoundingMode.HALF_UP);
-        BigDecimal incrementoPagador = importe.subtract(suParteTeorica).add(diferencia);
-        pag.setSaldo(pag.getSaldo().add(incrementoPagador));
+        int[] puntos = new int[participantes.size()];
+        for (int i = 0; i < puntos.length; i++) {
+            puntos[i] = Dinero.puntosBasicos(porcentajes.get(participantes.get(i).getPersona()));
+        }
+        VersionPorcentajes nueva = new VersionPorcentajes(desde, puntos);
+
+        // Tramo afectado: [desde, fecha de la siguiente versión)
+        int pos = posicionVersion(desde);
+        boolean sustituye = pos >= 0;
+        int siguiente = sustituye ? pos + 1 : -pos - 1;
+        LocalDate hasta = (siguiente < versiones.size()) ? versiones.get(siguiente).desde : null;
+        desarchivar();
+        IndiceFechas ix = indiceFechas();
+        List<Gasto> afectados = ix.entre(desde, (hasta == null) ? null : hasta.minusDays(1));
+
+        long[] delta = new long[participantes.size()];
+        for (Gasto g : afectados) {
+            acumularReparto(g, -1, delta);
+            ix.anotarCostes(g, -1);
+        }
+        if (sustituye) versiones.set(pos, nueva);
+        else versiones.add(siguiente, nueva);
+        repartos = null;
+        porcentajesFijos = true;
+        for (Gasto g : afectados) {
+            acumularReparto(g, 1, delta);
+            ix.anotarCostes(g, 1);
+        }
+        volcarSaldos(delta);
+        marcarModificada();
+    }
+
+    /** Carga de una versión ya reflejada en los saldos guardados: no los toca. */
+    public synchronized void setVersionPorcentajes(LocalDate desde, Map<Persona, Double> porcentajes) {
+        int[] puntos = new int[participantes.size()];
+        for (int i = 0; i < puntos.length; i++) {
+            Double pct = porcentajes.get(participantes.get(i).getPersona());
+            puntos[i] = (pct == null) ? 0 : Dinero.puntosBasicos(pct);
+        }
+        VersionPorcentajes v = new VersionPorcentajes(desde, puntos);
+        int pos = posicionVersion(desde);
+        if (pos >= 0) versiones.set(pos, v);
+        else versiones.add(-pos - 1, v);
+        repartos = null;
+        indiceFechas = null;
+    }
+
+    /** Como Collections.binarySearch sobre las fechas de las versiones. */
+    private int posicionVersion(LocalDate desde) {
+        int lo = 0, hi = versiones.size() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = versiones.get(mid).desde.compareTo(desde);
+            if (c < 0) lo = mid + 1;
+            else if (c > 0) hi = mid - 1;
+            else return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Suma (signo 1) o revierte (signo -1) en los saldos el efecto de un gasto,
+     * con la tabla de reparto que rige en su fecha.
+     * Todo en céntimos: cada participante que no paga debe su parte y el
+     * pagador recibe el resto del importe, así que los saldos siempre suman
+     * cero y revertir los deja exactamente como estaban.
+     */
+    private void aplicarReparto(Gasto gasto, int signo) {
+        long[] delta = new long[participantes.size()];
+        acumularReparto(gasto, signo, delta);
+        volcarSaldos(delta);
+    }
+
+    /**
+     * Como {@link #aplicarReparto}, pero sumando en {@code delta} (céntimos
+     * por índice de participante) en vez de en los saldos.
+     */
+    private void acumularReparto(Gasto gasto, int signo, long[] delta) {
+        TablaReparto t = tablaReparto(gasto.getFecha());
+        int iPagador = t.indiceDe(gasto.getPagador());
+        if (iPagador < 0 || t.totalPuntos <= 0) return;
+
+        long centimos = gasto.getImporteDinero().centimos();
+        long totalOtros = 0;
+        for (int i = 0; i < t.tamaño(); i++) {
+            if (i == iPagador || t.puntos[i] <= 0) continue;
+            // Calcula cuánto le toca pagar a este participante; su saldo baja (debe dinero)
+            long parte = Dinero.repartir(centimos, t.puntos[i], t.totalPuntos);
+            delta[i] -= signo * parte;
+            totalOtros += parte;
+        }
+        // El pagador sube por lo que le deben los otros (importe - su parte, céntimos sobrantes incluidos)
+        delta[iPagador] += signo * totalOtros;
+    }
+
+    private void volcarSaldos(long[] delta) {
+        for (int i = 0; i < delta.length; i++) {
+            if (delta[i] == 0) continue;
+            Participante par = participantes.get(i);
+            par.saldo = Dinero.deCentimos(Math.addExact(par.saldo.centimos(), delta[i]));
+        }
     }
     
  // --- SETTERS PARA JSON ---
 
-    public void setGastos(List<Gasto> gastos) {
-        if (gastos == null) {
-            this.historialGastos = new ArrayList<>();
-        } else {
-            // Creamos una COPIA editable. 
-            this.historialGastos = new ArrayList<>(gastos);
+    public synchronized void setGastos(List<Gasto> gastos) {
+        archivo = null;
+        // Creamos una COPIA editable (indexada por id).
+        this.historialGastos = indexar(gastos != null ? gastos : Collections.emptyList());
+        this.indiceFechas = null;
+        historialCambiado();
+    }
+
+    /** Carga de pagos ya reflejados en los saldos guardados: no los toca. */
+    public synchronized void setPagos(List<Pago> pagos) {
+        this.pagos = new LinkedHashMap<>();
+        if (pagos != null) {
+            for (Pago p : pagos) this.pagos.putIfAbsent(p.getId(), p);
         }
     }
 
+    private static LinkedHashMap<String, Gasto> indexar(List<Gasto> gastos) {
+        LinkedHashMap<String, Gasto> indice = new LinkedHashMap<>(Math.max(16, gastos.size() * 4 / 3 + 1));
+        for (Gasto g : gastos) {
+            indice.putIfAbsent(g.getId(), g);
+        }
+        return indice;
+    }
+
+    public void setPorcentajesFijos(boolean porcentajesFijos) {
+        this.porcentajesFijos = porcentajesFijos;
+    }
+
     public void setParticipantes(List<Participante> participantes) {
         if (participantes == null) {
             this.participantes = new ArrayList<>();
         } else {
             this.participantes = new ArrayList<>(participantes);
         }
+        this.repartos = null;
+        this.indiceFechas = null;
+    }
+
+    // --- CONTROL DE CAMBIOS (persistencia) ---
+
+    @JsonIgnore
+    public boolean isModificada() { return modificada; }
+
+    public synchronized void marcarModificada() {
+        desarchivar();
+        this.modificada = true;
+    }
+
+    /** Ver {@link Persona#marcarGuardada()}. */
+    public void marcarGuardada() { this.modificada = false; }
+
+    // --- ARCHIVO DE CUENTAS INACTIVAS (persistencia) ---
+
+    /**
+     * Pasa la cuenta al archivo: suelta el historial de memoria y lo leerá
+     * de {@code archivo} la próxima vez que se consulte. Solo si no tiene
+     * cambios sin guardar (lo archivado debe ser lo mismo que lo guardado).
+     *
+     * @return true si se ha archivado
+     */
+    public synchronized boolean archivar(ArchivoHistorial archivo) {
+        if (modificada) return false;
+        this.archivo = archivo;
+        this.historialGastos = null;
+        this.indiceFechas = null;
+        historialCambiado();
+        return true;
+    }
+
+    /**
+     * Suelta de memoria el historial hidratado de una cuenta archivada (se
+     * volverá a leer si se consulta). No hace nada si la cuenta está activa.
+     *
+     * @return true si se ha liberado
+     */
+    public synchronized boolean liberarHistorial() {
+        if (archivo == null || modificada) return false;
+        historialGastos = null;
+        indiceFechas = null;
+        historialCambiado();
+        return true;
     }
 
+    @JsonIgnore
+    public boolean isArchivada() { return archivo != null; }
+
     @Override
     public String toString() {
         return nombre;
     }
 
-    // Clase interna Participante (sin cambios mayores, solo getters/setters package-private)
+    /**
+     * Porcentajes que rigen desde una fecha (incluida), en puntos básicos y
+     * en el orden de los participantes de la cuenta. Inmutable.
+     */
+    public static final class VersionPorcentajes {
+        private final LocalDate desde;
+        private final int[] puntos;
+
+        VersionPorcentajes(LocalDate desde, int[] puntos) {
+            this.desde = desde;
+            this.puntos = puntos;
+        }
+
+        public LocalDate getDesde() { return desde; }
+
+        /** Porcentaje del participante en esa posición de {@link GastosCompartidos#getParticipantes()}. */
+        public double getPorcentaje(int indice) { return puntos[indice] / 100.0; }
+    }
+
+    /**
+     * Tablas de reparto derivadas de los participantes y las versiones, con
+     * las fechas de efecto en un array para buscar por bisección.
+     */
+    private static final class Repartos {
+        final TablaReparto inicial;
+        final LocalDate[] desde;
+        final TablaReparto[] tablas;
+
+        Repartos(List<Participante> participantes, List<VersionPorcentajes> versiones) {
+            this.inicial = new TablaReparto(participantes);
+            this.desde = new LocalDate[versiones.size()];
+            this.tablas = new TablaReparto[versiones.size()];
+            for (int i = 0; i < desde.length; i++) {
+                VersionPorcentajes v = versiones.get(i);
+                desde[i] = v.desde;
+                tablas[i] = new TablaReparto(participantes, v.puntos);
+            }
+        }
+
+        /** La última versión que empieza en o antes de la fecha; la inicial si no hay (o sin fecha). */
+        TablaReparto en(LocalDate fecha) {
+            if (fecha == null || desde.length == 0) return inicial;
+            int i = Arrays.binarySearch(desde, fecha);
+            if (i < 0) i = -i - 2;
+            return (i < 0) ? inicial : tablas[i];
+        }
+    }
+
+    // Clase interna Participante: porcentaje en puntos básicos y saldo en céntimos;
+    // hacia fuera (y en JSON) se siguen viendo como double y BigDecimal
     public static class Participante {
         private Persona persona;
-        private double porcentaje; 
-        private BigDecimal saldo; 
+        private int puntosBasicos;
+        private Dinero saldo = Dinero.CERO;
 
         public Participante(Persona persona, double porcentaje, BigDecimal saldoInicial) {
             this.persona = persona;
-            this.porcentaje = porcentaje;
-            this.saldo = saldoInicial != null ? saldoInicial : BigDecimal.ZERO;
+            this.puntosBasicos = Dinero.puntosBasicos(porcentaje);
+            this.saldo = Dinero.de(saldoInicial);
         }
         public Participante() {}
         public Persona getPersona() { return persona; }
-        public double getPorcentaje() { return porcentaje; }
-        public BigDecimal getSaldo() { return saldo; }
+        public double getPorcentaje() { return puntosBasicos / 100.0; }
+        @JsonIgnore
+        public int getPuntosBasicos() { return puntosBasicos; }
+        public BigDecimal getSaldo() { return saldo.aBigDecimal(); }
+        @JsonIgnore
+        public Dinero getSaldoDinero() { return saldo; }
         void setPersona(Persona persona) { this.persona = persona; }
-        void setPorcentaje(double porcentaje) { this.porcentaje = porcentaje; }
-        void setSaldo(BigDecimal nuevoSaldo) { this.saldo = nuevoSaldo; }
+        @JsonSetter("porcentaje")
+        void setPorcentaje(double porcentaje) { this.puntosBasicos = Dinero.puntosBasicos(porcentaje); }
+        @JsonSetter("saldo")
+        void setSaldo(BigDecimal nuevoSaldo) { this.saldo = Dinero.de(nuevoSaldo); }
         
         @Override
         public String toString() {
             return persona.getNombreUsuario();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package es.um.gestiongastos.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Notificaciones de un usuario, de la más nueva a la más antigua, con tope:
+ * una vez fijados los límites con {@link #limitar}, se guardan como mucho las
+ * {@link #getMaximo()} últimas y las de los últimos {@link #getDiasRetencion()}
+ * días. Así lo que se guarda y se vuelve a serializar no crece con el número
+ * de cambios. Los límites son de cada historial (los fija la persistencia).
+ */
+public class HistorialNotificaciones {
+
+    private final ArrayDeque<Notificacion> notificaciones = new ArrayDeque<>();
+
+    // Sin límites hasta que se fijen (0 días = sin límite de antigüedad)
+    private int maximo = Integer.MAX_VALUE;
+    private int diasRetencion = 0;
+
+    public HistorialNotificaciones() {}
+
+    public HistorialNotificaciones(int maximoNotificaciones, int dias) {
+        fijarLimites(maximoNotificaciones, dias);
+    }
+
+    /** Cambia los límites y descarta lo que ya sobre. */
+    public synchronized void limitar(int maximoNotificaciones, int dias) {
+        fijarLimites(maximoNotificaciones, dias);
+        podar();
+    }
+
+    public synchronized int getMaximo() { return maximo; }
+    public synchronized int getDiasRetencion() { return diasRetencion; }
+
+    /** Fecha a partir de la cual se conservan (null si no hay límite de antigüedad). */
+    public synchronized LocalDateTime limiteRetencion() {
+        return (diasRetencion > 0) ? LocalDateTime.now().minusDays(diasRetencion) : null;
+    }
+
+    /** La más nueva va al principio; se descartan las que sobran. */
+    public synchronized void agregar(Notificacion n) {
+        notificaciones.addFirst(n);
+        podar();
+    }
+
+    /** Sustituye el contenido (de la más nueva a la más antigua). */
+    public synchronized void cargar(List<Notificacion> lista) {
+        notificaciones.clear();
+        if (lista != null) notificaciones.addAll(lista);
+        podar();
+    }
+
+    public synchronized boolean contiene(Notificacion n) {
+        return notificaciones.contains(n);
+    }
+
+    public synchronized int tamaño() {
+        return notificaciones.size();
+    }
+
+    /** Todas, de la más nueva a la más antigua (copia). */
+    public synchronized List<Notificacion> todas() {
+        return Collections.unmodifiableList(new ArrayList<>(notificaciones));
+    }
+
+    /**
+     * Una página (la 0 es la de las más nuevas).
+     * @return vacía si la página no existe
+     */
+    public synchronized List<Notificacion> pagina(int pagina, int tamaño) {
+        if (pagina < 0 || tamaño <= 0) return Collections.emptyList();
+        long salto = (long) pagina * tamaño;
+        if (salto >= notificaciones.size()) return Collections.emptyList();
+        List<Notificacion> resultado = new ArrayList<>(tamaño);
+        Iterator<Notificacion> it = notificaciones.iterator();
+        for (long i = 0; i < salto; i++) it.next();
+        while (it.hasNext() && resultado.size() < tamaño) resultado.add(it.next());
+        return Collections.unmodifiableList(resultado);
+    }
+
+    private void podar() {
+        while (notificaciones.size() > maximo) notificaciones.removeLast();
+        LocalDateTime limite = limiteRetencion();
+        while (limite != null && !notificaciones.isEmpty()) {
+            LocalDateTime fh = notificaciones.peekLast().getFechaHora();
+            if (fh == null || !fh.isBefore(limite)) break;
+            notificaciones.removeLast();
+        }
+    }
+
+    private void fijarLimites(int maximoNotificaciones, int dias) {
+        maximo = Math.max(1, maximoNotificaciones);
+        diasRetencion = Math.max(1, dias);
+    }
+}
@@ -0,0 +1,241 @@
+package es.um.gestiongastos.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Gastos de una cuenta por fecha (los del mismo día, en orden de inserción),
+ * con totales por rango de fechas. La cuenta lo mantiene con cada alta y baja,
+ * sin rehacerlo.
+ *
+ * - Rango de fechas: submapa del árbol por día, O(log d + k) (d = días con gastos).
+ * - Total de un rango (importe, o coste de un participante): árbol de Fenwick
+ *   con la suma de cada día de una ventana de días, O(log D) (D = días de la
+ *   ventana). Los de cada participante se crean la primera vez que se piden.
+ * - Alta o baja: O(log d + p log D), con p = árboles de participante creados.
+ * - La ventana cubre del primer al último día con gastos, con hueco a ambos
+ *   lados. Un gasto que cae fuera la rehace con el doble de hueco, O(n + D),
+ *   así que pasa pocas veces. Los días que no caben en
+ *   {@value #MAX_VENTANA} (fechas absurdas) y los gastos sin fecha se quedan
+ *   fuera y se suman recorriéndolos.
+ *
+ * No es seguro entre hilos: la cuenta lo usa siempre bajo su cerrojo.
+ */
+final class IndiceFechas {
+
+    private static final long SIN_FECHA = Long.MIN_VALUE;
+    private static final int MIN_VENTANA = 64;
+    private static final int MAX_VENTANA = 1 << 16; // unos 180 años
+
+    /** Árbol de Fenwick de sumas por día de la ventana (posición 0 = día {@code base}). */
+    private static final class Sumas {
+        final long[] arbol;
+
+        Sumas(int dias) {
+            this.arbol = new long[dias + 1];
+        }
+
+        void sumar(int pos, long delta) {
+            for (int i = pos + 1; i < arbol.length; i += i & -i) arbol[i] += delta;
+        }
+
+        /** Suma de las posiciones [0, pos). */
+        long antes(int pos) {
+            long s = 0;
+            for (int i = pos; i > 0; i -= i & -i) s += arbol[i];
+            return s;
+        }
+    }
+
+    private final TreeMap<Long, List<Gasto>> porDia = new TreeMap<>();
+    private int tamaño;
+    private long base;     // epoch day de la posición 0 de la ventana
+    private int ventana;   // días de la ventana (0 = sin gastos con fecha)
+    private Sumas importes = new Sumas(0);
+    private final Map<Persona, Sumas> costes = new IdentityHashMap<>();
+
+    IndiceFechas(Collection<Gasto> gastos) {
+        for (Gasto g : gastos) {
+            porDia.computeIfAbsent(dia(g), d -> new ArrayList<>(2)).add(g);
+        }
+        tamaño = gastos.size();
+        reubicarVentana();
+    }
+
+    /** Clave de un gasto en el índice (los que no tienen fecha van al principio). */
+    static long dia(Gasto g) {
+        return (g.getFecha() == null) ? SIN_FECHA : g.getFecha().toEpochDay();
+    }
+
+    int tamaño() {
+        return tamaño;
+    }
+
+    // --- CAMBIOS ---
+
+    void agregar(Gasto g) {
+        long d = dia(g);
+        porDia.computeIfAbsent(d, k -> new ArrayList<>(2)).add(g);
+        tamaño++;
+        if (!enVentana(d) && d != SIN_FECHA && reubicarVentana()) return; // Ya lo incluye
+        anotar(g, d, 1, true);
+    }
+
+    void quitar(Gasto g) {
+        long d = dia(g);
+        List<Gasto> delDia = porDia.get(d);
+        if (delDia == null || !delDia.remove(g)) return;
+        if (delDia.isEmpty()) porDia.remove(d);
+        tamaño--;
+        anotar(g, d, -1, true);
+    }
+
+    /**
+     * Resta ({@code signo} -1) o vuelve a sumar (+1) el coste del gasto para
+     * cada participante, sin tocar su importe: para cuando cambia el reparto.
+     */
+    void anotarCostes(Gasto g, int signo) {
+        anotar(g, dia(g), signo, false);
+    }
+
+    private void anotar(Gasto g, long d, int signo, boolean importe) {
+        if (!enVentana(d)) return; // Fuera de la ventana se suman al consultar
+        int pos = (int) (d - base);
+        if (importe) importes.sumar(pos, signo * g.getImporteDinero().centimos());
+        for (Map.Entry<Persona, Sumas> e : costes.entrySet()) {
+            e.getValue().sumar(pos, signo * g.getCosteCentimosPara(e.getKey()));
+        }
+    }
+
+    // --- CONSULTAS ---
+
+    LocalDate primeraFecha() {
+        return porDia.isEmpty() ? null : porDia.firstEntry().getValue().get(0).getFecha();
+    }
+
+    LocalDate ultimaFecha() {
+        if (porDia.isEmpty()) return null;
+        List<Gasto> ultimos = porDia.lastEntry().getValue();
+        return ultimos.get(ultimos.size() - 1).getFecha();
+    }
+
+    /** Gastos con fecha en [desde, hasta]; los null no limitan. Copia de solo lectura. */
+    List<Gasto> entre(LocalDate desde, LocalDate hasta) {
+        NavigableMap<Long, List<Gasto>> rango = rango(desde, hasta);
+        if (rango.isEmpty()) return Collections.emptyList();
+        List<Gasto> resultado = new ArrayList<>();
+        for (List<Gasto> delDia : rango.values()) resultado.addAll(delDia);
+        return Collections.unmodifiableList(resultado);
+    }
+
+    /** Suma de importes en [desde, hasta], en céntimos. */
+    long importeEntre(LocalDate desde, LocalDate hasta) {
+        return suma(importes, g -> g.getImporteDinero().centimos(), desde, hasta);
+    }
+
+    /** Suma de lo que le toca a la persona en [desde, hasta], en céntimos. */
+    long costeEntre(Persona persona, LocalDate desde, LocalDate hasta) {
+        ToLongFunction<Gasto> coste = g -> g.getCosteCentimosPara(persona);
+        Sumas s = costes.get(persona);
+        if (s == null) {
+            s = construir(coste);
+            costes.put(persona, s);
+        }
+        return suma(s, coste, desde, hasta);
+    }
+
+    private long suma(Sumas s, ToLongFunction<Gasto> valor, LocalDate desde, LocalDate hasta) {
+        long lo = (desde == null) ? SIN_FECHA : desde.toEpochDay();
+        long hi = (hasta == null) ? Long.MAX_VALUE : hasta.toEpochDay();
+        if (lo > hi) return 0;
+
+        long total = 0;
+        long a = Math.max(lo, base);
+        long b = Math.min(hi, base + ventana - 1);
+        if (a <= b) {
+            total += s.antes((int) (b - base + 1)) - s.antes((int) (a - base));
+        }
+        // Lo que queda fuera de la ventana (normalmente solo los gastos sin fecha)
+        if (lo < base) total += recorrer(porDia.subMap(lo, true, Math.min(hi, base - 1), true), valor);
+        long finVentana = base + ventana;
+        if (hi >= finVentana) total += recorrer(porDia.subMap(Math.max(lo, finVentana), true, hi, true), valor);
+        return total;
+    }
+
+    private static long recorrer(NavigableMap<Long, List<Gasto>> dias, ToLongFunction<Gasto> valor) {
+        long total = 0;
+        for (List<Gasto> delDia : dias.values()) {
+            for (Gasto g : delDia) total += valor.applyAsLong(g);
+        }
+        return total;
+    }
+
+    private NavigableMap<Long, List<Gasto>> rango(LocalDate desde, LocalDate hasta) {
+        long lo = (desde == null) ? SIN_FECHA : desde.toEpochDay();
+        long hi = (hasta == null) ? Long.MAX_VALUE : hasta.toEpochDay();
+        if (lo > hi) return Collections.emptyNavigableMap();
+        return porDia.subMap(lo, true, hi, true);
+    }
+
+    // --- VENTANA ---
+
+    private boolean enVentana(long d) {
+        return d >= base && d - base < ventana;
+    }
+
+    /**
+     * Coloca la ventana sobre los días con gastos, con el doble de hueco, y
+     * rehace los árboles. Devuelve false si ya estaba donde tocaba.
+     */
+    private boolean reubicarVentana() {
+        Long primero = porDia.higherKey(SIN_FECHA);
+        long nuevaBase = 0;
+        int nuevaVentana = 0;
+        if (primero != null) {
+            long ultimo = porDia.lastKey();
+            long dias = ultimo - primero + 1;
+            if (dias > MAX_VENTANA) {
+                // Fechas absurdas: la ventana se queda con lo más reciente
+                nuevaVentana = MAX_VENTANA;
+                nuevaBase = ultimo - MAX_VENTANA + 1;
+            } else {
+                nuevaVentana = (int) Math.min(MAX_VENTANA, Math.max(MIN_VENTANA, 2 * dias));
+                nuevaBase = primero - (nuevaVentana - dias) / 2;
+            }
+        }
+        if (nuevaBase == base && nuevaVentana == ventana) return false;
+
+        base = nuevaBase;
+        ventana = nuevaVentana;
+        importes = construir(g -> g.getImporteDinero().centimos());
+        for (Map.Entry<Persona, Sumas> e : costes.entrySet()) {
+            Persona p = e.getKey();
+            e.setValue(construir(g -> g.getCosteCentimosPara(p)));
+        }
+        return true;
+    }
+
+    /** Árbol de la ventana con los gastos que caen en ella, O(n + D). */
+    private Sumas construir(ToLongFunction<Gasto> valor) {
+        Sumas s = new Sumas(ventana);
+        if (ventana == 0) return s;
+        long[] arbol = s.arbol;
+        for (Map.Entry<Long, List<Gasto>> e : porDia.subMap(base, true, base + ventana - 1, true).entrySet()) {
+            int i = (int) (e.getKey() - base) + 1;
+            for (Gasto g : e.getValue()) arbol[i] += valor.applyAsLong(g);
+        }
+        for (int i = 1; i < arbol.length; i++) {
+            int padre = i + (i & -i);
+            if (padre < arbol.length) arbol[padre] += arbol[i];
+        }
+        return s;
+    }
+}
@@ -0,0 +1,158 @@
+package es.um.gestiongastos.model;
+
+import java.util.*;
+
+/**
+ * Liquidación de cuentas: a partir de los saldos de los participantes
+ * calcula quién le paga a quién para dejarlos todos a cero.
+ *
+ * - Voraz, O(n log n): empareja siempre al mayor deudor con el mayor
+ *   acreedor (dos montículos); da como mucho n - 1 pagos.
+ * - Exacto, para grupos pequeños (hasta {@link #MAX_EXACTO} personas con
+ *   saldo): el mínimo de pagos es n menos el máximo número de subgrupos que
+ *   suman cero por separado; se busca con programación dinámica sobre
+ *   subconjuntos (O(n · 2^n)) y cada subgrupo se liquida con el voraz.
+ *
+ * Si los saldos no suman exactamente cero (céntimos descuadrados de datos
+ * antiguos), lo que sobra se queda sin liquidar.
+ */
+public final class Liquidador {
+
+    /** Máximo de personas con saldo para buscar el mínimo exacto. */
+    public static final int MAX_EXACTO = 16;
+
+    private Liquidador() {}
+
+    public static List<Transferencia> liquidar(GastosCompartidos cuenta) {
+        return liquidar(List.of(cuenta));
+    }
+
+    /** Liquida juntas varias cuentas: se suman los saldos de cada persona en todas ellas. */
+    public static List<Transferencia> liquidar(Collection<GastosCompartidos> cuentas) {
+        return liquidar(saldos(cuentas), true);
+    }
+
+    public static Map<Persona, Dinero> saldos(Collection<GastosCompartidos> cuentas) {
+        Map<Persona, Long> centimos = new HashMap<>();
+        for (GastosCompartidos cuenta : cuentas) {
+            for (GastosCompartidos.Participante p : cuenta.getParticipantes()) {
+                centimos.merge(p.getPersona(), p.getSaldoDinero().centimos(), Long::sum);
+            }
+        }
+        Map<Persona, Dinero> saldos = new HashMap<>();
+        centimos.forEach((persona, c) -> saldos.put(persona, Dinero.deCentimos(c)));
+        return saldos;
+    }
+
+    /**
+     * @param exacto si se busca el mínimo de pagos cuando el grupo es pequeño
+     * @return los pagos, primero los de mayor importe
+     */
+    public static List<Transferencia> liquidar(Map<Persona, Dinero> saldos, boolean exacto) {
+        // Solo quien tiene saldo, en orden de nombre de usuario para que el resultado sea estable
+        List<Persona> conSaldo = new ArrayList<>();
+        saldos.forEach((persona, saldo) -> {
+            if (saldo.centimos() != 0) conSaldo.add(persona);
+        });
+        conSaldo.sort(Comparator.comparing(Persona::getNombreUsuario));
+
+        int n = conSaldo.size();
+        Persona[] personas = conSaldo.toArray(new Persona[0]);
+        long[] saldo = new long[n];
+        for (int i = 0; i < n; i++) {
+            saldo[i] = saldos.get(personas[i]).centimos();
+        }
+
+        List<Transferencia> pagos = new ArrayList<>();
+        if (exacto && n <= MAX_EXACTO) {
+            for (int[] grupo : gruposQueSumanCero(saldo)) {
+                voraz(grupo, saldo, personas, pagos);
+            }
+        } else {
+            int[] todos = new int[n];
+            for (int i = 0; i < n; i++) todos[i] = i;
+            voraz(todos, saldo, personas, pagos);
+        }
+        pagos.sort(Comparator.comparing(Transferencia::getImporteDinero).reversed());
+        return pagos;
+    }
+
+    /**
+     * Empareja el mayor deudor con el mayor acreedor hasta que uno de los dos
+     * lados se acaba; el que no queda a cero vuelve a su montículo.
+     * Modifica {@code saldo}.
+     */
+    private static void voraz(int[] indices, long[] saldo, Persona[] personas, List<Transferencia> pagos) {
+        Comparator<Integer> mayorPrimero = Comparator.<Integer>comparingLong(i -> -Math.abs(saldo[i]))
+                .thenComparingInt(i -> i);
+        PriorityQueue<Integer> acreedores = new PriorityQueue<>(mayorPrimero);
+        PriorityQueue<Integer> deudores = new PriorityQueue<>(mayorPrimero);
+        for (int i : indices) {
+            if (saldo[i] > 0) acreedores.add(i);
+            else if (saldo[i] < 0) deudores.add(i);
+        }
+
+        while (!acreedores.isEmpty() && !deudores.isEmpty()) {
+            int a = acreedores.poll();
+            int d = deudores.poll();
+            long importe = Math.min(saldo[a], -saldo[d]);
+            pagos.add(new Transferencia(personas[d], personas[a], Dinero.deCentimos(importe)));
+            saldo[a] -= importe;
+            saldo[d] += importe;
+            if (saldo[a] > 0) acreedores.add(a);
+            if (saldo[d] < 0) deudores.add(d);
+        }
+    }
+
+    /**
+     * Reparte los índices en el máximo número de grupos que suman cero.
+     * mejor[m] = máximo de prefijos que suman cero en alguna ordenación de los
+     * elementos de m; recorriendo hacia atrás esa ordenación, cada prefijo que
+     * suma cero cierra un grupo.
+     */
+    private static List<int[]> gruposQueSumanCero(long[] saldo) {
+        int n = saldo.length;
+        int total = 1 << n;
+        long[] suma = new long[total];
+        int[] mejor = new int[total];
+        for (int m = 1; m < total; m++) {
+            int bajo = Integer.numberOfTrailingZeros(m);
+            suma[m] = suma[m & (m - 1)] + saldo[bajo];
+            int max = 0;
+            for (int resto = m; resto != 0; resto &= resto - 1) {
+                int i = Integer.numberOfTrailingZeros(resto);
+                max = Math.max(max, mejor[m ^ (1 << i)]);
+            }
+            mejor[m] = max + (suma[m] == 0 ? 1 : 0);
+        }
+
+        List<int[]> grupos = new ArrayList<>();
+        int inicio = total - 1;
+        int m = total - 1;
+        while (m != 0) {
+            if (suma[m] == 0 && m != inicio) {
+                grupos.add(indices(inicio ^ m));
+                inicio = m;
+            }
+            int objetivo = mejor[m] - (suma[m] == 0 ? 1 : 0);
+            for (int resto = m; resto != 0; resto &= resto - 1) {
+                int i = Integer.numberOfTrailingZeros(resto);
+                if (mejor[m ^ (1 << i)] == objetivo) {
+                    m ^= 1 << i;
+                    break;
+                }
+            }
+        }
+        if (inicio != 0) grupos.add(indices(inicio));
+        return grupos;
+    }
+
+    private static int[] indices(int mascara) {
+        int[] indices = new int[Integer.bitCount(mascara)];
+        int k = 0;
+        for (int resto = mascara; resto != 0; resto &= resto - 1) {
+            indices[k++] = Integer.numberOfTrailingZeros(resto);
+        }
+        return indices;
+    }
+}
@@ -0,0 +1,331 @@
+package es.um.gestiongastos.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Totales en curso de las alertas de un usuario: para cada alerta, lo que le
+ * toca pagar en su periodo actual (esta semana, este mes o los últimos N días).
+ *
+ * - Cada cambio de un gasto suma o resta su coste solo en las alertas que le
+ *   afectan (las globales y las de su categoría): O(alertas afectadas).
+ * - Al comprobar, solo se evalúan las alertas cuyo total ha cambiado, y
+ *   cada alerta avisa una vez por periodo: vuelve a avisar al empezar otro
+ *   periodo o al pasar a un escalón mayor ({@link Alerta#nivel(double)}). Las
+ *   ventanas móviles no empiezan periodo: al bajar de escalón solo se rearman
+ *   cuando ha pasado una ventana entera desde su último aviso (para entonces
+ *   ya ha salido lo que lo hizo saltar), así no avisan a cada vaivén.
+ *   Al crear el motor, lo ya avisado se saca del historial de notificaciones.
+ * - Los totales se calculan enteros (con el índice por fecha de las cuentas)
+ *   al crear el motor o la alerta, cuando termina el periodo de una alerta y
+ *   cuando cambia el reparto de una cuenta ({@link #reconstruir()}).
+ * - Las ventanas móviles guardan el total de cada día en una cola circular:
+ *   al pasar un día sale el más antiguo y entra el nuevo, O(1) por día.
+ *
+ * Para un cambio de gasto hay que llamar a {@link #restar(Gasto)} antes de
+ * tocar el modelo (con sus datos de antes) y a {@link #sumar(Gasto)} después.
+ */
+public class MotorAlertas {
+
+    /** Alerta que salta, con el total y el escalón con el que salta. */
+    public static final class Disparo {
+        public final Alerta alerta;
+        public final double total;
+        public final int nivel;
+
+        Disparo(Alerta alerta, double total, int nivel) {
+            this.alerta = alerta;
+            this.total = total;
+            this.nivel = nivel;
+        }
+    }
+
+    /** Total del periodo actual de una alerta. */
+    private static final class Acumulado {
+        final Alerta alerta;
+        final String categoria; // null = todas
+        // Ventana móvil: total de cada día, en la posición epochDay % días (null = periodo natural)
+        final long[] porDia;
+        LocalDate inicio;
+        LocalDate fin;
+        long centimos;
+        int avisado; // Escalón ya avisado en este periodo (0 = armada)
+        LocalDate ultimoAviso; // Ventanas móviles: día del último aviso
+
+        Acumulado(Alerta alerta) {
+            this.alerta = alerta;
+            this.categoria = alerta.getCategoriaOpcional().map(Categoria::getNombre).orElse(null);
+            int dias = alerta.longitudVentana();
+            this.porDia = (dias > 0) ? new long[dias] : null;
+        }
+
+        boolean contiene(LocalDate fecha) {
+            return fecha != null && !fecha.isBefore(inicio) && !fecha.isAfter(fin);
+        }
+
+        boolean acepta(Gasto g) {
+            return categoria == null || (g.getCategoria() != null && categoria.equals(g.getCategoria().getNombre()));
+        }
+
+        void anotar(LocalDate fecha, long delta) {
+            centimos += delta;
+            if (porDia != null) porDia[posicion(fecha.toEpochDay())] += delta;
+        }
+
+        int posicion(long dia) {
+            return (int) Math.floorMod(dia, (long) porDia.length);
+        }
+    }
+
+    private final Persona usuario;
+    private final Map<Alerta, Acumulado> acumulados = new IdentityHashMap<>();
+    private final List<Acumulado> globales = new ArrayList<>();
+    private final Map<String, List<Acumulado>> porCategoria = new HashMap<>();
+    // Alertas con el total cambiado desde la última comprobación
+    private final Set<Acumulado> tocadas = new LinkedHashSet<>();
+    // Día en que termina el primer periodo que vence (null = sin alertas)
+    private LocalDate proximoFin;
+    private LocalDate hoy;
+    private final Supplier<LocalDate> reloj;
+
+    public MotorAlertas(Persona usuario) {
+        this(usuario, LocalDate::now);
+    }
+
+    /** Con otro reloj (en las pruebas, para hacer pasar los días). */
+    MotorAlertas(Persona usuario, Supplier<LocalDate> reloj) {
+        this.usuario = usuario;
+        this.reloj = reloj;
+        rehacer();
+    }
+
+    public Persona getUsuario() { return usuario; }
+
+    /** Vuelve a calcular los periodos y totales de todas las alertas. */
+    public synchronized void reconstruir() {
+        rehacer();
+    }
+
+    // Privado para que el constructor no llame a un método que una subclase pueda redefinir
+    private void rehacer() {
+        acumulados.clear();
+        globales.clear();
+        porCategoria.clear();
+        tocadas.clear();
+        proximoFin = null;
+        hoy = reloj.get();
+        for (Alerta alerta : usuario.getAlertas()) {
+            agregar(alerta);
+        }
+        restaurarAvisos();
+    }
+
+    /** Escalones ya avisados en los periodos actuales, según las notificaciones guardadas. */
+    private void restaurarAvisos() {
+        if (acumulados.isEmpty()) return;
+        Map<String, Acumulado> porId = new HashMap<>();
+        for (Acumulado a : acumulados.values()) porId.put(a.alerta.getId(), a);
+        for (Notificacion n : usuario.getNotificaciones()) {
+            Acumulado a = (n.getAlertaId() == null) ? null : porId.get(n.getAlertaId());
+            if (a == null || n.getFechaHora() == null) continue;
+            LocalDate dia = n.getFechaHora().toLocalDate();
+            if (!dia.isBefore(a.inicio)) {
+                a.avisado = Math.max(a.avisado, n.getNivel());
+                if (a.ultimoAviso == null || dia.isAfter(a.ultimoAviso)) a.ultimoAviso = dia;
+            }
+        }
+    }
+
+    public synchronized void agregarAlerta(Alerta alerta) {
+        if (acumulados.containsKey(alerta)) return;
+        avanzar(reloj.get());
+        agregar(alerta);
+    }
+
+    public synchronized void eliminarAlerta(Alerta alerta) {
+        Acumulado a = acumulados.remove(alerta);
+        if (a == null) return;
+        tocadas.remove(a);
+        if (a.categoria == null) {
+            globales.remove(a);
+        } else {
+            List<Acumulado> lista = porCategoria.get(a.categoria);
+            lista.remove(a);
+            if (lista.isEmpty()) porCategoria.remove(a.categoria);
+        }
+    }
+
+    /** El gasto entra en el modelo (o ya tiene sus datos nuevos). */
+    public synchronized void sumar(Gasto gasto) {
+        aplicar(gasto, 1);
+    }
+
+    /** El gasto va a salir del modelo (o a cambiar): aún con sus datos de antes. */
+    public synchronized void restar(Gasto gasto) {
+        aplicar(gasto, -1);
+    }
+
+    /**
+     * Alertas que saltan entre las que han cambiado desde la última
+     * comprobación (o han empezado periodo) y no habían avisado ya de ese
+     * escalón en el periodo actual.
+     */
+    public synchronized List<Disparo> comprobar() {
+        avanzar(reloj.get());
+        List<Disparo> saltan = new ArrayList<>();
+        for (Acumulado a : tocadas) {
+            double total = a.centimos / 100.0;
+            int nivel = a.alerta.nivel(total);
+            if (nivel > a.avisado) {
+                saltan.add(new Disparo(a.alerta, total, nivel));
+                a.avisado = nivel;
+                a.ultimoAviso = hoy;
+            } else if (a.porDia != null && nivel < a.avisado && rearmable(a)) {
+                a.avisado = nivel;
+            }
+        }
+        tocadas.clear();
+        return saltan;
+    }
+
+    /**
+     * Una ventana móvil que ha bajado de escalón se rearma si ha pasado una
+     * ventana entera desde su último aviso. Mientras tanto, cada día que
+     * desliza se vuelve a mirar.
+     */
+    private boolean rearmable(Acumulado a) {
+        return a.ultimoAviso == null || !hoy.isBefore(a.ultimoAviso.plusDays(a.porDia.length));
+    }
+
+    /** Total del periodo actual de la alerta, en euros (0 si no es de este usuario). */
+    public synchronized double getTotal(Alerta alerta) {
+        avanzar(reloj.get());
+        Acumulado a = acumulados.get(alerta);
+        return (a == null) ? 0 : a.centimos / 100.0;
+    }
+
+    private void agregar(Alerta alerta) {
+        Acumulado a = new Acumulado(alerta);
+        acumulados.put(alerta, a);
+        if (a.categoria == null) {
+            globales.add(a);
+        } else {
+            porCategoria.computeIfAbsent(a.categoria, k -> new ArrayList<>()).add(a);
+        }
+        recalcular(a);
+    }
+
+    private void aplicar(Gasto gasto, int signo) {
+        if (acumulados.isEmpty()) return;
+        long coste = gasto.getCosteCentimosPara(usuario);
+        if (coste == 0) return;
+        LocalDate fecha = gasto.getFecha();
+        for (Acumulado a : globales) {
+            if (a.contiene(fecha)) anotar(a, fecha, signo * coste);
+        }
+        Categoria categoria = gasto.getCategoria();
+        List<Acumulado> deCategoria = (categoria == null) ? null : porCategoria.get(categoria.getNombre());
+        if (deCategoria != null) {
+            for (Acumulado a : deCategoria) {
+                if (a.contiene(fecha)) anotar(a, fecha, signo * coste);
+            }
+        }
+    }
+
+    private void anotar(Acumulado a, LocalDate fecha, long delta) {
+        a.anotar(fecha, delta);
+        tocadas.add(a);
+    }
+
+    /** Si algún periodo ha terminado, se recalculan las alertas que pasan a otro. */
+    private void avanzar(LocalDate dia) {
+        if (dia.equals(hoy)) return;
+        boolean atras = dia.isBefore(hoy); // el reloj ha cambiado
+        hoy = dia;
+        if (!atras && (proximoFin == null || !dia.isAfter(proximoFin))) return;
+        proximoFin = null;
+        for (Acumulado a : acumulados.values()) {
+            if (a.porDia != null) {
+                deslizar(a);
+            } else if (a.contiene(dia)) {
+                apuntarFin(a);
+            } else {
+                recalcular(a);
+            }
+        }
+    }
+
+    /**
+     * Mueve la ventana móvil hasta hoy: por cada día que pasa sale de la cola
+     * el más antiguo y entra el nuevo (con los gastos que ya tuviera esa fecha).
+     * Si han pasado más días que los de la ventana, o el reloj ha ido hacia
+     * atrás, se recalcula entera.
+     */
+    private void deslizar(Acumulado a) {
+        long desde = a.fin.toEpochDay();
+        long hasta = hoy.toEpochDay();
+        if (hasta <= desde || hasta - desde >= a.porDia.length) {
+            recalcular(a);
+            return;
+        }
+        for (long d = desde + 1; d <= hasta; d++) {
+            int i = a.posicion(d);
+            a.centimos -= a.porDia[i];
+            a.porDia[i] = costeEntre(a, LocalDate.ofEpochDay(d), LocalDate.ofEpochDay(d));
+            a.centimos += a.porDia[i];
+        }
+        a.inicio = a.alerta.inicioPeriodo(hoy);
+        a.fin = a.alerta.finPeriodo(hoy);
+        tocadas.add(a);
+        apuntarFin(a);
+    }
+
+    /** Total entero del periodo que contiene hoy, con el índice por fecha de las cuentas. */
+    private void recalcular(Acumulado a) {
+        LocalDate inicio = a.alerta.inicioPeriodo(hoy);
+        if (!inicio.equals(a.inicio)) a.avisado = 0; // Periodo nuevo: se rearma
+        a.inicio = inicio;
+        a.fin = a.alerta.finPeriodo(hoy);
+        if (a.porDia == null) {
+            a.centimos = costeEntre(a, a.inicio, a.fin);
+        } else {
+            // Ventana móvil: además del total, el de cada día
+            Arrays.fill(a.porDia, 0);
+            a.centimos = 0;
+            for (GastosCompartidos cuenta : usuario.getCuentas()) {
+                for (Gasto g : cuenta.getGastosEntre(a.inicio, a.fin)) {
+                    if (a.acepta(g)) a.anotar(g.getFecha(), g.getCosteCentimosPara(usuario));
+                }
+            }
+        }
+        tocadas.add(a);
+        apuntarFin(a);
+    }
+
+    /** Lo que le toca al usuario entre dos fechas en los gastos de la alerta. */
+    private long costeEntre(Acumulado a, LocalDate desde, LocalDate hasta) {
+        List<GastosCompartidos> cuentas = usuario.getCuentas();
+        if (a.categoria == null) {
+            return GastosCompartidos.costeEntre(cuentas, usuario, desde, hasta).centimos();
+        }
+        long total = 0;
+        for (GastosCompartidos cuenta : cuentas) {
+            for (Gasto g : cuenta.getGastosEntre(desde, hasta)) {
+                if (a.acepta(g)) total += g.getCosteCentimosPara(usuario);
+            }
+        }
+        return total;
+    }
+
+    private void apuntarFin(Acumulado a) {
+        if (proximoFin == null || a.fin.isBefore(proximoFin)) proximoFin = a.fin;
+    }
+}
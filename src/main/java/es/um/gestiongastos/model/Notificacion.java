@@ -5,23 +5,37 @@ import java.time.LocalDateTime;
 import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
 
 public class Notificacion {
     private String id;
     @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
     private LocalDateTime fechaHora;
     private String mensaje;
+    // Alerta que la generó y escalón que alcanzó (para no repetirla en el mismo periodo)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String alertaId;
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private int nivel;
 
     public Notificacion(String id, LocalDateTime fechaHora, String mensaje) {
+        this(id, fechaHora, mensaje, null, 0);
+    }
+
+    public Notificacion(String id, LocalDateTime fechaHora, String mensaje, String alertaId, int nivel) {
         this.id = id;
         this.fechaHora = fechaHora;
         this.mensaje = mensaje;
+        this.alertaId = alertaId;
+        this.nivel = nivel;
     }
     public Notificacion() {}
     
     public String getId() { return id; }
     public LocalDateTime getFechaHora() { return fechaHora; }
     public String getMensaje() { return mensaje; }
+    public String getAlertaId() { return alertaId; }
+    public int getNivel() { return nivel; }
 
     @Override
     public String toString() {
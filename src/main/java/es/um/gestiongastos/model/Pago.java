@@ -0,0 +1,61 @@
+package es.um.gestiongastos.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * Pago entre dos participantes de una cuenta para saldar deudas (por ejemplo
+ * "Ana le devuelve 40 € a Luis"). No es un gasto: mueve saldo del deudor al
+ * acreedor y no cuenta en informes ni alertas. Inmutable; para corregirlo se
+ * elimina y se registra otro.
+ */
+public class Pago {
+    private final String id;
+    private final Persona deudor;
+    private final Persona acreedor;
+    private final Dinero importe;
+    private final LocalDate fecha;
+    private final GastosCompartidos cuenta;
+
+    public Pago(String id, Persona deudor, Persona acreedor, BigDecimal importe, LocalDate fecha, GastosCompartidos cuenta) {
+        if (id == null || cuenta == null) throw new IllegalArgumentException("El pago debe tener id y cuenta.");
+        if (deudor == null || acreedor == null || deudor.equals(acreedor)) {
+            throw new IllegalArgumentException("El pago debe ser entre dos participantes distintos.");
+        }
+        this.id = id;
+        this.deudor = deudor;
+        this.acreedor = acreedor;
+        this.importe = Dinero.de(importe);
+        this.fecha = fecha;
+        this.cuenta = cuenta;
+        if (this.importe.centimos() <= 0) throw new IllegalArgumentException("El importe del pago debe ser positivo.");
+    }
+
+    public String getId() { return id; }
+    /** Quien paga (su saldo sube). */
+    public Persona getDeudor() { return deudor; }
+    /** Quien cobra (su saldo baja). */
+    public Persona getAcreedor() { return acreedor; }
+    public BigDecimal getImporte() { return importe.aBigDecimal(); }
+    public Dinero getImporteDinero() { return importe; }
+    public LocalDate getFecha() { return fecha; }
+    public GastosCompartidos getCuenta() { return cuenta; }
+
+    @Override
+    public String toString() {
+        return String.format("Pago[%s] %s: %s paga %s € a %s", id, fecha, deudor.getNombreUsuario(), importe, acreedor.getNombreUsuario());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Pago)) return false;
+        return Objects.equals(id, ((Pago) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id);
+    }
+}
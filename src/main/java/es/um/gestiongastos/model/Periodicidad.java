@@ -1,7 +1,67 @@
-
 package es.um.gestiongastos.model;
 
+import java.time.LocalDate;
+import java.time.temporal.WeekFields;
+import java.util.Locale;
+
+/**
+ * Periodo en el que se acumulan los gastos de una alerta.
+ *
+ * - SEMANAL y MENSUAL: semana o mes natural; el total vuelve a cero al
+ *   empezar el siguiente.
+ * - ULTIMOS_*_DIAS: ventana móvil que acaba hoy; cada día sale el más antiguo.
+ *   En ULTIMOS_N_DIAS el número de días lo pone la alerta.
+ */
 public enum Periodicidad {
-    SEMANAL,
-    MENSUAL
+    SEMANAL("Semanal", 0),
+    MENSUAL("Mensual", 0),
+    ULTIMOS_7_DIAS("Últimos 7 días", 7),
+    ULTIMOS_30_DIAS("Últimos 30 días", 30),
+    ULTIMOS_90_DIAS("Últimos 90 días", 90),
+    ULTIMOS_N_DIAS("Últimos N días", 0);
+
+    /** Máximo de días de una ventana móvil. */
+    public static final int MAX_DIAS = 3660;
+
+    private final String descripcion;
+    private final int dias;
+
+    Periodicidad(String descripcion, int dias) {
+        this.descripcion = descripcion;
+        this.dias = dias;
+    }
+
+    public String getDescripcion() { return descripcion; }
+
+    /** Si es una ventana móvil de días (en lugar de una semana o mes natural). */
+    public boolean esMovil() {
+        return dias > 0 || this == ULTIMOS_N_DIAS;
+    }
+
+    /** Días de la ventana móvil; 0 en los periodos naturales y en ULTIMOS_N_DIAS. */
+    public int getDias() { return dias; }
+
+    /**
+     * Primer día del periodo (semana o mes natural) que contiene {@code dia}.
+     * La semana empieza según la configuración regional.
+     */
+    public LocalDate inicioPeriodo(LocalDate dia) {
+        return switch (this) {
+            case SEMANAL -> dia.with(WeekFields.of(Locale.getDefault()).dayOfWeek(), 1);
+            case MENSUAL -> dia.withDayOfMonth(1);
+            case ULTIMOS_N_DIAS -> throw new IllegalStateException("La ventana de " + this + " depende de la alerta.");
+            default -> dia.minusDays(dias - 1);
+        };
+    }
+
+    /**
+     * Último día del periodo que contiene {@code dia}.
+     */
+    public LocalDate finPeriodo(LocalDate dia) {
+        return switch (this) {
+            case SEMANAL -> inicioPeriodo(dia).plusDays(6);
+            case MENSUAL -> dia.withDayOfMonth(dia.lengthOfMonth());
+            default -> dia;
+        };
+    }
 }
@@ -5,6 +5,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 
 @JsonIdentityInfo(generator = ObjectIdGenerators.PropertyGenerator.class, property = "id")
@@ -17,7 +18,13 @@ public class Persona {
     private List<GastosCompartidos> misCuentas; 
     
     private List<Alerta> alertasConfiguradas;
-    private List<Notificacion> historialNotificaciones;
+    @JsonIgnore
+    private HistorialNotificaciones historialNotificaciones;
+
+    // Marca de "hay cambios sin guardar" para que la persistencia solo
+    // reserialice los usuarios tocados. No se guarda.
+    @JsonIgnore
+    private transient volatile boolean modificada = true;
 
     public Persona(String id, String nombreCompleto, String nombreUsuario, String contraseña) {
         if (id == null || nombreCompleto == null || nombreUsuario == null || contraseña == null) {
@@ -29,29 +36,30 @@ public class Persona {
         this.contraseña = contraseña;
         this.misCuentas = new ArrayList<>(); 
         this.alertasConfiguradas = new ArrayList<>();
-        this.historialNotificaciones = new ArrayList<>();
+        this.historialNotificaciones = new HistorialNotificaciones();
     }
     // Necesario para JSON
     public Persona() {
         this.misCuentas = new ArrayList<>();
         this.alertasConfiguradas = new ArrayList<>();
-        this.historialNotificaciones = new ArrayList<>();
+        this.historialNotificaciones = new HistorialNotificaciones();
     }
 
     public String getId() { return id; }
 
     public String getNombreCompleto() { return nombreCompleto; }
-    public void setNombreCompleto(String nombreCompleto) { this.nombreCompleto = nombreCompleto; }
+    public synchronized void setNombreCompleto(String nombreCompleto) { this.nombreCompleto = nombreCompleto; marcarModificada(); }
 
     public String getNombreUsuario() { return nombreUsuario; }
-    public void setNombreUsuario(String nombreUsuario) { this.nombreUsuario = nombreUsuario; }
+    public synchronized void setNombreUsuario(String nombreUsuario) { this.nombreUsuario = nombreUsuario; marcarModificada(); }
 
     public String getContraseña() { return contraseña; }
-    public void setContraseña(String contraseña) { this.contraseña = contraseña; }
+    public synchronized void setContraseña(String contraseña) { this.contraseña = contraseña; marcarModificada(); }
     
-    public void agregarCuenta(GastosCompartidos cuenta) {
+    public synchronized void agregarCuenta(GastosCompartidos cuenta) {
         if (!misCuentas.contains(cuenta)) {
             this.misCuentas.add(cuenta);
+            marcarModificada();
         }
     }
     
@@ -59,25 +67,46 @@ public class Persona {
         return Collections.unmodifiableList(misCuentas);
     }
     
-    public void agregarAlerta(Alerta alerta) {
+    public synchronized void agregarAlerta(Alerta alerta) {
         this.alertasConfiguradas.add(alerta);
+        marcarModificada();
     }
 
-    public void eliminarAlerta(Alerta alerta) {
-        this.alertasConfiguradas.remove(alerta);
+    public synchronized void eliminarAlerta(Alerta alerta) {
+        if (this.alertasConfiguradas.remove(alerta)) marcarModificada();
     }
 
     public List<Alerta> getAlertas() {
         return Collections.unmodifiableList(alertasConfiguradas);
     }
 
-    public void agregarNotificacion(Notificacion n) {
-        // Añadimos al principio para que salgan las más nuevas primero
-        this.historialNotificaciones.add(0, n);
+    public synchronized void agregarNotificacion(Notificacion n) {
+        // Se añade al principio para que salgan las más nuevas primero (con tope, ver HistorialNotificaciones)
+        this.historialNotificaciones.agregar(n);
+        marcarModificada();
     }
 
     public List<Notificacion> getNotificaciones() {
-        return Collections.unmodifiableList(historialNotificaciones);
+        return historialNotificaciones.todas();
+    }
+
+    /** Página de notificaciones (la 0, las más nuevas). */
+    public List<Notificacion> getNotificaciones(int pagina, int tamaño) {
+        return historialNotificaciones.pagina(pagina, tamaño);
+    }
+
+    @JsonIgnore
+    public int getNumNotificaciones() {
+        return historialNotificaciones.tamaño();
+    }
+
+    public boolean tieneNotificacion(Notificacion n) {
+        return historialNotificaciones.contiene(n);
+    }
+
+    /** Tope de notificaciones guardadas y días que se conservan (lo fija la persistencia). */
+    public void limitarNotificaciones(int maximo, int diasRetencion) {
+        historialNotificaciones.limitar(maximo, diasRetencion);
     }
     
  // Jackson usará esto para cargar las cuentas
@@ -92,9 +121,22 @@ public class Persona {
 
     // Jackson usará esto para cargar notificaciones
     public void setNotificaciones(List<Notificacion> notificaciones) {
-        this.historialNotificaciones = notificaciones;
+        this.historialNotificaciones.cargar(notificaciones);
     }
     
+    // --- CONTROL DE CAMBIOS (persistencia) ---
+
+    @JsonIgnore
+    public boolean isModificada() { return modificada; }
+
+    public void marcarModificada() { this.modificada = true; }
+
+    /**
+     * La persistencia la llama justo antes de serializar este usuario; si se
+     * vuelve a modificar después quedará marcada otra vez.
+     */
+    public void marcarGuardada() { this.modificada = false; }
+
     @Override
     public String toString() {
         return nombreCompleto + " (@" + nombreUsuario + ")";
@@ -0,0 +1,80 @@
+package es.um.gestiongastos.model;
+
+import es.um.gestiongastos.model.GastosCompartidos.Participante;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Reparto precalculado de una cuenta: cada participante tiene un índice denso
+ * (su posición en la lista de participantes) y sus puntos básicos están en un
+ * array. Hay una por cada versión de porcentajes de la cuenta. Es inmutable;
+ * la cuenta crea otras cuando cambian los participantes o las versiones, y
+ * los gastos la usan como sello de su caché de partes.
+ */
+final class TablaReparto {
+
+    private final List<Participante> participantes;
+    private final IdentityHashMap<Persona, Integer> indices;
+    final int[] puntos;
+    final long totalPuntos;
+
+    /** Con los porcentajes iniciales de los participantes. */
+    TablaReparto(List<Participante> participantes) {
+        this(participantes, puntosDe(participantes));
+    }
+
+    /** Con otros porcentajes (una versión), en el orden de los participantes. */
+    TablaReparto(List<Participante> participantes, int[] puntos) {
+        this.participantes = participantes;
+        this.indices = new IdentityHashMap<>(participantes.size() * 2);
+        this.puntos = puntos;
+        long total = 0;
+        for (int i = 0; i < puntos.length; i++) {
+            indices.putIfAbsent(participantes.get(i).getPersona(), i);
+            total += puntos[i];
+        }
+        this.totalPuntos = total;
+    }
+
+    private static int[] puntosDe(List<Participante> participantes) {
+        int[] puntos = new int[participantes.size()];
+        for (int i = 0; i < puntos.length; i++) {
+            puntos[i] = participantes.get(i).getPuntosBasicos();
+        }
+        return puntos;
+    }
+
+    /** Índice del participante, o -1 si la persona no está en la cuenta. */
+    int indiceDe(Persona persona) {
+        Integer i = indices.get(persona);
+        if (i != null) return i;
+        if (persona == null) return -1;
+        // Otra instancia de la misma persona: se compara por id
+        for (int j = 0; j < puntos.length; j++) {
+            if (persona.equals(participantes.get(j).getPersona())) return j;
+        }
+        return -1;
+    }
+
+    Participante participante(int indice) {
+        return participantes.get(indice);
+    }
+
+    int tamaño() {
+        return puntos.length;
+    }
+
+    /**
+     * Parte de un importe de cada participante, por índice (ver
+     * {@link Dinero#repartir(long, long, long)}); cero si no tiene porcentaje.
+     */
+    long[] partes(long centimos) {
+        long[] partes = new long[puntos.length];
+        if (totalPuntos <= 0) return partes;
+        for (int i = 0; i < partes.length; i++) {
+            if (puntos[i] > 0) partes[i] = Dinero.repartir(centimos, puntos[i], totalPuntos);
+        }
+        return partes;
+    }
+}
@@ -0,0 +1,29 @@
+package es.um.gestiongastos.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Un pago de la liquidación de una o varias cuentas: el deudor le paga el
+ * importe al acreedor. Inmutable.
+ */
+public class Transferencia {
+    private final Persona deudor;
+    private final Persona acreedor;
+    private final Dinero importe;
+
+    public Transferencia(Persona deudor, Persona acreedor, Dinero importe) {
+        this.deudor = deudor;
+        this.acreedor = acreedor;
+        this.importe = importe;
+    }
+
+    public Persona getDeudor() { return deudor; }
+    public Persona getAcreedor() { return acreedor; }
+    public BigDecimal getImporte() { return importe.aBigDecimal(); }
+    public Dinero getImporteDinero() { return importe; }
+
+    @Override
+    public String toString() {
+        return deudor.getNombreUsuario() + " paga " + importe + " € a " + acreedor.getNombreUsuario();
+    }
+}
@@ -0,0 +1,465 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.um.gestiongastos.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Almacén de la instantánea como tablas planas normalizadas, repartidas en
+ * ficheros: usuarios (personas/&lt;id&gt;), cuentas (cuentas/&lt;id&gt;) y gastos
+ * (gastos/&lt;idCuenta&gt;, las filas de gastos de esa cuenta). La extensión
+ * depende del {@link FormatoInstantanea} (.json o .bin). Las
+ * filas se referencian por id (claves ajenas), así que no hace falta resolver
+ * identidades al leer: el grafo se reconstruye en una pasada con {@link EnlazadorModelo}.
+ * Las categorías son su propia tabla (datos_categorias.json) y los gastos las
+ * referencian por nombre.
+ * Una compactación solo reescribe los ficheros de los agregados marcados como
+ * modificados, y al arrancar los ficheros se leen en paralelo.
+ * Los gastos de las cuentas que llevan tiempo sin cambios pasan a un
+ * {@link ArchivoGastos} y no se cargan en memoria hasta que se consultan.
+ */
+class AlmacenSegmentos {
+
+    // Formato 2: fichero único anterior a repartir la instantánea (gastos anidados en la cuenta)
+    static final int FORMATO_ANIDADO = 2;
+    // Formato 3: exportación de las tablas normalizadas en un único JSON
+    static final int FORMATO_EXPORTACION = 3;
+
+    private final Path dirPersonas;
+    private final Path dirCuentas;
+    private final Path dirGastos;
+    private final ObjectMapper mapper;
+    private final CodecInstantanea codec;
+    private final Map<String, CodecInstantanea> codecsPorExtension = new HashMap<>();
+    private final ArchivoGastos archivo;
+
+    AlmacenSegmentos(Path directorio, ObjectMapper mapper, FormatoInstantanea formato, Map<String, Categoria> categorias) {
+        this.dirPersonas = directorio.resolve("personas");
+        this.dirCuentas = directorio.resolve("cuentas");
+        this.dirGastos = directorio.resolve("gastos");
+        this.mapper = mapper;
+        this.codec = CodecInstantanea.de(formato, mapper);
+        this.archivo = new ArchivoGastos(directorio.resolve("archivo"), mapper, categorias,
+                ConfiguracionPersistencia.maxCuentasArchivadasEnMemoria());
+        // Se leen los ficheros de cualquier formato (por si se ha cambiado la configuración)
+        for (FormatoInstantanea f : FormatoInstantanea.values()) {
+            CodecInstantanea c = CodecInstantanea.de(f, mapper);
+            codecsPorExtension.put(c.extension(), c);
+        }
+    }
+
+    /**
+     * Instantánea en un único fichero JSON: el formato 2 anterior a repartirla
+     * en ficheros (solo se lee para migrar) y el de exportación (formato 3),
+     * que lleva además las tablas de gastos y categorías.
+     */
+    public static class Contenido {
+        public int formato;
+        public List<SegmentoPersona> personas;
+        public List<SegmentoCuenta> cuentas;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public List<RegistroGasto> gastos;
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public List<Categoria> categorias;
+    }
+
+    boolean existe() {
+        return Files.isDirectory(dirPersonas);
+    }
+
+    ArchivoGastos archivo() {
+        return archivo;
+    }
+
+    // --- ESCRITURA ---
+
+    /**
+     * Escribe (de forma atómica) el fichero de cada usuario y cuenta modificados.
+     * Si una escritura falla, ese agregado vuelve a quedar modificado y se
+     * propaga el error: la compactación no borra el diario rotado y la
+     * siguiente lo vuelve a escribir. Devuelve cuántos ficheros se han reescrito.
+     */
+    int guardar(Collection<Persona> personas) throws IOException {
+        Files.createDirectories(dirPersonas);
+        Files.createDirectories(dirCuentas);
+        Files.createDirectories(dirGastos);
+
+        Map<String, GastosCompartidos> cuentas = new LinkedHashMap<>();
+        int escritos = 0;
+        for (Persona p : personas) {
+            SegmentoPersona segmento = null;
+            List<GastosCompartidos> deLaPersona;
+            // Los cambios del usuario toman su cerrojo: la copia sale de un único momento
+            synchronized (p) {
+                if (p.isModificada()) {
+                    // Se limpia antes de copiar: un cambio posterior la vuelve a marcar
+                    p.marcarGuardada();
+                    segmento = SegmentoPersona.desde(p);
+                }
+                deLaPersona = new ArrayList<>(p.getCuentas());
+            }
+            if (segmento != null) {
+                try {
+                    escribir(dirPersonas, p.getId(), codec.codificarPersona(segmento));
+                } catch (IOException | RuntimeException e) {
+                    // No ha llegado a disco: sigue pendiente
+                    synchronized (p) {
+                        p.marcarModificada();
+                    }
+                    throw e;
+                }
+                escritos++;
+            }
+            for (GastosCompartidos c : deLaPersona) {
+                cuentas.putIfAbsent(c.getId(), c);
+            }
+        }
+        for (GastosCompartidos c : cuentas.values()) {
+            SegmentoCuenta segmento;
+            List<RegistroGasto> filas;
+            // Saldos y gastos del mismo corte: los cambios de la cuenta toman este mismo cerrojo
+            synchronized (c) {
+                if (!c.isModificada()) continue;
+                c.marcarGuardada();
+                segmento = SegmentoCuenta.desde(c);
+                filas = filasGastos(c);
+            }
+            // Se codifica y escribe fuera del cerrojo, con las copias
+            try {
+                escribir(dirCuentas, c.getId(), codec.codificarCuenta(segmento));
+                escribir(dirGastos, c.getId(), codec.codificarGastos(c.getId(), filas));
+            } catch (IOException | RuntimeException e) {
+                c.marcarModificada();
+                throw e;
+            }
+            escritos += 2;
+        }
+        return escritos;
+    }
+
+    /**
+     * Escribe el fichero en el formato configurado y borra, si lo hay, el del
+     * mismo id en otro formato (así la tabla migra sola al cambiar de formato).
+     */
+    private void escribir(Path dir, String id, byte[] contenido) throws IOException {
+        FicheroAtomico.escribir(dir.resolve(id + codec.extension()), contenido);
+        for (String ext : codecsPorExtension.keySet()) {
+            if (!ext.equals(codec.extension())) {
+                Files.deleteIfExists(dir.resolve(id + ext));
+            }
+        }
+    }
+
+    /**
+     * Exporta todas las tablas (usuarios, cuentas, gastos y categorías) en un
+     * único JSON legible, para copias o para llevar los datos a otro sitio.
+     * Se puede volver a cargar como fichero único. No depende del formato de
+     * la instantánea: también lo usa {@link RepositorioSQL}.
+     */
+    static void exportar(ObjectMapper mapper, Collection<Persona> personas, Collection<Categoria> categorias, File destino) throws IOException {
+        Contenido contenido = new Contenido();
+        contenido.formato = FORMATO_EXPORTACION;
+        contenido.personas = new ArrayList<>();
+        contenido.cuentas = new ArrayList<>();
+        contenido.gastos = new ArrayList<>();
+        contenido.categorias = new ArrayList<>(categorias);
+
+        for (Persona p : personas) {
+            synchronized (p) {
+                contenido.personas.add(SegmentoPersona.desde(p));
+            }
+        }
+        Map<String, GastosCompartidos> cuentas = cuentasDe(personas);
+        for (GastosCompartidos c : cuentas.values()) {
+            synchronized (c) {
+                contenido.cuentas.add(SegmentoCuenta.desde(c));
+                contenido.gastos.addAll(filasGastos(c));
+            }
+        }
+        FicheroAtomico.escribir(destino.toPath(), mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(contenido));
+    }
+
+    /**
+     * Pasa al archivo las cuentas que no se han modificado desde {@code limite}
+     * (según la fecha de su fichero en la tabla de cuentas, que solo se
+     * reescribe cuando cambian): sus filas se añaden al archivo, se les suelta
+     * el historial de memoria y se borra su fichero de la tabla de gastos. Las
+     * que han salido del archivo desde la vez anterior se quitan de su índice.
+     * Solo se archivan cuentas sin cambios pendientes (recién guardadas).
+     * Devuelve cuántas cuentas se han archivado.
+     */
+    int archivarInactivas(Collection<Persona> personas, LocalDate limite) throws IOException {
+        Map<String, GastosCompartidos> cuentas = cuentasDe(personas);
+        FileTime hace = FileTime.from(limite.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        Set<String> archivadas = new HashSet<>();
+        Map<String, List<RegistroGasto>> filas = new LinkedHashMap<>();
+        List<GastosCompartidos> nuevas = new ArrayList<>();
+        for (GastosCompartidos c : cuentas.values()) {
+            if (c.isArchivada()) {
+                archivadas.add(c.getId());
+                continue;
+            }
+            if (!inactiva(c, hace)) continue;
+            synchronized (c) {
+                if (c.isModificada() || c.isArchivada()) continue;
+                filas.put(c.getId(), filasGastos(c));
+            }
+            nuevas.add(c);
+        }
+        archivo.anexar(filas, archivadas);
+
+        int archivadasAhora = 0;
+        for (GastosCompartidos c : nuevas) {
+            // Si se ha tocado entretanto no se archiva: sigue mandando su fichero de gastos
+            if (c.archivar(archivo)) {
+                for (String ext : codecsPorExtension.keySet()) {
+                    Files.deleteIfExists(dirGastos.resolve(c.getId() + ext));
+                }
+                archivadasAhora++;
+            }
+        }
+        return archivadasAhora;
+    }
+
+    /** Si la cuenta tiene gastos y su fichero no se ha reescrito desde {@code hace}. */
+    private boolean inactiva(GastosCompartidos c, FileTime hace) throws IOException {
+        if (c.isModificada() || c.getGastos().isEmpty()) return false;
+        Path fichero = dirCuentas.resolve(c.getId() + codec.extension());
+        return Files.exists(fichero) && Files.getLastModifiedTime(fichero).compareTo(hace) < 0;
+    }
+
+    /**
+     * Cuentas de los usuarios, sin repetir. La lista de cada usuario se copia
+     * bajo su cerrojo: es una vista de la suya y agregarCuenta la cambia desde
+     * otro hilo.
+     */
+    private static Map<String, GastosCompartidos> cuentasDe(Collection<Persona> personas) {
+        Map<String, GastosCompartidos> cuentas = new LinkedHashMap<>();
+        for (Persona p : personas) {
+            List<GastosCompartidos> deLaPersona;
+            synchronized (p) {
+                deLaPersona = new ArrayList<>(p.getCuentas());
+            }
+            for (GastosCompartidos c : deLaPersona) {
+                cuentas.putIfAbsent(c.getId(), c);
+            }
+        }
+        return cuentas;
+    }
+
+    private static List<RegistroGasto> filasGastos(GastosCompartidos c) {
+        List<RegistroGasto> filas = new ArrayList<>();
+        for (Gasto g : c.getGastos()) {
+            filas.add(RegistroGasto.desde(g));
+        }
+        return filas;
+    }
+
+    // --- LECTURA ---
+
+    /**
+     * Lee todos los ficheros en paralelo (pool fork-join común) y reconstruye
+     * el grafo del modelo. Lo cargado queda marcado como guardado. Las cuentas
+     * que están en el archivo (y no tienen fichero en la tabla de gastos, que
+     * mandaría por ser más reciente) quedan archivadas, sin sus gastos en memoria.
+     * El progreso se informa como fracción de ficheros leídos.
+     */
+    void cargar(Map<String, Persona> personas, Map<String, Categoria> categorias, DoubleConsumer progreso) throws IOException {
+        List<Path> ficherosPersonas = listar(dirPersonas);
+        List<Path> ficherosCuentas = listar(dirCuentas);
+        List<Path> ficherosGastos = listar(dirGastos);
+        archivo.abrir();
+        Set<String> conTablaGastos = new HashSet<>();
+        for (Path f : ficherosGastos) {
+            String nombre = f.getFileName().toString();
+            conTablaGastos.add(nombre.substring(0, nombre.lastIndexOf('.')));
+        }
+        Contador contador = new Contador(ficherosPersonas.size() + ficherosCuentas.size() + ficherosGastos.size(), progreso);
+
+        List<SegmentoPersona> segPersonas = leerEnParalelo(ficherosPersonas, CodecInstantanea::decodificarPersona, contador);
+        List<SegmentoCuenta> segCuentas = leerEnParalelo(ficherosCuentas, CodecInstantanea::decodificarCuenta, contador);
+        List<RegistroGasto> filasGastos = new ArrayList<>();
+        for (List<RegistroGasto> filas : leerEnParalelo(ficherosGastos, CodecInstantanea::decodificarGastos, contador)) {
+            filasGastos.addAll(filas);
+        }
+        enlazar(segPersonas, segCuentas, filasGastos, personas, categorias,
+                id -> !conTablaGastos.contains(id) && archivo.contiene(id));
+        progreso.accept(1.0);
+    }
+
+    /**
+     * Indica si un fichero único tiene el formato por segmentos (objeto) o el
+     * antiguo (lista de Persona).
+     */
+    boolean esSegmentada(File fichero) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(fichero)) {
+            return parser.nextToken() == JsonToken.START_OBJECT;
+        }
+    }
+
+    /**
+     * Lee una instantánea de fichero único por segmentos. Lo cargado queda
+     * marcado como modificado para que la siguiente compactación lo reparta.
+     */
+    void cargarFicheroUnico(File fichero, Map<String, Persona> personas, Map<String, Categoria> categorias) throws IOException {
+        Contenido contenido = mapper.readValue(fichero, Contenido.class);
+        if (contenido.formato != FORMATO_ANIDADO && contenido.formato != FORMATO_EXPORTACION) {
+            throw new IOException("Formato de instantánea no soportado: " + contenido.formato);
+        }
+        if (contenido.categorias != null) {
+            for (Categoria c : contenido.categorias) {
+                categorias.putIfAbsent(c.getNombre().toLowerCase(), c);
+            }
+        }
+        enlazar(contenido.personas, contenido.cuentas,
+                contenido.gastos != null ? contenido.gastos : new ArrayList<>(), personas, categorias, null);
+    }
+
+    private List<Path> listar(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return new ArrayList<>();
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(f -> codecDe(f) != null).collect(Collectors.toList());
+        }
+    }
+
+    private CodecInstantanea codecDe(Path fichero) {
+        String nombre = fichero.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        return punto < 0 ? null : codecsPorExtension.get(nombre.substring(punto));
+    }
+
+    /** Decodificación de una tabla con el codec que corresponde a cada fichero. */
+    private interface Decodificador<T> {
+        T leer(CodecInstantanea codec, byte[] datos) throws IOException;
+    }
+
+    private <T> List<T> leerEnParalelo(List<Path> ficheros, Decodificador<T> decodificador, Contador contador) throws IOException {
+        try {
+            return ficheros.parallelStream()
+                    .map(f -> {
+                        try {
+                            T leido = decodificador.leer(codecDe(f), Files.readAllBytes(f));
+                            contador.uno();
+                            return leido;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException("Error leyendo " + f, e);
+                        }
+                    })
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Cuenta ficheros leídos desde varios hilos e informa del progreso cada ~1%.
+     */
+    private static class Contador {
+        private final int total;
+        private final int paso;
+        private final DoubleConsumer progreso;
+        private final AtomicInteger leidos = new AtomicInteger();
+
+        Contador(int total, DoubleConsumer progreso) {
+            this.total = Math.max(1, total);
+            this.paso = Math.max(1, total / 100);
+            this.progreso = progreso;
+        }
+
+        void uno() {
+            int n = leidos.incrementAndGet();
+            if (n % paso == 0) progreso.accept((double) n / total);
+        }
+    }
+
+    // --- ENLAZADO ---
+
+    /**
+     * Una sola pasada por tabla: usuarios, cuentas, gastos (cada fila busca su
+     * cuenta y su pagador por id) y, al final, las cuentas de cada usuario.
+     *
+     * @param archivada si no es null, lo cargado viene del almacén (queda como
+     *                  guardado) y dice qué cuentas se quedan en el archivo
+     */
+    private void enlazar(List<SegmentoPersona> segPersonas, List<SegmentoCuenta> segCuentas, List<RegistroGasto> filasGastos,
+                         Map<String, Persona> personas, Map<String, Categoria> categorias, Predicate<String> archivada) {
+        boolean guardado = archivada != null;
+        EnlazadorModelo enlazador = new EnlazadorModelo(categorias);
+
+        // 1. Usuarios
+        for (SegmentoPersona sp : segPersonas) {
+            Persona p = enlazador.persona(sp);
+            p.setAlertas(sp.alertas != null ? new ArrayList<>(sp.alertas) : new ArrayList<>());
+            p.setNotificaciones(sp.notificaciones != null ? new ArrayList<>(sp.notificaciones) : new ArrayList<>());
+        }
+
+        // 2. Cuentas (las de versiones anteriores traen sus gastos anidados)
+        Map<GastosCompartidos, List<Gasto>> gastosPorCuenta = new HashMap<>();
+        for (SegmentoCuenta sc : segCuentas) {
+            GastosCompartidos cuenta = enlazador.cuenta(sc);
+            if (cuenta == null) continue;
+            List<Gasto> gastos = new ArrayList<>();
+            gastosPorCuenta.put(cuenta, gastos);
+            if (sc.gastos != null) {
+                for (RegistroGasto rg : sc.gastos) {
+                    Gasto g = enlazador.gasto(rg, cuenta);
+                    if (g != null) gastos.add(g);
+                }
+            }
+            if (sc.pagos != null) {
+                // Ya reflejados en los saldos guardados
+                List<Pago> pagos = new ArrayList<>();
+                for (RegistroPago rp : sc.pagos) {
+                    Pago p = enlazador.pago(rp, cuenta);
+                    if (p != null) pagos.add(p);
+                }
+                cuenta.setPagos(pagos);
+            }
+        }
+
+        // 3. Gastos
+        for (RegistroGasto rg : filasGastos) {
+            Gasto g = enlazador.gasto(rg, null);
+            if (g != null) gastosPorCuenta.get(g.getCuenta()).add(g);
+        }
+        for (Map.Entry<GastosCompartidos, List<Gasto>> e : gastosPorCuenta.entrySet()) {
+            GastosCompartidos cuenta = e.getKey();
+            cuenta.setGastos(e.getValue());
+            if (guardado) {
+                cuenta.marcarGuardada();
+                if (archivada.test(cuenta.getId())) cuenta.archivar(archivo);
+            }
+        }
+
+        // 4. Referencias de cada usuario a sus cuentas
+        for (SegmentoPersona sp : segPersonas) {
+            Persona p = enlazador.personasPorId.get(sp.id);
+            if (sp.cuentas != null) {
+                for (String idCuenta : sp.cuentas) {
+                    GastosCompartidos c = enlazador.cuentasPorId.get(idCuenta);
+                    if (c != null) p.agregarCuenta(c);
+                }
+            }
+            if (guardado) p.marcarGuardada();
+            personas.put(p.getNombreUsuario(), p);
+        }
+    }
+}
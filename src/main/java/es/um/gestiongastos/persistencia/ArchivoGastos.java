@@ -0,0 +1,452 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.um.gestiongastos.model.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Archivo de gastos de las cuentas inactivas. Los gastos se guardan como
+ * registros de ancho fijo (64 bytes) en gastos-&lt;v&gt;.dat, con los textos
+ * (descripciones y los ids que no son UUID) en un montón aparte,
+ * textos-&lt;v&gt;.dat. Ambos se leen con {@link FileChannel#map}, así que el
+ * historial de una cuenta archivada no ocupa memoria hasta que se consulta.
+ * indice.json dice qué versión está vigente, el tramo de registros de cada
+ * cuenta, cuánto de cada fichero está en uso y el diccionario de categorías.
+ *
+ * Las cuentas que se archivan se añaden al final de los ficheros vigentes
+ * (coste proporcional a sus gastos, no al archivo). Las que salen del archivo
+ * dejan sus registros sin uso; cuando estos pasan de la mitad se escribe una
+ * versión nueva solo con las que quedan.
+ *
+ * Como mucho {@code maxEnMemoria} cuentas archivadas tienen el historial
+ * hidratado a la vez; al pasarse se libera la usada hace más tiempo.
+ */
+class ArchivoGastos implements ArchivoHistorial {
+
+    private static final String FICHERO_INDICE = "indice.json";
+    private static final int MAGICO = 0x47474131; // "GGA1"
+    private static final int CABECERA = 16;
+    private static final int ANCHO = 64;
+    // Día de los gastos sin fecha
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+
+    // Marcas del registro
+    private static final byte ID_TEXTO = 1;
+    private static final byte PAGADOR_TEXTO = 2;
+    private static final byte IMPORTE_TEXTO = 4;
+
+    private final Path directorio;
+    private final ObjectMapper mapper;
+    private final Map<String, Categoria> categorias;  // por nombre en minúsculas (mapa del repositorio)
+    private final int maxEnMemoria;
+
+    // Versión vigente; se sustituye entera al reescribir el archivo
+    private volatile Mapeo actual = Mapeo.VACIO;
+
+    // Cuentas archivadas con el historial en memoria, de la menos a la más usada
+    private final LinkedHashMap<GastosCompartidos, Boolean> hidratadas = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Índice del archivo (indice.json).
+     */
+    public static class Indice {
+        public int version;
+        /** Registros escritos en gastos-&lt;v&gt;.dat (también los que ya no usa ninguna cuenta). */
+        public int registros;
+        /** Bytes escritos en textos-&lt;v&gt;.dat. */
+        public long bytesTextos;
+        public List<String> categorias = new ArrayList<>();
+        public Map<String, Tramo> cuentas = new LinkedHashMap<>();
+    }
+
+    /** Registros [desde, desde + cantidad) de una cuenta. */
+    public static class Tramo {
+        public int desde;
+        public int cantidad;
+    }
+
+    /** Una versión del archivo abierta: índice y ficheros mapeados (solo lectura). */
+    private static class Mapeo {
+        static final Mapeo VACIO = new Mapeo(new Indice(), ByteBuffer.allocate(CABECERA), ByteBuffer.allocate(0));
+
+        final Indice indice;
+        final ByteBuffer registros;
+        final ByteBuffer textos;
+
+        Mapeo(Indice indice, ByteBuffer registros, ByteBuffer textos) {
+            this.indice = indice;
+            this.registros = registros;
+            this.textos = textos;
+        }
+    }
+
+    ArchivoGastos(Path directorio, ObjectMapper mapper, Map<String, Categoria> categorias, int maxEnMemoria) {
+        this.directorio = directorio;
+        this.mapper = mapper;
+        this.categorias = categorias;
+        this.maxEnMemoria = Math.max(1, maxEnMemoria);
+    }
+
+    /**
+     * Abre la versión vigente (si hay archivo) y borra restos de versiones
+     * anteriores que no llegaran a borrarse.
+     */
+    void abrir() throws IOException {
+        Path fIndice = directorio.resolve(FICHERO_INDICE);
+        if (!Files.exists(fIndice)) return;
+        Indice indice = mapper.readValue(fIndice.toFile(), Indice.class);
+        Mapeo m = mapear(indice);
+        if (indice.registros == 0 && indice.bytesTextos == 0) {
+            // Índice anterior a los anexos: la versión se escribió entera de una vez
+            indice.registros = m.registros.getInt(8);
+            indice.bytesTextos = m.textos.capacity();
+        }
+        actual = m;
+        borrarVersionesAntiguas(indice.version);
+    }
+
+    boolean contiene(String cuentaId) {
+        return actual.indice.cuentas.containsKey(cuentaId);
+    }
+
+    // --- LECTURA ---
+
+    /**
+     * Filas archivadas de una cuenta (sin crear objetos del modelo).
+     */
+    List<RegistroGasto> leerFilas(String cuentaId) {
+        Mapeo m = actual;
+        Tramo t = m.indice.cuentas.get(cuentaId);
+        if (t == null) return new ArrayList<>();
+        List<RegistroGasto> filas = new ArrayList<>(t.cantidad);
+        for (int i = t.desde; i < t.desde + t.cantidad; i++) {
+            filas.add(leerRegistro(m, i, cuentaId));
+        }
+        return filas;
+    }
+
+    @Override
+    public List<Gasto> leer(GastosCompartidos cuenta) {
+        Map<String, Persona> participantes = new HashMap<>();
+        for (GastosCompartidos.Participante p : cuenta.getParticipantes()) {
+            participantes.put(p.getPersona().getId(), p.getPersona());
+        }
+        List<Gasto> gastos = new ArrayList<>();
+        for (RegistroGasto rg : leerFilas(cuenta.getId())) {
+            Categoria cat = categorias.computeIfAbsent(rg.categoria.toLowerCase(), k -> new Categoria(rg.categoria));
+            gastos.add(new Gasto(rg.id, rg.importe, rg.fecha, cat, participantes.get(rg.pagadorId), rg.descripcion, cuenta));
+        }
+        return gastos;
+    }
+
+    @Override
+    public void usada(GastosCompartidos cuenta) {
+        List<GastosCompartidos> liberar = new ArrayList<>();
+        synchronized (hidratadas) {
+            hidratadas.put(cuenta, Boolean.TRUE);
+            Iterator<GastosCompartidos> it = hidratadas.keySet().iterator();
+            while (hidratadas.size() - liberar.size() > maxEnMemoria && it.hasNext()) {
+                GastosCompartidos c = it.next();
+                it.remove();
+                liberar.add(c);
+            }
+        }
+        // Fuera del cerrojo: liberar toma el de cada cuenta
+        for (GastosCompartidos c : liberar) {
+            c.liberarHistorial();
+        }
+    }
+
+    /**
+     * Busca en qué cuenta archivada está un gasto, recorriendo los registros
+     * mapeados (sin hidratar ninguna cuenta). Devuelve null si no está.
+     */
+    String cuentaDe(String idGasto) {
+        Mapeo m = actual;
+        for (Map.Entry<String, Tramo> e : m.indice.cuentas.entrySet()) {
+            Tramo t = e.getValue();
+            for (int i = t.desde; i < t.desde + t.cantidad; i++) {
+                if (idGasto.equals(leerId(m, posicion(i), 0, ID_TEXTO))) return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    // --- ESCRITURA ---
+
+    /**
+     * Añade las filas de {@code nuevas} al archivo y deja en el índice solo
+     * esas cuentas y las de {@code conservar} (las demás han salido del
+     * archivo). Los registros y textos se escriben a continuación de lo que
+     * está en uso en los ficheros vigentes y el cambio se confirma al
+     * renombrar indice.json: si la aplicación se cae antes, lo añadido queda
+     * fuera de uso y el siguiente anexo lo sobrescribe.
+     */
+    void anexar(Map<String, List<RegistroGasto>> nuevas, Set<String> conservar) throws IOException {
+        Mapeo m = actual;
+        Indice anterior = m.indice;
+        Indice indice = new Indice();
+        indice.version = anterior.version;
+        indice.categorias = new ArrayList<>(anterior.categorias);
+        int enUso = 0;
+        for (Map.Entry<String, Tramo> e : anterior.cuentas.entrySet()) {
+            if (conservar.contains(e.getKey()) && !nuevas.containsKey(e.getKey())) {
+                indice.cuentas.put(e.getKey(), e.getValue());
+                enUso += e.getValue().cantidad;
+            }
+        }
+        int total = 0;
+        for (List<RegistroGasto> filas : nuevas.values()) total += filas.size();
+        if (nuevas.isEmpty() && indice.cuentas.size() == anterior.cuentas.size()) return;
+
+        // Sin archivo aún, o más de la mitad sin uso: versión nueva con lo que queda
+        int sinUso = anterior.registros - enUso;
+        if (anterior.version == 0 || sinUso > (anterior.registros + total) / 2) {
+            Map<String, List<RegistroGasto>> cuentas = new LinkedHashMap<>();
+            for (String id : indice.cuentas.keySet()) cuentas.put(id, leerFilas(id));
+            cuentas.putAll(nuevas);
+            reescribir(cuentas);
+            return;
+        }
+
+        Map<String, Integer> dicCategorias = new HashMap<>();
+        for (int i = 0; i < indice.categorias.size(); i++) dicCategorias.put(indice.categorias.get(i), i);
+        ByteBuffer registros = ByteBuffer.allocate(total * ANCHO);
+        ByteArrayOutputStream bytesTextos = new ByteArrayOutputStream();
+        DataOutputStream textos = new DataOutputStream(bytesTextos);
+        int n = anterior.registros;
+        for (Map.Entry<String, List<RegistroGasto>> e : nuevas.entrySet()) {
+            Tramo t = new Tramo();
+            t.desde = n;
+            t.cantidad = e.getValue().size();
+            indice.cuentas.put(e.getKey(), t);
+            for (RegistroGasto rg : e.getValue()) {
+                Integer cat = dicCategorias.get(rg.categoria);
+                if (cat == null) {
+                    cat = indice.categorias.size();
+                    dicCategorias.put(rg.categoria, cat);
+                    indice.categorias.add(rg.categoria);
+                }
+                escribirRegistro(registros, rg, cat, textos, anterior.bytesTextos);
+                n++;
+            }
+        }
+        textos.flush();
+        indice.registros = n;
+        indice.bytesTextos = anterior.bytesTextos + bytesTextos.size();
+
+        escribirEn(directorio.resolve("gastos-" + indice.version + ".dat"), posicion(anterior.registros), registros.array());
+        escribirEn(directorio.resolve("textos-" + indice.version + ".dat"), anterior.bytesTextos, bytesTextos.toByteArray());
+        FicheroAtomico.escribir(directorio.resolve(FICHERO_INDICE), mapper.writeValueAsBytes(indice));
+        actual = mapear(indice);
+    }
+
+    /** Escribe los bytes a partir de esa posición del fichero y los fuerza a disco. */
+    private static void escribirEn(Path fichero, long posicion, byte[] contenido) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contenido);
+            long p = posicion;
+            while (buffer.hasRemaining()) {
+                p += canal.write(buffer, p);
+            }
+            canal.force(true);
+        }
+    }
+
+    /**
+     * Escribe una versión nueva con exactamente estas cuentas y pasa a usarla.
+     * Los ficheros de datos son nuevos (otro número de versión) y el cambio
+     * se confirma al renombrar indice.json, así que una caída a mitad deja
+     * intacta la versión anterior.
+     */
+    void reescribir(Map<String, List<RegistroGasto>> cuentas) throws IOException {
+        Files.createDirectories(directorio);
+        Indice indice = new Indice();
+        indice.version = actual.indice.version + 1;
+
+        Map<String, Integer> dicCategorias = new HashMap<>();
+        int total = 0;
+        for (List<RegistroGasto> filas : cuentas.values()) total += filas.size();
+
+        ByteBuffer registros = ByteBuffer.allocate(CABECERA + total * ANCHO);
+        registros.putInt(MAGICO).putInt(indice.version).putInt(total).putInt(ANCHO);
+        ByteArrayOutputStream bytesTextos = new ByteArrayOutputStream();
+        DataOutputStream textos = new DataOutputStream(bytesTextos);
+
+        int n = 0;
+        for (Map.Entry<String, List<RegistroGasto>> e : cuentas.entrySet()) {
+            Tramo t = new Tramo();
+            t.desde = n;
+            t.cantidad = e.getValue().size();
+            indice.cuentas.put(e.getKey(), t);
+            for (RegistroGasto rg : e.getValue()) {
+                Integer cat = dicCategorias.get(rg.categoria);
+                if (cat == null) {
+                    cat = indice.categorias.size();
+                    dicCategorias.put(rg.categoria, cat);
+                    indice.categorias.add(rg.categoria);
+                }
+                escribirRegistro(registros, rg, cat, textos, 0);
+                n++;
+            }
+        }
+        textos.flush();
+        indice.registros = total;
+        indice.bytesTextos = bytesTextos.size();
+
+        FicheroAtomico.escribir(directorio.resolve("gastos-" + indice.version + ".dat"), registros.array());
+        FicheroAtomico.escribir(directorio.resolve("textos-" + indice.version + ".dat"), bytesTextos.toByteArray());
+        FicheroAtomico.escribir(directorio.resolve(FICHERO_INDICE), mapper.writeValueAsBytes(indice));
+
+        actual = mapear(indice);
+        borrarVersionesAntiguas(indice.version);
+    }
+
+    // --- FORMATO DEL REGISTRO ---
+    //  0 id (UUID: 2 longs; texto: posición en el montón)   16 pagador (igual)
+    // 32 importe sin escalar (o posición en el montón)       40 descripción (posición o -1)
+    // 48 fecha (día desde la época)   52 categoría (índice)   56 escala   57 marcas
+
+    /** @param base posición en el fichero de textos del primer byte de {@code textos} */
+    private void escribirRegistro(ByteBuffer b, RegistroGasto rg, int categoria, DataOutputStream textos, long base) throws IOException {
+        int inicio = b.position();
+        byte marcas = 0;
+        if (escribirId(b, rg.id, textos, base)) marcas |= ID_TEXTO;
+        if (escribirId(b, rg.pagadorId, textos, base)) marcas |= PAGADOR_TEXTO;
+
+        BigInteger sinEscala = rg.importe.unscaledValue();
+        int escala = rg.importe.scale();
+        if (sinEscala.bitLength() < 64 && escala >= Byte.MIN_VALUE && escala <= Byte.MAX_VALUE) {
+            b.putLong(sinEscala.longValue());
+        } else {
+            b.putLong(escribirTexto(textos, rg.importe.toString(), base));
+            marcas |= IMPORTE_TEXTO;
+            escala = 0;
+        }
+        b.putLong(rg.descripcion == null ? -1 : escribirTexto(textos, rg.descripcion, base));
+        b.putInt(rg.fecha == null ? SIN_FECHA : (int) rg.fecha.toEpochDay());
+        b.putInt(categoria);
+        b.put((byte) escala);
+        b.put(marcas);
+        b.position(inicio + ANCHO);  // relleno (el buffer ya viene a ceros)
+    }
+
+    /** Escribe el id en 16 bytes; devuelve true si ha ido al montón de textos. */
+    private boolean escribirId(ByteBuffer b, String id, DataOutputStream textos, long base) throws IOException {
+        UUID uuid = comoUUID(id);
+        if (uuid != null) {
+            b.putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+            return false;
+        }
+        b.putLong(escribirTexto(textos, id, base)).putLong(0);
+        return true;
+    }
+
+    private long escribirTexto(DataOutputStream textos, String texto, long base) throws IOException {
+        long posicion = base + textos.size();
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        textos.writeInt(utf8.length);
+        textos.write(utf8);
+        return posicion;
+    }
+
+    private RegistroGasto leerRegistro(Mapeo m, int indice, String cuentaId) {
+        int p = posicion(indice);
+        ByteBuffer b = m.registros;
+        byte marcas = b.get(p + 57);
+        RegistroGasto rg = new RegistroGasto();
+        rg.id = leerId(m, p, 0, ID_TEXTO);
+        rg.cuentaId = cuentaId;
+        rg.pagadorId = leerId(m, p, 16, PAGADOR_TEXTO);
+        rg.importe = (marcas & IMPORTE_TEXTO) != 0
+                ? new BigDecimal(leerTexto(m, b.getLong(p + 32)))
+                : BigDecimal.valueOf(b.getLong(p + 32), b.get(p + 56));
+        long desc = b.getLong(p + 40);
+        rg.descripcion = desc < 0 ? null : leerTexto(m, desc);
+        int dia = b.getInt(p + 48);
+        rg.fecha = (dia == SIN_FECHA) ? null : LocalDate.ofEpochDay(dia);
+        rg.categoria = m.indice.categorias.get(b.getInt(p + 52));
+        return rg;
+    }
+
+    private String leerId(Mapeo m, int registro, int desplazamiento, byte marca) {
+        ByteBuffer b = m.registros;
+        int p = registro + desplazamiento;
+        if ((b.get(registro + 57) & marca) != 0) {
+            return leerTexto(m, b.getLong(p));
+        }
+        return new UUID(b.getLong(p), b.getLong(p + 8)).toString();
+    }
+
+    private String leerTexto(Mapeo m, long posicion) {
+        // El buffer se comparte entre hilos: se lee sobre un duplicado (posición propia)
+        int p = (int) posicion;
+        byte[] utf8 = new byte[m.textos.getInt(p)];
+        m.textos.duplicate().position(p + 4).get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private static int posicion(int indice) {
+        return CABECERA + indice * ANCHO;
+    }
+
+    private static UUID comoUUID(String id) {
+        if (id.length() != 36) return null;
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // --- FICHEROS ---
+
+    private Mapeo mapear(Indice indice) throws IOException {
+        ByteBuffer registros = mapearFichero(directorio.resolve("gastos-" + indice.version + ".dat"));
+        if (registros.getInt(0) != MAGICO || registros.getInt(4) != indice.version || registros.getInt(12) != ANCHO) {
+            throw new IOException("Archivo de gastos no válido (versión " + indice.version + ")");
+        }
+        ByteBuffer textos = mapearFichero(directorio.resolve("textos-" + indice.version + ".dat"));
+        return new Mapeo(indice, registros, textos);
+    }
+
+    private MappedByteBuffer mapearFichero(Path fichero) throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            // El mapeo sigue siendo válido después de cerrar el canal
+            return canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+    }
+
+    private void borrarVersionesAntiguas(int vigente) {
+        try (Stream<Path> s = Files.list(directorio)) {
+            s.filter(f -> {
+                String nombre = f.getFileName().toString();
+                return nombre.endsWith(".dat") && !nombre.endsWith("-" + vigente + ".dat");
+            }).forEach(f -> {
+                try {
+                    Files.deleteIfExists(f);
+                } catch (IOException e) {
+                    // Puede seguir mapeado (Windows): se borrará en la próxima apertura
+                }
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.um.gestiongastos.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Lector en streaming (API de tokens de Jackson) del fichero antiguo
+ * datos_usuarios.json, una lista de Persona con el grafo anidado y las
+ * referencias por id de @JsonIdentityInfo.
+ *
+ * Lee los usuarios de uno en uno y resuelve cada referencia en cuanto aparece
+ * (Jackson siempre escribe el objeto completo la primera vez y el id después),
+ * sin construir antes la lista entera ni la tabla de identidades de Jackson.
+ * Si encuentra una estructura que no espera lanza IOException y el
+ * repositorio vuelve al lector clásico.
+ */
+class CargadorLegado {
+
+    private final ObjectMapper mapper;
+    private final Map<String, Categoria> categorias;
+
+    private final Map<String, Persona> personasPorId = new HashMap<>();
+    private final Map<String, GastosCompartidos> cuentasPorId = new HashMap<>();
+    // Las cuentas de cada usuario se enlazan al final: pueden estar aún a medio leer
+    private final Map<Persona, List<String>> cuentasDePersona = new LinkedHashMap<>();
+
+    CargadorLegado(ObjectMapper mapper, Map<String, Categoria> categorias) {
+        this.mapper = mapper;
+        this.categorias = categorias;
+    }
+
+    /**
+     * Lee el fichero y devuelve los usuarios por nombre de usuario.
+     */
+    Map<String, Persona> cargar(File fichero, DoubleConsumer progreso) throws IOException {
+        long total = Math.max(1, fichero.length());
+
+        try (JsonParser p = mapper.getFactory().createParser(fichero)) {
+            esperar(p.nextToken(), JsonToken.START_ARRAY, p);
+            JsonToken t;
+            while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+                if (t == JsonToken.START_OBJECT) {
+                    leerPersona(p);
+                } else if (t != JsonToken.VALUE_STRING) {
+                    // Un id suelto es un usuario ya leído dentro de otro
+                    throw inesperado(p);
+                }
+                progreso.accept((double) p.getCurrentLocation().getByteOffset() / total);
+            }
+        }
+
+        Map<String, Persona> resultado = new LinkedHashMap<>();
+        for (Map.Entry<Persona, List<String>> e : cuentasDePersona.entrySet()) {
+            for (String idCuenta : e.getValue()) {
+                GastosCompartidos c = cuentasPorId.get(idCuenta);
+                if (c != null) e.getKey().agregarCuenta(c);
+            }
+            resultado.put(e.getKey().getNombreUsuario(), e.getKey());
+        }
+        progreso.accept(1.0);
+        return resultado;
+    }
+
+    // --- PERSONA ---
+
+    private Persona leerPersona(JsonParser p) throws IOException {
+        // Jackson escribe primero id y campos simples; con ellos se crea el objeto
+        // para que las referencias internas (participantes, pagadores) lo encuentren
+        String id = null, nombreCompleto = null, nombreUsuario = null, contraseña = null;
+        Persona persona = null;
+        List<String> idsCuentas = new ArrayList<>();
+        List<Alerta> alertas = new ArrayList<>();
+        List<Notificacion> notificaciones = new ArrayList<>();
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = p.getCurrentName();
+            JsonToken valor = p.nextToken();
+            if (valor.isScalarValue()) {
+                switch (campo) {
+                    case "id" -> id = p.getText();
+                    case "nombreCompleto" -> nombreCompleto = p.getText();
+                    case "nombreUsuario" -> nombreUsuario = p.getText();
+                    case "contraseña" -> contraseña = p.getText();
+                    default -> { }
+                }
+                continue;
+            }
+            if (persona == null) {
+                if (id == null || nombreCompleto == null || nombreUsuario == null || contraseña == null) throw inesperado(p);
+                persona = registrarPersona(id, nombreCompleto, nombreUsuario, contraseña);
+            }
+            switch (campo) {
+                case "cuentas" -> {
+                    esperar(valor, JsonToken.START_ARRAY, p);
+                    JsonToken t;
+                    while ((t = p.nextToken()) != JsonToken.END_ARRAY) {
+                        if (t == JsonToken.VALUE_STRING) idsCuentas.add(p.getText());
+                        else if (t == JsonToken.START_OBJECT) idsCuentas.add(leerCuenta(p).getId());
+                        else throw inesperado(p);
+                    }
+                }
+                case "alertas" -> {
+                    esperar(valor, JsonToken.START_ARRAY, p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) alertas.add(mapper.readValue(p, Alerta.class));
+                }
+                case "notificaciones" -> {
+                    esperar(valor, JsonToken.START_ARRAY, p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) notificaciones.add(mapper.readValue(p, Notificacion.class));
+                }
+                default -> p.skipChildren();
+            }
+        }
+        if (persona == null) {
+            if (id == null || nombreCompleto == null || nombreUsuario == null || contraseña == null) throw inesperado(p);
+            persona = registrarPersona(id, nombreCompleto, nombreUsuario, contraseña);
+        }
+        persona.setAlertas(alertas);
+        persona.setNotificaciones(notificaciones);
+        cuentasDePersona.put(persona, idsCuentas);
+        return persona;
+    }
+
+    private Persona registrarPersona(String id, String nombreCompleto, String nombreUsuario, String contraseña) {
+        Persona persona = new Persona(id, nombreCompleto, nombreUsuario, contraseña);
+        personasPorId.put(id, persona);
+        return persona;
+    }
+
+    private Persona leerRefPersona(JsonParser p, JsonToken t) throws IOException {
+        if (t == JsonToken.START_OBJECT) return leerPersona(p);
+        if (t == JsonToken.VALUE_STRING) {
+            Persona persona = personasPorId.get(p.getText());
+            if (persona == null) throw inesperado(p);
+            return persona;
+        }
+        throw inesperado(p);
+    }
+
+    // --- CUENTA ---
+
+    private GastosCompartidos leerCuenta(JsonParser p) throws IOException {
+        String id = null, nombre = null;
+        Boolean fijos = null;
+        List<GastosCompartidos.Participante> participantes = new ArrayList<>();
+        List<Gasto> gastos = new ArrayList<>();
+        GastosCompartidos cuenta = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = p.getCurrentName();
+            JsonToken valor = p.nextToken();
+            switch (campo) {
+                case "id" -> id = p.getText();
+                case "nombre" -> nombre = p.getText();
+                case "porcentajesFijos" -> fijos = p.getBooleanValue();
+                case "participantes" -> {
+                    esperar(valor, JsonToken.START_ARRAY, p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) participantes.add(leerParticipante(p));
+                }
+                case "gastos" -> {
+                    esperar(valor, JsonToken.START_ARRAY, p);
+                    cuenta = construirCuenta(id, nombre, participantes, p);
+                    while (p.nextToken() != JsonToken.END_ARRAY) gastos.add(leerGasto(p, cuenta));
+                }
+                default -> p.skipChildren();
+            }
+        }
+        if (cuenta == null) cuenta = construirCuenta(id, nombre, participantes, p);
+        if (fijos != null) cuenta.setPorcentajesFijos(fijos);
+        cuenta.setGastos(gastos);
+        return cuenta;
+    }
+
+    private GastosCompartidos construirCuenta(String id, String nombre, List<GastosCompartidos.Participante> participantes,
+                                              JsonParser p) throws IOException {
+        if (id == null || nombre == null || participantes.isEmpty()) throw inesperado(p);
+        List<Persona> miembros = new ArrayList<>();
+        for (GastosCompartidos.Participante par : participantes) miembros.add(par.getPersona());
+
+        GastosCompartidos cuenta = new GastosCompartidos(id, nombre, miembros, null);
+        // Porcentajes y saldos tal y como se guardaron
+        cuenta.setParticipantes(participantes);
+        cuentasPorId.put(id, cuenta);
+        return cuenta;
+    }
+
+    private GastosCompartidos.Participante leerParticipante(JsonParser p) throws IOException {
+        Persona persona = null;
+        double porcentaje = 0;
+        BigDecimal saldo = BigDecimal.ZERO;
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = p.getCurrentName();
+            JsonToken valor = p.nextToken();
+            switch (campo) {
+                case "persona" -> persona = leerRefPersona(p, valor);
+                case "porcentaje" -> porcentaje = p.getDoubleValue();
+                case "saldo" -> saldo = p.getDecimalValue();
+                default -> p.skipChildren();
+            }
+        }
+        if (persona == null) throw inesperado(p);
+        return new GastosCompartidos.Participante(persona, porcentaje, saldo);
+    }
+
+    // --- GASTO ---
+
+    private Gasto leerGasto(JsonParser p, GastosCompartidos cuenta) throws IOException {
+        if (p.currentToken() != JsonToken.START_OBJECT) throw inesperado(p);
+        String id = null, descripcion = null;
+        BigDecimal importe = null;
+        LocalDate fecha = null;
+        Categoria categoria = null;
+        Persona pagador = null;
+
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String campo = p.getCurrentName();
+            JsonToken valor = p.nextToken();
+            switch (campo) {
+                case "id" -> id = p.getText();
+                case "importe" -> importe = p.getDecimalValue();
+                case "fecha" -> fecha = LocalDate.parse(p.getText());
+                case "descripcion" -> descripcion = p.getText();
+                case "pagador" -> pagador = leerRefPersona(p, valor);
+                case "categoria" -> {
+                    Categoria leida = mapper.readValue(p, Categoria.class);
+                    categoria = categorias.computeIfAbsent(leida.getNombre().toLowerCase(), k -> leida);
+                }
+                default -> p.skipChildren(); // "cuenta" es la propia cuenta que estamos leyendo
+            }
+        }
+        if (id == null || pagador == null) throw inesperado(p);
+        return new Gasto(id, importe, fecha, categoria, pagador, descripcion, cuenta);
+    }
+
+    // --- AUXILIARES ---
+
+    private static void esperar(JsonToken actual, JsonToken esperado, JsonParser p) throws IOException {
+        if (actual != esperado) throw inesperado(p);
+    }
+
+    private static IOException inesperado(JsonParser p) {
+        return new IOException("Estructura inesperada en " + p.getCurrentLocation());
+    }
+}
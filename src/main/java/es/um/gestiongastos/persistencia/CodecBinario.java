@@ -0,0 +1,385 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.Notificacion;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Tablas de la instantánea en binario compacto:
+ * - ids como UUID de 128 bits (si un id no es un UUID canónico se guarda como texto),
+ * - importes y saldos como entero escalado (escala + long; texto si no cabe),
+ * - fechas como día desde la época (int),
+ * - categorías de los gastos como índice en un diccionario al principio del fichero.
+ * Las alertas van como JSON embebido: son pocas por usuario y su estructura
+ * (estrategias) es polimórfica.
+ */
+class CodecBinario implements CodecInstantanea {
+
+    private static final int MAGICO = 0x47474231; // "GGB1"
+    private static final byte TABLA_PERSONA = 'P';
+    private static final byte TABLA_CUENTA = 'C';
+    private static final byte TABLA_GASTOS = 'G';
+
+    private static final byte NULO = 0;
+    private static final byte BINARIO = 1;
+    private static final byte TEXTO = 2;
+    private static final int SIN_FECHA = Integer.MIN_VALUE;
+
+    private final ObjectMapper mapper;
+
+    CodecBinario(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String extension() {
+        return ".bin";
+    }
+
+    // --- USUARIOS ---
+
+    @Override
+    public byte[] codificarPersona(SegmentoPersona s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = cabecera(bytes, TABLA_PERSONA);
+        escribirId(out, s.id);
+        escribirTexto(out, s.nombreCompleto);
+        escribirTexto(out, s.nombreUsuario);
+        escribirTexto(out, s.contraseña);
+
+        out.writeInt(s.cuentas.size());
+        for (String idCuenta : s.cuentas) {
+            escribirId(out, idCuenta);
+        }
+
+        byte[] alertas = mapper.writeValueAsBytes(s.alertas);
+        out.writeInt(alertas.length);
+        out.write(alertas);
+
+        out.writeInt(s.notificaciones.size());
+        for (Notificacion n : s.notificaciones) {
+            escribirId(out, n.getId());
+            LocalDateTime fh = n.getFechaHora();
+            out.writeLong(fh.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(fh.getNano());
+            escribirTexto(out, n.getMensaje());
+        }
+        // Cola añadida después: alerta y escalón de cada notificación
+        for (Notificacion n : s.notificaciones) {
+            escribirId(out, n.getAlertaId());
+            out.writeInt(n.getNivel());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public SegmentoPersona decodificarPersona(byte[] datos) throws IOException {
+        DataInputStream in = abrir(datos, TABLA_PERSONA);
+        SegmentoPersona s = new SegmentoPersona();
+        s.id = leerId(in);
+        s.nombreCompleto = leerTexto(in);
+        s.nombreUsuario = leerTexto(in);
+        s.contraseña = leerTexto(in);
+
+        int nCuentas = in.readInt();
+        s.cuentas = new ArrayList<>(nCuentas);
+        for (int i = 0; i < nCuentas; i++) {
+            s.cuentas.add(leerId(in));
+        }
+
+        byte[] alertas = new byte[in.readInt()];
+        in.readFully(alertas);
+        s.alertas = mapper.readValue(alertas, new TypeReference<List<Alerta>>(){});
+
+        int nNotif = in.readInt();
+        String[] ids = new String[nNotif];
+        LocalDateTime[] fechas = new LocalDateTime[nNotif];
+        String[] mensajes = new String[nNotif];
+        for (int i = 0; i < nNotif; i++) {
+            ids[i] = leerId(in);
+            fechas[i] = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            mensajes[i] = leerTexto(in);
+        }
+        boolean conAlerta = nNotif > 0 && in.available() > 0;
+        s.notificaciones = new ArrayList<>(nNotif);
+        for (int i = 0; i < nNotif; i++) {
+            String alertaId = conAlerta ? leerId(in) : null;
+            int nivel = conAlerta ? in.readInt() : 0;
+            s.notificaciones.add(new Notificacion(ids[i], fechas[i], mensajes[i], alertaId, nivel));
+        }
+        return s;
+    }
+
+    // --- CUENTAS ---
+
+    @Override
+    public byte[] codificarCuenta(SegmentoCuenta s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = cabecera(bytes, TABLA_CUENTA);
+        escribirId(out, s.id);
+        escribirTexto(out, s.nombre);
+        out.writeBoolean(s.porcentajesFijos);
+        out.writeInt(s.participantes.size());
+        for (RegistroCuenta.RegistroParticipante rp : s.participantes) {
+            escribirId(out, rp.personaId);
+            out.writeDouble(rp.porcentaje);
+            escribirDecimal(out, rp.saldo);
+        }
+        // Pagos entre participantes (los ficheros anteriores terminan aquí)
+        int nPagos = (s.pagos == null) ? 0 : s.pagos.size();
+        out.writeInt(nPagos);
+        for (int i = 0; i < nPagos; i++) {
+            RegistroPago rp = s.pagos.get(i);
+            escribirId(out, rp.id);
+            escribirId(out, rp.deudorId);
+            escribirId(out, rp.acreedorId);
+            escribirDecimal(out, rp.importe);
+            out.writeInt(rp.fecha == null ? SIN_FECHA : (int) rp.fecha.toEpochDay());
+        }
+        // Versiones de porcentajes (los ficheros anteriores terminan en los pagos):
+        // fecha y un porcentaje por participante, en su orden
+        int nVersiones = (s.versiones == null) ? 0 : s.versiones.size();
+        out.writeInt(nVersiones);
+        for (int i = 0; i < nVersiones; i++) {
+            RegistroCuenta.RegistroVersion rv = s.versiones.get(i);
+            out.writeInt((int) rv.desde.toEpochDay());
+            for (RegistroCuenta.RegistroParticipante rp : s.participantes) {
+                out.writeDouble(rv.porcentajes.getOrDefault(rp.personaId, 0.0));
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public SegmentoCuenta decodificarCuenta(byte[] datos) throws IOException {
+        DataInputStream in = abrir(datos, TABLA_CUENTA);
+        SegmentoCuenta s = new SegmentoCuenta();
+        s.id = leerId(in);
+        s.nombre = leerTexto(in);
+        s.porcentajesFijos = in.readBoolean();
+        int n = in.readInt();
+        s.participantes = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            RegistroCuenta.RegistroParticipante rp = new RegistroCuenta.RegistroParticipante();
+            rp.personaId = leerId(in);
+            rp.porcentaje = in.readDouble();
+            rp.saldo = leerDecimal(in);
+            s.participantes.add(rp);
+        }
+        if (in.available() > 0) {
+            int nPagos = in.readInt();
+            if (nPagos > 0) s.pagos = new ArrayList<>(nPagos);
+            for (int i = 0; i < nPagos; i++) {
+                RegistroPago rp = new RegistroPago();
+                rp.id = leerId(in);
+                rp.deudorId = leerId(in);
+                rp.acreedorId = leerId(in);
+                rp.importe = leerDecimal(in);
+                int dia = in.readInt();
+                rp.fecha = (dia == SIN_FECHA) ? null : LocalDate.ofEpochDay(dia);
+                s.pagos.add(rp);
+            }
+        }
+        if (in.available() > 0) {
+            int nVersiones = in.readInt();
+            if (nVersiones > 0) s.versiones = new ArrayList<>(nVersiones);
+            for (int i = 0; i < nVersiones; i++) {
+                RegistroCuenta.RegistroVersion rv = new RegistroCuenta.RegistroVersion();
+                rv.desde = LocalDate.ofEpochDay(in.readInt());
+                rv.porcentajes = new LinkedHashMap<>();
+                for (RegistroCuenta.RegistroParticipante rp : s.participantes) {
+                    rv.porcentajes.put(rp.personaId, in.readDouble());
+                }
+                s.versiones.add(rv);
+            }
+        }
+        return s;
+    }
+
+    // --- GASTOS ---
+
+    @Override
+    public byte[] codificarGastos(String cuentaId, List<RegistroGasto> gastos) throws IOException {
+        // Diccionario de categorías de esta partición
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> diccionario = new ArrayList<>();
+        for (RegistroGasto rg : gastos) {
+            if (indices.putIfAbsent(rg.categoria, diccionario.size()) == null) {
+                diccionario.add(rg.categoria);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + gastos.size() * 48);
+        DataOutputStream out = cabecera(bytes, TABLA_GASTOS);
+        escribirId(out, cuentaId);
+        out.writeInt(diccionario.size());
+        for (String categoria : diccionario) {
+            escribirTexto(out, categoria);
+        }
+
+        out.writeInt(gastos.size());
+        for (RegistroGasto rg : gastos) {
+            escribirId(out, rg.id);
+            escribirDecimal(out, rg.importe);
+            out.writeInt(rg.fecha == null ? SIN_FECHA : (int) rg.fecha.toEpochDay());
+            out.writeInt(indices.get(rg.categoria));
+            escribirId(out, rg.pagadorId);
+            escribirTexto(out, rg.descripcion);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public List<RegistroGasto> decodificarGastos(byte[] datos) throws IOException {
+        DataInputStream in = abrir(datos, TABLA_GASTOS);
+        String cuentaId = leerId(in);
+        String[] diccionario = new String[in.readInt()];
+        for (int i = 0; i < diccionario.length; i++) {
+            diccionario[i] = leerTexto(in);
+        }
+
+        int n = in.readInt();
+        List<RegistroGasto> gastos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            RegistroGasto rg = new RegistroGasto();
+            rg.id = leerId(in);
+            rg.cuentaId = cuentaId;
+            rg.importe = leerDecimal(in);
+            int dia = in.readInt();
+            rg.fecha = (dia == SIN_FECHA) ? null : LocalDate.ofEpochDay(dia);
+            rg.categoria = diccionario[in.readInt()];
+            rg.pagadorId = leerId(in);
+            rg.descripcion = leerTexto(in);
+            gastos.add(rg);
+        }
+        return gastos;
+    }
+
+    // --- PRIMITIVAS ---
+
+    private DataOutputStream cabecera(ByteArrayOutputStream bytes, byte tabla) throws IOException {
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGICO);
+        out.writeByte(tabla);
+        return out;
+    }
+
+    private DataInputStream abrir(byte[] datos, byte tabla) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(datos));
+        if (in.readInt() != MAGICO || in.readByte() != tabla) {
+            throw new IOException("Fichero binario de instantánea no válido (tabla " + (char) tabla + ")");
+        }
+        return in;
+    }
+
+    private void escribirTexto(DataOutputStream out, String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf8 = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private String leerTexto(DataInputStream in) throws IOException {
+        int longitud = in.readInt();
+        if (longitud < 0) return null;
+        byte[] utf8 = new byte[longitud];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * UUID en 16 bytes. Solo si el texto es exactamente la forma canónica
+     * (si no, al leerlo no saldría el mismo id); en otro caso, como texto.
+     */
+    private void escribirId(DataOutputStream out, String id) throws IOException {
+        if (id == null) {
+            out.writeByte(NULO);
+            return;
+        }
+        UUID uuid = comoUUID(id);
+        if (uuid != null) {
+            out.writeByte(BINARIO);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else {
+            out.writeByte(TEXTO);
+            escribirTexto(out, id);
+        }
+    }
+
+    private String leerId(DataInputStream in) throws IOException {
+        return switch (in.readByte()) {
+            case NULO -> null;
+            case BINARIO -> new UUID(in.readLong(), in.readLong()).toString();
+            case TEXTO -> leerTexto(in);
+            default -> throw new IOException("Marca de id desconocida");
+        };
+    }
+
+    private static UUID comoUUID(String id) {
+        if (id.length() != 36) return null;
+        try {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Escala (1 byte) + valor sin escalar (long). Conserva la escala, así que
+     * el BigDecimal leído es idéntico al escrito; si no cabe, como texto.
+     */
+    private void escribirDecimal(DataOutputStream out, BigDecimal valor) throws IOException {
+        if (valor == null) {
+            out.writeByte(NULO);
+            return;
+        }
+        BigInteger sinEscala = valor.unscaledValue();
+        if (sinEscala.bitLength() < 64 && valor.scale() >= Byte.MIN_VALUE && valor.scale() <= Byte.MAX_VALUE) {
+            out.writeByte(BINARIO);
+            out.writeByte(valor.scale());
+            out.writeLong(sinEscala.longValue());
+        } else {
+            out.writeByte(TEXTO);
+            escribirTexto(out, valor.toString());
+        }
+    }
+
+    private BigDecimal leerDecimal(DataInputStream in) throws IOException {
+        return switch (in.readByte()) {
+            case NULO -> null;
+            case BINARIO -> {
+                int escala = in.readByte();
+                yield BigDecimal.valueOf(in.readLong(), escala);
+            }
+            case TEXTO -> new BigDecimal(leerTexto(in));
+            default -> throw new IOException("Marca de importe desconocida");
+        };
+    }
+}
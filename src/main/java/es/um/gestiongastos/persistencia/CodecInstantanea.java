@@ -0,0 +1,37 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Codifica y decodifica las filas de cada tabla de la instantánea. Cada
+ * formato usa su propia extensión de fichero, así que al cambiar de formato
+ * se pueden seguir leyendo los ficheros escritos con el anterior.
+ */
+interface CodecInstantanea {
+
+    /** Extensión de los ficheros, con el punto (".json", ".bin"). */
+    String extension();
+
+    byte[] codificarPersona(SegmentoPersona persona) throws IOException;
+
+    SegmentoPersona decodificarPersona(byte[] datos) throws IOException;
+
+    byte[] codificarCuenta(SegmentoCuenta cuenta) throws IOException;
+
+    SegmentoCuenta decodificarCuenta(byte[] datos) throws IOException;
+
+    /** Filas de gastos de una cuenta (la partición de la tabla de gastos de esa cuenta). */
+    byte[] codificarGastos(String cuentaId, List<RegistroGasto> gastos) throws IOException;
+
+    List<RegistroGasto> decodificarGastos(byte[] datos) throws IOException;
+
+    static CodecInstantanea de(FormatoInstantanea formato, ObjectMapper mapper) {
+        return switch (formato) {
+            case JSON -> new CodecJSON(mapper);
+            case BINARIO -> new CodecBinario(mapper);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tablas de la instantánea en JSON (compacto, sin sangrado).
+ */
+class CodecJSON implements CodecInstantanea {
+
+    private final ObjectMapper mapper;
+
+    CodecJSON(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String extension() {
+        return ".json";
+    }
+
+    @Override
+    public byte[] codificarPersona(SegmentoPersona persona) throws IOException {
+        return mapper.writeValueAsBytes(persona);
+    }
+
+    @Override
+    public SegmentoPersona decodificarPersona(byte[] datos) throws IOException {
+        return mapper.readValue(datos, SegmentoPersona.class);
+    }
+
+    @Override
+    public byte[] codificarCuenta(SegmentoCuenta cuenta) throws IOException {
+        return mapper.writeValueAsBytes(cuenta);
+    }
+
+    @Override
+    public SegmentoCuenta decodificarCuenta(byte[] datos) throws IOException {
+        return mapper.readValue(datos, SegmentoCuenta.class);
+    }
+
+    @Override
+    public byte[] codificarGastos(String cuentaId, List<RegistroGasto> gastos) throws IOException {
+        return mapper.writeValueAsBytes(gastos);
+    }
+
+    @Override
+    public List<RegistroGasto> decodificarGastos(byte[] datos) throws IOException {
+        return Arrays.asList(mapper.readValue(datos, RegistroGasto[].class));
+    }
+}
@@ -0,0 +1,85 @@
+package es.um.gestiongastos.persistencia;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Planifica la compactación del diario en un hilo propio (nunca en el hilo de
+ * JavaFX ni en el de consola). Se dispara cuando el diario supera un tamaño o
+ * cuando su cambio más antiguo supera una edad.
+ */
+class CompactadorInstantanea {
+
+    private static final long PERIODO_REVISION_SEG = 30;
+
+    private final DiarioCambios diario;
+    private final Runnable compactacion;
+    private final long umbralBytes;
+    private final Duration umbralEdad;
+
+    private final ScheduledExecutorService hilo;
+    private final AtomicBoolean pendiente = new AtomicBoolean(false);
+
+    CompactadorInstantanea(DiarioCambios diario, Runnable compactacion, long umbralBytes, Duration umbralEdad) {
+        this.diario = diario;
+        this.compactacion = compactacion;
+        this.umbralBytes = umbralBytes;
+        this.umbralEdad = umbralEdad;
+
+        this.hilo = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Compactador-Persistencia");
+            t.setDaemon(true);
+            return t;
+        });
+        hilo.scheduleWithFixedDelay(this::revisar, PERIODO_REVISION_SEG, PERIODO_REVISION_SEG, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Llamado tras cada anotación. Solo compara contadores; si toca compactar
+     * encarga el trabajo al hilo de fondo y vuelve inmediatamente.
+     */
+    void revisarTrasCambio() {
+        if (diario.tamaño() >= umbralBytes) {
+            solicitar();
+        }
+    }
+
+    /**
+     * Compacta en segundo plano. Devuelve el Future por si alguien quiere esperar.
+     */
+    Future<?> solicitar() {
+        if (!pendiente.compareAndSet(false, true)) {
+            // Ya hay una compactación encolada, que recogerá también estos cambios
+            return hilo.submit(() -> {});
+        }
+        return hilo.submit(() -> {
+            pendiente.set(false);
+            ejecutar();
+        });
+    }
+
+    void detener() {
+        hilo.shutdown();
+    }
+
+    private void revisar() {
+        Duration edad = diario.antiguedadPrimerCambio();
+        if (diario.tamaño() >= umbralBytes || (edad != null && edad.compareTo(umbralEdad) >= 0)) {
+            ejecutar();
+        }
+    }
+
+    private void ejecutar() {
+        try {
+            compactacion.run();
+        } catch (RuntimeException e) {
+            // Si falla, el diario sigue completo: no se pierde nada y se reintentará
+            e.printStackTrace();
+            System.err.println("Error: la compactación de la instantánea ha fallado.");
+        }
+    }
+}
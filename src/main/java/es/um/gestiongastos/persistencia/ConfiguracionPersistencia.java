@@ -0,0 +1,104 @@
+package es.um.gestiongastos.persistencia;
+
+import java.time.Duration;
+
+/**
+ * Parámetros de la persistencia. Se leen de propiedades del sistema
+ * (-Dgestiongastos.xxx=valor al lanzar la aplicación) con valores por defecto
+ * pensados para una instalación de escritorio normal.
+ */
+public final class ConfiguracionPersistencia {
+
+    private static final String PREFIJO = "gestiongastos.";
+
+    private ConfiguracionPersistencia() {}
+
+    /** gestiongastos.motor = JSON | SQL */
+    public static MotorPersistencia motor() {
+        String valor = System.getProperty(PREFIJO + "motor", MotorPersistencia.JSON.name());
+        try {
+            return MotorPersistencia.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Aviso: motor de persistencia desconocido '" + valor + "', se usa JSON.");
+            return MotorPersistencia.JSON;
+        }
+    }
+
+    /** URL JDBC de la base de datos del motor SQL (por defecto, un fichero H2 junto a la aplicación). */
+    public static String urlSQL() {
+        return System.getProperty(PREFIJO + "sql.url", "jdbc:h2:./datos_sql/gestiongastos");
+    }
+
+    /** gestiongastos.durabilidad = SINCRONA | AGRUPADA | AL_SALIR */
+    public static Durabilidad durabilidad() {
+        String valor = System.getProperty(PREFIJO + "durabilidad", Durabilidad.AGRUPADA.name());
+        try {
+            return Durabilidad.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Aviso: durabilidad desconocida '" + valor + "', se usa AGRUPADA.");
+            return Durabilidad.AGRUPADA;
+        }
+    }
+
+    /** gestiongastos.formato = BINARIO | JSON (codificación de los ficheros de la instantánea) */
+    public static FormatoInstantanea formatoInstantanea() {
+        String valor = System.getProperty(PREFIJO + "formato", FormatoInstantanea.BINARIO.name());
+        try {
+            return FormatoInstantanea.valueOf(valor.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Aviso: formato de instantánea desconocido '" + valor + "', se usa BINARIO.");
+            return FormatoInstantanea.BINARIO;
+        }
+    }
+
+    /** Tiempo máximo que el volcador espera para agrupar cambios en una escritura. */
+    public static Duration ventanaVolcado() {
+        return Duration.ofMillis(leerLong("volcado.ventanaMs", 50));
+    }
+
+    /** Número máximo de cambios por escritura agrupada. */
+    public static int maxCambiosPorVolcado() {
+        return (int) leerLong("volcado.maxCambios", 1000);
+    }
+
+    /** Tamaño del diario a partir del cual se compacta. */
+    public static long umbralCompactacionBytes() {
+        return leerLong("compactacion.bytes", 1024 * 1024);
+    }
+
+    /** Edad del cambio pendiente más antiguo a partir de la cual se compacta. */
+    public static Duration umbralCompactacionEdad() {
+        return Duration.ofMinutes(leerLong("compactacion.edadMin", 10));
+    }
+
+    /** Días sin cambios a partir de los cuales una cuenta pasa al archivo de cuentas inactivas. */
+    public static int diasInactividadArchivo() {
+        return (int) leerLong("archivo.inactividadDias", 180);
+    }
+
+    /** Máximo de cuentas archivadas con el historial cargado en memoria a la vez. */
+    public static int maxCuentasArchivadasEnMemoria() {
+        return (int) leerLong("archivo.maxCuentas", 16);
+    }
+
+    /** Máximo de notificaciones que se guardan por usuario (las más nuevas). */
+    public static int maxNotificaciones() {
+        return (int) leerLong("notificaciones.max", 200);
+    }
+
+    /** Días que se guardan las notificaciones. */
+    public static int diasRetencionNotificaciones() {
+        return (int) leerLong("notificaciones.retencionDias", 90);
+    }
+
+    private static long leerLong(String clave, long porDefecto) {
+        String valor = System.getProperty(PREFIJO + clave);
+        if (valor == null) return porDefecto;
+        try {
+            return Long.parseLong(valor.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Aviso: valor no numérico para " + PREFIJO + clave + ", se usa " + porDefecto + ".");
+            return porDefecto;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Diario de cambios de solo-añadir (una línea JSON compacta por cambio).
+ * Cada mutación cuesta escribir su propio registro, no volcar todo el modelo.
+ *
+ * Con durabilidad SINCRONA el registro se escribe en el hilo que lo anota.
+ * En los otros modos el registro se serializa en ese hilo (captura el estado
+ * de ese momento) y se encola; el hilo "Volcador-Diario" agrupa todo lo que
+ * llega dentro de una ventana corta en una única escritura.
+ *
+ * Para compactar, el diario se "rota": el fichero activo pasa a ser el
+ * segmento cerrado (sufijo .1) y los cambios nuevos van a un fichero vacío.
+ * El segmento cerrado se borra cuando la nueva instantánea ya está en disco.
+ */
+class DiarioCambios {
+
+    private final File fichero;
+    private final File rotado;
+    private final ObjectMapper mapper;
+
+    private final Durabilidad durabilidad;
+    private final long ventanaMs;
+    private final int maxPorVolcado;
+
+    private FileChannel canal;
+
+    // Cola del volcador y contadores para la barrera de esperarVolcado()
+    private final BlockingQueue<String> pendientes = new LinkedBlockingQueue<>();
+    private final Object monitorVolcado = new Object();
+    private long encolados;
+    private long volcados;
+    private volatile boolean activo = true;
+    private final Thread volcador;
+
+    // Bytes en el fichero activo y momento del primer cambio aún sin compactar
+    private volatile long tamaño;
+    private volatile Instant primerCambio;
+
+    DiarioCambios(File fichero, ObjectMapper mapper, Durabilidad durabilidad, Duration ventana, int maxPorVolcado) {
+        this.fichero = fichero;
+        this.rotado = new File(fichero.getPath() + ".1");
+        this.mapper = mapper;
+        this.durabilidad = durabilidad;
+        this.ventanaMs = ventana.toMillis();
+        this.maxPorVolcado = Math.max(1, maxPorVolcado);
+        this.tamaño = fichero.length();
+        this.primerCambio = (tamaño > 0 || rotado.exists()) ? Instant.now() : null;
+
+        if (durabilidad == Durabilidad.SINCRONA) {
+            this.volcador = null;
+        } else {
+            this.volcador = new Thread(this::bucleVolcado, "Volcador-Diario");
+            this.volcador.setDaemon(true);
+            this.volcador.start();
+        }
+    }
+
+    /**
+     * Anota un registro. En modo SINCRONA vuelve cuando ya está en disco; en
+     * los otros vuelve en cuanto está encolado.
+     */
+    void anotar(RegistroCambio registro) throws IOException {
+        anotar(List.of(registro));
+    }
+
+    /**
+     * Anota varios registros seguidos: en modo SINCRONA van en una sola
+     * escritura (y un solo fsync); en los otros se encolan juntos.
+     */
+    void anotar(List<RegistroCambio> registros) throws IOException {
+        List<String> lineas = new ArrayList<>(registros.size());
+        for (RegistroCambio r : registros) {
+            lineas.add(mapper.writeValueAsString(r));
+        }
+
+        if (durabilidad == Durabilidad.SINCRONA) {
+            escribir(lineas, true);
+            return;
+        }
+        synchronized (monitorVolcado) {
+            if (!activo) throw new IOException("El diario de cambios ya está cerrado.");
+            encolados += lineas.size();
+            pendientes.addAll(lineas);
+        }
+    }
+
+    /**
+     * Barrera: espera a que todo lo anotado hasta ahora esté escrito en el
+     * fichero (y forzado a disco salvo en modo AL_SALIR).
+     */
+    void esperarVolcado() throws InterruptedException {
+        if (durabilidad == Durabilidad.SINCRONA) return;
+        synchronized (monitorVolcado) {
+            long objetivo = encolados;
+            while (volcados < objetivo && volcador.isAlive()) {
+                monitorVolcado.wait(100);
+            }
+        }
+    }
+
+    /**
+     * Lee todos los registros en orden (segmento rotado y luego el activo).
+     * Si la última línea de un fichero quedó a medias (cierre abrupto mientras
+     * se escribía) se descarta y se para ahí.
+     */
+    synchronized List<RegistroCambio> leer() throws IOException {
+        List<RegistroCambio> registros = new ArrayList<>();
+        leerFichero(rotado, registros);
+        leerFichero(fichero, registros);
+        return registros;
+    }
+
+    /**
+     * Cierra el fichero activo y lo convierte en el segmento rotado. Si ya
+     * había uno (compactación anterior fallida) se le añade a continuación.
+     * Lo que siga en la cola del volcador irá al fichero nuevo, lo cual es
+     * correcto porque la reproducción es idempotente.
+     */
+    synchronized void rotar() throws IOException {
+        cerrarCanal();
+        if (fichero.exists()) {
+            if (rotado.exists()) {
+                Files.write(rotado.toPath(), Files.readAllBytes(fichero.toPath()), StandardOpenOption.APPEND);
+                Files.delete(fichero.toPath());
+            } else {
+                Files.move(fichero.toPath(), rotado.toPath());
+            }
+            FicheroAtomico.forzarDirectorio(rotado.getAbsoluteFile().toPath().getParent());
+        }
+        tamaño = 0;
+        primerCambio = null;
+    }
+
+    /**
+     * Borra el segmento rotado: sus cambios ya están en la instantánea.
+     */
+    synchronized void borrarRotado() throws IOException {
+        Files.deleteIfExists(rotado.toPath());
+    }
+
+    long tamaño() {
+        return tamaño;
+    }
+
+    /**
+     * Tiempo desde el primer cambio pendiente de compactar, o null si no hay.
+     */
+    Duration antiguedadPrimerCambio() {
+        Instant inicio = primerCambio;
+        return (inicio == null) ? null : Duration.between(inicio, Instant.now());
+    }
+
+    /**
+     * Vacía la cola, fuerza a disco y cierra el fichero. Se llama al salir.
+     *
+     * El hilo de volcado no se interrumpe (un FileChannel interrumpido a mitad
+     * de escritura se cierra solo): ve {@code activo = false} como mucho tras
+     * la espera de 100 ms del poll, vuelca lo que quede y termina.
+     */
+    void cerrar() throws IOException {
+        synchronized (monitorVolcado) {
+            activo = false;
+        }
+        if (volcador != null) {
+            try {
+                volcador.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (canal != null) canal.force(false);
+            cerrarCanal();
+        }
+    }
+
+    // --- VOLCADO ---
+
+    private void bucleVolcado() {
+        List<String> lote = new ArrayList<>();
+        while (activo || !pendientes.isEmpty()) {
+            try {
+                String primera = pendientes.poll(100, TimeUnit.MILLISECONDS);
+                if (primera == null) continue;
+                lote.add(primera);
+
+                // Agrupamos lo que llegue dentro de la ventana, hasta el máximo por escritura
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ventanaMs);
+                while (lote.size() < maxPorVolcado) {
+                    long resto = limite - System.nanoTime();
+                    if (resto <= 0) break;
+                    String siguiente = pendientes.poll(resto, TimeUnit.NANOSECONDS);
+                    if (siguiente == null) break;
+                    lote.add(siguiente);
+                }
+                pendientes.drainTo(lote, maxPorVolcado - lote.size());
+            } catch (InterruptedException e) {
+                // Nadie interrumpe este hilo (ver cerrar()); si pasa, lo que quede se vuelca en la siguiente vuelta
+            }
+
+            if (!lote.isEmpty()) {
+                try {
+                    escribir(lote, durabilidad == Durabilidad.AGRUPADA);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    System.err.println("Error grave: No se han podido volcar " + lote.size() + " cambios al diario.");
+                }
+                synchronized (monitorVolcado) {
+                    volcados += lote.size();
+                    monitorVolcado.notifyAll();
+                }
+                lote.clear();
+            }
+        }
+    }
+
+    private synchronized void escribir(List<String> lineas, boolean forzar) throws IOException {
+        if (canal == null) {
+            canal = FileChannel.open(fichero.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String linea : lineas) {
+            sb.append(linea).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        int escritos = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        if (forzar) canal.force(false);
+
+        tamaño += escritos;
+        if (primerCambio == null) primerCambio = Instant.now();
+    }
+
+    private void cerrarCanal() throws IOException {
+        if (canal != null) {
+            canal.close();
+            canal = null;
+        }
+    }
+
+    private void leerFichero(File f, List<RegistroCambio> registros) throws IOException {
+        if (!f.exists()) return;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(f, StandardCharsets.UTF_8))) {
+            String linea;
+            int numero = 0;
+            while ((linea = br.readLine()) != null) {
+                numero++;
+                if (linea.isBlank()) continue;
+                try {
+                    registros.add(mapper.readValue(linea, RegistroCambio.class));
+                } catch (IOException e) {
+                    System.err.println("Aviso: diario " + f.getName() + " truncado en la línea " + numero + ", se ignora el resto.");
+                    break;
+                }
+            }
+        }
+    }
+}
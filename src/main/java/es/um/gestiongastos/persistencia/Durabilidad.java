@@ -0,0 +1,13 @@
+package es.um.gestiongastos.persistencia;
+
+/**
+ * Cuándo se considera "guardado" un cambio anotado en el diario.
+ */
+public enum Durabilidad {
+    /** Cada cambio se escribe y se fuerza a disco en el hilo que lo produce. */
+    SINCRONA,
+    /** Un hilo de volcado agrupa los cambios de una ventana corta en una sola escritura con fsync. */
+    AGRUPADA,
+    /** Igual que AGRUPADA pero sin fsync: solo se fuerza a disco al cerrar la aplicación. */
+    AL_SALIR
+}
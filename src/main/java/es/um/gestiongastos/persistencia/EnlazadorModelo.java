@@ -0,0 +1,128 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Traduce los registros planos (claves ajenas por id) a objetos del modelo.
+ * Mantiene los índices por id de lo ya creado, así que reconstruir el grafo
+ * es una única pasada lineal sobre las tablas: usuarios, cuentas, gastos.
+ * Lo usan tanto la carga de la instantánea como la reproducción del diario.
+ */
+class EnlazadorModelo {
+
+    private final Map<String, Categoria> categorias;  // por nombre en minúsculas (mapa del repositorio)
+
+    final Map<String, Persona> personasPorId = new HashMap<>();
+    final Map<String, GastosCompartidos> cuentasPorId = new HashMap<>();
+    final Map<String, Gasto> gastosPorId = new HashMap<>();
+
+    EnlazadorModelo(Map<String, Categoria> categorias) {
+        this.categorias = categorias;
+    }
+
+    /**
+     * Registra en los índices un usuario ya existente (y sus cuentas y gastos).
+     * Los gastos de las cuentas archivadas no se indexan (habría que hidratarlas).
+     */
+    void indexar(Persona p) {
+        personasPorId.put(p.getId(), p);
+        for (GastosCompartidos c : p.getCuentas()) {
+            if (cuentasPorId.putIfAbsent(c.getId(), c) == null && !c.isArchivada()) {
+                for (Gasto g : c.getGastos()) {
+                    gastosPorId.put(g.getId(), g);
+                }
+            }
+        }
+    }
+
+    Persona persona(RegistroPersona r) {
+        Persona p = new Persona(r.id, r.nombreCompleto, r.nombreUsuario, r.contraseña);
+        personasPorId.put(p.getId(), p);
+        return p;
+    }
+
+    /**
+     * Crea la cuenta con sus participantes y sus versiones de porcentajes. Si el registro trae saldos se
+     * respetan tal cual (instantánea); si no, empiezan en cero (cuenta nueva).
+     * Devuelve null si algún participante no existe.
+     */
+    GastosCompartidos cuenta(RegistroCuenta r) {
+        List<Persona> miembros = new ArrayList<>();
+        Map<Persona, Double> porcentajes = new LinkedHashMap<>();
+        List<GastosCompartidos.Participante> participantes = new ArrayList<>();
+        for (RegistroCuenta.RegistroParticipante rp : r.participantes) {
+            Persona p = personasPorId.get(rp.personaId);
+            if (p == null) {
+                System.err.println("Aviso: participante desconocido " + rp.personaId + " en la cuenta " + r.nombre);
+                return null;
+            }
+            miembros.add(p);
+            porcentajes.put(p, rp.porcentaje);
+            participantes.add(new GastosCompartidos.Participante(p, rp.porcentaje, rp.saldo));
+        }
+
+        GastosCompartidos cuenta = new GastosCompartidos(r.id, r.nombre, miembros,
+                r.porcentajesFijos ? porcentajes : null);
+        // Porcentajes y saldos exactos tal y como se guardaron (sin recalcular)
+        cuenta.setParticipantes(participantes);
+        cuenta.setPorcentajesFijos(r.porcentajesFijos);
+        if (r.versiones != null) {
+            for (RegistroCuenta.RegistroVersion rv : r.versiones) {
+                cuenta.setVersionPorcentajes(rv.desde, porcentajesPorPersona(rv.porcentajes));
+            }
+        }
+        cuentasPorId.put(cuenta.getId(), cuenta);
+        return cuenta;
+    }
+
+    /** Porcentajes de una versión, de id de persona a persona (las desconocidas se ignoran). */
+    Map<Persona, Double> porcentajesPorPersona(Map<String, Double> porId) {
+        Map<Persona, Double> porcentajes = new LinkedHashMap<>();
+        porId.forEach((id, pct) -> {
+            Persona p = personasPorId.get(id);
+            if (p != null) porcentajes.put(p, pct);
+        });
+        return porcentajes;
+    }
+
+    /**
+     * Crea el gasto resolviendo cuenta (del propio registro o la indicada),
+     * pagador y categoría. No lo añade a la cuenta. Devuelve null si falta algo.
+     */
+    Gasto gasto(RegistroGasto r, GastosCompartidos cuenta) {
+        if (cuenta == null) cuenta = cuentasPorId.get(r.cuentaId);
+        Persona pagador = personasPorId.get(r.pagadorId);
+        if (cuenta == null || pagador == null) {
+            System.err.println("Aviso: gasto " + r.id + " con cuenta o pagador desconocido, se ignora.");
+            return null;
+        }
+        Gasto g = new Gasto(r.id, r.importe, r.fecha, categoria(r.categoria), pagador, r.descripcion, cuenta);
+        gastosPorId.put(g.getId(), g);
+        return g;
+    }
+
+    /**
+     * Crea el pago resolviendo cuenta (del propio registro o la indicada),
+     * deudor y acreedor. No lo añade a la cuenta. Devuelve null si falta algo.
+     */
+    Pago pago(RegistroPago r, GastosCompartidos cuenta) {
+        if (cuenta == null) cuenta = cuentasPorId.get(r.cuentaId);
+        Persona deudor = personasPorId.get(r.deudorId);
+        Persona acreedor = personasPorId.get(r.acreedorId);
+        if (cuenta == null || deudor == null || acreedor == null) {
+            System.err.println("Aviso: pago " + r.id + " con cuenta o participantes desconocidos, se ignora.");
+            return null;
+        }
+        return new Pago(r.id, deudor, acreedor, r.importe, r.fecha, cuenta);
+    }
+
+    Categoria categoria(String nombre) {
+        return categorias.computeIfAbsent(nombre.toLowerCase(), k -> new Categoria(nombre));
+    }
+}
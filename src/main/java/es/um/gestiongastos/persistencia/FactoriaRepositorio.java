@@ -0,0 +1,22 @@
+package es.um.gestiongastos.persistencia;
+
+/**
+ * Crea el repositorio según la configuración (-Dgestiongastos.motor=JSON|SQL).
+ */
+public final class FactoriaRepositorio {
+
+    private FactoriaRepositorio() {}
+
+    public static Repositorio crear() {
+        MotorPersistencia motor = ConfiguracionPersistencia.motor();
+        System.out.println(">> [Repositorio] Persistencia: " + motor);
+        Repositorio repositorio = switch (motor) {
+            case JSON -> new RepositorioJSON();
+            case SQL -> new RepositorioSQL(ConfiguracionPersistencia.urlSQL());
+        };
+        // Al salir (System.exit desde la ventana o la consola) se vuelca lo pendiente.
+        // Se registra aquí, con el repositorio ya construido, y no en su constructor.
+        Runtime.getRuntime().addShutdownHook(new Thread(repositorio::cerrar, "Cierre-Repositorio"));
+        return repositorio;
+    }
+}
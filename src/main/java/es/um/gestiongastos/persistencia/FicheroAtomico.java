@@ -0,0 +1,50 @@
+package es.um.gestiongastos.persistencia;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escritura "todo o nada" de un fichero: se escribe en un temporal, se fuerza
+ * a disco (fsync), se renombra atómicamente sobre el original y se fuerza el
+ * directorio, para que el renombrado también sobreviva a una caída del
+ * sistema. Si la aplicación se cae a mitad, el fichero anterior sigue intacto.
+ */
+final class FicheroAtomico {
+
+    private FicheroAtomico() {}
+
+    static void escribir(Path destino, byte[] contenido) throws IOException {
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contenido);
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(true);
+        }
+
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        forzarDirectorio(destino.toAbsolutePath().getParent());
+    }
+
+    /**
+     * fsync del directorio (la entrada renombrada). Donde no se puede abrir un
+     * directorio como canal (Windows) se ignora: ahí el renombrado ya es lo
+     * más que se puede pedir.
+     */
+    static void forzarDirectorio(Path directorio) {
+        if (directorio == null) return;
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // Sin soporte en esta plataforma
+        }
+    }
+}
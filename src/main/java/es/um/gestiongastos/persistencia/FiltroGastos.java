@@ -0,0 +1,38 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Persona;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Criterios de búsqueda de gastos. Los campos a null no filtran.
+ * Las fechas son inclusivas.
+ */
+public class FiltroGastos {
+    /** Cuentas en las que se busca (obligatorio). */
+    public List<GastosCompartidos> cuentas;
+    public LocalDate desde;
+    public LocalDate hasta;
+    /** Nombre exacto de la categoría. */
+    public String categoria;
+    public Persona pagador;
+
+    public FiltroGastos(Collection<GastosCompartidos> cuentas) {
+        this.cuentas = new ArrayList<>(cuentas);
+    }
+
+    /**
+     * Evaluación en memoria del filtro (sin mirar la cuenta).
+     */
+    public boolean acepta(Gasto g) {
+        if (desde != null && g.getFecha().isBefore(desde)) return false;
+        if (hasta != null && g.getFecha().isAfter(hasta)) return false;
+        if (categoria != null && !g.getCategoria().getNombre().equals(categoria)) return false;
+        return pagador == null || pagador.equals(g.getPagador());
+    }
+}
@@ -0,0 +1,11 @@
+package es.um.gestiongastos.persistencia;
+
+/**
+ * Codificación de los ficheros de la instantánea.
+ */
+public enum FormatoInstantanea {
+    /** Tablas en JSON legible (también sirve para exportar o intercambiar datos). */
+    JSON,
+    /** Tablas en binario compacto: importes como enteros escalados, fechas como día, ids de 128 bits. */
+    BINARIO
+}
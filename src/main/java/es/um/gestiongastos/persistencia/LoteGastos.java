@@ -0,0 +1,26 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Cambios de gastos que se guardan juntos (ver {@link Repositorio#guardarLote}).
+ * Cada gasto aparece como mucho en una de las tres listas, con su estado final
+ * ya aplicado al modelo.
+ */
+public class LoteGastos {
+    public final List<Gasto> altas = new ArrayList<>();
+    public final List<Gasto> modificados = new ArrayList<>();
+    public final List<Gasto> bajas = new ArrayList<>();
+    /** Cuentas cuyos saldos han cambiado (también las de origen de los gastos movidos). */
+    public final Set<GastosCompartidos> cuentas = new LinkedHashSet<>();
+
+    public boolean estaVacio() {
+        return altas.isEmpty() && modificados.isEmpty() && bajas.isEmpty();
+    }
+}
@@ -0,0 +1,11 @@
+package es.um.gestiongastos.persistencia;
+
+/**
+ * Dónde se guardan los datos.
+ */
+public enum MotorPersistencia {
+    /** Ficheros (instantánea + diario de cambios). Lo normal en una instalación pequeña. */
+    JSON,
+    /** Base de datos SQL embebida en un fichero (H2), con índices para las búsquedas. */
+    SQL
+}
@@ -0,0 +1,47 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Notificacion;
+
+/**
+ * Una línea del diario de cambios: un único cambio sobre el modelo.
+ * Solo se rellena el campo que corresponde a su tipo.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistroCambio {
+
+    public enum Tipo {
+        USUARIO_REGISTRADO,
+        CATEGORIA_REGISTRADA,
+        CUENTA_CREADA,
+        GASTO_AGREGADO,
+        GASTO_MODIFICADO,
+        GASTO_ELIMINADO,
+        PAGO_REGISTRADO,
+        PAGO_ELIMINADO,
+        PORCENTAJES_CAMBIADOS,
+        ALERTA_AGREGADA,
+        ALERTA_ELIMINADA,
+        NOTIFICACION_AGREGADA
+    }
+
+    public Tipo tipo;
+    // Usuario afectado en alertas y notificaciones
+    public String personaId;
+    public RegistroPersona persona;
+    public Categoria categoria;
+    // En PORCENTAJES_CAMBIADOS solo lleva el id y la versión nueva
+    public RegistroCuenta cuenta;
+    public RegistroGasto gasto;
+    public RegistroPago pago;
+    public Alerta alerta;
+    public Notificacion notificacion;
+
+    public RegistroCambio() {}
+
+    public RegistroCambio(Tipo tipo) {
+        this.tipo = tipo;
+    }
+}
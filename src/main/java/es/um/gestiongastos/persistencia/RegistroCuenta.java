@@ -0,0 +1,72 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import es.um.gestiongastos.model.GastosCompartidos;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Datos planos de una cuenta compartida. Los participantes se guardan por id.
+ * Las versiones de porcentajes (null si no hay) van en orden de fecha.
+ */
+public class RegistroCuenta {
+    public String id;
+    public String nombre;
+    public boolean porcentajesFijos;
+    public List<RegistroParticipante> participantes;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<RegistroVersion> versiones;
+
+    public static RegistroCuenta desde(GastosCompartidos c) {
+        RegistroCuenta r = new RegistroCuenta();
+        r.id = c.getId();
+        r.nombre = c.getNombre();
+        r.porcentajesFijos = c.isPorcentajesFijos();
+        r.participantes = new ArrayList<>();
+        for (GastosCompartidos.Participante p : c.getParticipantes()) {
+            RegistroParticipante rp = new RegistroParticipante();
+            rp.personaId = p.getPersona().getId();
+            rp.porcentaje = p.getPorcentaje();
+            rp.saldo = p.getSaldo();
+            r.participantes.add(rp);
+        }
+        List<GastosCompartidos.VersionPorcentajes> versiones = c.getVersiones();
+        if (!versiones.isEmpty()) {
+            r.versiones = new ArrayList<>(versiones.size());
+            for (GastosCompartidos.VersionPorcentajes v : versiones) {
+                r.versiones.add(RegistroVersion.desde(c, v));
+            }
+        }
+        return r;
+    }
+
+    public static class RegistroParticipante {
+        public String personaId;
+        public double porcentaje;
+        public BigDecimal saldo;
+    }
+
+    /** Porcentajes que rigen desde una fecha, por id de participante. */
+    public static class RegistroVersion {
+        @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+        public LocalDate desde;
+        public Map<String, Double> porcentajes;
+
+        public static RegistroVersion desde(GastosCompartidos c, GastosCompartidos.VersionPorcentajes v) {
+            RegistroVersion r = new RegistroVersion();
+            r.desde = v.getDesde();
+            r.porcentajes = new LinkedHashMap<>();
+            List<GastosCompartidos.Participante> participantes = c.getParticipantes();
+            for (int i = 0; i < participantes.size(); i++) {
+                r.porcentajes.put(participantes.get(i).getPersona().getId(), v.getPorcentaje(i));
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import es.um.gestiongastos.model.Gasto;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Datos planos de un gasto. Cuenta, pagador y categoría se referencian por clave.
+ * Dentro de un segmento de cuenta el id de cuenta se omite (es el de la propia cuenta).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistroGasto {
+    public String id;
+    public String cuentaId;
+    public BigDecimal importe;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+    public LocalDate fecha;
+    public String categoria;
+    public String pagadorId;
+    public String descripcion;
+
+    public static RegistroGasto desde(Gasto g) {
+        RegistroGasto r = new RegistroGasto();
+        r.id = g.getId();
+        r.cuentaId = g.getCuenta().getId();
+        r.importe = g.getImporte();
+        r.fecha = g.getFecha();
+        r.categoria = g.getCategoria().getNombre();
+        r.pagadorId = g.getPagador().getId();
+        r.descripcion = g.getDescripcion();
+        return r;
+    }
+}
@@ -0,0 +1,34 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import es.um.gestiongastos.model.Pago;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Datos planos de un pago entre participantes. Cuenta, deudor y acreedor se
+ * referencian por id. Dentro de un segmento de cuenta el id de cuenta se omite.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class RegistroPago {
+    public String id;
+    public String cuentaId;
+    public String deudorId;
+    public String acreedorId;
+    public BigDecimal importe;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd")
+    public LocalDate fecha;
+
+    public static RegistroPago desde(Pago p) {
+        RegistroPago r = new RegistroPago();
+        r.id = p.getId();
+        r.cuentaId = p.getCuenta().getId();
+        r.deudorId = p.getDeudor().getId();
+        r.acreedorId = p.getAcreedor().getId();
+        r.importe = p.getImporte();
+        r.fecha = p.getFecha();
+        return r;
+    }
+}
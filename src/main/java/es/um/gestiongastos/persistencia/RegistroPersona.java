@@ -0,0 +1,22 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Persona;
+
+/**
+ * Datos planos de un usuario tal y como se guardan en el diario de cambios.
+ */
+public class RegistroPersona {
+    public String id;
+    public String nombreCompleto;
+    public String nombreUsuario;
+    public String contraseña;
+
+    public static RegistroPersona desde(Persona p) {
+        RegistroPersona r = new RegistroPersona();
+        r.id = p.getId();
+        r.nombreCompleto = p.getNombreCompleto();
+        r.nombreUsuario = p.getNombreUsuario();
+        r.contraseña = p.getContraseña();
+        return r;
+    }
+}
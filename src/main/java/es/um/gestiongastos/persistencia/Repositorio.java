@@ -0,0 +1,101 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Contrato de almacenamiento que usa el controlador. Hay dos implementaciones:
+ * {@link RepositorioJSON} (ficheros, por defecto) y {@link RepositorioSQL}
+ * (base de datos embebida). {@link FactoriaRepositorio} elige una al arrancar.
+ *
+ * El modelo vive en memoria; los métodos de cambio persisten cada operación
+ * concreta después de que el controlador la haya aplicado sobre los objetos.
+ */
+public interface Repositorio {
+
+    // --- USUARIOS ---
+
+    List<Persona> getUsuarios();
+
+    /** Busca un usuario por su nick. Retorna null si no existe. */
+    Persona buscarUsuarioPorNombre(String nombre);
+
+    void registrarUsuario(Persona persona);
+
+    // --- CUENTAS Y GASTOS ---
+
+    void registrarCuenta(GastosCompartidos cuenta);
+
+    void registrarGasto(Gasto gasto);
+
+    void actualizarGasto(Gasto gasto);
+
+    void eliminarGasto(Gasto gasto);
+
+    /**
+     * Guarda de una vez las altas, modificaciones y bajas de un lote (ya
+     * aplicadas al modelo): una sola escritura del diario o una sola
+     * transacción, en vez de una por gasto.
+     */
+    void guardarLote(LoteGastos lote);
+
+    /** Guarda un pago entre participantes (ya aplicado a los saldos de su cuenta). */
+    void registrarPago(Pago pago);
+
+    void eliminarPago(Pago pago);
+
+    /**
+     * Guarda la versión de porcentajes de la cuenta que empieza en esa fecha
+     * (ya aplicada, con los saldos recalculados).
+     */
+    void registrarVersionPorcentajes(GastosCompartidos cuenta, LocalDate desde);
+
+    /**
+     * Guarda los datos propios de la cuenta (saldos), por ejemplo tras
+     * repararlos con {@link GastosCompartidos#recalcularSaldos()}.
+     */
+    void actualizarCuenta(GastosCompartidos cuenta);
+
+    /**
+     * Gastos que cumplen el filtro. Cada implementación lo resuelve a su
+     * manera (en el SQL, con una consulta sobre los índices).
+     */
+    List<Gasto> buscarGastos(FiltroGastos filtro);
+
+    // --- ALERTAS Y NOTIFICACIONES ---
+
+    void registrarAlerta(Persona persona, Alerta alerta);
+
+    void eliminarAlerta(Persona persona, Alerta alerta);
+
+    void registrarNotificacion(Persona persona, Notificacion notificacion);
+
+    // --- CATEGORÍAS ---
+
+    List<Categoria> getCategorias();
+
+    Categoria buscarCategoriaPorNombre(String nombre);
+
+    void registrarCategoria(Categoria categoria);
+
+    // --- EXPORTACIÓN ---
+
+    /**
+     * Escribe todos los datos (usuarios, cuentas, gastos y categorías) en un
+     * único JSON legible, sea cual sea el almacenamiento. Sirve de copia y de
+     * formato de intercambio: {@link RepositorioJSON} lo carga como fichero único.
+     */
+    void exportarJSON(File destino) throws IOException;
+
+    // --- CICLO DE VIDA ---
+
+    /** Vuelve cuando todo lo registrado hasta ahora está guardado. */
+    void esperarVolcado();
+
+    /** Guarda lo pendiente y libera los recursos. */
+    void cerrar();
+}
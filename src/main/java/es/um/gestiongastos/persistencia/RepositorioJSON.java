@@ -3,33 +3,79 @@ package es.um.gestiongastos.persistencia;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.core.type.TypeReference;
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.Pago;
 import es.um.gestiongastos.model.Persona;
 import es.um.gestiongastos.model.Categoria;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
 
-public class RepositorioJSON {
+public class RepositorioJSON implements Repositorio {
 
+    private static final String DIRECTORIO_DATOS = "datos";
+    // Instantánea en fichero único de versiones anteriores: solo se lee para migrar
     private static final String FICHERO_USUARIOS = "datos_usuarios.json";
     private static final String FICHERO_CATEGORIAS = "datos_categorias.json";
+    private static final String FICHERO_CAMBIOS = "datos_cambios.jsonl";
     
     private final ObjectMapper mapper;
     
-    // CACHÉ EN MEMORIA (Para no leer el fichero 100 veces por segundo)
+    // Cambios posteriores a la última instantánea (una línea por cambio)
+    private final DiarioCambios diario;
+    private final CompactadorInstantanea compactador;
+    private final AlmacenSegmentos almacen;
+    
+    // CACHÉ EN MEMORIA (Para no leer el fichero 100 veces por segundo).
+    // Concurrentes porque el compactador los recorre desde su propio hilo.
     private Map<String, Persona> personas;
     private Map<String, Categoria> categorias;
 
+    // Tope de notificaciones de cada usuario (número y días)
+    private final int maxNotificaciones;
+    private final int diasRetencionNotificaciones;
+
     public RepositorioJSON() {
+        this(progresoPorConsola());
+    }
+
+    /**
+     * @param progresoCarga recibe la fracción cargada (0..1) durante el arranque,
+     *                      por ejemplo para una pantalla de carga
+     */
+    public RepositorioJSON(DoubleConsumer progresoCarga) {
         mapper = new ObjectMapper();
         mapper.registerModule(new JavaTimeModule());
         
-        this.personas = new HashMap<>();
-        this.categorias = new HashMap<>();
+        this.personas = new ConcurrentHashMap<>();
+        this.categorias = new ConcurrentHashMap<>();
+        this.maxNotificaciones = ConfiguracionPersistencia.maxNotificaciones();
+        this.diasRetencionNotificaciones = ConfiguracionPersistencia.diasRetencionNotificaciones();
+        this.almacen = new AlmacenSegmentos(Path.of(DIRECTORIO_DATOS), mapper,
+                ConfiguracionPersistencia.formatoInstantanea(), categorias);
+        this.diario = new DiarioCambios(new File(FICHERO_CAMBIOS), mapper,
+                ConfiguracionPersistencia.durabilidad(),
+                ConfiguracionPersistencia.ventanaVolcado(),
+                ConfiguracionPersistencia.maxCambiosPorVolcado());
         
-        // Cargar datos al arrancar la aplicación
-        cargarTodo();
+        // Cargar datos al arrancar la aplicación (instantánea + diario)
+        cargarTodo(progresoCarga);
+
+        this.compactador = new CompactadorInstantanea(diario, this::compactar,
+                ConfiguracionPersistencia.umbralCompactacionBytes(),
+                ConfiguracionPersistencia.umbralCompactacionEdad());
     }
 
     // --- MÉTODOS QUE LLAMA EL CONTROLADOR ---
@@ -37,6 +83,7 @@ public class RepositorioJSON {
     /**
      * Devuelve todos los usuarios (para listados o login).
      */
+    @Override
     public List<Persona> getUsuarios() {
         return new ArrayList<>(personas.values());
     }
@@ -45,75 +92,318 @@ public class RepositorioJSON {
      * Busca un usuario por su nick.
      * Retorna null si no existe.
      */
+    @Override
     public Persona buscarUsuarioPorNombre(String nombre) {
         if (nombre == null) return null;
         return personas.get(nombre); // Búsqueda rápida en memoria
     }
 
     /**
-     * Registra un nuevo usuario y guarda en disco inmediatamente.
+     * Registra un nuevo usuario y lo anota en el diario de cambios.
      */
+    @Override
     public void registrarUsuario(Persona persona) {
+        persona.limitarNotificaciones(maxNotificaciones, diasRetencionNotificaciones);
         personas.put(persona.getNombreUsuario(), persona);
-        guardarUsuarios(); 
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.USUARIO_REGISTRADO);
+        r.persona = RegistroPersona.desde(persona);
+        anotar(r);
+    }
+
+    /**
+     * Barrera de volcado: vuelve cuando todos los cambios anotados hasta ahora
+     * están escritos en el diario. Útil tras operaciones masivas (importación).
+     */
+    @Override
+    public void esperarVolcado() {
+        try {
+            diario.esperarVolcado();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Exporta todos los datos (tablas de usuarios, cuentas, gastos y
+     * categorías) a un único fichero JSON legible, sea cual sea el formato
+     * de la instantánea.
+     */
+    @Override
+    public void exportarJSON(File destino) throws IOException {
+        AlmacenSegmentos.exportar(mapper, new ArrayList<>(personas.values()), new ArrayList<>(categorias.values()), destino);
+    }
+
+    /**
+     * Vuelca lo pendiente y cierra el diario. Se registra como gancho de apagado.
+     */
+    @Override
+    public void cerrar() {
+        compactador.detener();
+        try {
+            diario.cerrar();
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error grave: No se ha podido cerrar el diario de cambios.");
+        }
+    }
+
+    // --- CAMBIOS INCREMENTALES (DIARIO) ---
+
+    @Override
+    public void registrarCuenta(GastosCompartidos cuenta) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.CUENTA_CREADA);
+        r.cuenta = RegistroCuenta.desde(cuenta);
+        anotar(r);
+    }
+
+    /**
+     * La cuenta ya está marcada como modificada: sus saldos se escriben en la
+     * siguiente compactación.
+     */
+    @Override
+    public void actualizarCuenta(GastosCompartidos cuenta) {
+        cuenta.marcarModificada();
+        compactador.revisarTrasCambio();
+    }
+
+    @Override
+    public void registrarGasto(Gasto gasto) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_AGREGADO);
+        r.gasto = RegistroGasto.desde(gasto);
+        anotar(r);
+    }
+
+    @Override
+    public void actualizarGasto(Gasto gasto) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_MODIFICADO);
+        r.gasto = RegistroGasto.desde(gasto);
+        anotar(r);
+    }
+
+    @Override
+    public void eliminarGasto(Gasto gasto) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_ELIMINADO);
+        r.gasto = new RegistroGasto();
+        r.gasto.id = gasto.getId();
+        r.gasto.cuentaId = gasto.getCuenta().getId();
+        anotar(r);
+    }
+
+    @Override
+    public void guardarLote(LoteGastos lote) {
+        if (lote.estaVacio()) return;
+        List<RegistroCambio> registros = new ArrayList<>(lote.altas.size() + lote.modificados.size() + lote.bajas.size());
+        for (Gasto g : lote.altas) {
+            RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_AGREGADO);
+            r.gasto = RegistroGasto.desde(g);
+            registros.add(r);
+        }
+        for (Gasto g : lote.modificados) {
+            RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_MODIFICADO);
+            r.gasto = RegistroGasto.desde(g);
+            registros.add(r);
+        }
+        for (Gasto g : lote.bajas) {
+            RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_ELIMINADO);
+            r.gasto = new RegistroGasto();
+            r.gasto.id = g.getId();
+            r.gasto.cuentaId = g.getCuenta().getId();
+            registros.add(r);
+        }
+        try {
+            diario.anotar(registros);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.err.println("Error grave: No se ha podido registrar un lote de " + registros.size() + " cambios.");
+            return;
+        }
+        compactador.revisarTrasCambio();
+    }
+
+    @Override
+    public void registrarPago(Pago pago) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.PAGO_REGISTRADO);
+        r.pago = RegistroPago.desde(pago);
+        anotar(r);
+    }
+
+    @Override
+    public void eliminarPago(Pago pago) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.PAGO_ELIMINADO);
+        r.pago = new RegistroPago();
+        r.pago.id = pago.getId();
+        r.pago.cuentaId = pago.getCuenta().getId();
+        anotar(r);
+    }
+
+    @Override
+    public void registrarVersionPorcentajes(GastosCompartidos cuenta, LocalDate desde) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.PORCENTAJES_CAMBIADOS);
+        r.cuenta = new RegistroCuenta();
+        r.cuenta.id = cuenta.getId();
+        r.cuenta.versiones = new ArrayList<>();
+        for (GastosCompartidos.VersionPorcentajes v : cuenta.getVersiones()) {
+            if (v.getDesde().equals(desde)) r.cuenta.versiones.add(RegistroCuenta.RegistroVersion.desde(cuenta, v));
+        }
+        anotar(r);
     }
 
     /**
-     * Se llama cuando modificamos un usuario (añadir gasto, cuenta, alerta...).
-     * Fuerza el volcado a disco de los cambios.
+     * Resuelve en memoria: el rango de fechas con el índice por fecha de cada
+     * cuenta y el resto del filtro sobre los gastos de ese rango. Devuelve
+     * los gastos de cada cuenta ordenados por fecha.
      */
-    public void actualizarUsuario(Persona persona) {
-        // Como en Java los objetos van por referencia, el objeto 'persona'
-        // ya está actualizado dentro del mapa 'cacheUsuarios'.
-        // Solo necesitamos guardar el estado actual del mapa en el fichero.
-        guardarUsuarios();
+    @Override
+    public List<Gasto> buscarGastos(FiltroGastos filtro) {
+        List<Gasto> resultado = new ArrayList<>();
+        boolean soloFechas = filtro.categoria == null && filtro.pagador == null;
+        for (GastosCompartidos cuenta : filtro.cuentas) {
+            List<Gasto> enRango = cuenta.getGastosEntre(filtro.desde, filtro.hasta);
+            if (soloFechas) {
+                resultado.addAll(enRango);
+                continue;
+            }
+            for (Gasto g : enRango) {
+                if (filtro.acepta(g)) resultado.add(g);
+            }
+        }
+        return resultado;
+    }
+
+    @Override
+    public void registrarAlerta(Persona persona, Alerta alerta) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.ALERTA_AGREGADA);
+        r.personaId = persona.getId();
+        r.alerta = alerta;
+        anotar(r);
+    }
+
+    @Override
+    public void eliminarAlerta(Persona persona, Alerta alerta) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.ALERTA_ELIMINADA);
+        r.personaId = persona.getId();
+        r.alerta = alerta;
+        anotar(r);
+    }
+
+    @Override
+    public void registrarNotificacion(Persona persona, Notificacion notificacion) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.NOTIFICACION_AGREGADA);
+        r.personaId = persona.getId();
+        r.notificacion = notificacion;
+        anotar(r);
     }
 
     // --- GESTIÓN DE CATEGORÍAS ---
 
+    @Override
     public List<Categoria> getCategorias() {
         return new ArrayList<>(categorias.values());
     }
 
+    @Override
     public Categoria buscarCategoriaPorNombre(String nombre) {
         if (nombre == null) return null;
         return categorias.get(nombre.toLowerCase());
     }
 
+    @Override
     public void registrarCategoria(Categoria categoria) {
         categorias.put(categoria.getNombre().toLowerCase(), categoria);
-        guardarCategorias();
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.CATEGORIA_REGISTRADA);
+        r.categoria = categoria;
+        anotar(r);
     }
 
     // --- MÉTODOS PRIVADOS DE PERSISTENCIA (Lectura/Escritura Real) ---
 
-    private void guardarUsuarios() {
+    private void anotar(RegistroCambio registro) {
         try {
-            // Convertimos el Mapa a Lista para guardarlo
-            List<Persona> listaAGuardar = new ArrayList<>(personas.values());
-            
-            mapper.writerWithDefaultPrettyPrinter()
-                  .writeValue(new File(FICHERO_USUARIOS), listaAGuardar);
-                  
+            diario.anotar(registro);
         } catch (IOException e) {
             e.printStackTrace();
-            System.err.println("Error grave: No se han podido guardar los usuarios.");
+            System.err.println("Error grave: No se ha podido registrar el cambio " + registro.tipo + ".");
+            return;
         }
+        compactador.revisarTrasCambio();
     }
-    
-    private void guardarCategorias() {
+
+    /**
+     * Pliega el diario en una instantánea nueva. Se ejecuta en el hilo del compactador:
+     * 1. Rota el diario (los cambios que lleguen desde ahora van a un segmento nuevo).
+     * 2. Reescribe el fichero de cada usuario/cuenta modificado y el de categorías,
+     *    cada uno de forma atómica (temporal + fsync + renombrado).
+     * 3. Pasa al archivo las cuentas que llevan tiempo sin gastos.
+     * 4. Borra el segmento rotado (y el fichero único antiguo si veníamos de él).
+     * Un cambio que se cuele a medias en la serialización tiene su registro en el
+     * segmento nuevo, y al ser la reproducción idempotente se corrige al cargar.
+     */
+    private void compactar() {
         try {
-            List<Categoria> listaAGuardar = new ArrayList<>(categorias.values());
-            
-            mapper.writerWithDefaultPrettyPrinter()
-                  .writeValue(new File(FICHERO_CATEGORIAS), listaAGuardar);
-                  
+            diario.rotar();
+
+            byte[] cats = mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(new ArrayList<>(categorias.values()));
+            FicheroAtomico.escribir(Path.of(FICHERO_CATEGORIAS), cats);
+            int escritos = guardarSegmentos();
+            int archivadas = almacen.archivarInactivas(new ArrayList<>(personas.values()),
+                    LocalDate.now().minusDays(ConfiguracionPersistencia.diasInactividadArchivo()));
+
+            diario.borrarRotado();
+            migrarFicheroUnico();
+            System.out.println(">> [Repositorio] Instantánea compactada (" + escritos + " ficheros reescritos"
+                    + (archivadas > 0 ? ", " + archivadas + " cuentas archivadas" : "") + ").");
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int guardarSegmentos() throws IOException {
+        return almacen.guardar(new ArrayList<>(personas.values()));
+    }
+
+    /**
+     * Lee el formato más antiguo (lista de Persona con el grafo anidado) en
+     * streaming; si el lector en streaming no reconoce algo, se usa Jackson
+     * completo como antes.
+     */
+    private void cargarListaAntigua(File fUser, DoubleConsumer progreso) throws IOException {
+        try {
+            personas.putAll(new CargadorLegado(mapper, categorias).cargar(fUser, progreso));
+        } catch (IOException e) {
+            System.err.println("Aviso: " + e.getMessage() + "; se usa el lector completo.");
+            List<Persona> lista = mapper.readValue(fUser, new TypeReference<List<Persona>>(){});
+            for (Persona p : lista) {
+                personas.put(p.getNombreUsuario(), p);
+            }
         }
     }
 
-    private void cargarTodo() {
+    /**
+     * Progreso de carga por consola, de 10 en 10 %.
+     */
+    private static DoubleConsumer progresoPorConsola() {
+        AtomicInteger ultimo = new AtomicInteger();
+        return fraccion -> {
+            int porcentaje = (int) (fraccion * 100) / 10 * 10;
+            int anterior = ultimo.get();
+            if (porcentaje > anterior && ultimo.compareAndSet(anterior, porcentaje)) {
+                System.out.println(">> [Repositorio] Cargando datos... " + porcentaje + "%");
+            }
+        };
+    }
+
+    /**
+     * Tras la primera compactación en el formato repartido, el fichero único
+     * ya no hace falta; se conserva renombrado como copia de seguridad.
+     */
+    private void migrarFicheroUnico() throws IOException {
+        Path antiguo = Path.of(FICHERO_USUARIOS);
+        if (Files.exists(antiguo) && almacen.existe()) {
+            Files.move(antiguo, antiguo.resolveSibling(FICHERO_USUARIOS + ".migrado"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void cargarTodo(DoubleConsumer progreso) {
         // 1. Cargar Categorías
         File fCat = new File(FICHERO_CATEGORIAS);
         if (fCat.exists()) {
@@ -127,17 +417,40 @@ public class RepositorioJSON {
             }
         }
 
-        // 2. Cargar Usuarios
+        // 2. Cargar Usuarios: ficheros por usuario/cuenta o, si venimos de una
+        //    versión anterior, el fichero único (por segmentos o lista de Persona)
         File fUser = new File(FICHERO_USUARIOS);
-        if (fUser.exists()) {
+        if (almacen.existe()) {
+            try {
+                almacen.cargar(personas, categorias, progreso);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else if (fUser.exists()) {
             try {
-                List<Persona> lista = mapper.readValue(fUser, new TypeReference<List<Persona>>(){});
-                for (Persona p : lista) {
-                    personas.put(p.getNombreUsuario(), p);
+                if (almacen.esSegmentada(fUser)) {
+                    almacen.cargarFicheroUnico(fUser, personas, categorias);
+                } else {
+                    cargarListaAntigua(fUser, progreso);
                 }
             } catch (IOException e) { 
                 e.printStackTrace(); 
             }
         }
+
+        // 3. Reaplicar los cambios anotados después de la instantánea
+        try {
+            ReproductorCambios reproductor = new ReproductorCambios(personas, categorias, almacen.archivo());
+            for (RegistroCambio r : diario.leer()) {
+                reproductor.aplicar(r);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        // 4. Con todo cargado, el tope de notificaciones (lo que sobre se descarta)
+        for (Persona p : personas.values()) {
+            p.limitarNotificaciones(maxNotificaciones, diasRetencionNotificaciones);
+        }
     }
 }
@@ -0,0 +1,740 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.*;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Repositorio sobre una base de datos SQL embebida (H2 en un fichero por
+ * defecto). Cada tabla es una de las tablas normalizadas de la instantánea
+ * (usuarios, cuentas, participantes, gastos, categorías) más pagos,
+ * versiones de porcentajes, alertas y notificaciones. Los gastos tienen índices por fecha, categoría, cuenta y
+ * pagador, y {@link #buscarGastos} resuelve los filtros con una consulta.
+ *
+ * Al arrancar se carga todo en memoria (el controlador trabaja sobre el
+ * modelo) y cada cambio se escribe en su propia transacción.
+ * Los importes se guardan en céntimos (DECIMAL con 2 decimales).
+ */
+public class RepositorioSQL implements Repositorio {
+
+    private static final String[] ESQUEMA = {
+        "CREATE TABLE IF NOT EXISTS usuarios (" +
+            "id VARCHAR(64) PRIMARY KEY, nombre_completo VARCHAR(255) NOT NULL, " +
+            "nombre_usuario VARCHAR(255) NOT NULL UNIQUE, contrasena VARCHAR(255) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS categorias (" +
+            "clave VARCHAR(255) PRIMARY KEY, nombre VARCHAR(255) NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS cuentas (" +
+            "id VARCHAR(64) PRIMARY KEY, nombre VARCHAR(255) NOT NULL, porcentajes_fijos BOOLEAN NOT NULL, " +
+            "orden BIGINT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS participantes (" +
+            "cuenta_id VARCHAR(64) NOT NULL REFERENCES cuentas(id), usuario_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), " +
+            "orden INT NOT NULL, porcentaje DOUBLE PRECISION NOT NULL, saldo DECIMAL(19,2) NOT NULL, " +
+            "PRIMARY KEY (cuenta_id, usuario_id))",
+        "CREATE TABLE IF NOT EXISTS versiones_porcentajes (" +
+            "cuenta_id VARCHAR(64) NOT NULL REFERENCES cuentas(id), desde DATE NOT NULL, " +
+            "usuario_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), porcentaje DOUBLE PRECISION NOT NULL, " +
+            "PRIMARY KEY (cuenta_id, desde, usuario_id))",
+        "CREATE TABLE IF NOT EXISTS gastos (" +
+            "id VARCHAR(64) PRIMARY KEY, cuenta_id VARCHAR(64) NOT NULL REFERENCES cuentas(id), " +
+            "importe DECIMAL(19,2) NOT NULL, fecha DATE NOT NULL, categoria VARCHAR(255) NOT NULL, " +
+            "pagador_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), descripcion VARCHAR(2000), orden BIGINT NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_gastos_fecha ON gastos(fecha)",
+        "CREATE INDEX IF NOT EXISTS idx_gastos_categoria ON gastos(categoria, fecha)",
+        "CREATE INDEX IF NOT EXISTS idx_gastos_cuenta ON gastos(cuenta_id, fecha)",
+        "CREATE INDEX IF NOT EXISTS idx_gastos_pagador ON gastos(pagador_id, fecha)",
+        "CREATE TABLE IF NOT EXISTS pagos (" +
+            "id VARCHAR(64) PRIMARY KEY, cuenta_id VARCHAR(64) NOT NULL REFERENCES cuentas(id), " +
+            "deudor_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), acreedor_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), " +
+            "importe DECIMAL(19,2) NOT NULL, fecha DATE NOT NULL, orden BIGINT NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS alertas (" +
+            "id VARCHAR(64) PRIMARY KEY, usuario_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), " +
+            "orden BIGINT NOT NULL, datos CLOB NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS notificaciones (" +
+            "id VARCHAR(64) PRIMARY KEY, usuario_id VARCHAR(64) NOT NULL REFERENCES usuarios(id), " +
+            "fecha_hora TIMESTAMP NOT NULL, mensaje VARCHAR(2000), alerta_id VARCHAR(64), nivel INT DEFAULT 0 NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS idx_notificaciones_usuario ON notificaciones(usuario_id, fecha_hora)"
+    };
+
+    private final Connection conexion;
+    private final ObjectMapper mapper;
+
+    // CACHÉ EN MEMORIA del modelo cargado
+    private final Map<String, Persona> personas = new ConcurrentHashMap<>();
+    private final Map<String, Categoria> categorias = new ConcurrentHashMap<>();
+    private final Map<String, Gasto> gastosPorId = new ConcurrentHashMap<>();
+
+    // Tope de notificaciones de cada usuario (número y días), igual en memoria y en la tabla
+    private final int maxNotificaciones;
+    private final int diasRetencionNotificaciones;
+
+    // Orden de inserción (las listas del modelo conservan el orden en que se añadieron)
+    private long siguienteOrden;
+
+    public RepositorioSQL(String url) {
+        this(url, ConfiguracionPersistencia.maxNotificaciones(),
+                ConfiguracionPersistencia.diasRetencionNotificaciones());
+    }
+
+    /** Con otro tope de notificaciones por usuario (en las pruebas). */
+    RepositorioSQL(String url, int maxNotificaciones, int diasRetencionNotificaciones) {
+        this.maxNotificaciones = Math.max(1, maxNotificaciones);
+        this.diasRetencionNotificaciones = Math.max(1, diasRetencionNotificaciones);
+        mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        try {
+            conexion = DriverManager.getConnection(url);
+            try (Statement st = conexion.createStatement()) {
+                for (String sql : ESQUEMA) {
+                    st.execute(sql);
+                }
+            }
+            cargarTodo();
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+            throw new IllegalStateException("No se ha podido abrir la base de datos " + url, e);
+        }
+    }
+
+    // --- USUARIOS ---
+
+    @Override
+    public List<Persona> getUsuarios() {
+        return new ArrayList<>(personas.values());
+    }
+
+    @Override
+    public Persona buscarUsuarioPorNombre(String nombre) {
+        if (nombre == null) return null;
+        return personas.get(nombre);
+    }
+
+    @Override
+    public void registrarUsuario(Persona persona) {
+        persona.limitarNotificaciones(maxNotificaciones, diasRetencionNotificaciones);
+        ejecutar("registrar el usuario " + persona.getNombreUsuario(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO usuarios (id, nombre_completo, nombre_usuario, contrasena) VALUES (?, ?, ?, ?)")) {
+                ps.setString(1, persona.getId());
+                ps.setString(2, persona.getNombreCompleto());
+                ps.setString(3, persona.getNombreUsuario());
+                ps.setString(4, persona.getContraseña());
+                ps.executeUpdate();
+            }
+        });
+        // La caché solo cambia si la transacción se ha confirmado
+        personas.put(persona.getNombreUsuario(), persona);
+    }
+
+    // --- CUENTAS Y GASTOS ---
+
+    @Override
+    public void registrarCuenta(GastosCompartidos cuenta) {
+        ejecutar("registrar la cuenta " + cuenta.getNombre(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO cuentas (id, nombre, porcentajes_fijos, orden) VALUES (?, ?, ?, ?)")) {
+                ps.setString(1, cuenta.getId());
+                ps.setString(2, cuenta.getNombre());
+                ps.setBoolean(3, cuenta.isPorcentajesFijos());
+                ps.setLong(4, siguienteOrden++);
+                ps.executeUpdate();
+            }
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO participantes (cuenta_id, usuario_id, orden, porcentaje, saldo) VALUES (?, ?, ?, ?, ?)")) {
+                int orden = 0;
+                for (GastosCompartidos.Participante p : cuenta.getParticipantes()) {
+                    ps.setString(1, cuenta.getId());
+                    ps.setString(2, p.getPersona().getId());
+                    ps.setInt(3, orden++);
+                    ps.setDouble(4, p.getPorcentaje());
+                    ps.setBigDecimal(5, centimos(p.getSaldo()));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    @Override
+    public void actualizarCuenta(GastosCompartidos cuenta) {
+        ejecutar("actualizar la cuenta " + cuenta.getNombre(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement("UPDATE cuentas SET nombre = ? WHERE id = ?")) {
+                ps.setString(1, cuenta.getNombre());
+                ps.setString(2, cuenta.getId());
+                ps.executeUpdate();
+            }
+            actualizarSaldos(cuenta);
+        });
+    }
+
+    @Override
+    public void registrarGasto(Gasto gasto) {
+        ejecutar("registrar el gasto " + gasto.getId(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO gastos (id, cuenta_id, importe, fecha, categoria, pagador_id, descripcion, orden) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                ps.setString(1, gasto.getId());
+                ps.setString(2, gasto.getCuenta().getId());
+                rellenarGasto(ps, 3, gasto);
+                ps.executeUpdate();
+            }
+            insertarCategoria(gasto.getCategoria().getNombre());
+            actualizarSaldos(gasto.getCuenta());
+        });
+        gastosPorId.put(gasto.getId(), gasto);
+    }
+
+    @Override
+    public void actualizarGasto(Gasto gasto) {
+        ejecutar("actualizar el gasto " + gasto.getId(), () -> {
+            String cuentaAnterior = null;
+            try (PreparedStatement ps = conexion.prepareStatement("SELECT cuenta_id FROM gastos WHERE id = ?")) {
+                ps.setString(1, gasto.getId());
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) cuentaAnterior = rs.getString(1);
+                }
+            }
+            // Se vuelve a poner al final (en memoria se saca y se vuelve a añadir)
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "UPDATE gastos SET importe = ?, fecha = ?, categoria = ?, pagador_id = ?, descripcion = ?, orden = ?, " +
+                    "cuenta_id = ? WHERE id = ?")) {
+                rellenarGasto(ps, 1, gasto);
+                ps.setString(7, gasto.getCuenta().getId());
+                ps.setString(8, gasto.getId());
+                ps.executeUpdate();
+            }
+            insertarCategoria(gasto.getCategoria().getNombre());
+            actualizarSaldos(gasto.getCuenta());
+            if (cuentaAnterior != null && !cuentaAnterior.equals(gasto.getCuenta().getId())) {
+                actualizarSaldos(buscarCuenta(cuentaAnterior));
+            }
+        });
+    }
+
+    @Override
+    public void eliminarGasto(Gasto gasto) {
+        ejecutar("eliminar el gasto " + gasto.getId(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM gastos WHERE id = ?")) {
+                ps.setString(1, gasto.getId());
+                ps.executeUpdate();
+            }
+            actualizarSaldos(gasto.getCuenta());
+        });
+        gastosPorId.remove(gasto.getId());
+    }
+
+    /** Todo el lote en una transacción, con las sentencias de cada tipo agrupadas. */
+    @Override
+    public void guardarLote(LoteGastos lote) {
+        if (lote.estaVacio()) return;
+        ejecutar("guardar un lote de " + (lote.altas.size() + lote.modificados.size() + lote.bajas.size()) + " gastos", () -> {
+            if (!lote.bajas.isEmpty()) {
+                try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM gastos WHERE id = ?")) {
+                    for (Gasto g : lote.bajas) {
+                        ps.setString(1, g.getId());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (!lote.modificados.isEmpty()) {
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "UPDATE gastos SET importe = ?, fecha = ?, categoria = ?, pagador_id = ?, descripcion = ?, orden = ?, " +
+                        "cuenta_id = ? WHERE id = ?")) {
+                    for (Gasto g : lote.modificados) {
+                        rellenarGasto(ps, 1, g);
+                        ps.setString(7, g.getCuenta().getId());
+                        ps.setString(8, g.getId());
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            if (!lote.altas.isEmpty()) {
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "INSERT INTO gastos (id, cuenta_id, importe, fecha, categoria, pagador_id, descripcion, orden) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?)")) {
+                    for (Gasto g : lote.altas) {
+                        ps.setString(1, g.getId());
+                        ps.setString(2, g.getCuenta().getId());
+                        rellenarGasto(ps, 3, g);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            // Cada categoría una vez, no una por gasto
+            Set<String> nombres = new LinkedHashSet<>();
+            for (Gasto g : lote.modificados) nombres.add(g.getCategoria().getNombre());
+            for (Gasto g : lote.altas) nombres.add(g.getCategoria().getNombre());
+            for (String nombre : nombres) insertarCategoria(nombre);
+            for (GastosCompartidos cuenta : lote.cuentas) {
+                actualizarSaldos(cuenta);
+            }
+        });
+        for (Gasto g : lote.bajas) gastosPorId.remove(g.getId());
+        for (Gasto g : lote.altas) gastosPorId.put(g.getId(), g);
+    }
+
+    @Override
+    public void registrarPago(Pago pago) {
+        ejecutar("registrar el pago " + pago.getId(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO pagos (id, cuenta_id, deudor_id, acreedor_id, importe, fecha, orden) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                ps.setString(1, pago.getId());
+                ps.setString(2, pago.getCuenta().getId());
+                ps.setString(3, pago.getDeudor().getId());
+                ps.setString(4, pago.getAcreedor().getId());
+                ps.setBigDecimal(5, pago.getImporte());
+                ps.setDate(6, Date.valueOf(pago.getFecha()));
+                ps.setLong(7, siguienteOrden++);
+                ps.executeUpdate();
+            }
+            actualizarSaldos(pago.getCuenta());
+        });
+    }
+
+    @Override
+    public void eliminarPago(Pago pago) {
+        ejecutar("eliminar el pago " + pago.getId(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM pagos WHERE id = ?")) {
+                ps.setString(1, pago.getId());
+                ps.executeUpdate();
+            }
+            actualizarSaldos(pago.getCuenta());
+        });
+    }
+
+    /** Una fila por participante; si ya había una versión en esa fecha, se sustituye. */
+    @Override
+    public void registrarVersionPorcentajes(GastosCompartidos cuenta, LocalDate desde) {
+        ejecutar("cambiar los porcentajes de la cuenta " + cuenta.getNombre(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "DELETE FROM versiones_porcentajes WHERE cuenta_id = ? AND desde = ?")) {
+                ps.setString(1, cuenta.getId());
+                ps.setDate(2, Date.valueOf(desde));
+                ps.executeUpdate();
+            }
+            for (GastosCompartidos.VersionPorcentajes v : cuenta.getVersiones()) {
+                if (!v.getDesde().equals(desde)) continue;
+                try (PreparedStatement ps = conexion.prepareStatement(
+                        "INSERT INTO versiones_porcentajes (cuenta_id, desde, usuario_id, porcentaje) VALUES (?, ?, ?, ?)")) {
+                    List<GastosCompartidos.Participante> participantes = cuenta.getParticipantes();
+                    for (int i = 0; i < participantes.size(); i++) {
+                        ps.setString(1, cuenta.getId());
+                        ps.setDate(2, Date.valueOf(desde));
+                        ps.setString(3, participantes.get(i).getPersona().getId());
+                        ps.setDouble(4, v.getPorcentaje(i));
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }
+            try (PreparedStatement ps = conexion.prepareStatement("UPDATE cuentas SET porcentajes_fijos = ? WHERE id = ?")) {
+                ps.setBoolean(1, cuenta.isPorcentajesFijos());
+                ps.setString(2, cuenta.getId());
+                ps.executeUpdate();
+            }
+            actualizarSaldos(cuenta);
+        });
+    }
+
+    /**
+     * El filtro se traduce a una consulta que usa los índices de gastos; las
+     * filas encontradas se devuelven como los objetos del modelo ya cargados.
+     */
+    @Override
+    public List<Gasto> buscarGastos(FiltroGastos filtro) {
+        List<Gasto> resultado = new ArrayList<>();
+        if (filtro.cuentas.isEmpty()) return resultado;
+
+        StringBuilder sql = new StringBuilder("SELECT id FROM gastos WHERE cuenta_id IN (");
+        List<Object> parametros = new ArrayList<>();
+        for (int i = 0; i < filtro.cuentas.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+            parametros.add(filtro.cuentas.get(i).getId());
+        }
+        sql.append(")");
+        if (filtro.desde != null) {
+            sql.append(" AND fecha >= ?");
+            parametros.add(Date.valueOf(filtro.desde));
+        }
+        if (filtro.hasta != null) {
+            sql.append(" AND fecha <= ?");
+            parametros.add(Date.valueOf(filtro.hasta));
+        }
+        if (filtro.categoria != null) {
+            sql.append(" AND categoria = ?");
+            parametros.add(filtro.categoria);
+        }
+        if (filtro.pagador != null) {
+            sql.append(" AND pagador_id = ?");
+            parametros.add(filtro.pagador.getId());
+        }
+        sql.append(" ORDER BY orden");
+
+        synchronized (conexion) {
+            try (PreparedStatement ps = conexion.prepareStatement(sql.toString())) {
+                for (int i = 0; i < parametros.size(); i++) {
+                    ps.setObject(i + 1, parametros.get(i));
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Gasto g = gastosPorId.get(rs.getString(1));
+                        if (g != null) resultado.add(g);
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                System.err.println("Error grave: No se ha podido consultar los gastos.");
+            }
+        }
+        return resultado;
+    }
+
+    // --- ALERTAS Y NOTIFICACIONES ---
+
+    @Override
+    public void registrarAlerta(Persona persona, Alerta alerta) {
+        ejecutar("registrar la alerta " + alerta.getNombre(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO alertas (id, usuario_id, orden, datos) VALUES (?, ?, ?, ?)")) {
+                ps.setString(1, alerta.getId());
+                ps.setString(2, persona.getId());
+                ps.setLong(3, siguienteOrden++);
+                ps.setString(4, json(alerta));
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void eliminarAlerta(Persona persona, Alerta alerta) {
+        ejecutar("eliminar la alerta " + alerta.getNombre(), () -> {
+            try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM alertas WHERE id = ?")) {
+                ps.setString(1, alerta.getId());
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    @Override
+    public void registrarNotificacion(Persona persona, Notificacion notificacion) {
+        ejecutar("registrar la notificación", () -> {
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "INSERT INTO notificaciones (id, usuario_id, fecha_hora, mensaje, alerta_id, nivel) VALUES (?, ?, ?, ?, ?, ?)")) {
+                ps.setString(1, notificacion.getId());
+                ps.setString(2, persona.getId());
+                ps.setTimestamp(3, Timestamp.valueOf(notificacion.getFechaHora()));
+                ps.setString(4, notificacion.getMensaje());
+                ps.setString(5, notificacion.getAlertaId());
+                ps.setInt(6, notificacion.getNivel());
+                ps.executeUpdate();
+            }
+            // Mismo tope que el historial en memoria: las más nuevas y dentro de la retención
+            try (PreparedStatement ps = conexion.prepareStatement(
+                    "DELETE FROM notificaciones WHERE usuario_id = ? AND (fecha_hora < ? OR id NOT IN (" +
+                    "SELECT id FROM notificaciones WHERE usuario_id = ? ORDER BY fecha_hora DESC LIMIT ?))")) {
+                ps.setString(1, persona.getId());
+                ps.setTimestamp(2, Timestamp.valueOf(limiteRetencion()));
+                ps.setString(3, persona.getId());
+                ps.setInt(4, maxNotificaciones);
+                ps.executeUpdate();
+            }
+        });
+    }
+
+    // --- CATEGORÍAS ---
+
+    @Override
+    public List<Categoria> getCategorias() {
+        return new ArrayList<>(categorias.values());
+    }
+
+    @Override
+    public Categoria buscarCategoriaPorNombre(String nombre) {
+        if (nombre == null) return null;
+        return categorias.get(nombre.toLowerCase());
+    }
+
+    @Override
+    public void registrarCategoria(Categoria categoria) {
+        ejecutar("registrar la categoría " + categoria.getNombre(), () -> insertarCategoria(categoria.getNombre()));
+        categorias.put(categoria.getNombre().toLowerCase(), categoria);
+    }
+
+    // --- EXPORTACIÓN ---
+
+    /** El mismo JSON que exporta {@link RepositorioJSON}, a partir del modelo en memoria. */
+    @Override
+    public void exportarJSON(File destino) throws IOException {
+        AlmacenSegmentos.exportar(mapper, new ArrayList<>(personas.values()), new ArrayList<>(categorias.values()), destino);
+    }
+
+    // --- CICLO DE VIDA ---
+
+    @Override
+    public void esperarVolcado() {
+        // Cada cambio se confirma en su transacción: no hay nada pendiente
+    }
+
+    @Override
+    public void cerrar() {
+        synchronized (conexion) {
+            try {
+                if (!conexion.isClosed()) conexion.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+                System.err.println("Error grave: No se ha podido cerrar la base de datos.");
+            }
+        }
+    }
+
+    // --- AUXILIARES ---
+
+    /**
+     * Cambio contra la base de datos; se ejecuta dentro de una transacción.
+     * Si falla se deshace y se lanza {@link IllegalStateException}, así quien
+     * llama no da el cambio por guardado (ni toca las cachés).
+     */
+    private interface Operacion {
+        void ejecutar() throws SQLException, IOException;
+    }
+
+    private void ejecutar(String descripcion, Operacion operacion) {
+        synchronized (conexion) {
+            try {
+                conexion.setAutoCommit(false);
+                operacion.ejecutar();
+                conexion.commit();
+            } catch (SQLException | IOException e) {
+                e.printStackTrace();
+                System.err.println("Error grave: No se ha podido " + descripcion + ".");
+                try {
+                    conexion.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+                throw new IllegalStateException("No se ha podido " + descripcion, e);
+            } finally {
+                try {
+                    conexion.setAutoCommit(true);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /** importe, fecha, categoria, pagador, descripcion y orden a partir de la posición indicada. */
+    private void rellenarGasto(PreparedStatement ps, int desde, Gasto gasto) throws SQLException {
+        ps.setBigDecimal(desde, centimos(gasto.getImporte()));
+        ps.setDate(desde + 1, Date.valueOf(gasto.getFecha()));
+        ps.setString(desde + 2, gasto.getCategoria().getNombre());
+        ps.setString(desde + 3, gasto.getPagador().getId());
+        ps.setString(desde + 4, gasto.getDescripcion());
+        ps.setLong(desde + 5, siguienteOrden++);
+    }
+
+    private void actualizarSaldos(GastosCompartidos cuenta) throws SQLException {
+        if (cuenta == null) return;
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "UPDATE participantes SET saldo = ? WHERE cuenta_id = ? AND usuario_id = ?")) {
+            for (GastosCompartidos.Participante p : cuenta.getParticipantes()) {
+                ps.setBigDecimal(1, centimos(p.getSaldo()));
+                ps.setString(2, cuenta.getId());
+                ps.setString(3, p.getPersona().getId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    private void insertarCategoria(String nombre) throws SQLException {
+        try (PreparedStatement ps = conexion.prepareStatement(
+                "MERGE INTO categorias (clave, nombre) KEY (clave) VALUES (?, ?)")) {
+            ps.setString(1, nombre.toLowerCase());
+            ps.setString(2, nombre);
+            ps.executeUpdate();
+        }
+    }
+
+    private GastosCompartidos buscarCuenta(String id) {
+        for (Persona p : personas.values()) {
+            for (GastosCompartidos c : p.getCuentas()) {
+                if (c.getId().equals(id)) return c;
+            }
+        }
+        return null;
+    }
+
+    private String json(Alerta alerta) throws IOException {
+        return mapper.writeValueAsString(alerta);
+    }
+
+    private static BigDecimal centimos(BigDecimal valor) {
+        return valor.setScale(2, RoundingMode.HALF_UP);
+    }
+
+    // --- CARGA ---
+
+    /**
+     * Lee todas las tablas y reconstruye el modelo con una pasada por tabla.
+     */
+    private void cargarTodo() throws SQLException, IOException {
+        EnlazadorModelo enlazador = new EnlazadorModelo(categorias);
+        try (Statement st = conexion.createStatement()) {
+            // 1. Categorías
+            try (ResultSet rs = st.executeQuery("SELECT nombre FROM categorias")) {
+                while (rs.next()) {
+                    enlazador.categoria(rs.getString(1));
+                }
+            }
+
+            // 2. Usuarios
+            try (ResultSet rs = st.executeQuery("SELECT id, nombre_completo, nombre_usuario, contrasena FROM usuarios")) {
+                while (rs.next()) {
+                    RegistroPersona r = new RegistroPersona();
+                    r.id = rs.getString(1);
+                    r.nombreCompleto = rs.getString(2);
+                    r.nombreUsuario = rs.getString(3);
+                    r.contraseña = rs.getString(4);
+                    Persona p = enlazador.persona(r);
+                    p.limitarNotificaciones(maxNotificaciones, diasRetencionNotificaciones);
+                    personas.put(p.getNombreUsuario(), p);
+                }
+            }
+
+            // 3. Cuentas con sus participantes (en orden de creación)
+            Map<String, RegistroCuenta> registros = new LinkedHashMap<>();
+            try (ResultSet rs = st.executeQuery("SELECT id, nombre, porcentajes_fijos, orden FROM cuentas ORDER BY orden")) {
+                while (rs.next()) {
+                    RegistroCuenta r = new RegistroCuenta();
+                    r.id = rs.getString(1);
+                    r.nombre = rs.getString(2);
+                    r.porcentajesFijos = rs.getBoolean(3);
+                    r.participantes = new ArrayList<>();
+                    registros.put(r.id, r);
+                    siguienteOrden = Math.max(siguienteOrden, rs.getLong(4) + 1);
+                }
+            }
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT cuenta_id, usuario_id, porcentaje, saldo FROM participantes ORDER BY cuenta_id, orden")) {
+                while (rs.next()) {
+                    RegistroCuenta.RegistroParticipante rp = new RegistroCuenta.RegistroParticipante();
+                    rp.personaId = rs.getString(2);
+                    rp.porcentaje = rs.getDouble(3);
+                    rp.saldo = rs.getBigDecimal(4);
+                    registros.get(rs.getString(1)).participantes.add(rp);
+                }
+            }
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT cuenta_id, desde, usuario_id, porcentaje FROM versiones_porcentajes ORDER BY cuenta_id, desde")) {
+                while (rs.next()) {
+                    RegistroCuenta r = registros.get(rs.getString(1));
+                    if (r == null) continue;
+                    LocalDate desde = rs.getDate(2).toLocalDate();
+                    if (r.versiones == null) r.versiones = new ArrayList<>();
+                    RegistroCuenta.RegistroVersion rv = r.versiones.isEmpty() ? null : r.versiones.get(r.versiones.size() - 1);
+                    if (rv == null || !rv.desde.equals(desde)) {
+                        rv = new RegistroCuenta.RegistroVersion();
+                        rv.desde = desde;
+                        rv.porcentajes = new LinkedHashMap<>();
+                        r.versiones.add(rv);
+                    }
+                    rv.porcentajes.put(rs.getString(3), rs.getDouble(4));
+                }
+            }
+            Map<GastosCompartidos, List<Gasto>> gastosPorCuenta = new LinkedHashMap<>();
+            for (RegistroCuenta r : registros.values()) {
+                GastosCompartidos cuenta = enlazador.cuenta(r);
+                if (cuenta == null) continue;
+                gastosPorCuenta.put(cuenta, new ArrayList<>());
+                for (GastosCompartidos.Participante par : cuenta.getParticipantes()) {
+                    par.getPersona().agregarCuenta(cuenta);
+                }
+            }
+
+            // 4. Gastos
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT id, cuenta_id, importe, fecha, categoria, pagador_id, descripcion, orden FROM gastos ORDER BY orden")) {
+                while (rs.next()) {
+                    RegistroGasto r = new RegistroGasto();
+                    r.id = rs.getString(1);
+                    r.cuentaId = rs.getString(2);
+                    r.importe = rs.getBigDecimal(3);
+                    r.fecha = rs.getDate(4).toLocalDate();
+                    r.categoria = rs.getString(5);
+                    r.pagadorId = rs.getString(6);
+                    r.descripcion = rs.getString(7);
+                    siguienteOrden = Math.max(siguienteOrden, rs.getLong(8) + 1);
+                    Gasto g = enlazador.gasto(r, null);
+                    if (g != null) gastosPorCuenta.get(g.getCuenta()).add(g);
+                }
+            }
+            for (Map.Entry<GastosCompartidos, List<Gasto>> e : gastosPorCuenta.entrySet()) {
+                e.getKey().setGastos(e.getValue());
+            }
+            gastosPorId.putAll(enlazador.gastosPorId);
+
+            // 5. Pagos entre participantes (ya reflejados en los saldos)
+            Map<GastosCompartidos, List<Pago>> pagosPorCuenta = new HashMap<>();
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT id, cuenta_id, deudor_id, acreedor_id, importe, fecha, orden FROM pagos ORDER BY orden")) {
+                while (rs.next()) {
+                    RegistroPago r = new RegistroPago();
+                    r.id = rs.getString(1);
+                    r.cuentaId = rs.getString(2);
+                    r.deudorId = rs.getString(3);
+                    r.acreedorId = rs.getString(4);
+                    r.importe = rs.getBigDecimal(5);
+                    r.fecha = rs.getDate(6).toLocalDate();
+                    siguienteOrden = Math.max(siguienteOrden, rs.getLong(7) + 1);
+                    Pago p = enlazador.pago(r, null);
+                    if (p != null) pagosPorCuenta.computeIfAbsent(p.getCuenta(), c -> new ArrayList<>()).add(p);
+                }
+            }
+            pagosPorCuenta.forEach(GastosCompartidos::setPagos);
+
+            // 6. Alertas y notificaciones
+            try (ResultSet rs = st.executeQuery("SELECT usuario_id, datos, orden FROM alertas ORDER BY orden")) {
+                while (rs.next()) {
+                    Persona p = enlazador.personasPorId.get(rs.getString(1));
+                    if (p != null) p.agregarAlerta(mapper.readValue(rs.getString(2), Alerta.class));
+                    siguienteOrden = Math.max(siguienteOrden, rs.getLong(3) + 1);
+                }
+            }
+            try (PreparedStatement ps = conexion.prepareStatement("DELETE FROM notificaciones WHERE fecha_hora < ?")) {
+                ps.setTimestamp(1, Timestamp.valueOf(limiteRetencion()));
+                ps.executeUpdate();
+            }
+            try (ResultSet rs = st.executeQuery(
+                    "SELECT id, usuario_id, fecha_hora, mensaje, alerta_id, nivel FROM notificaciones ORDER BY fecha_hora")) {
+                while (rs.next()) {
+                    Persona p = enlazador.personasPorId.get(rs.getString(2));
+                    if (p != null) {
+                        p.agregarNotificacion(new Notificacion(rs.getString(1),
+                                rs.getTimestamp(3).toLocalDateTime(), rs.getString(4), rs.getString(5), rs.getInt(6)));
+                    }
+                }
+            }
+        }
+        System.out.println(">> [Repositorio] Base de datos cargada: " + personas.size() + " usuarios, "
+                + gastosPorId.size() + " gastos.");
+    }
+
+    /** Las notificaciones anteriores a esta fecha se descartan. */
+    private LocalDateTime limiteRetencion() {
+        return LocalDateTime.now().minusDays(diasRetencionNotificaciones);
+    }
+}
@@ -0,0 +1,154 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.*;
+
+import java.util.Map;
+
+/**
+ * Aplica los registros del diario sobre el modelo cargado de la instantánea.
+ * La aplicación es idempotente (altas y modificaciones son "upsert", las bajas
+ * de algo inexistente se ignoran), así que reaplicar un registro ya incluido
+ * en la instantánea deja el mismo estado.
+ */
+class ReproductorCambios {
+
+    private final Map<String, Persona> personas;      // por nombre de usuario (mapa del repositorio)
+    private final Map<String, Categoria> categorias;  // por nombre en minúsculas (mapa del repositorio)
+    private final EnlazadorModelo enlazador;
+    private final ArchivoGastos archivo;
+
+    ReproductorCambios(Map<String, Persona> personas, Map<String, Categoria> categorias, ArchivoGastos archivo) {
+        this.personas = personas;
+        this.categorias = categorias;
+        this.archivo = archivo;
+        this.enlazador = new EnlazadorModelo(categorias);
+        for (Persona p : personas.values()) {
+            enlazador.indexar(p);
+        }
+    }
+
+    void aplicar(RegistroCambio r) {
+        switch (r.tipo) {
+            case USUARIO_REGISTRADO -> {
+                if (!enlazador.personasPorId.containsKey(r.persona.id)) {
+                    Persona p = enlazador.persona(r.persona);
+                    personas.put(p.getNombreUsuario(), p);
+                }
+            }
+            case CATEGORIA_REGISTRADA -> categorias.putIfAbsent(r.categoria.getNombre().toLowerCase(), r.categoria);
+            case CUENTA_CREADA -> {
+                if (!enlazador.cuentasPorId.containsKey(r.cuenta.id)) {
+                    GastosCompartidos cuenta = enlazador.cuenta(r.cuenta);
+                    if (cuenta != null) {
+                        for (GastosCompartidos.Participante par : cuenta.getParticipantes()) {
+                            par.getPersona().agregarCuenta(cuenta);
+                        }
+                    }
+                }
+            }
+            case GASTO_AGREGADO, GASTO_MODIFICADO -> aplicarGasto(r.gasto);
+            case GASTO_ELIMINADO -> {
+                Gasto g = buscarGasto(r.gasto.id, r.gasto.cuentaId);
+                if (g != null) {
+                    enlazador.gastosPorId.remove(g.getId());
+                    g.getCuenta().eliminarGasto(g);
+                }
+            }
+            case PAGO_REGISTRADO -> {
+                GastosCompartidos cuenta = enlazador.cuentasPorId.get(r.pago.cuentaId);
+                if (cuenta != null && cuenta.buscarPago(r.pago.id) == null) {
+                    Pago p = enlazador.pago(r.pago, cuenta);
+                    if (p != null) cuenta.registrarPago(p);
+                }
+            }
+            case PAGO_ELIMINADO -> {
+                GastosCompartidos cuenta = enlazador.cuentasPorId.get(r.pago.cuentaId);
+                Pago p = (cuenta == null) ? null : cuenta.buscarPago(r.pago.id);
+                if (p != null) cuenta.eliminarPago(p);
+            }
+            case PORCENTAJES_CAMBIADOS -> {
+                // Volver a aplicar la misma versión deja los mismos saldos
+                GastosCompartidos cuenta = enlazador.cuentasPorId.get(r.cuenta.id);
+                if (cuenta != null) {
+                    for (RegistroCuenta.RegistroVersion rv : r.cuenta.versiones) {
+                        try {
+                            cuenta.cambiarPorcentajes(rv.desde, enlazador.porcentajesPorPersona(rv.porcentajes));
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Aviso: versión de porcentajes no válida en la cuenta " + cuenta.getNombre() + ", se ignora.");
+                        }
+                    }
+                }
+            }
+            case ALERTA_AGREGADA -> {
+                Persona p = enlazador.personasPorId.get(r.personaId);
+                if (p != null && buscarAlerta(p, r.alerta.getId()) == null) p.agregarAlerta(r.alerta);
+            }
+            case ALERTA_ELIMINADA -> {
+                Persona p = enlazador.personasPorId.get(r.personaId);
+                Alerta a = (p == null) ? null : buscarAlerta(p, r.alerta.getId());
+                if (a != null) p.eliminarAlerta(a);
+            }
+            case NOTIFICACION_AGREGADA -> {
+                Persona p = enlazador.personasPorId.get(r.personaId);
+                if (p != null && !p.tieneNotificacion(r.notificacion)) p.agregarNotificacion(r.notificacion);
+            }
+        }
+    }
+
+    // --- AUXILIARES ---
+
+    private void aplicarGasto(RegistroGasto rg) {
+        Gasto existente = buscarGasto(rg.id, rg.cuentaId);
+        if (existente == null) {
+            Gasto nuevo = enlazador.gasto(rg, null);
+            if (nuevo != null) nuevo.getCuenta().agregarGasto(nuevo);
+            return;
+        }
+
+        GastosCompartidos cuenta = enlazador.cuentasPorId.get(rg.cuentaId);
+        Persona pagador = enlazador.personasPorId.get(rg.pagadorId);
+        if (cuenta == null || pagador == null) {
+            System.err.println("Aviso: gasto " + rg.id + " con cuenta o pagador desconocido, se ignora.");
+            return;
+        }
+
+        // Modificación: se saca de su cuenta, se actualiza y se vuelve a meter (recalcula saldos)
+        existente.getCuenta().eliminarGasto(existente);
+        existente.setImporte(rg.importe);
+        existente.setFecha(rg.fecha);
+        existente.setCategoria(enlazador.categoria(rg.categoria));
+        existente.setPagador(pagador);
+        existente.setDescripcion(rg.descripcion);
+        existente.setCuenta(cuenta);
+        cuenta.agregarGasto(existente);
+    }
+
+    /**
+     * Busca un gasto por id. Si no está indexado puede ser de una cuenta que
+     * estaba archivada al empezar (aunque un cambio anterior ya la haya
+     * hidratado): primero se mira en la cuenta que indica el registro y, si
+     * no, se busca en el archivo cuál lo tiene. Solo se hidrata esa cuenta.
+     */
+    private Gasto buscarGasto(String idGasto, String cuentaId) {
+        Gasto g = enlazador.gastosPorId.get(idGasto);
+        if (g != null || archivo == null) return g;
+
+        g = buscarEnCuenta(idGasto, cuentaId);
+        return (g != null) ? g : buscarEnCuenta(idGasto, archivo.cuentaDe(idGasto));
+    }
+
+    private Gasto buscarEnCuenta(String idGasto, String cuentaId) {
+        GastosCompartidos cuenta = (cuentaId == null) ? null : enlazador.cuentasPorId.get(cuentaId);
+        if (cuenta == null) return null;
+        Gasto encontrado = cuenta.buscarGasto(idGasto);
+        if (encontrado != null) enlazador.gastosPorId.putIfAbsent(idGasto, encontrado);
+        return encontrado;
+    }
+
+    private Alerta buscarAlerta(Persona p, String idAlerta) {
+        for (Alerta a : p.getAlertas()) {
+            if (a.getId().equals(idAlerta)) return a;
+        }
+        return null;
+    }
+}
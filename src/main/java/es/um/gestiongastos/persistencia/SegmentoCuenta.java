@@ -0,0 +1,42 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Pago;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fila de la tabla de cuentas: datos de la cuenta y sus participantes (con su
+ * saldo) y los pagos entre ellos, que son pocos y no se archivan. Una cuenta
+ * compartida se guarda una sola vez, no dentro de cada participante. Sus
+ * gastos van en la tabla de gastos (ver {@link AlmacenSegmentos}).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SegmentoCuenta extends RegistroCuenta {
+    // Solo en ficheros de versiones anteriores, que anidaban aquí los gastos
+    public List<RegistroGasto> gastos;
+    // Sin id de cuenta; null si no hay pagos
+    public List<RegistroPago> pagos;
+
+    public static SegmentoCuenta desde(GastosCompartidos c) {
+        RegistroCuenta base = RegistroCuenta.desde(c);
+        SegmentoCuenta s = new SegmentoCuenta();
+        s.id = base.id;
+        s.nombre = base.nombre;
+        s.porcentajesFijos = base.porcentajesFijos;
+        s.participantes = base.participantes;
+        s.versiones = base.versiones;
+        List<Pago> pagos = c.getPagos();
+        if (!pagos.isEmpty()) {
+            s.pagos = new ArrayList<>(pagos.size());
+            for (Pago p : pagos) {
+                RegistroPago rp = RegistroPago.desde(p);
+                rp.cuentaId = null;
+                s.pagos.add(rp);
+            }
+        }
+        return s;
+    }
+}
@@ -0,0 +1,35 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.Persona;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segmento de instantánea de un usuario: sus datos, alertas y notificaciones.
+ * Las cuentas van en su propio segmento y aquí solo se referencian por id,
+ * así cada segmento se puede serializar (y cachear) por separado.
+ */
+public class SegmentoPersona extends RegistroPersona {
+    public List<String> cuentas;
+    public List<Alerta> alertas;
+    public List<Notificacion> notificaciones;
+
+    public static SegmentoPersona desde(Persona p) {
+        SegmentoPersona s = new SegmentoPersona();
+        s.id = p.getId();
+        s.nombreCompleto = p.getNombreCompleto();
+        s.nombreUsuario = p.getNombreUsuario();
+        s.contraseña = p.getContraseña();
+        s.cuentas = new ArrayList<>();
+        for (GastosCompartidos c : p.getCuentas()) {
+            s.cuentas.add(c.getId());
+        }
+        s.alertas = new ArrayList<>(p.getAlertas());
+        s.notificaciones = new ArrayList<>(p.getNotificaciones());
+        return s;
+    }
+}
@@ -1,8 +1,11 @@
 package es.um.gestiongastos.ui;
 
+import es.um.gestiongastos.controlador.Controlador;
+import es.um.gestiongastos.model.Dinero;
 import es.um.gestiongastos.model.Gasto;
 import es.um.gestiongastos.model.GastosCompartidos;
 import es.um.gestiongastos.model.Persona;
+import es.um.gestiongastos.model.Transferencia;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
@@ -13,7 +16,6 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -28,9 +30,10 @@ public class DialogoDetalleCuenta {
         root.setPadding(new Insets(20));
 
         // 1. Cabecera con Total Cuenta
-        BigDecimal totalCuenta = cuenta.getGastos().stream()
-                .map(Gasto::getImporte)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        List<Gasto> gastos = cuenta.getGastos();
+        Dinero totalCuenta = Dinero.deCentimos(gastos.stream()
+                .mapToLong(g -> g.getImporteDinero().centimos())
+                .sum());
 
         Label lblNombre = new Label("Cuenta: " + cuenta.getNombre());
         lblNombre.setStyle("-fx-font-size: 18px; -fx-font-weight: bold;");
@@ -76,27 +79,42 @@ public class DialogoDetalleCuenta {
             Persona persona = p.getPersona();
             
             // Calculamos el Gasto Asumido sumando la parte proporcional de cada gasto del historial
-            BigDecimal gastoAsumido = cuenta.getGastos().stream()
-                    .map(g -> g.getCostePara(persona))
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            Dinero gastoAsumido = Dinero.deCentimos(gastos.stream()
+                    .mapToLong(g -> g.getCosteCentimosPara(persona))
+                    .sum());
 
             return new FilaDetalle(
                     persona,
-                    p.getPorcentaje(),
+                    cuenta.getPorcentaje(persona),
                     gastoAsumido,
-                    p.getSaldo()
+                    p.getSaldoDinero()
             );
         }).collect(Collectors.toList());
 
         tabla.setItems(FXCollections.observableArrayList(filas));
 
+        // 3. Liquidación: quién paga a quién para dejar la cuenta a cero
+        Label lblLiquidacion = new Label("Para saldar la cuenta:");
+        lblLiquidacion.setStyle("-fx-font-weight: bold;");
+        ListView<String> listaPagos = new ListView<>();
+        listaPagos.setPrefHeight(120);
+        List<Transferencia> pagos = Controlador.getInstancia().liquidarCuenta(cuenta);
+        if (pagos.isEmpty()) {
+            listaPagos.getItems().add("La cuenta está saldada.");
+        } else {
+            for (Transferencia t : pagos) {
+                listaPagos.getItems().add(t.getDeudor().getNombreCompleto() + " paga "
+                        + t.getImporteDinero() + " € a " + t.getAcreedor().getNombreCompleto());
+            }
+        }
+
         Button btnCerrar = new Button("Cerrar");
         btnCerrar.setOnAction(e -> dialog.close());
         btnCerrar.setAlignment(Pos.CENTER);
 
-        root.getChildren().addAll(lblNombre, lblTotal, tabla, btnCerrar);
+        root.getChildren().addAll(lblNombre, lblTotal, tabla, lblLiquidacion, listaPagos, btnCerrar);
         
-        Scene scene = new Scene(root, 600, 400);
+        Scene scene = new Scene(root, 600, 560);
         dialog.setScene(scene);
         dialog.show();
     }
@@ -105,10 +123,10 @@ public class DialogoDetalleCuenta {
     private static class FilaDetalle {
         Persona persona;
         double porcentaje;
-        BigDecimal gastoAsumido;
-        BigDecimal saldo;
+        Dinero gastoAsumido;
+        Dinero saldo;
 
-        public FilaDetalle(Persona p, double porc, BigDecimal gasto, BigDecimal saldo) {
+        public FilaDetalle(Persona p, double porc, Dinero gasto, Dinero saldo) {
             this.persona = p;
             this.porcentaje = porc;
             this.gastoAsumido = gasto;
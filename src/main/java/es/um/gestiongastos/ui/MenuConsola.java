@@ -1,17 +1,21 @@
 package es.um.gestiongastos.ui;
 
+import java.io.File;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.math.BigDecimal;
 import java.util.stream.Collectors; 
 
 import es.um.gestiongastos.controlador.Controlador;
+import es.um.gestiongastos.model.Dinero;
 import es.um.gestiongastos.model.Gasto;
 import es.um.gestiongastos.model.GastosCompartidos;
 import es.um.gestiongastos.model.GastosCompartidos.Participante;
 import es.um.gestiongastos.model.Persona;
+import es.um.gestiongastos.model.Transferencia;
 
 public class MenuConsola {
 
@@ -35,6 +39,10 @@ public class MenuConsola {
         System.out.println("----------------------------------------");
         System.out.println("Sistema listo. Esperando instrucciones...");
 
+        // Las notificaciones de las alertas también salen por consola
+        Controlador.getInstancia().registrarListenerNotificaciones("Consola",
+                (n, alerta) -> System.out.println(">> [Notificación] " + n.getMensaje()));
+
         boolean salir = false;
         imprimirOpciones();
         
@@ -59,6 +67,21 @@ public class MenuConsola {
                     case "4": 
                         opcionListarGastos(); 
                         break;
+                    case "5":
+                        opcionVerificarSaldos();
+                        break;
+                    case "6":
+                        opcionLiquidarCuentas();
+                        break;
+                    case "7":
+                        opcionRegistrarPago();
+                        break;
+                    case "8":
+                        opcionCambiarPorcentajes();
+                        break;
+                    case "9":
+                        opcionExportarDatos();
+                        break;
                     case "0":
                         salir = true; // Rompemos el bucle para salir ordenadamente
                         break;
@@ -73,6 +96,7 @@ public class MenuConsola {
         System.out.println("\nCerrando aplicación... ¡Hasta pronto, " + usuario.getNombreUsuario() + "!");
         
         // Cierre ordenado
+        Controlador.getInstancia().cerrarSesion();
         javafx.application.Platform.exit(); 
         System.exit(0); 
     }
@@ -83,6 +107,11 @@ public class MenuConsola {
         System.out.println("2. Modificar Gasto (Editar, Mover o cambiar Pagador)");
         System.out.println("3. Borrar Gasto");
         System.out.println("4. Listar Todos (Detallado con ID Completo)");
+        System.out.println("5. Verificar Saldos de mis Cuentas");
+        System.out.println("6. Liquidar Cuentas (quién paga a quién)");
+        System.out.println("7. Registrar Pago a otro participante");
+        System.out.println("8. Cambiar Porcentajes de una Cuenta (desde una fecha)");
+        System.out.println("9. Exportar todos los datos a JSON");
         System.out.println("0. Salir");
         System.out.print("Elija una opción: ");
     }
@@ -272,6 +301,142 @@ public class MenuConsola {
         Controlador.getInstancia().borrarGasto(id);
     }
 
+    private void opcionVerificarSaldos() {
+        int corregidas = Controlador.getInstancia().verificarSaldos();
+        if (corregidas == 0) {
+            System.out.println("✅ Todos los saldos cuadran con el historial de gastos.");
+        } else {
+            System.out.println("⚠️ Se han corregido los saldos de " + corregidas + " cuenta(s).");
+        }
+        imprimirOpciones();
+    }
+
+    private void opcionExportarDatos() {
+        System.out.print("Fichero de destino [exportacion.json]: ");
+        String ruta = scanner.nextLine().trim();
+        if (ruta.isEmpty()) ruta = "exportacion.json";
+        try {
+            File destino = new File(ruta);
+            Controlador.getInstancia().exportarDatos(destino);
+            System.out.println("✅ Datos exportados a " + destino.getAbsolutePath());
+        } catch (Exception e) {
+            System.out.println("❌ " + e.getMessage());
+        }
+        imprimirOpciones();
+    }
+
+    private void opcionRegistrarPago() {
+        try {
+            System.out.println("\n--- NUEVO PAGO ---");
+
+            Persona yo = Controlador.getInstancia().getUsuarioAutenticado();
+            List<GastosCompartidos> cuentas = yo.getCuentas();
+
+            System.out.println("Seleccione la cuenta del pago:");
+            for (int i = 0; i < cuentas.size(); i++) {
+                System.out.printf("%d. %s%n", (i + 1), cuentas.get(i).getNombre());
+            }
+            System.out.print("Número de cuenta: ");
+            int indiceCuenta = Integer.parseInt(scanner.nextLine()) - 1;
+            if (indiceCuenta < 0 || indiceCuenta >= cuentas.size()) {
+                System.out.println("❌ Selección inválida.");
+                return;
+            }
+            GastosCompartidos cuenta = cuentas.get(indiceCuenta);
+
+            List<Persona> otros = cuenta.getParticipantes().stream()
+                    .map(Participante::getPersona)
+                    .filter(p -> !p.equals(yo))
+                    .collect(Collectors.toList());
+            if (otros.isEmpty()) {
+                System.out.println("❌ No hay otros participantes en esta cuenta.");
+                return;
+            }
+            System.out.println("¿A quién le paga?");
+            for (int i = 0; i < otros.size(); i++) {
+                System.out.printf("%d. %s%n", (i + 1), otros.get(i).getNombreUsuario());
+            }
+            System.out.print("Número de participante: ");
+            int indiceAcreedor = Integer.parseInt(scanner.nextLine()) - 1;
+            if (indiceAcreedor < 0 || indiceAcreedor >= otros.size()) {
+                System.out.println("❌ Selección inválida.");
+                return;
+            }
+
+            System.out.print("Importe (€): ");
+            double importe = Double.parseDouble(scanner.nextLine());
+
+            Controlador.getInstancia().registrarPago(cuenta, yo, otros.get(indiceAcreedor), importe);
+
+        } catch (Exception e) {
+            System.out.println("❌ Error: " + e.getMessage());
+        }
+    }
+
+    private void opcionCambiarPorcentajes() {
+        try {
+            System.out.println("\n--- CAMBIAR PORCENTAJES ---");
+
+            List<GastosCompartidos> cuentas = Controlador.getInstancia().getUsuarioAutenticado().getCuentas();
+            System.out.println("Seleccione la cuenta:");
+            for (int i = 0; i < cuentas.size(); i++) {
+                System.out.printf("%d. %s%n", (i + 1), cuentas.get(i).getNombre());
+            }
+            System.out.print("Número de cuenta: ");
+            int indiceCuenta = Integer.parseInt(scanner.nextLine()) - 1;
+            if (indiceCuenta < 0 || indiceCuenta >= cuentas.size()) {
+                System.out.println("❌ Selección inválida.");
+                return;
+            }
+            GastosCompartidos cuenta = cuentas.get(indiceCuenta);
+
+            System.out.print("Desde la fecha (dd/MM/yyyy): ");
+            LocalDate desde = LocalDate.parse(scanner.nextLine(), formatoFecha);
+
+            // Los porcentajes deben sumar 100; en blanco se deja el que regía en esa fecha
+            Map<Persona, Double> porcentajes = new LinkedHashMap<>();
+            for (Participante p : cuenta.getParticipantes()) {
+                Persona persona = p.getPersona();
+                System.out.printf("Porcentaje de %s (actual %.2f %%): ", persona.getNombreUsuario(), cuenta.getPorcentaje(persona, desde));
+                String valor = scanner.nextLine();
+                porcentajes.put(persona, valor.isEmpty() ? cuenta.getPorcentaje(persona, desde) : Double.parseDouble(valor));
+            }
+
+            Controlador.getInstancia().cambiarPorcentajes(cuenta, desde, porcentajes);
+            System.out.println("✅ Porcentajes cambiados; los gastos desde " + desde.format(formatoFecha) + " se han repartido de nuevo.");
+
+        } catch (Exception e) {
+            System.out.println("❌ Error: " + e.getMessage());
+        }
+    }
+
+    private void opcionLiquidarCuentas() {
+        Controlador controlador = Controlador.getInstancia();
+        Persona yo = controlador.getUsuarioAutenticado();
+
+        System.out.println("\n--- LIQUIDACIÓN DE CUENTAS ---");
+        for (GastosCompartidos cuenta : yo.getCuentas()) {
+            System.out.println("Cuenta: " + cuenta.getNombre());
+            imprimirPagos(controlador.liquidarCuenta(cuenta));
+        }
+        if (yo.getCuentas().size() > 1) {
+            System.out.println("Todas mis cuentas juntas:");
+            imprimirPagos(controlador.liquidarCuentasUsuario());
+        }
+        imprimirOpciones();
+    }
+
+    private void imprimirPagos(List<Transferencia> pagos) {
+        if (pagos.isEmpty()) {
+            System.out.println("   (saldada, no hay nada que pagar)");
+            return;
+        }
+        for (Transferencia t : pagos) {
+            System.out.printf("   %s paga %s € a %s%n",
+                t.getDeudor().getNombreUsuario(), t.getImporteDinero(), t.getAcreedor().getNombreUsuario());
+        }
+    }
+
     private void opcionListarGastos() {
         List<Gasto> gastos = Controlador.getInstancia().getGastosUsuarioActual();
         Persona yo = Controlador.getInstancia().getUsuarioAutenticado();
@@ -294,7 +459,7 @@ public class MenuConsola {
             String cta = g.getCuenta().getNombre().length() > 15 ? g.getCuenta().getNombre().substring(0, 12)+"..." : g.getCuenta().getNombre();
             String pagador = g.getPagador().equals(yo) ? "Mí" : g.getPagador().getNombreUsuario();
             if (pagador.length() > 12) pagador = pagador.substring(0, 9) + "...";
-            BigDecimal miParte = g.getCostePara(yo);
+            Dinero miParte = g.getCosteDineroPara(yo);
             
             System.out.printf(format, 
                 idCompleto, 
@@ -3,6 +3,7 @@ package es.um.gestiongastos.ui;
 import es.um.gestiongastos.controlador.Controlador;
 import es.um.gestiongastos.model.Alerta;
 import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.Persona;
 import es.um.gestiongastos.model.Periodicidad;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
@@ -22,6 +23,11 @@ public class PanelAlertas {
     private static ListView<Alerta> listaAlertas;
     private static ListView<Notificacion> listaNotificaciones;
 
+    // Historial por páginas (la 0, las más nuevas)
+    private static final int TAM_PAGINA = 50;
+    private static int paginaNotificaciones;
+    private static Label lblPagina;
+
     public static VBox crearVista() {
         VBox root = new VBox(15);
         root.setPadding(new Insets(15));
@@ -89,7 +95,15 @@ public class PanelAlertas {
             }
         });
         VBox.setVgrow(listaNotificaciones, Priority.ALWAYS);
-        boxNotif.getChildren().addAll(lblNotif, listaNotificaciones);
+
+        Button btnAnterior = new Button("◀");
+        btnAnterior.setOnAction(e -> cambiarPagina(-1));
+        Button btnSiguiente = new Button("▶");
+        btnSiguiente.setOnAction(e -> cambiarPagina(1));
+        lblPagina = new Label();
+        HBox paginacion = new HBox(10, btnAnterior, lblPagina, btnSiguiente);
+
+        boxNotif.getChildren().addAll(lblNotif, listaNotificaciones, paginacion);
         HBox.setHgrow(boxNotif, Priority.ALWAYS);
 
         split.getChildren().addAll(boxAlertas, boxNotif);
@@ -107,6 +121,16 @@ public class PanelAlertas {
         ComboBox<Periodicidad> cbPeriodo = new ComboBox<>();
         cbPeriodo.setItems(FXCollections.observableArrayList(Periodicidad.values()));
         cbPeriodo.setValue(Periodicidad.MENSUAL);
+        cbPeriodo.setConverter(new StringConverter<>() {
+            @Override public String toString(Periodicidad p) { return (p == null) ? "" : p.getDescripcion(); }
+            @Override public Periodicidad fromString(String s) { return null; }
+        });
+
+        // Solo para "Últimos N días"
+        TextField tfDias = new TextField(); tfDias.setPromptText("Días (ej: 45)");
+        tfDias.setPrefColumnCount(6);
+        tfDias.setDisable(true);
+        cbPeriodo.valueProperty().addListener((obs, ant, nuevo) -> tfDias.setDisable(nuevo != Periodicidad.ULTIMOS_N_DIAS));
 
         ComboBox<String> cbCategoria = new ComboBox<>();
         cbCategoria.getItems().add("Todas");
@@ -122,12 +146,13 @@ public class PanelAlertas {
                 double umbral = Double.parseDouble(tfUmbral.getText());
                 String cat = cbCategoria.getValue();
                 Periodicidad per = cbPeriodo.getValue();
+                Integer dias = (per == Periodicidad.ULTIMOS_N_DIAS) ? Integer.valueOf(tfDias.getText().trim()) : null;
 
                 if (nombre.isEmpty() || umbral <= 0) throw new IllegalArgumentException("Datos inválidos");
 
-                controlador.crearAlerta(nombre, per, cat, umbral);
+                controlador.crearAlerta(nombre, per, dias, cat, umbral);
                 
-                tfNombre.clear(); tfUmbral.clear();
+                tfNombre.clear(); tfUmbral.clear(); tfDias.clear();
             } catch (Exception ex) {
                 Alert a = new Alert(Alert.AlertType.ERROR, "Error: " + ex.getMessage());
                 a.show();
@@ -135,7 +160,7 @@ public class PanelAlertas {
         });
 
         grid.add(new Label("Nombre:"), 0, 0); grid.add(tfNombre, 1, 0);
-        grid.add(new Label("Periodo:"), 2, 0); grid.add(cbPeriodo, 3, 0);
+        grid.add(new Label("Periodo:"), 2, 0); grid.add(cbPeriodo, 3, 0); grid.add(tfDias, 4, 0);
         
         grid.add(new Label("Límite (€):"), 0, 1); grid.add(tfUmbral, 1, 1);
         grid.add(new Label("Categoría:"), 2, 1); grid.add(cbCategoria, 3, 1);
@@ -150,8 +175,19 @@ public class PanelAlertas {
             if (listaAlertas != null)
                 listaAlertas.setItems(FXCollections.observableArrayList(controlador.getUsuarioAutenticado().getAlertas()));
             
-            if (listaNotificaciones != null)
-                listaNotificaciones.setItems(FXCollections.observableArrayList(controlador.getUsuarioAutenticado().getNotificaciones()));
+            if (listaNotificaciones != null) {
+                Persona usuario = controlador.getUsuarioAutenticado();
+                int paginas = Math.max(1, (usuario.getNumNotificaciones() + TAM_PAGINA - 1) / TAM_PAGINA);
+                paginaNotificaciones = Math.min(paginaNotificaciones, paginas - 1);
+                listaNotificaciones.setItems(FXCollections.observableArrayList(
+                        usuario.getNotificaciones(paginaNotificaciones, TAM_PAGINA)));
+                lblPagina.setText("Página " + (paginaNotificaciones + 1) + " de " + paginas);
+            }
         }
     }
+
+    private static void cambiarPagina(int salto) {
+        paginaNotificaciones = Math.max(0, paginaNotificaciones + salto);
+        refrescarDatos();
+    }
 }
\ No newline at end of file
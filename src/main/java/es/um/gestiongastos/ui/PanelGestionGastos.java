@@ -2,6 +2,7 @@ package es.um.gestiongastos.ui;
 
 import es.um.gestiongastos.controlador.Controlador;
 import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Dinero;
 import es.um.gestiongastos.model.Gasto;
 import es.um.gestiongastos.model.GastosCompartidos;
 import es.um.gestiongastos.model.Persona;
@@ -25,7 +26,9 @@ import javafx.util.StringConverter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class PanelGestionGastos {
 
@@ -34,6 +37,13 @@ public class PanelGestionGastos {
     // Datos
     private static ObservableList<Gasto> datosGastos = FXCollections.observableArrayList();
     private static FilteredList<Gasto> listaFiltrada;
+    // Vuelve a aplicar el último filtro (null si no hay ninguno); se usa al recargar la tabla
+    private static Runnable filtroActivo;
+    // Criterios del último filtro aplicado (null = no filtra); los informes los usan
+    private static String filtroCategoria;
+    private static GastosCompartidos filtroCuenta;
+    private static LocalDate filtroDesde;
+    private static LocalDate filtroHasta;
     
     // Componentes UI que necesitan actualización
     private static ComboBox<String> cbCategoriaRegistro; 
@@ -73,6 +83,7 @@ public class PanelGestionGastos {
         // 1. Recargar lista de gastos
         datosGastos.clear();
         datosGastos.addAll(controlador.getGastosUsuarioActual());
+        if (filtroActivo != null) filtroActivo.run();
         
         // 2. Recargar Categorías
         if (cbCategoriaRegistro != null) cargarCategoriasEnCombo(cbCategoriaRegistro);
@@ -94,6 +105,11 @@ public class PanelGestionGastos {
         return datosGastos; 
     }
 
+    public static String getFiltroCategoria() { return filtroCategoria; }
+    public static GastosCompartidos getFiltroCuenta() { return filtroCuenta; }
+    public static LocalDate getFiltroDesde() { return filtroDesde; }
+    public static LocalDate getFiltroHasta() { return filtroHasta; }
+
     // --- CREACIÓN DE UI ---
 
     private static GridPane crearFormularioRegistro() {
@@ -204,6 +220,11 @@ public class PanelGestionGastos {
             dpHasta.setValue(null);
             
             // 2. Resetear lógica (mostrar todo)
+            filtroActivo = null;
+            filtroCategoria = null;
+            filtroCuenta = null;
+            filtroDesde = null;
+            filtroHasta = null;
             listaFiltrada.setPredicate(p -> true);
             
             // 3. Actualizar gráficos
@@ -220,21 +241,18 @@ public class PanelGestionGastos {
     private static void aplicarLogicaFiltros(DatePicker dpDesde, DatePicker dpHasta) {
         if (listaFiltrada == null) return;
 
-        listaFiltrada.setPredicate(g -> {
-            // 1. Filtro Categoría
+        filtroActivo = () -> {
+            // Categoría, cuenta y fechas se resuelven en el repositorio (con índices en el SQL)
             String catSel = cbFiltroCategoria.getValue();
-            boolean okCat = (catSel == null || "Todas".equals(catSel)) || g.getCategoria().getNombre().equals(catSel);
-            
-            // 2. Filtro Cuenta
-            GastosCompartidos ctaSel = cbFiltroCuenta.getValue();
-            boolean okCta = (ctaSel == null) || g.getCuenta().equals(ctaSel);
-            
-            // 3. Filtro Fechas
-            boolean okDesde = (dpDesde.getValue() == null) || !g.getFecha().isBefore(dpDesde.getValue());
-            boolean okHasta = (dpHasta.getValue() == null) || !g.getFecha().isAfter(dpHasta.getValue());
-            
-            return okCat && okCta && okDesde && okHasta;
-        });
+            filtroCategoria = (catSel == null || "Todas".equals(catSel)) ? null : catSel;
+            filtroCuenta = cbFiltroCuenta.getValue();
+            filtroDesde = dpDesde.getValue();
+            filtroHasta = dpHasta.getValue();
+            Set<Gasto> coincidentes = new HashSet<>(controlador.buscarGastos(
+                    filtroCategoria, filtroCuenta, filtroDesde, filtroHasta));
+            listaFiltrada.setPredicate(coincidentes::contains);
+        };
+        filtroActivo.run();
 
         // IMPORTANTE: Tras filtrar la tabla, ordenamos a los informes que se repinten
         // usando los datos filtrados (PanelInformes usa getGastosVisibles())
@@ -298,7 +316,7 @@ public class PanelGestionGastos {
         
         // 7. Mi Parte
         TableColumn<Gasto, String> colMiParte = new TableColumn<>("Mi Parte");
-        colMiParte.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCostePara(controlador.getUsuarioAutenticado()) + " €"));
+        colMiParte.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCosteDineroPara(controlador.getUsuarioAutenticado()) + " €"));
         colMiParte.setStyle("-fx-font-weight: bold; -fx-text-fill: #2c3e50;");
         colMiParte.setMaxWidth(80);
         colMiParte.setMinWidth(60);
@@ -453,12 +471,13 @@ public class PanelGestionGastos {
     private static void actualizarEtiquetaTotal(ObservableList<Gasto> lista) {
         if (lblTotalGastado == null || controlador.getUsuarioAutenticado() == null) return;
         
-        BigDecimal totalMio = BigDecimal.ZERO;
+        Persona yo = controlador.getUsuarioAutenticado();
+        long totalMio = 0; // en céntimos
         for (Gasto g : lista) {
-            totalMio = totalMio.add(g.getCostePara(controlador.getUsuarioAutenticado()));
+            totalMio += g.getCosteCentimosPara(yo);
         }
         
-        lblTotalGastado.setText("Mi gasto total (filtrado): " + totalMio + " €");
+        lblTotalGastado.setText("Mi gasto total (filtrado): " + Dinero.deCentimos(totalMio) + " €");
     }
     
     // Métodos de Categorías y Configuración reutilizados 
@@ -1,6 +1,7 @@
 package es.um.gestiongastos.ui;
 
 import es.um.gestiongastos.controlador.Controlador;
+import es.um.gestiongastos.model.Dinero;
 import es.um.gestiongastos.model.Gasto;
 import es.um.gestiongastos.model.Persona;
 import javafx.collections.FXCollections;
@@ -16,7 +17,6 @@ import javafx.scene.layout.VBox;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
 
-import java.math.BigDecimal;
 import java.time.YearMonth;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -85,31 +85,41 @@ public class PanelInformes {
         if (yo == null) return;
 
         // 1. TOTAL GLOBAL
-        BigDecimal totalAcumulado = BigDecimal.ZERO;
+        long totalAcumulado = 0; // en céntimos
         
         // Mapas para gráficos
         Map<String, Double> sumaPorCategoria = new HashMap<>();
         Map<YearMonth, Double> sumaPorMes = new TreeMap<>();
 
+        // Sin filtro de categoría, las barras por mes salen de las sumas acumuladas
+        // del índice por fecha (sin recorrer los gastos); con él, del recorrido de abajo
+        boolean mesesPorIndice = PanelGestionGastos.getFiltroCategoria() == null;
+        if (mesesPorIndice) {
+            controlador.costePorMes(PanelGestionGastos.getFiltroCuenta(),
+                    PanelGestionGastos.getFiltroDesde(), PanelGestionGastos.getFiltroHasta())
+                .forEach((mes, coste) -> sumaPorMes.put(mes, coste.doubleValue()));
+        }
+
         for (Gasto g : gastos) {
-            BigDecimal miParte = g.getCostePara(yo);
-            double miParteDouble = miParte.doubleValue();
-            
-            if (miParteDouble <= 0.001) continue;
+            long miParte = g.getCosteCentimosPara(yo);
+            if (miParte <= 0) continue;
 
-            totalAcumulado = totalAcumulado.add(miParte);
+            totalAcumulado += miParte;
+            double miParteDouble = miParte / 100.0;
             
             // Datos PieChart
             String cat = g.getCategoria().getNombre();
             sumaPorCategoria.put(cat, sumaPorCategoria.getOrDefault(cat, 0.0) + miParteDouble);
             
             // Datos BarChart
-            YearMonth mesAnyo = YearMonth.from(g.getFecha());
-            sumaPorMes.put(mesAnyo, sumaPorMes.getOrDefault(mesAnyo, 0.0) + miParteDouble);
+            if (!mesesPorIndice) {
+                YearMonth mesAnyo = YearMonth.from(g.getFecha());
+                sumaPorMes.put(mesAnyo, sumaPorMes.getOrDefault(mesAnyo, 0.0) + miParteDouble);
+            }
         }
         
         if (lblResumenTotal != null) {
-            lblResumenTotal.setText(totalAcumulado.toString() + " €");
+            lblResumenTotal.setText(Dinero.deCentimos(totalAcumulado) + " €");
         }
 
         // 2. PIE CHART
@@ -68,6 +68,7 @@ public class VentanaPrincipalPersona {
         
         stage.setOnCloseRequest(event -> {
             System.out.println("\nCerrando aplicación... ¡Hasta pronto, " + autenticado.getNombreUsuario() + "!");
+            controlador.cerrarSesion();
             javafx.application.Platform.exit();
             System.exit(0);
         });
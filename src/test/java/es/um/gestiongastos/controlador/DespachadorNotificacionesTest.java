@@ -0,0 +1,148 @@
+package es.um.gestiongastos.controlador;
+
+import es.um.gestiongastos.controlador.DespachadorNotificaciones.Metricas;
+import es.um.gestiongastos.controlador.DespachadorNotificaciones.PoliticaDescarte;
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.NotificacionListener;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Colas por listener del despachador: políticas de descarte con un listener
+ * parado, métricas y bajas. Los listeners apuntan lo que reciben en una cola
+ * que el test consulta con espera acotada.
+ */
+class DespachadorNotificacionesTest {
+
+    private static final long ESPERA_MS = 2000;
+    private static final int CAPACIDAD = 2;
+
+    private final DespachadorNotificaciones despachador = new DespachadorNotificaciones();
+    private final BlockingQueue<String> recibidas = new LinkedBlockingQueue<>();
+    private final CountDownLatch empezado = new CountDownLatch(1);
+    private final CountDownLatch soltar = new CountDownLatch(1);
+
+    /** Se queda parado en la primera notificación hasta que se le suelta. */
+    private final NotificacionListener lento = (n, alerta) -> {
+        empezado.countDown();
+        try {
+            soltar.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recibidas.add(n.getMensaje());
+    };
+
+    @Test
+    void descartarNuevaConservaLasQueYaEstabanEnCola() throws InterruptedException {
+        llenarConListenerParado(PoliticaDescarte.DESCARTAR_NUEVA);
+
+        assertEquals(List.of("n0", "n1", "n2"), entregadas(3));
+        Metricas m = metricas(3);
+        assertEquals(5, m.publicadas);
+        assertEquals(2, m.descartadas);
+        assertEquals(0, m.fallidas);
+        assertEquals(0, m.pendientes);
+    }
+
+    @Test
+    void descartarAntiguaDejaPasarLasMasRecientes() throws InterruptedException {
+        llenarConListenerParado(PoliticaDescarte.DESCARTAR_ANTIGUA);
+
+        assertEquals(List.of("n0", "n3", "n4"), entregadas(3));
+        Metricas m = metricas(3);
+        assertEquals(5, m.publicadas);
+        assertEquals(2, m.descartadas);
+    }
+
+    @Test
+    void unListenerQueFallaSeCuentaYSigueRecibiendo() throws InterruptedException {
+        despachador.registrar("Fallón", (n, alerta) -> {
+            recibidas.add(n.getMensaje());
+            if (n.getMensaje().equals("n0")) throw new IllegalStateException("caído");
+        });
+        publicar(2);
+
+        assertEquals(List.of("n0", "n1"), entregadas(2));
+        Metricas m = metricas(2);
+        assertEquals(1, m.entregadas);
+        assertEquals(1, m.fallidas);
+    }
+
+    @Test
+    void unListenerLentoNoRetrasaALosDemas() throws InterruptedException {
+        despachador.registrar("Lento", lento);
+        BlockingQueue<String> rapido = new LinkedBlockingQueue<>();
+        despachador.registrar("Rápido", (n, alerta) -> rapido.add(n.getMensaje()));
+        publicar(3);
+
+        for (int i = 0; i < 3; i++) assertEquals("n" + i, rapido.poll(ESPERA_MS, TimeUnit.MILLISECONDS));
+        assertTrue(recibidas.isEmpty());
+        soltar.countDown();
+    }
+
+    @Test
+    void eliminarDejaDeEntregar() throws InterruptedException {
+        NotificacionListener listener = (n, alerta) -> recibidas.add(n.getMensaje());
+        despachador.registrar("Baja", listener);
+        publicar(1);
+        assertEquals(List.of("n0"), entregadas(1));
+
+        despachador.eliminar(listener);
+        assertTrue(despachador.getMetricas().isEmpty());
+        publicar(1);
+        assertNull(recibidas.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Registra el listener lento con cola de {@value #CAPACIDAD}, espera a que
+     * se quede parado en n0 y publica n1..n4: dos entran y dos se descartan.
+     */
+    private void llenarConListenerParado(PoliticaDescarte politica) throws InterruptedException {
+        despachador.registrar("Lento", lento, CAPACIDAD, politica);
+        publicar(1);
+        assertTrue(empezado.await(ESPERA_MS, TimeUnit.MILLISECONDS));
+        for (int i = 1; i <= 4; i++) despachador.publicar(notificacion(i), null);
+        assertEquals(CAPACIDAD, despachador.getMetricas().get(0).pendientes);
+        soltar.countDown();
+    }
+
+    private void publicar(int cuantas) {
+        for (int i = 0; i < cuantas; i++) despachador.publicar(notificacion(i), null);
+    }
+
+    private List<String> entregadas(int cuantas) throws InterruptedException {
+        List<String> lista = new ArrayList<>();
+        for (int i = 0; i < cuantas; i++) {
+            String m = recibidas.poll(ESPERA_MS, TimeUnit.MILLISECONDS);
+            if (m == null) throw new AssertionError("Solo han llegado " + lista);
+            lista.add(m);
+        }
+        return lista;
+    }
+
+    /** Métricas del único listener, cuando ya ha atendido {@code atendidas}. */
+    private Metricas metricas(int atendidas) throws InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        while (true) {
+            Metricas m = despachador.getMetricas().get(0);
+            if (m.entregadas + m.fallidas >= atendidas || System.currentTimeMillis() > limite) return m;
+            Thread.sleep(10);
+        }
+    }
+
+    private static Notificacion notificacion(int i) {
+        return new Notificacion("id" + i, LocalDateTime.now(), "n" + i);
+    }
+}
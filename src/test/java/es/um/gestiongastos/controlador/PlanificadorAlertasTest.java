@@ -0,0 +1,125 @@
+package es.um.gestiongastos.controlador;
+
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.EstrategiaPorUmbral;
+import es.um.gestiongastos.model.Periodicidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Vencimientos del planificador con periodos de milisegundos: cada alerta
+ * vence a los ms que se le den desde que se programa (o reprograma).
+ */
+class PlanificadorAlertasTest {
+
+    private static final long ESPERA_MS = 2000;
+
+    private final BlockingQueue<Set<Alerta>> vencidas = new LinkedBlockingQueue<>();
+    private final Map<Alerta, Long> periodos = new IdentityHashMap<>();
+    private final PlanificadorAlertas planificador = new PlanificadorAlertas(vencidas::add,
+            a -> System.currentTimeMillis() + periodos.get(a));
+
+    @AfterEach
+    void detener() {
+        planificador.detener();
+    }
+
+    @Test
+    void venceYSeVuelveAProgramarParaElPeriodoSiguiente() throws InterruptedException {
+        Alerta a = alerta("a", 50);
+        planificador.programar(a);
+
+        assertEquals(Set.of(a), siguiente());
+        assertEquals(Set.of(a), siguiente());
+    }
+
+    @Test
+    void primeroVenceLaDelPeriodoMasCorto() throws InterruptedException {
+        Alerta larga = alerta("larga", 400);
+        Alerta corta = alerta("corta", 50);
+        planificador.programar(larga);
+        planificador.programar(corta);
+
+        assertEquals(Set.of(corta), siguiente());
+    }
+
+    @Test
+    void reprogramarSustituyeElVencimientoAnterior() throws InterruptedException {
+        Alerta a = alerta("a", 100);
+        planificador.programar(a);
+        periodos.put(a, 600L);
+        planificador.programar(a);
+
+        assertNull(vencidas.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(Set.of(a), siguiente());
+    }
+
+    @Test
+    void cancelarNoAvisa() throws InterruptedException {
+        Alerta a = alerta("a", 100);
+        planificador.programar(a);
+        planificador.cancelar(a);
+
+        assertNull(vencidas.poll(400, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void programarTodasSustituyeLoProgramado() throws InterruptedException {
+        Alerta anterior = alerta("anterior", 100);
+        Alerta nueva = alerta("nueva", 150);
+        planificador.programar(anterior);
+        planificador.programarTodas(List.of(nueva));
+
+        assertEquals(Set.of(nueva), siguiente());
+    }
+
+    @Test
+    void detenerTerminaElHiloYSePuedeVolverAArrancar() throws InterruptedException {
+        Alerta a = alerta("a", 100);
+        planificador.programar(a);
+        planificador.detener();
+
+        assertNull(vencidas.poll(400, TimeUnit.MILLISECONDS));
+        assertFalse(hiloVivo());
+
+        Alerta b = alerta("b", 50);
+        planificador.programar(b);
+        assertEquals(Set.of(b), siguiente());
+    }
+
+    private Set<Alerta> siguiente() throws InterruptedException {
+        Set<Alerta> s = vencidas.poll(ESPERA_MS, TimeUnit.MILLISECONDS);
+        if (s == null) throw new AssertionError("No ha vencido nada en " + ESPERA_MS + " ms");
+        return s;
+    }
+
+    private Alerta alerta(String nombre, long periodoMs) {
+        Alerta a = new Alerta(nombre, nombre, Periodicidad.SEMANAL, null, new EstrategiaPorUmbral(10));
+        periodos.put(a, periodoMs);
+        return a;
+    }
+
+    /** Si sigue vivo algún hilo del planificador tras darles tiempo a terminar. */
+    private static boolean hiloVivo() throws InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_MS;
+        while (System.currentTimeMillis() < limite) {
+            boolean vivo = Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(t -> t.getName().equals("Alertas-Planificador") && t.isAlive());
+            if (!vivo) return false;
+            Thread.sleep(20);
+        }
+        return true;
+    }
+}
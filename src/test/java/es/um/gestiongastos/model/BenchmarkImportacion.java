@@ -0,0 +1,74 @@
+package es.um.gestiongastos.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tiempo de importar N gastos, de uno en uno, en una cuenta de cuatro
+ * participantes, duplicando N en cada fila:
+ * - incremental: {@link GastosCompartidos#agregarGasto(Gasto)}, que solo aplica
+ *   el reparto del gasto nuevo; el tiempo por gasto debe salir plano (lineal);
+ * - reproduciendo: además, {@link GastosCompartidos#recalcularSaldos()} tras cada
+ *   alta, que es lo que costaba antes cada alta (cuadrático). Solo hasta
+ *   {@value #MAX_REPRODUCIENDO} gastos, que a partir de ahí tarda demasiado.
+ * Al final se comprueba que los saldos cuadran con una reproducción entera.
+ *
+ * No es una prueba de JUnit. Se ejecuta a mano:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      es.um.gestiongastos.model.BenchmarkImportacion [gastos...]
+ * </pre>
+ */
+public class BenchmarkImportacion {
+
+    private static final int MAX_REPRODUCIENDO = 40_000;
+
+    public static void main(String[] args) {
+        int[] tamaños = (args.length == 0) ? new int[] { 5_000, 10_000, 20_000, 40_000, 80_000, 160_000, 320_000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) tamaños[i] = Integer.parseInt(args[i]);
+
+        // Calentamiento
+        importar(20_000, false);
+        importar(2_000, true);
+
+        System.out.printf("%-8s %-13s %10s %12s%n", "gastos", "modo", "ms", "us por gasto");
+        for (int n : tamaños) {
+            long nanos = importar(n, false);
+            System.out.printf("%-8d %-13s %10.1f %12.2f%n", n, "incremental", nanos / 1e6, nanos / 1e3 / n);
+            if (n <= MAX_REPRODUCIENDO) {
+                nanos = importar(n, true);
+                System.out.printf("%-8d %-13s %10.1f %12.2f%n", n, "reproduciendo", nanos / 1e6, nanos / 1e3 / n);
+            }
+        }
+    }
+
+    /** Nanosegundos que tarda en dar de alta los n gastos. */
+    private static long importar(int n, boolean reproducir) {
+        Random r = new Random(42);
+        List<Persona> participantes = new ArrayList<>();
+        for (int i = 0; i < 4; i++) participantes.add(new Persona("p" + i, "Usuario " + i, "usuario" + i, "clave"));
+        GastosCompartidos cuenta = new GastosCompartidos("c", "Importada", participantes, null);
+        Categoria categoria = new Categoria("Importados");
+        LocalDate hoy = LocalDate.now();
+
+        List<Gasto> gastos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            gastos.add(new Gasto("g" + i, BigDecimal.valueOf(100 + r.nextInt(20_000), 2), hoy.minusDays(r.nextInt(1000)),
+                    categoria, participantes.get(r.nextInt(4)), "Gasto " + i, cuenta));
+        }
+
+        long t0 = System.nanoTime();
+        for (Gasto g : gastos) {
+            cuenta.agregarGasto(g);
+            if (reproducir) cuenta.recalcularSaldos();
+        }
+        long nanos = System.nanoTime() - t0;
+
+        if (cuenta.recalcularSaldos()) throw new IllegalStateException("Los saldos incrementales no cuadran con el historial.");
+        return nanos;
+    }
+}
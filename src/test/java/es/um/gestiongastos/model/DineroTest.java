@@ -0,0 +1,95 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Céntimos en long: conversiones, redondeo de los repartos (medios lejos del
+ * cero, como HALF_UP) y desbordamientos.
+ */
+class DineroTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "10.005, 1001",
+        "10.004, 1000",
+        "-10.005, -1001",
+        "-0.004, 0",
+        "0.1, 10",
+        "123456789.99, 12345678999"
+    })
+    void deBigDecimalRedondeaAlCentimo(String importe, long centimos) {
+        assertEquals(centimos, Dinero.de(new BigDecimal(importe)).centimos());
+    }
+
+    @Test
+    void conversiones() {
+        assertSame(Dinero.CERO, Dinero.de((BigDecimal) null));
+        assertSame(Dinero.CERO, Dinero.deCentimos(0));
+        assertEquals(Dinero.deCentimos(1999), Dinero.de(19.99));
+        assertEquals(new BigDecimal("-3.05"), Dinero.deCentimos(-305).aBigDecimal());
+        assertEquals("-3.05", Dinero.deCentimos(-305).toString());
+        assertEquals("0.00", Dinero.CERO.toString());
+        assertEquals(-3.05, Dinero.deCentimos(-305).doubleValue());
+        assertEquals(3333, Dinero.puntosBasicos(33.33));
+        assertEquals(Dinero.PUNTOS_BASICOS_TOTAL, Dinero.puntosBasicos(100));
+    }
+
+    @Test
+    void aritmeticaYOrden() {
+        Dinero a = Dinero.deCentimos(1050), b = Dinero.deCentimos(-250);
+        assertEquals(Dinero.deCentimos(800), a.sumar(b));
+        assertEquals(Dinero.deCentimos(1300), a.restar(b));
+        assertEquals(Dinero.deCentimos(250), b.negar());
+        assertTrue(b.esNegativo());
+        assertTrue(a.compareTo(b) > 0);
+        assertEquals(a.hashCode(), Dinero.de(new BigDecimal("10.50")).hashCode());
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        // centimos, parte, total, esperado
+        "100, 1, 3, 33",
+        "200, 1, 3, 67",
+        "5, 1, 2, 3",
+        "-5, 1, 2, -3",
+        "-100, 2, 3, -67",
+        "1, 5000, 10000, 1",
+        "1, 4999, 10000, 0",
+        "0, 1, 7, 0"
+    })
+    void repartirRedondeaLosMediosLejosDelCero(long centimos, long parte, long total, long esperado) {
+        assertEquals(esperado, Dinero.repartir(centimos, parte, total));
+    }
+
+    @Test
+    void repartirCoincideConHalfUp() {
+        Random azar = new Random(14);
+        for (int i = 0; i < 10_000; i++) {
+            long centimos = azar.nextLong(-10_000_000L, 10_000_000L);
+            long total = 1 + azar.nextInt(Dinero.PUNTOS_BASICOS_TOTAL);
+            long parte = azar.nextLong(total + 1);
+            long esperado = BigDecimal.valueOf(centimos).multiply(BigDecimal.valueOf(parte))
+                    .divide(BigDecimal.valueOf(total), 0, RoundingMode.HALF_UP).longValueExact();
+            assertEquals(esperado, Dinero.repartir(centimos, parte, total), centimos + " × " + parte + " / " + total);
+        }
+    }
+
+    @Test
+    void desbordamientosYTotalNoValido() {
+        assertThrows(IllegalArgumentException.class, () -> Dinero.repartir(100, 1, 0));
+        assertThrows(ArithmeticException.class, () -> Dinero.deCentimos(Long.MAX_VALUE).sumar(Dinero.deCentimos(1)));
+        assertThrows(ArithmeticException.class, () -> Dinero.repartir(Long.MAX_VALUE / 2, 3, 4));
+        assertThrows(ArithmeticException.class, () -> Dinero.de(new BigDecimal("1e30")));
+    }
+}
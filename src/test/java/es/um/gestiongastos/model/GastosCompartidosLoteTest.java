@@ -0,0 +1,138 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Altas y bajas de varios gastos de una vez ({@code agregarGastos} y
+ * {@code eliminarGastos}, lo que usa el lote del controlador): los saldos
+ * deben quedar igual que de uno en uno y cuadrar con una reproducción entera.
+ */
+class GastosCompartidosLoteTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    private Persona ana, luis, eva;
+    private final Categoria comida = new Categoria("Comida");
+    private int siguienteId;
+
+    @BeforeEach
+    void preparar() {
+        ana = new Persona("p1", "Ana", "ana", "x");
+        luis = new Persona("p2", "Luis", "luis", "x");
+        eva = new Persona("p3", "Eva", "eva", "x");
+    }
+
+    @Test
+    void altasDeGolpeIgualQueDeUnaEnUna() {
+        GastosCompartidos deGolpe = cuenta("c1");
+        GastosCompartidos deUnoEnUno = cuenta("c2");
+        deGolpe.cambiarPorcentajes(HOY.minusDays(30), Map.of(ana, 50.0, luis, 30.0, eva, 20.0));
+        deUnoEnUno.cambiarPorcentajes(HOY.minusDays(30), Map.of(ana, 50.0, luis, 30.0, eva, 20.0));
+
+        List<Gasto> gastos = aleatorios(deGolpe, 500, new Random(3));
+        deGolpe.agregarGastos(gastos);
+        for (Gasto g : aleatorios(deUnoEnUno, 500, new Random(3))) deUnoEnUno.agregarGasto(g);
+
+        assertMismosSaldos(deUnoEnUno, deGolpe);
+        assertEquals(500, deGolpe.getGastos().size());
+        assertFalse(deGolpe.recalcularSaldos());
+    }
+
+    @Test
+    void losQueYaEstabanSeIgnoran() {
+        GastosCompartidos cuenta = cuenta("c1");
+        List<Gasto> gastos = aleatorios(cuenta, 20, new Random(5));
+        cuenta.agregarGastos(gastos);
+        Dinero antes = cuenta.getSaldoDinero(ana);
+        cuenta.marcarGuardada();
+
+        cuenta.agregarGastos(gastos);
+        assertEquals(antes, cuenta.getSaldoDinero(ana));
+        assertEquals(20, cuenta.getGastos().size());
+        assertFalse(cuenta.isModificada());
+
+        cuenta.eliminarGastos(List.of(gasto(cuenta, "9.99", HOY, eva)));
+        assertEquals(antes, cuenta.getSaldoDinero(ana));
+        assertFalse(cuenta.isModificada());
+    }
+
+    @Test
+    void bajasDeGolpeIgualQueNoHaberlosDadoDeAlta() {
+        GastosCompartidos cuenta = cuenta("c1");
+        GastosCompartidos soloQuedan = cuenta("c2");
+        List<Gasto> gastos = aleatorios(cuenta, 300, new Random(9));
+        List<Gasto> copia = aleatorios(soloQuedan, 300, new Random(9));
+        cuenta.agregarGastos(gastos);
+
+        List<Gasto> bajas = new ArrayList<>();
+        List<Gasto> quedan = new ArrayList<>();
+        for (int i = 0; i < gastos.size(); i++) {
+            if (i % 3 == 0) bajas.add(gastos.get(i)); else quedan.add(copia.get(i));
+        }
+        cuenta.eliminarGastos(bajas);
+        soloQuedan.agregarGastos(quedan);
+
+        assertMismosSaldos(soloQuedan, cuenta);
+        assertEquals(quedan.size(), cuenta.getGastos().size());
+        assertEquals(soloQuedan.getImporteEntre(null, null), cuenta.getImporteEntre(null, null));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void modificarSacandoYVolviendoAMeter() {
+        GastosCompartidos cuenta = cuenta("c1");
+        List<Gasto> gastos = aleatorios(cuenta, 100, new Random(13));
+        cuenta.agregarGastos(gastos);
+
+        // Como el lote: salen con los datos de antes, se cambian y vuelven con los nuevos
+        List<Gasto> cambiados = gastos.subList(10, 40);
+        cuenta.eliminarGastos(cambiados);
+        for (Gasto g : cambiados) {
+            g.setImporte(g.getImporte().add(BigDecimal.ONE));
+            g.setFecha(HOY.plusDays(1));
+            g.setPagador(eva);
+        }
+        cuenta.agregarGastos(cambiados);
+
+        assertFalse(cuenta.recalcularSaldos());
+        assertEquals(cambiados.size(), cuenta.getGastosEntre(HOY.plusDays(1), null).size());
+        assertEquals(0, cuenta.getSaldoDinero(ana).sumar(cuenta.getSaldoDinero(luis))
+                .sumar(cuenta.getSaldoDinero(eva)).centimos());
+    }
+
+    private GastosCompartidos cuenta(String id) {
+        return new GastosCompartidos(id, "Piso", List.of(ana, luis, eva), null);
+    }
+
+    /** Los mismos gastos (ids, importes, fechas y pagadores) para la misma semilla. */
+    private List<Gasto> aleatorios(GastosCompartidos cuenta, int n, Random r) {
+        List<Persona> pagadores = List.of(ana, luis, eva);
+        List<Gasto> gastos = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            gastos.add(new Gasto("g" + i, BigDecimal.valueOf(1 + r.nextInt(20_000), 2), HOY.minusDays(r.nextInt(60)),
+                    comida, pagadores.get(r.nextInt(3)), "gasto " + i, cuenta));
+        }
+        return gastos;
+    }
+
+    private Gasto gasto(GastosCompartidos cuenta, String importe, LocalDate fecha, Persona pagador) {
+        return new Gasto("x" + (siguienteId++), new BigDecimal(importe), fecha, comida, pagador, "gasto", cuenta);
+    }
+
+    private void assertMismosSaldos(GastosCompartidos esperada, GastosCompartidos obtenida) {
+        for (Persona p : List.of(ana, luis, eva)) {
+            assertEquals(esperada.getSaldoDinero(p), obtenida.getSaldoDinero(p), "Saldo de " + p.getNombreUsuario());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Topes del historial de notificaciones (número y antigüedad) y paginación.
+ * Los límites son de cada historial; aquí se fijan pequeños.
+ */
+class HistorialNotificacionesTest {
+
+    private static final int MAXIMO = 5;
+    private static final int DIAS = 10;
+
+    private final HistorialNotificaciones historial = new HistorialNotificaciones(MAXIMO, DIAS);
+    private final LocalDateTime ahora = LocalDateTime.now();
+    private int siguienteId;
+
+    @Test
+    void laMasNuevaVaPrimeroYSeDescartanLasQueSobran() {
+        List<Notificacion> añadidas = new ArrayList<>();
+        for (int i = 0; i < MAXIMO + 3; i++) {
+            Notificacion n = notificacion(ahora.plusSeconds(i));
+            historial.agregar(n);
+            añadidas.add(0, n);
+        }
+
+        assertEquals(MAXIMO, historial.tamaño());
+        assertEquals(añadidas.subList(0, MAXIMO), historial.todas());
+        assertFalse(historial.contiene(añadidas.get(MAXIMO)));
+        assertTrue(historial.contiene(añadidas.get(0)));
+    }
+
+    @Test
+    void seDescartanLasMasAntiguasQueLaRetencion() {
+        Notificacion vieja = notificacion(ahora.minusDays(DIAS + 1));
+        Notificacion reciente = notificacion(ahora.minusDays(DIAS - 1));
+        historial.cargar(List.of(reciente, vieja));
+
+        assertEquals(List.of(reciente), historial.todas());
+
+        // Las que no tienen fecha no se pueden datar: se conservan
+        Notificacion sinFecha = notificacion(null);
+        historial.cargar(List.of(reciente, sinFecha));
+        assertEquals(2, historial.tamaño());
+    }
+
+    @Test
+    void cargarRespetaElTope() {
+        List<Notificacion> lista = new ArrayList<>();
+        for (int i = 0; i < MAXIMO * 2; i++) lista.add(notificacion(ahora.minusMinutes(i)));
+        historial.cargar(lista);
+
+        assertEquals(lista.subList(0, MAXIMO), historial.todas());
+        historial.cargar(null);
+        assertEquals(0, historial.tamaño());
+    }
+
+    @Test
+    void sinLimitesSeGuardaTodoHastaQueSeFijan() {
+        HistorialNotificaciones sinLimites = new HistorialNotificaciones();
+        List<Notificacion> lista = new ArrayList<>();
+        for (int i = 0; i < MAXIMO * 2; i++) lista.add(notificacion(ahora.minusDays(i * 3)));
+        sinLimites.cargar(lista);
+        assertEquals(MAXIMO * 2, sinLimites.tamaño());
+
+        // Al fijarlos se descarta lo que sobra; el otro historial no cambia
+        sinLimites.limitar(MAXIMO, DIAS);
+        assertEquals(lista.subList(0, 4), sinLimites.todas());
+        assertEquals(MAXIMO, sinLimites.getMaximo());
+        historial.cargar(lista);
+        assertEquals(4, historial.tamaño());
+        assertEquals(Integer.MAX_VALUE, new HistorialNotificaciones().getMaximo());
+    }
+
+    @Test
+    void paginas() {
+        List<Notificacion> lista = new ArrayList<>();
+        for (int i = 0; i < MAXIMO; i++) lista.add(notificacion(ahora.minusMinutes(i)));
+        historial.cargar(lista);
+
+        assertEquals(lista.subList(0, 2), historial.pagina(0, 2));
+        assertEquals(lista.subList(2, 4), historial.pagina(1, 2));
+        assertEquals(lista.subList(4, 5), historial.pagina(2, 2));
+        assertTrue(historial.pagina(3, 2).isEmpty());
+        assertTrue(historial.pagina(-1, 2).isEmpty());
+        assertTrue(historial.pagina(0, 0).isEmpty());
+    }
+
+    @Test
+    void elNivelAvisadoSeRecuperaDelHistorialRecortado() {
+        Persona ana = new Persona("p1", "Ana", "ana", "x");
+        ana.limitarNotificaciones(MAXIMO, DIAS);
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Personal", List.of(ana), null);
+        ana.agregarCuenta(cuenta);
+        cuenta.agregarGasto(new Gasto("g1", new BigDecimal("120.00"), ahora.toLocalDate(),
+                new Categoria("Comida"), ana, "gasto", cuenta));
+        Alerta alerta = new Alerta("a", "a", Periodicidad.MENSUAL, null, new EstrategiaPorUmbral(100));
+        ana.agregarAlerta(alerta);
+
+        ana.agregarNotificacion(new Notificacion("n-a", ahora, "aviso", alerta.getId(), 1));
+        // Otras más nuevas no lo tapan mientras quepa en el tope
+        for (int i = 1; i < MAXIMO; i++) ana.agregarNotificacion(notificacion(ahora.plusSeconds(i)));
+        assertTrue(new MotorAlertas(ana).comprobar().isEmpty());
+
+        // Si el tope ya lo ha descartado, se vuelve a avisar
+        ana.agregarNotificacion(notificacion(ahora.plusSeconds(MAXIMO)));
+        assertEquals(1, new MotorAlertas(ana).comprobar().size());
+    }
+
+    private Notificacion notificacion(LocalDateTime fechaHora) {
+        return new Notificacion("n" + (siguienteId++), fechaHora, "aviso");
+    }
+}
@@ -0,0 +1,139 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * El índice por fecha de {@link GastosCompartidos}, que se mantiene con cada
+ * cambio, contra el cálculo directo sobre el historial.
+ */
+class IndiceFechasTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    private Persona ana, luis, eva;
+    private GastosCompartidos cuenta;
+    private final Categoria comida = new Categoria("Comida");
+    private int siguienteId;
+
+    @BeforeEach
+    void preparar() {
+        ana = new Persona("p1", "Ana", "ana", "x");
+        luis = new Persona("p2", "Luis", "luis", "x");
+        eva = new Persona("p3", "Eva", "eva", "x");
+        cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis, eva), null);
+    }
+
+    @Test
+    void cuentaVacia() {
+        assertTrue(cuenta.getGastosEntre(null, null).isEmpty());
+        assertEquals(0, cuenta.getImporteEntre(null, null).centimos());
+        assertEquals(0, cuenta.getCosteEntre(ana, HOY.minusDays(10), HOY).centimos());
+        assertNull(cuenta.getPrimeraFecha());
+        assertNull(cuenta.getUltimaFecha());
+    }
+
+    @Test
+    void rangosOrdenadosPorFecha() {
+        Gasto g1 = gasto("10.00", HOY.minusDays(3), ana);
+        Gasto g2 = gasto("20.00", HOY.minusDays(1), luis);
+        Gasto g3 = gasto("30.00", HOY.minusDays(3), eva);
+        cuenta.agregarGasto(g2);
+        cuenta.agregarGasto(g1);
+        cuenta.agregarGasto(g3);
+
+        assertEquals(List.of(g1, g3, g2), cuenta.getGastosEntre(null, null));
+        assertEquals(List.of(g1, g3), cuenta.getGastosEntre(HOY.minusDays(3), HOY.minusDays(2)));
+        assertEquals(4000, cuenta.getImporteEntre(HOY.minusDays(3), HOY.minusDays(3)).centimos());
+        assertTrue(cuenta.getGastosEntre(HOY, HOY.minusDays(5)).isEmpty());
+        assertEquals(HOY.minusDays(3), cuenta.getPrimeraFecha());
+        assertEquals(HOY.minusDays(1), cuenta.getUltimaFecha());
+    }
+
+    @Test
+    void fechasSiglosAtrasSeSumanFueraDeLaVentana() {
+        Gasto antiguo = gasto("5.00", LocalDate.of(1700, 1, 1), ana);
+        Gasto reciente = gasto("7.00", HOY, luis);
+        cuenta.agregarGasto(reciente);
+        assertEquals(700, cuenta.getImporteEntre(null, null).centimos());
+        cuenta.agregarGasto(antiguo);
+
+        assertEquals(1200, cuenta.getImporteEntre(null, null).centimos());
+        assertEquals(500, cuenta.getImporteEntre(null, LocalDate.of(1800, 1, 1)).centimos());
+        assertEquals(700, cuenta.getImporteEntre(LocalDate.of(1800, 1, 1), null).centimos());
+        assertEquals(List.of(antiguo, reciente), cuenta.getGastosEntre(null, null));
+
+        cuenta.eliminarGasto(antiguo);
+        assertEquals(700, cuenta.getImporteEntre(null, null).centimos());
+    }
+
+    @Test
+    void cambiosAleatoriosCuadranConElHistorial() {
+        Random r = new Random(7);
+        List<Gasto> dentro = new ArrayList<>();
+        // Se consulta desde el principio: el índice ya existe y se mantiene con cada cambio
+        comprobar(r);
+        for (int paso = 0; paso < 2000; paso++) {
+            int op = r.nextInt(10);
+            if (op < 6 || dentro.isEmpty()) {
+                // De vez en cuando una fecha muy lejana, que obliga a mover la ventana
+                int dias = (r.nextInt(50) == 0) ? r.nextInt(20_000) : r.nextInt(400);
+                Gasto g = gasto(BigDecimal.valueOf(1 + r.nextInt(50_000), 2).toPlainString(),
+                        HOY.minusDays(dias), List.of(ana, luis, eva).get(r.nextInt(3)));
+                cuenta.agregarGasto(g);
+                dentro.add(g);
+            } else if (op < 9) {
+                cuenta.eliminarGasto(dentro.remove(r.nextInt(dentro.size())));
+            } else {
+                double a = 10 + r.nextInt(60);
+                cuenta.cambiarPorcentajes(HOY.minusDays(r.nextInt(400)), Map.of(ana, a, luis, 90 - a, eva, 10.0));
+            }
+            if (paso % 50 == 0) comprobar(r);
+        }
+        comprobar(r);
+    }
+
+    /** Rangos al azar (y sin límite) contra el recorrido del historial. */
+    private void comprobar(Random r) {
+        for (int i = 0; i < 20; i++) {
+            LocalDate desde = (i == 0) ? null : HOY.minusDays(r.nextInt(500));
+            LocalDate hasta = (i == 0) ? null : desde.plusDays(r.nextInt(200));
+            long importe = 0;
+            long costeAna = 0, costeLuis = 0;
+            List<Gasto> esperados = new ArrayList<>();
+            for (Gasto g : cuenta.getGastos()) {
+                LocalDate f = g.getFecha();
+                if ((desde == null || !f.isBefore(desde)) && (hasta == null || !f.isAfter(hasta))) {
+                    esperados.add(g);
+                    importe += g.getImporteDinero().centimos();
+                    costeAna += g.getCosteCentimosPara(ana);
+                    costeLuis += g.getCosteCentimosPara(luis);
+                }
+            }
+            List<Gasto> obtenidos = cuenta.getGastosEntre(desde, hasta);
+            assertEquals(esperados.size(), obtenidos.size());
+            assertTrue(obtenidos.containsAll(esperados));
+            for (int j = 1; j < obtenidos.size(); j++) {
+                assertTrue(!obtenidos.get(j).getFecha().isBefore(obtenidos.get(j - 1).getFecha()));
+            }
+            assertEquals(importe, cuenta.getImporteEntre(desde, hasta).centimos());
+            assertEquals(costeAna, cuenta.getCosteEntre(ana, desde, hasta).centimos());
+            assertEquals(costeLuis, cuenta.getCosteEntre(luis, desde, hasta).centimos());
+        }
+    }
+
+    private Gasto gasto(String importe, LocalDate fecha, Persona pagador) {
+        return new Gasto("g" + (siguienteId++), new BigDecimal(importe), fecha, comida, pagador, "gasto", cuenta);
+    }
+}
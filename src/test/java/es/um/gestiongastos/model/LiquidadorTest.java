@@ -0,0 +1,130 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Liquidación de saldos: los pagos dejan a todos a cero, el exacto da el
+ * mínimo de pagos en grupos pequeños y el voraz aguanta grupos grandes.
+ */
+class LiquidadorTest {
+
+    private final List<Persona> personas = new ArrayList<>();
+
+    @Test
+    void sinSaldosNoHayPagos() {
+        Map<Persona, Dinero> saldos = saldos(0, 0, 0);
+        assertTrue(Liquidador.liquidar(saldos, true).isEmpty());
+        assertTrue(Liquidador.liquidar(saldos, false).isEmpty());
+    }
+
+    @Test
+    void elExactoEncuentraLosSubgruposQueSumanCero() {
+        // {+6, -3, -3} y {+4, -4}: 3 pagos. El voraz empareja 6 con 4 y necesita 4.
+        Map<Persona, Dinero> saldos = saldos(600, 400, -300, -300, -400);
+
+        List<Transferencia> exacto = Liquidador.liquidar(saldos, true);
+        assertEquals(3, exacto.size());
+        assertSaldan(saldos, exacto);
+
+        List<Transferencia> voraz = Liquidador.liquidar(saldos, false);
+        assertEquals(4, voraz.size());
+        assertSaldan(saldos, voraz);
+    }
+
+    @Test
+    void losPagosVanDeMayorAMenorImporte() {
+        List<Transferencia> pagos = Liquidador.liquidar(saldos(1000, -700, -250, -50), true);
+        for (int i = 1; i < pagos.size(); i++) {
+            assertTrue(pagos.get(i - 1).getImporteDinero().compareTo(pagos.get(i).getImporteDinero()) >= 0);
+        }
+    }
+
+    @Test
+    void loQueNoCuadraSeQuedaSinLiquidar() {
+        List<Transferencia> pagos = Liquidador.liquidar(saldos(1000, -993), true);
+        assertEquals(1, pagos.size());
+        assertEquals(993, pagos.get(0).getImporteDinero().centimos());
+        assertEquals(personas.get(1), pagos.get(0).getDeudor());
+        assertEquals(personas.get(0), pagos.get(0).getAcreedor());
+    }
+
+    @Test
+    void variasCuentasSeLiquidanJuntas() {
+        Persona ana = persona(), luis = persona(), eva = persona();
+        Categoria c = new Categoria("Comida");
+        GastosCompartidos piso = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+        GastosCompartidos viaje = new GastosCompartidos("c2", "Viaje", List.of(ana, luis, eva), null);
+        LocalDate hoy = LocalDate.of(2026, 10, 18);
+        piso.agregarGasto(new Gasto("g1", new BigDecimal("100.00"), hoy, c, ana, "compra", piso));
+        viaje.agregarGasto(new Gasto("g2", new BigDecimal("90.00"), hoy, c, luis, "gasolina", viaje));
+
+        // Piso: ana +50, luis -50. Viaje: luis +60, ana -30, eva -30.
+        Map<Persona, Dinero> saldos = Liquidador.saldos(List.of(piso, viaje));
+        assertEquals(2000, saldos.get(ana).centimos());
+        assertEquals(1000, saldos.get(luis).centimos());
+        assertEquals(-3000, saldos.get(eva).centimos());
+
+        List<Transferencia> pagos = Liquidador.liquidar(List.of(piso, viaje));
+        assertEquals(2, pagos.size());
+        assertSaldan(saldos, pagos);
+    }
+
+    @Test
+    void elVorazLiquidaMilesDeParticipantes() {
+        Random r = new Random(11);
+        int n = 5000;
+        long[] centimos = new long[n];
+        long suma = 0;
+        for (int i = 0; i < n - 1; i++) {
+            centimos[i] = r.nextInt(200_001) - 100_000;
+            suma += centimos[i];
+        }
+        centimos[n - 1] = -suma;
+        Map<Persona, Dinero> saldos = saldos(centimos);
+
+        long t0 = System.nanoTime();
+        List<Transferencia> pagos = Liquidador.liquidar(saldos, true);
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+
+        assertTrue(pagos.size() <= n - 1, "Como mucho n - 1 pagos: " + pagos.size());
+        assertSaldan(saldos, pagos);
+        assertTrue(ms < 2000, "Ha tardado " + ms + " ms");
+    }
+
+    /** Aplicando los pagos, cada uno se queda a cero. */
+    private static void assertSaldan(Map<Persona, Dinero> saldos, List<Transferencia> pagos) {
+        Map<Persona, Long> quedan = new HashMap<>();
+        saldos.forEach((p, s) -> quedan.put(p, s.centimos()));
+        for (Transferencia t : pagos) {
+            assertTrue(t.getImporteDinero().centimos() > 0);
+            quedan.merge(t.getDeudor(), t.getImporteDinero().centimos(), Long::sum);
+            quedan.merge(t.getAcreedor(), -t.getImporteDinero().centimos(), Long::sum);
+        }
+        quedan.forEach((p, c) -> assertEquals(0L, c, p.getNombreUsuario() + " no queda a cero"));
+    }
+
+    private Map<Persona, Dinero> saldos(long... centimos) {
+        Map<Persona, Dinero> saldos = new LinkedHashMap<>();
+        for (long c : centimos) saldos.put(persona(), Dinero.deCentimos(c));
+        return saldos;
+    }
+
+    private Persona persona() {
+        int i = personas.size();
+        Persona p = new Persona("p" + i, "Persona " + i, String.format("usuario%05d", i), "x");
+        personas.add(p);
+        return p;
+    }
+}
@@ -0,0 +1,282 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Totales y avisos del {@link MotorAlertas}, con un reloj que se adelanta a
+ * mano. La cuenta es solo de Ana, así que su coste es el importe entero.
+ */
+class MotorAlertasTest {
+
+    private static final LocalDate INICIO = LocalDate.of(2026, 10, 18);
+
+    private LocalDate hoy = INICIO;
+    private Persona ana;
+    private GastosCompartidos cuenta;
+    private final Categoria comida = new Categoria("Comida");
+    private int siguienteId;
+
+    @BeforeEach
+    void preparar() {
+        ana = new Persona("p1", "Ana", "ana", "x");
+        cuenta = new GastosCompartidos("c1", "Personal", List.of(ana), null);
+        ana.agregarCuenta(cuenta);
+    }
+
+    // --- TOTALES INCREMENTALES ---
+
+    @Test
+    void totalesIncrementalesCuadranConElRecorridoDeLosGastos() {
+        Persona luis = new Persona("p2", "Luis", "luis", "x");
+        GastosCompartidos piso = new GastosCompartidos("c2", "Piso", List.of(ana, luis), null);
+        ana.agregarCuenta(piso);
+        Categoria ocio = new Categoria("Ocio");
+        Alerta semanal = alerta(Periodicidad.SEMANAL, null, 100);
+        Alerta mensualComida = alerta(Periodicidad.MENSUAL, comida, 300);
+        Alerta mensualOcio = alerta(Periodicidad.MENSUAL, ocio, 50);
+        MotorAlertas motor = motorCon(semanal, mensualComida, mensualOcio);
+
+        Random r = new Random(21);
+        List<Gasto> dentro = new ArrayList<>();
+        for (int paso = 0; paso < 1500; paso++) {
+            int op = r.nextInt(20);
+            if (op < 10 || dentro.isEmpty()) {
+                GastosCompartidos cuenta = r.nextBoolean() ? this.cuenta : piso;
+                Persona pagador = cuenta.getParticipantes().get(r.nextInt(cuenta.getParticipantes().size())).getPersona();
+                Gasto g = new Gasto("g" + (siguienteId++), BigDecimal.valueOf(1 + r.nextInt(10_000), 2),
+                        hoy.minusDays(r.nextInt(45) - 5), r.nextBoolean() ? comida : ocio, pagador, "gasto", cuenta);
+                cuenta.agregarGasto(g);
+                motor.sumar(g);
+                dentro.add(g);
+            } else if (op < 15) {
+                Gasto g = dentro.remove(r.nextInt(dentro.size()));
+                motor.restar(g);
+                g.getCuenta().eliminarGasto(g);
+            } else if (op < 18) {
+                // Modificación: sale con sus datos de antes y vuelve con los nuevos
+                Gasto g = dentro.get(r.nextInt(dentro.size()));
+                motor.restar(g);
+                g.getCuenta().eliminarGasto(g);
+                g.setImporte(BigDecimal.valueOf(1 + r.nextInt(10_000), 2));
+                g.setFecha(hoy.minusDays(r.nextInt(45) - 5));
+                g.setCategoria(r.nextBoolean() ? comida : ocio);
+                g.getCuenta().agregarGasto(g);
+                motor.sumar(g);
+            } else if (op < 19) {
+                hoy = hoy.plusDays(1 + r.nextInt(4));
+            } else {
+                double parte = 10 + r.nextInt(80);
+                piso.cambiarPorcentajes(hoy.minusDays(r.nextInt(40)), Map.of(ana, parte, luis, 100 - parte));
+                motor.reconstruir();
+            }
+            for (Alerta a : List.of(semanal, mensualComida, mensualOcio)) {
+                assertEquals(recorrido(a), Math.round(motor.getTotal(a) * 100), a.getNombre() + " en el paso " + paso);
+            }
+            motor.comprobar();
+        }
+    }
+
+    @Test
+    void alCambiarDeMesElTotalVuelveACero() {
+        hoy = LocalDate.of(2026, 10, 30);
+        Alerta mensual = alerta(Periodicidad.MENSUAL, null, 100);
+        MotorAlertas motor = motorCon(mensual);
+        alta(motor, "150.00", hoy);
+        assertEquals(1, motor.comprobar().size());
+
+        hoy = LocalDate.of(2026, 11, 1);
+        assertEquals(0, motor.getTotal(mensual), 0.001);
+        alta(motor, "150.00", hoy);
+        assertEquals(1, motor.comprobar().size(), "Periodo nuevo: vuelve a avisar");
+    }
+
+    @Test
+    void cadaEscalonAvisaUnaVezPorPeriodo() {
+        MotorAlertas motor = motorCon(alerta(Periodicidad.MENSUAL, null, 100));
+        alta(motor, "120.00", hoy);
+        assertEquals(1, motor.comprobar().size());
+        alta(motor, "10.00", hoy);
+        assertTrue(motor.comprobar().isEmpty(), "Mismo escalón");
+
+        // En un periodo natural bajar no rearma: volver a subir no avisa
+        Gasto g = alta(motor, "1.00", hoy);
+        baja(motor, g);
+        assertTrue(motor.comprobar().isEmpty());
+    }
+
+    /** Coste de Ana en el periodo actual de la alerta, recorriendo todos los gastos. */
+    private long recorrido(Alerta a) {
+        LocalDate inicio = a.getPeriodicidad().inicioPeriodo(hoy);
+        LocalDate fin = a.getPeriodicidad().finPeriodo(hoy);
+        long total = 0;
+        for (GastosCompartidos c : ana.getCuentas()) {
+            for (Gasto g : c.getGastos()) {
+                boolean enPeriodo = !g.getFecha().isBefore(inicio) && !g.getFecha().isAfter(fin);
+                boolean deCategoria = a.getCategoriaOpcional().map(cat -> cat.getNombre().equals(g.getCategoria().getNombre())).orElse(true);
+                if (enPeriodo && deCategoria) total += g.getCosteCentimosPara(ana);
+            }
+        }
+        return total;
+    }
+
+    // --- VENTANAS MÓVILES: DESLIZAMIENTO ---
+
+    @Test
+    void ventanasMovilesDeslizanDiaADia() {
+        Alerta siete = alerta(Periodicidad.ULTIMOS_7_DIAS, null, 100);
+        Alerta treinta = alerta(Periodicidad.ULTIMOS_30_DIAS, null, 100);
+        Alerta diezComida = new Alerta("n", "n", Periodicidad.ULTIMOS_N_DIAS, 10, comida, new EstrategiaPorUmbral(100));
+        MotorAlertas motor = motorCon(siete, treinta, diezComida);
+        Categoria ocio = new Categoria("Ocio");
+
+        Random r = new Random(22);
+        List<Gasto> dentro = new ArrayList<>();
+        for (int paso = 0; paso < 400; paso++) {
+            int op = r.nextInt(10);
+            if (op < 5 || dentro.isEmpty()) {
+                // También con fecha futura: entra en la ventana cuando llega su día
+                Gasto g = new Gasto("g" + (siguienteId++), BigDecimal.valueOf(1 + r.nextInt(10_000), 2),
+                        hoy.plusDays(5 - r.nextInt(40)), r.nextBoolean() ? comida : ocio, ana, "gasto", cuenta);
+                cuenta.agregarGasto(g);
+                motor.sumar(g);
+                dentro.add(g);
+            } else if (op < 7) {
+                baja(motor, dentro.remove(r.nextInt(dentro.size())));
+            } else if (op < 9) {
+                hoy = hoy.plusDays(1);
+            } else {
+                // Saltos de más de una ventana y relojes que van hacia atrás
+                hoy = hoy.plusDays(r.nextInt(50) - 10);
+            }
+            assertEquals(ventana(7, null), centimos(motor, siete), "7 días en el paso " + paso);
+            assertEquals(ventana(30, null), centimos(motor, treinta), "30 días en el paso " + paso);
+            assertEquals(ventana(10, comida), centimos(motor, diezComida), "10 días en el paso " + paso);
+        }
+    }
+
+    @Test
+    void elLimiteMensualNoVuelveACeroElDiaUno() {
+        hoy = LocalDate.of(2026, 10, 31);
+        Alerta treinta = alerta(Periodicidad.ULTIMOS_30_DIAS, null, 150);
+        MotorAlertas motor = motorCon(treinta);
+        alta(motor, "100.00", hoy);
+
+        hoy = LocalDate.of(2026, 11, 1);
+        assertEquals(100, motor.getTotal(treinta), 0.001);
+        hoy = LocalDate.of(2026, 11, 29);
+        assertEquals(100, motor.getTotal(treinta), 0.001);
+        hoy = LocalDate.of(2026, 11, 30);
+        assertEquals(0, motor.getTotal(treinta), 0.001);
+    }
+
+    /** Coste de Ana en los últimos {@code dias} días (hoy incluido), recorriendo los gastos. */
+    private long ventana(int dias, Categoria categoria) {
+        LocalDate desde = hoy.minusDays(dias - 1);
+        long total = 0;
+        for (Gasto g : cuenta.getGastos()) {
+            boolean enVentana = !g.getFecha().isBefore(desde) && !g.getFecha().isAfter(hoy);
+            if (enVentana && (categoria == null || categoria.getNombre().equals(g.getCategoria().getNombre()))) {
+                total += g.getCosteCentimosPara(ana);
+            }
+        }
+        return total;
+    }
+
+    private static long centimos(MotorAlertas motor, Alerta alerta) {
+        return Math.round(motor.getTotal(alerta) * 100);
+    }
+
+    // --- VENTANAS MÓVILES: REARME ---
+
+    @Test
+    void ventanaMovilNoSeRearmaAlBajarDentroDeLaMismaVentana() {
+        MotorAlertas motor = motorCon(alerta(Periodicidad.ULTIMOS_7_DIAS, null, 100));
+
+        Gasto g = alta(motor, "120.00", hoy);
+        assertEquals(1, motor.comprobar().size());
+
+        // Vaivén: baja por debajo del umbral y vuelve a subir
+        baja(motor, g);
+        assertTrue(motor.comprobar().isEmpty());
+        alta(motor, "120.00", hoy);
+        assertTrue(motor.comprobar().isEmpty());
+
+        hoy = hoy.plusDays(3);
+        assertTrue(motor.comprobar().isEmpty());
+    }
+
+    @Test
+    void ventanaMovilSubirDeEscalonAvisaAunqueNoSeHayaRearmado() {
+        MotorAlertas motor = motorCon(alerta(Periodicidad.ULTIMOS_7_DIAS, null, 100));
+        alta(motor, "120.00", hoy);
+        assertEquals(1, motor.comprobar().get(0).nivel);
+
+        alta(motor, "40.00", hoy);
+        List<MotorAlertas.Disparo> saltan = motor.comprobar();
+        assertEquals(1, saltan.size());
+        assertEquals(2, saltan.get(0).nivel);
+    }
+
+    @Test
+    void ventanaMovilSeRearmaTrasUnaVentanaEnteraDesdeElAviso() {
+        MotorAlertas motor = motorCon(alerta(Periodicidad.ULTIMOS_7_DIAS, null, 100));
+        alta(motor, "120.00", hoy);
+        assertEquals(1, motor.comprobar().size());
+
+        // A los 7 días el gasto sale de la ventana y ya ha pasado una entera
+        hoy = hoy.plusDays(7);
+        assertEquals(0, motor.getTotal(motor.getUsuario().getAlertas().get(0)), 0.001);
+        assertTrue(motor.comprobar().isEmpty());
+
+        alta(motor, "120.00", hoy);
+        assertEquals(1, motor.comprobar().size());
+    }
+
+    @Test
+    void ventanaMovilRecuerdaElUltimoAvisoAlReconstruir() {
+        Alerta alerta = alerta(Periodicidad.ULTIMOS_7_DIAS, null, 100);
+        MotorAlertas motor = motorCon(alerta);
+        alta(motor, "120.00", hoy);
+        MotorAlertas.Disparo d = motor.comprobar().get(0);
+        ana.agregarNotificacion(new Notificacion("n1", hoy.atTime(12, 0), "aviso", alerta.getId(), d.nivel));
+
+        MotorAlertas otro = new MotorAlertas(ana, () -> hoy);
+        assertTrue(otro.comprobar().isEmpty());
+    }
+
+    // --- AUXILIARES ---
+
+    private MotorAlertas motorCon(Alerta... alertas) {
+        for (Alerta a : alertas) ana.agregarAlerta(a);
+        return new MotorAlertas(ana, () -> hoy);
+    }
+
+    private Alerta alerta(Periodicidad periodicidad, Categoria categoria, double umbral) {
+        String id = "a" + (siguienteId++);
+        return new Alerta(id, id, periodicidad, categoria, new EstrategiaPorUmbral(umbral));
+    }
+
+    /** Alta en la cuenta y en el motor, como hace el controlador. */
+    private Gasto alta(MotorAlertas motor, String importe, LocalDate fecha) {
+        Gasto g = new Gasto("g" + (siguienteId++), new BigDecimal(importe), fecha, comida, ana, "gasto", cuenta);
+        cuenta.agregarGasto(g);
+        motor.sumar(g);
+        return g;
+    }
+
+    private void baja(MotorAlertas motor, Gasto g) {
+        motor.restar(g);
+        cuenta.eliminarGasto(g);
+    }
+}
@@ -0,0 +1,79 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pagos entre participantes: mueven saldo del acreedor al deudor, se pueden
+ * deshacer y cuadran con el recálculo completo.
+ */
+class PagoTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    private final Persona ana = new Persona("p1", "Ana", "ana", "x");
+    private final Persona luis = new Persona("p2", "Luis", "luis", "x");
+    private final Persona eva = new Persona("p3", "Eva", "eva", "x");
+    private final GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis, eva), null);
+
+    @Test
+    void unPagoSaldaLaDeuda() {
+        // Ana paga 90: Luis y Eva le deben 30 cada uno
+        cuenta.agregarGasto(new Gasto("g1", new BigDecimal("90.00"), HOY, new Categoria("Comida"), ana, "súper", cuenta));
+        cuenta.registrarPago(pago("pa1", luis, ana, "30.00"));
+        cuenta.registrarPago(pago("pa2", eva, ana, "30.00"));
+
+        for (Persona p : List.of(ana, luis, eva)) {
+            assertEquals(Dinero.CERO, cuenta.getSaldoDinero(p), p.getNombreUsuario());
+        }
+        assertEquals(2, cuenta.getPagos().size());
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void registrarDosVecesNoCuentaDosYEliminarLoDeshace() {
+        Pago pago = pago("pa1", luis, ana, "12.34");
+        cuenta.marcarGuardada();
+        cuenta.registrarPago(pago);
+        assertTrue(cuenta.isModificada());
+        cuenta.registrarPago(pago("pa1", luis, ana, "12.34"));
+
+        assertEquals(Dinero.deCentimos(1234), cuenta.getSaldoDinero(luis));
+        assertEquals(Dinero.deCentimos(-1234), cuenta.getSaldoDinero(ana));
+        assertEquals(Dinero.CERO, cuenta.getSaldoDinero(eva));
+        assertSame(pago, cuenta.buscarPago("pa1"));
+
+        cuenta.eliminarPago(pago);
+        cuenta.eliminarPago(pago);
+        assertEquals(Dinero.CERO, cuenta.getSaldoDinero(luis));
+        assertEquals(Dinero.CERO, cuenta.getSaldoDinero(ana));
+        assertNull(cuenta.buscarPago("pa1"));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void pagosNoValidos() {
+        Persona ajena = new Persona("p9", "Otra", "otra", "x");
+        assertThrows(IllegalArgumentException.class, () -> cuenta.registrarPago(pago("pa1", ajena, ana, "5.00")));
+        assertThrows(IllegalArgumentException.class, () -> pago("pa2", ana, ana, "5.00"));
+        assertThrows(IllegalArgumentException.class, () -> pago("pa3", luis, ana, "0.004"));
+        assertThrows(IllegalArgumentException.class, () -> pago("pa4", luis, ana, "-1.00"));
+        assertTrue(cuenta.getPagos().isEmpty());
+        // El importe se redondea al céntimo
+        assertEquals(new BigDecimal("5.01"), pago("pa5", luis, ana, "5.005").getImporte());
+    }
+
+    private Pago pago(String id, Persona deudor, Persona acreedor, String importe) {
+        return new Pago(id, deudor, acreedor, new BigDecimal(importe), HOY, cuenta);
+    }
+}
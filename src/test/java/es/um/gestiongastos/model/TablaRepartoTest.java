@@ -0,0 +1,95 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Partes de cada participante en un gasto, calculadas con la tabla de reparto
+ * de la cuenta y guardadas en el gasto hasta que cambia el importe, los
+ * participantes o la cuenta.
+ */
+class TablaRepartoTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    private final Persona ana = new Persona("p1", "Ana", "ana", "x");
+    private final Persona luis = new Persona("p2", "Luis", "luis", "x");
+    private final Persona eva = new Persona("p3", "Eva", "eva", "x");
+    private final Categoria comida = new Categoria("Comida");
+
+    @Test
+    void aPartesIgualesSalenIgualesTambienConOtraInstancia() {
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis, eva), null);
+        Gasto gasto = gasto("g1", "100.00", cuenta);
+
+        assertEquals(3333, gasto.getCosteCentimosPara(ana));
+        assertEquals(3333, gasto.getCosteCentimosPara(eva));
+        // Otra instancia del mismo usuario (mismo id) tiene la misma parte
+        assertEquals(3333, gasto.getCosteCentimosPara(new Persona("p2", "Luis", "luis", "x")));
+        assertEquals(0, gasto.getCosteCentimosPara(new Persona("p9", "Otro", "otro", "x")));
+        assertEquals(new BigDecimal("33.33"), gasto.getCostePara(ana));
+        assertEquals(3, cuenta.tablaReparto().tamaño());
+    }
+
+    @Test
+    void conPorcentajesFijosSeRedondeaCadaParte() {
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), porcentajes(ana, 60.0, luis, 40.0));
+        Gasto gasto = gasto("g1", "10.01", cuenta);
+
+        assertEquals(601, gasto.getCosteCentimosPara(ana));
+        assertEquals(400, gasto.getCosteCentimosPara(luis));
+        assertEquals(Dinero.deCentimos(601), gasto.getCosteDineroPara(ana));
+    }
+
+    @Test
+    void lasPartesSeRecalculanAlCambiarImporteParticipantesOCuenta() {
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+        Gasto gasto = gasto("g1", "10.00", cuenta);
+        assertEquals(500, gasto.getCosteCentimosPara(luis));
+
+        gasto.setImporte(new BigDecimal("30.00"));
+        assertEquals(1500, gasto.getCosteCentimosPara(luis));
+
+        cuenta.setParticipantes(List.of(
+                new GastosCompartidos.Participante(ana, 20.0, BigDecimal.ZERO),
+                new GastosCompartidos.Participante(luis, 80.0, BigDecimal.ZERO)));
+        assertEquals(2400, gasto.getCosteCentimosPara(luis));
+
+        GastosCompartidos otra = new GastosCompartidos("c2", "Viaje", List.of(luis, eva), porcentajes(luis, 10.0, eva, 90.0));
+        gasto.setCuenta(otra);
+        assertEquals(300, gasto.getCosteCentimosPara(luis));
+        assertEquals(0, gasto.getCosteCentimosPara(ana));
+    }
+
+    @Test
+    void losSaldosCuadranConLasPartes() {
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis, eva), null);
+        cuenta.agregarGasto(gasto("g1", "100.00", cuenta));
+        cuenta.agregarGasto(new Gasto("g2", new BigDecimal("7.01"), HOY, comida, luis, "pan", cuenta));
+
+        // Quien paga recibe las partes de los demás (los céntimos sobrantes son suyos): suman cero
+        assertEquals(Dinero.deCentimos(2 * 3333 - 234), cuenta.getSaldoDinero(ana));
+        assertEquals(Dinero.deCentimos(2 * 234 - 3333), cuenta.getSaldoDinero(luis));
+        assertEquals(Dinero.deCentimos(-3333 - 234), cuenta.getSaldoDinero(eva));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    private Gasto gasto(String id, String importe, GastosCompartidos cuenta) {
+        return new Gasto(id, new BigDecimal(importe), HOY, comida, ana, "gasto", cuenta);
+    }
+
+    private static Map<Persona, Double> porcentajes(Persona a, double pa, Persona b, double pb) {
+        Map<Persona, Double> porcentajes = new LinkedHashMap<>();
+        porcentajes.put(a, pa);
+        porcentajes.put(b, pb);
+        return porcentajes;
+    }
+}
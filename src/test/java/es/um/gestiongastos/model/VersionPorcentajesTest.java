@@ -0,0 +1,113 @@
+package es.um.gestiongastos.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Versiones de porcentajes con fecha de efecto: cada gasto se reparte con la
+ * que rige en su fecha, y al cambiar una versión solo se vuelve a repartir su
+ * tramo, con los mismos saldos que el recálculo completo.
+ */
+class VersionPorcentajesTest {
+
+    private static final LocalDate INICIO = LocalDate.of(2026, 1, 1);
+
+    private final Persona ana = new Persona("p1", "Ana", "ana", "x");
+    private final Persona luis = new Persona("p2", "Luis", "luis", "x");
+    private final Categoria comida = new Categoria("Comida");
+    private final GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+
+    @Test
+    void cadaGastoSeRepartePorLaVersionDeSuFecha() {
+        Gasto antes = gasto("g1", "100.00", INICIO.plusDays(9), ana);
+        Gasto despues = gasto("g2", "100.00", INICIO.plusDays(20), ana);
+        cuenta.agregarGastos(List.of(antes, despues));
+        assertEquals(5000, despues.getCosteCentimosPara(luis));
+
+        cuenta.cambiarPorcentajes(INICIO.plusDays(10), porcentajes(70, 30));
+        assertTrue(cuenta.isPorcentajesFijos());
+        assertEquals(5000, antes.getCosteCentimosPara(luis));
+        assertEquals(3000, despues.getCosteCentimosPara(luis));
+        assertEquals(50.0, cuenta.getPorcentaje(luis, INICIO.plusDays(9)));
+        assertEquals(30.0, cuenta.getPorcentaje(luis, INICIO.plusDays(10)));
+        // Ana pagó los dos: le deben 50 + 30
+        assertEquals(Dinero.deCentimos(8000), cuenta.getSaldoDinero(ana));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void unaVersionIntermediaSoloAfectaASuTramoYLaMismaFechaSeSustituye() {
+        Gasto g1 = gasto("g1", "10.00", INICIO.plusDays(5), luis);
+        Gasto g2 = gasto("g2", "10.00", INICIO.plusDays(15), luis);
+        Gasto g3 = gasto("g3", "10.00", INICIO.plusDays(25), luis);
+        cuenta.agregarGastos(List.of(g1, g2, g3));
+
+        cuenta.cambiarPorcentajes(INICIO.plusDays(20), porcentajes(90, 10));
+        cuenta.cambiarPorcentajes(INICIO.plusDays(10), porcentajes(20, 80));
+        assertEquals(List.of(INICIO.plusDays(10), INICIO.plusDays(20)),
+                cuenta.getVersiones().stream().map(GastosCompartidos.VersionPorcentajes::getDesde).toList());
+        assertEquals(500, g1.getCosteCentimosPara(ana));
+        assertEquals(200, g2.getCosteCentimosPara(ana));
+        assertEquals(900, g3.getCosteCentimosPara(ana));
+
+        cuenta.cambiarPorcentajes(INICIO.plusDays(10), porcentajes(40, 60));
+        assertEquals(2, cuenta.getVersiones().size());
+        assertEquals(400, g2.getCosteCentimosPara(ana));
+        assertEquals(40.0, cuenta.getVersiones().get(0).getPorcentaje(0));
+        assertEquals(Dinero.deCentimos(-(500 + 400 + 900)), cuenta.getSaldoDinero(ana));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void alAzarCuadraConElRecalculoCompleto() {
+        Random azar = new Random(18);
+        for (int i = 0; i < 300; i++) {
+            cuenta.agregarGasto(gasto("g" + i, BigDecimal.valueOf(1 + azar.nextInt(20_000), 2).toPlainString(),
+                    INICIO.plusDays(azar.nextInt(365)), azar.nextBoolean() ? ana : luis));
+            if (i % 20 == 19) {
+                double pct = azar.nextInt(10_001) / 100.0;
+                cuenta.cambiarPorcentajes(INICIO.plusDays(azar.nextInt(365)), porcentajes(pct, 100 - pct));
+            }
+        }
+        assertEquals(Dinero.CERO, cuenta.getSaldoDinero(ana).sumar(cuenta.getSaldoDinero(luis)));
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    @Test
+    void versionesNoValidasNoCambianNada() {
+        cuenta.agregarGasto(gasto("g1", "10.00", INICIO, ana));
+        Persona ajena = new Persona("p9", "Otra", "otra", "x");
+        Map<Persona, Double> conAjena = new LinkedHashMap<>();
+        conAjena.put(ana, 50.0);
+        conAjena.put(ajena, 50.0);
+
+        assertThrows(IllegalArgumentException.class, () -> cuenta.cambiarPorcentajes(null, porcentajes(50, 50)));
+        assertThrows(IllegalArgumentException.class, () -> cuenta.cambiarPorcentajes(INICIO, porcentajes(60, 30)));
+        assertThrows(IllegalArgumentException.class, () -> cuenta.cambiarPorcentajes(INICIO, conAjena));
+        assertTrue(cuenta.getVersiones().isEmpty());
+        assertFalse(cuenta.isPorcentajesFijos());
+        assertEquals(Dinero.deCentimos(500), cuenta.getSaldoDinero(ana));
+    }
+
+    private Gasto gasto(String id, String importe, LocalDate fecha, Persona pagador) {
+        return new Gasto(id, new BigDecimal(importe), fecha, comida, pagador, "gasto", cuenta);
+    }
+
+    private Map<Persona, Double> porcentajes(double deAna, double deLuis) {
+        Map<Persona, Double> porcentajes = new LinkedHashMap<>();
+        porcentajes.put(ana, deAna);
+        porcentajes.put(luis, deLuis);
+        return porcentajes;
+    }
+}
@@ -0,0 +1,240 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Persona;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Escritura de la instantánea por agregados: solo se reescribe lo modificado,
+ * y lo que no llega a disco sigue pendiente para la siguiente compactación.
+ * La carga en paralelo de los ficheros vuelve a enlazar el mismo grafo.
+ */
+class AlmacenSegmentosTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path directorio;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final Map<String, Categoria> categorias = new HashMap<>();
+    private final Categoria comida = new Categoria("Comida");
+    private Persona ana, luis;
+    private GastosCompartidos cuenta;
+
+    @BeforeEach
+    void preparar() {
+        categorias.put("comida", comida);
+        ana = new Persona("p1", "Ana", "ana", "x");
+        luis = new Persona("p2", "Luis", "luis", "x");
+        cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+        ana.agregarCuenta(cuenta);
+        luis.agregarCuenta(cuenta);
+    }
+
+    @Test
+    void soloSeReescribeLoModificado() throws IOException {
+        AlmacenSegmentos almacen = almacen();
+        assertEquals(4, almacen.guardar(List.of(ana, luis)));
+        assertEquals(0, almacen.guardar(List.of(ana, luis)));
+
+        cuenta.agregarGasto(gasto("g1", "10.00"));
+        assertEquals(2, almacen.guardar(List.of(ana, luis)));
+        assertFalse(cuenta.isModificada());
+    }
+
+    @ParameterizedTest
+    @EnumSource(FormatoInstantanea.class)
+    void laCargaEnParaleloEnlazaLasCuentasCompartidas(FormatoInstantanea formato) throws IOException {
+        List<Persona> usuarios = new ArrayList<>();
+        for (int i = 0; i < 40; i++) usuarios.add(new Persona("u" + i, "Usuario " + i, "usuario" + i, "x"));
+        Random azar = new Random(18);
+        int gastos = 0;
+        for (int c = 0; c < 25; c++) {
+            List<Persona> participantes = new ArrayList<>();
+            for (int i = 0; i < 3; i++) participantes.add(usuarios.get((c * 7 + i * 13) % usuarios.size()));
+            GastosCompartidos compartida = new GastosCompartidos("cuenta" + c, "Cuenta " + c, participantes, null);
+            for (Persona p : participantes) p.agregarCuenta(compartida);
+            for (int g = 0; g < azar.nextInt(6); g++, gastos++) {
+                compartida.agregarGasto(new Gasto("g" + gastos, BigDecimal.valueOf(100 + azar.nextInt(9000), 2),
+                        HOY.minusDays(g), comida, participantes.get(g % 3), "gasto", compartida));
+            }
+        }
+        Path carpeta = directorio.resolve(formato.name());
+        new AlmacenSegmentos(carpeta, mapper, formato, categorias).guardar(usuarios);
+
+        Map<String, Persona> personas = new HashMap<>();
+        new AlmacenSegmentos(carpeta, mapper, formato, categorias).cargar(personas, new HashMap<>(categorias), f -> {});
+        assertEquals(usuarios.size(), personas.size());
+        Map<String, GastosCompartidos> cargadas = new HashMap<>();
+        int gastosCargados = 0;
+        for (Persona original : usuarios) {
+            Persona p = personas.get(original.getNombreUsuario());
+            assertEquals(original.getCuentas().size(), p.getCuentas().size(), p.getNombreUsuario());
+            for (int i = 0; i < p.getCuentas().size(); i++) {
+                GastosCompartidos esperada = original.getCuentas().get(i), cargada = p.getCuentas().get(i);
+                assertEquals(esperada.getId(), cargada.getId());
+                // Una cuenta compartida es el mismo objeto para todos sus participantes
+                GastosCompartidos previa = cargadas.putIfAbsent(cargada.getId(), cargada);
+                if (previa == null) gastosCargados += cargada.getGastos().size();
+                else assertSame(previa, cargada);
+                assertEquals(esperada.getSaldoDinero(original), cargada.getSaldoDinero(p));
+                assertFalse(cargada.isModificada());
+            }
+            assertFalse(p.isModificada());
+        }
+        assertEquals(gastos, gastosCargados);
+    }
+
+    @Test
+    void loQueNoSeHaPodidoEscribirSigueModificado() throws IOException {
+        AlmacenSegmentos almacen = almacen();
+        almacen.guardar(List.of(ana, luis));
+        cuenta.agregarGasto(gasto("g1", "10.00"));
+
+        // Un directorio donde va el fichero de la cuenta hace fallar el renombrado
+        Path estorbo = directorio.resolve("cuentas").resolve("c1" + extension());
+        Files.delete(estorbo);
+        Files.createDirectories(estorbo.resolve("x"));
+        assertThrows(IOException.class, () -> almacen.guardar(List.of(ana, luis)));
+        assertTrue(cuenta.isModificada());
+
+        // La siguiente compactación la vuelve a escribir
+        Files.delete(estorbo.resolve("x"));
+        Files.delete(estorbo);
+        assertEquals(2, almacen.guardar(List.of(ana, luis)));
+
+        Map<String, Persona> personas = new HashMap<>();
+        almacen().cargar(personas, new HashMap<>(categorias), f -> {});
+        GastosCompartidos cargada = personas.get("ana").getCuentas().get(0);
+        assertEquals(1, cargada.getGastos().size());
+        assertEquals(cuenta.getSaldoDinero(ana), cargada.getSaldoDinero(personas.get("ana")));
+    }
+
+    @Test
+    void unaCompactacionFallidaConservaElDiarioHastaLaSiguiente() throws IOException {
+        AlmacenSegmentos almacen = almacen();
+        almacen.guardar(List.of(ana, luis));
+        DiarioCambios diario = new DiarioCambios(directorio.resolve("cambios.jsonl").toFile(), mapper,
+                Durabilidad.SINCRONA, Duration.ofMillis(20), 64);
+        try {
+            Gasto g1 = gasto("g1", "10.00");
+            cuenta.agregarGasto(g1);
+            RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.GASTO_AGREGADO);
+            r.gasto = RegistroGasto.desde(g1);
+            diario.anotar(r);
+
+            // Compactación que falla al escribir la cuenta: el segmento rotado no se borra
+            Path fichero = directorio.resolve("cuentas").resolve("c1" + extension());
+            byte[] anterior = Files.readAllBytes(fichero);
+            Files.delete(fichero);
+            Files.createDirectories(fichero.resolve("x"));
+            diario.rotar();
+            assertThrows(IOException.class, () -> almacen.guardar(List.of(ana, luis)));
+
+            // Si se arranca ahora (con la cuenta de la instantánea anterior), el diario aporta el gasto
+            Files.delete(fichero.resolve("x"));
+            Files.delete(fichero);
+            Files.write(fichero, anterior);
+            assertEquals(1, cargarConDiario(diario).get("ana").getCuentas().get(0).getGastos().size());
+
+            // La siguiente compactación escribe la cuenta y ya puede soltar el diario
+            diario.rotar();
+            assertEquals(2, almacen.guardar(List.of(ana, luis)));
+            diario.borrarRotado();
+            assertTrue(diario.leer().isEmpty());
+            assertEquals(1, cargarConDiario(diario).get("ana").getCuentas().get(0).getGastos().size());
+        } finally {
+            diario.cerrar();
+        }
+    }
+
+    @Test
+    void unUsuarioQueNoSeHaPodidoEscribirSigueModificado() throws IOException {
+        AlmacenSegmentos almacen = almacen();
+        almacen.guardar(List.of(ana, luis));
+        ana.setNombreCompleto("Ana María");
+
+        Path estorbo = directorio.resolve("personas").resolve("p1" + extension());
+        Files.delete(estorbo);
+        Files.createDirectories(estorbo.resolve("x"));
+        assertThrows(IOException.class, () -> almacen.guardar(List.of(ana, luis)));
+        assertTrue(ana.isModificada());
+    }
+
+    @Test
+    void seArchivaPorFechaDeModificacionNoPorLaDeLosGastos() throws IOException {
+        AlmacenSegmentos almacen = almacen();
+        // Recién importada con gastos antiguos: no se archiva
+        cuenta.agregarGasto(new Gasto("g1", new BigDecimal("10.00"), HOY.minusYears(3), comida, ana, "antiguo", cuenta));
+        cuenta.agregarGasto(new Gasto("g2", new BigDecimal("4.00"), HOY.minusYears(2), comida, luis, "antiguo", cuenta));
+        almacen.guardar(List.of(ana, luis));
+        LocalDate limite = LocalDate.now().minusDays(180);
+        assertEquals(0, almacen.archivarInactivas(List.of(ana, luis), limite));
+
+        // Sin cambios desde hace más del límite: se archiva y se deja de cargar en memoria
+        Path fichero = directorio.resolve("cuentas").resolve("c1" + extension());
+        Files.setLastModifiedTime(fichero, FileTime.from(Instant.now().minus(Duration.ofDays(200))));
+        assertEquals(1, almacen.archivarInactivas(List.of(ana, luis), limite));
+        assertTrue(cuenta.isArchivada());
+        assertFalse(Files.exists(directorio.resolve("gastos").resolve("c1" + extension())));
+
+        Map<String, Persona> personas = new HashMap<>();
+        almacen().cargar(personas, new HashMap<>(categorias), f -> {});
+        GastosCompartidos cargada = personas.get("ana").getCuentas().get(0);
+        assertTrue(cargada.isArchivada());
+        assertEquals(2, cargada.getGastos().size());
+        assertEquals(luis.getId(), cargada.buscarGasto("g2").getPagador().getId());
+    }
+
+    /** Lo que haría el repositorio al arrancar: instantánea y luego el diario. */
+    private Map<String, Persona> cargarConDiario(DiarioCambios diario) throws IOException {
+        Map<String, Persona> personas = new HashMap<>();
+        Map<String, Categoria> cargadas = new HashMap<>(categorias);
+        AlmacenSegmentos almacen = almacen();
+        almacen.cargar(personas, cargadas, f -> {});
+        ReproductorCambios reproductor = new ReproductorCambios(personas, cargadas, almacen.archivo());
+        for (RegistroCambio r : diario.leer()) reproductor.aplicar(r);
+        return personas;
+    }
+
+    private AlmacenSegmentos almacen() {
+        return new AlmacenSegmentos(directorio, mapper, FormatoInstantanea.BINARIO, categorias);
+    }
+
+    private String extension() {
+        return CodecInstantanea.de(FormatoInstantanea.BINARIO, mapper).extension();
+    }
+
+    private Gasto gasto(String id, String importe) {
+        return new Gasto(id, new BigDecimal(importe), HOY, comida, ana, "gasto", cuenta);
+    }
+}
@@ -0,0 +1,133 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Archivo de gastos de cuentas inactivas: las cuentas se añaden al final de
+ * los ficheros vigentes, lo escrito se vuelve a leer igual (también tras
+ * reabrir) y solo se escribe otra versión cuando sobran más de la mitad.
+ */
+class ArchivoGastosTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path directorio;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @Test
+    void anexarNoCreaVersionNuevaYSeReleeIgual() throws IOException {
+        ArchivoGastos archivo = abrir();
+        List<RegistroGasto> a = filas("a", 50);
+        List<RegistroGasto> b = filas("b", 30);
+        archivo.anexar(Map.of("a", a), Set.of());
+        long tamaño = Files.size(directorio.resolve("gastos-1.dat"));
+
+        archivo.anexar(Map.of("b", b), Set.of("a"));
+        assertTrue(Files.exists(directorio.resolve("gastos-1.dat")));
+        assertFalse(Files.exists(directorio.resolve("gastos-2.dat")));
+        assertEquals(tamaño + 30 * 64, Files.size(directorio.resolve("gastos-1.dat")));
+
+        assertMismasFilas(a, archivo.leerFilas("a"));
+        assertMismasFilas(b, archivo.leerFilas("b"));
+        ArchivoGastos reabierto = abrir();
+        assertMismasFilas(a, reabierto.leerFilas("a"));
+        assertMismasFilas(b, reabierto.leerFilas("b"));
+        assertEquals("a", reabierto.cuentaDe(a.get(7).id));
+    }
+
+    @Test
+    void lasQueSalenDejanDeEstarYAlSobrarLaMitadSeReescribe() throws IOException {
+        ArchivoGastos archivo = abrir();
+        archivo.anexar(Map.of("a", filas("a", 40)), Set.of());
+        archivo.anexar(Map.of("b", filas("b", 30)), Set.of("a"));
+
+        // Sale b: 30 de 70 sin uso, aún no se reescribe
+        archivo.anexar(Map.of(), Set.of("a"));
+        assertFalse(archivo.contiene("b"));
+        assertTrue(archivo.contiene("a"));
+        assertFalse(Files.exists(directorio.resolve("gastos-2.dat")));
+
+        // Con c y sin a: 70 de 80 sin uso, versión nueva solo con c
+        List<RegistroGasto> c = filas("c", 10);
+        archivo.anexar(Map.of("c", c), Set.of());
+        assertTrue(Files.exists(directorio.resolve("gastos-2.dat")));
+        assertFalse(Files.exists(directorio.resolve("gastos-1.dat")));
+        assertEquals(10 * 64 + 16, Files.size(directorio.resolve("gastos-2.dat")));
+        assertMismasFilas(c, abrir().leerFilas("c"));
+        assertFalse(abrir().contiene("a"));
+    }
+
+    @Test
+    void unAnexoSinConfirmarSeSobrescribe() throws IOException {
+        ArchivoGastos archivo = abrir();
+        List<RegistroGasto> a = filas("a", 5);
+        archivo.anexar(Map.of("a", a), Set.of());
+        // Restos de un anexo que no llegó a confirmar su índice
+        Files.write(directorio.resolve("gastos-1.dat"), new byte[64 * 3], StandardOpenOption.APPEND);
+        Files.write(directorio.resolve("textos-1.dat"), new byte[100], StandardOpenOption.APPEND);
+
+        ArchivoGastos reabierto = abrir();
+        List<RegistroGasto> b = filas("b", 4);
+        reabierto.anexar(Map.of("b", b), Set.of("a"));
+        assertMismasFilas(a, abrir().leerFilas("a"));
+        assertMismasFilas(b, abrir().leerFilas("b"));
+    }
+
+    private ArchivoGastos abrir() throws IOException {
+        ArchivoGastos archivo = new ArchivoGastos(directorio, mapper, new HashMap<>(), 4);
+        archivo.abrir();
+        return archivo;
+    }
+
+    /** Filas variadas: ids UUID y de texto, sin fecha, sin descripción e importes que no caben en un long. */
+    private static List<RegistroGasto> filas(String cuenta, int n) {
+        List<RegistroGasto> filas = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            RegistroGasto rg = new RegistroGasto();
+            rg.id = (i % 2 == 0) ? UUID.randomUUID().toString() : cuenta + "-gasto-" + i;
+            rg.cuentaId = cuenta;
+            rg.pagadorId = (i % 3 == 0) ? "p-" + cuenta : UUID.nameUUIDFromBytes(cuenta.getBytes()).toString();
+            rg.importe = (i == 5) ? new BigDecimal("123456789012345678901234.56") : BigDecimal.valueOf(100 + i, 2);
+            rg.fecha = (i % 7 == 3) ? null : HOY.minusDays(i);
+            rg.categoria = (i % 2 == 0) ? "Comida" : "Ocio " + cuenta;
+            rg.descripcion = (i % 5 == 4) ? null : "gasto " + i + " de " + cuenta + " ñ";
+            filas.add(rg);
+        }
+        return filas;
+    }
+
+    static void assertMismasFilas(List<RegistroGasto> esperadas, List<RegistroGasto> leidas) {
+        assertEquals(esperadas.size(), leidas.size());
+        for (int i = 0; i < esperadas.size(); i++) {
+            RegistroGasto e = esperadas.get(i), l = leidas.get(i);
+            assertEquals(e.id, l.id);
+            assertEquals(e.pagadorId, l.pagadorId);
+            assertEquals(0, e.importe.compareTo(l.importe), e.importe + " / " + l.importe);
+            assertEquals(e.fecha, l.fecha);
+            assertEquals(e.categoria, l.categoria);
+            assertEquals(e.descripcion, l.descripcion);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.Persona;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compara la carga del fichero antiguo datos_usuarios.json con el lector en
+ * streaming ({@link CargadorLegado}) y con el lector clásico de Jackson
+ * ({@code readValue(List<Persona>)}), a 10k, 100k y 1M gastos.
+ *
+ * Cada carga se hace en una JVM nueva (con el mismo -Xmx) para que el pico de
+ * memoria de una no ensucie el de la otra. De cada una se mide:
+ * - el tiempo de carga;
+ * - el pico de RSS del proceso (VmHWM de /proc/self/status, solo Linux);
+ * - el pico del heap (suma de los picos de sus zonas) y el heap vivo tras un GC,
+ *   que es el tamaño del modelo ya cargado.
+ *
+ * No es una prueba de JUnit. Se ejecuta a mano:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      es.um.gestiongastos.persistencia.BenchmarkCargaLegado [gastos...]
+ * </pre>
+ */
+public class BenchmarkCargaLegado {
+
+    private static final String XMX = "-Xmx3g";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("medir")) {
+            medir(args[1], new File(args[2]));
+            return;
+        }
+        int[] tamaños = (args.length == 0) ? new int[] { 10_000, 100_000, 1_000_000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) tamaños[i] = Integer.parseInt(args[i]);
+
+        ObjectMapper mapper = mapper();
+        Path dir = Files.createTempDirectory("benchmark-carga");
+        System.out.printf("%-10s %-10s %10s %10s %12s %12s %12s%n",
+                "gastos", "lector", "fichero MB", "tiempo ms", "pico RSS MB", "pico heap MB", "modelo MB");
+        for (int n : tamaños) {
+            File fichero = dir.resolve("datos_usuarios_" + n + ".json").toFile();
+            // Como lo escribía la versión antigua del repositorio
+            mapper.writerWithDefaultPrettyPrinter().writeValue(fichero, GeneradorDatos.generar(n));
+            System.gc();
+            for (String lector : new String[] { "streaming", "clasico" }) {
+                String medida = lanzar(lector, fichero);
+                System.out.printf("%-10d %-10s %10.1f %s%n", n, lector, fichero.length() / 1e6, medida);
+            }
+            Files.delete(fichero.toPath());
+        }
+        Files.delete(dir);
+    }
+
+    /** Lanza la carga en otra JVM y devuelve su línea de resultados. */
+    private static String lanzar(String lector, File fichero) throws IOException, InterruptedException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Process proceso = new ProcessBuilder(java, XMX, "-cp", System.getProperty("java.class.path"),
+                BenchmarkCargaLegado.class.getName(), "medir", lector, fichero.getPath())
+                .redirectErrorStream(true).start();
+        String ultima = "(sin resultado)";
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(proceso.getInputStream()))) {
+            String linea;
+            while ((linea = in.readLine()) != null) {
+                if (!linea.startsWith(">>")) ultima = linea;
+            }
+        }
+        return (proceso.waitFor() == 0) ? ultima : "falla: " + ultima;
+    }
+
+    private static void medir(String lector, File fichero) throws IOException {
+        ObjectMapper mapper = mapper();
+        long t0 = System.nanoTime();
+        Map<String, Persona> personas;
+        if (lector.equals("streaming")) {
+            personas = new CargadorLegado(mapper, new HashMap<>()).cargar(fichero, f -> { });
+        } else {
+            // El camino anterior de RepositorioJSON
+            List<Persona> lista = mapper.readValue(fichero, new TypeReference<List<Persona>>() { });
+            personas = new LinkedHashMap<>();
+            for (Persona p : lista) personas.put(p.getNombreUsuario(), p);
+        }
+        long ms = (System.nanoTime() - t0) / 1_000_000;
+
+        long picoHeap = 0;
+        for (MemoryPoolMXBean zona : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (zona.getType() == MemoryType.HEAP) picoHeap += zona.getPeakUsage().getUsed();
+        }
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        long modelo = rt.totalMemory() - rt.freeMemory();
+        if (personas.isEmpty()) throw new IllegalStateException("No se ha cargado nada.");
+
+        System.out.printf("%10d %12.0f %12.0f %12.0f%n", ms, picoRss() / 1e6, picoHeap / 1e6, modelo / 1e6);
+    }
+
+    /** Pico de memoria residente del proceso en bytes (0 si no hay /proc). */
+    private static long picoRss() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) return 0;
+        for (String linea : Files.readAllLines(status)) {
+            if (linea.startsWith("VmHWM:")) {
+                return Long.parseLong(linea.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return 0;
+    }
+
+    private static ObjectMapper mapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        return mapper;
+    }
+}
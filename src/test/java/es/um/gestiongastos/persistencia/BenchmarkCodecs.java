@@ -0,0 +1,151 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Persona;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compara tamaño y tiempos de los códecs de la instantánea sobre las mismas
+ * tablas (usuarios, cuentas y gastos) a 10k, 100k y 1M gastos:
+ * - JSON con sangrado: como se escribía la instantánea antes del códec binario;
+ * - JSON: {@link CodecJSON}, compacto;
+ * - BINARIO: {@link CodecBinario}.
+ *
+ * De cada uno se da el mejor tiempo de varias vueltas, tras calentar la JVM.
+ * Mide solo codificar y decodificar en memoria (sin disco ni enlazado del
+ * modelo), que es la parte que cambia entre formatos.
+ *
+ * No es una prueba de JUnit. Se ejecuta a mano:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -Xmx3g -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *      es.um.gestiongastos.persistencia.BenchmarkCodecs [gastos...]
+ * </pre>
+ */
+public class BenchmarkCodecs {
+
+    private static final int CALENTAMIENTO = 3;
+    private static final int VUELTAS = 5;
+
+    /** Tablas de la instantánea, ya copiadas del modelo. */
+    private static final class Tablas {
+        final List<SegmentoPersona> personas = new ArrayList<>();
+        final List<SegmentoCuenta> cuentas = new ArrayList<>();
+        final Map<String, List<RegistroGasto>> gastos = new LinkedHashMap<>();
+    }
+
+    /** Lo codificado, para decodificarlo después. */
+    private static final class Codificadas {
+        final List<byte[]> personas = new ArrayList<>();
+        final List<byte[]> cuentas = new ArrayList<>();
+        final List<byte[]> gastos = new ArrayList<>();
+        long bytes;
+    }
+
+    /** El JSON de antes: el mismo códec JSON, con el sangrado de writerWithDefaultPrettyPrinter(). */
+    private static final class CodecJSONSangrado extends CodecJSON {
+        private final ObjectMapper mapper;
+
+        CodecJSONSangrado(ObjectMapper mapper) {
+            super(mapper);
+            this.mapper = mapper;
+        }
+
+        @Override
+        public byte[] codificarPersona(SegmentoPersona persona) throws IOException {
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(persona);
+        }
+
+        @Override
+        public byte[] codificarCuenta(SegmentoCuenta cuenta) throws IOException {
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(cuenta);
+        }
+
+        @Override
+        public byte[] codificarGastos(String cuentaId, List<RegistroGasto> gastos) throws IOException {
+            return mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(gastos);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] tamaños = (args.length == 0) ? new int[] { 10_000, 100_000, 1_000_000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) tamaños[i] = Integer.parseInt(args[i]);
+
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new JavaTimeModule());
+        Map<String, CodecInstantanea> codecs = new LinkedHashMap<>();
+        codecs.put("JSON con sangrado", new CodecJSONSangrado(mapper));
+        codecs.put("JSON", CodecInstantanea.de(FormatoInstantanea.JSON, mapper));
+        codecs.put("BINARIO", CodecInstantanea.de(FormatoInstantanea.BINARIO, mapper));
+
+        System.out.printf("%-8s %-18s %10s %12s %14s%n", "gastos", "formato", "MB", "codificar ms", "decodificar ms");
+        for (int n : tamaños) {
+            Tablas tablas = tablas(GeneradorDatos.generar(n));
+            for (Map.Entry<String, CodecInstantanea> e : codecs.entrySet()) {
+                CodecInstantanea codec = e.getValue();
+                Codificadas codificadas = null;
+                long mejorCodificar = Long.MAX_VALUE, mejorDecodificar = Long.MAX_VALUE;
+                for (int vuelta = 0; vuelta < CALENTAMIENTO + VUELTAS; vuelta++) {
+                    long t0 = System.nanoTime();
+                    codificadas = codificar(codec, tablas);
+                    long t1 = System.nanoTime();
+                    int filas = decodificar(codec, codificadas);
+                    long t2 = System.nanoTime();
+                    if (filas != n) throw new IllegalStateException(e.getKey() + ": " + filas + " filas de " + n);
+                    if (vuelta >= CALENTAMIENTO) {
+                        mejorCodificar = Math.min(mejorCodificar, t1 - t0);
+                        mejorDecodificar = Math.min(mejorDecodificar, t2 - t1);
+                    }
+                }
+                System.out.printf("%-8d %-18s %10.1f %12d %14d%n", n, e.getKey(), codificadas.bytes / 1e6,
+                        mejorCodificar / 1_000_000, mejorDecodificar / 1_000_000);
+            }
+        }
+    }
+
+    private static Tablas tablas(List<Persona> personas) {
+        Tablas t = new Tablas();
+        Map<String, GastosCompartidos> cuentas = new LinkedHashMap<>();
+        for (Persona p : personas) {
+            t.personas.add(SegmentoPersona.desde(p));
+            for (GastosCompartidos c : p.getCuentas()) cuentas.putIfAbsent(c.getId(), c);
+        }
+        for (GastosCompartidos c : cuentas.values()) {
+            t.cuentas.add(SegmentoCuenta.desde(c));
+            List<RegistroGasto> filas = new ArrayList<>();
+            for (Gasto g : c.getGastos()) filas.add(RegistroGasto.desde(g));
+            t.gastos.put(c.getId(), filas);
+        }
+        return t;
+    }
+
+    private static Codificadas codificar(CodecInstantanea codec, Tablas t) throws IOException {
+        Codificadas c = new Codificadas();
+        for (SegmentoPersona p : t.personas) c.personas.add(codec.codificarPersona(p));
+        for (SegmentoCuenta s : t.cuentas) c.cuentas.add(codec.codificarCuenta(s));
+        for (Map.Entry<String, List<RegistroGasto>> e : t.gastos.entrySet()) {
+            c.gastos.add(codec.codificarGastos(e.getKey(), e.getValue()));
+        }
+        for (List<byte[]> tabla : List.of(c.personas, c.cuentas, c.gastos)) {
+            for (byte[] b : tabla) c.bytes += b.length;
+        }
+        return c;
+    }
+
+    /** Decodifica todo y devuelve cuántas filas de gastos salen. */
+    private static int decodificar(CodecInstantanea codec, Codificadas c) throws IOException {
+        for (byte[] b : c.personas) codec.decodificarPersona(b);
+        for (byte[] b : c.cuentas) codec.decodificarCuenta(b);
+        int filas = 0;
+        for (byte[] b : c.gastos) filas += codec.decodificarGastos(b).size();
+        return filas;
+    }
+}
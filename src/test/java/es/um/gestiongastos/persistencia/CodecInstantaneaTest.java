@@ -0,0 +1,144 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.Alerta;
+import es.um.gestiongastos.model.EstrategiaPorUmbral;
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.Periodicidad;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static es.um.gestiongastos.persistencia.ArchivoGastosTest.assertMismasFilas;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Cada formato de instantánea vuelve a leer igual lo que escribe: usuarios,
+ * cuentas con pagos y versiones de porcentajes, y gastos con y sin fecha.
+ */
+class CodecInstantaneaTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @ParameterizedTest
+    @EnumSource(FormatoInstantanea.class)
+    void losGastosSinFechaSeReleenSinFecha(FormatoInstantanea formato) throws IOException {
+        CodecInstantanea codec = CodecInstantanea.de(formato, mapper);
+        List<RegistroGasto> gastos = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            RegistroGasto rg = new RegistroGasto();
+            rg.id = (i % 2 == 0) ? UUID.randomUUID().toString() : "gasto-" + i;
+            rg.importe = (i == 1) ? new BigDecimal("98765432109876543210.99") : BigDecimal.valueOf(250 + i, 2);
+            rg.fecha = (i % 3 == 0) ? null : HOY.minusDays(i);
+            rg.categoria = (i % 2 == 0) ? "Comida" : "Ocio";
+            rg.pagadorId = UUID.randomUUID().toString();
+            rg.descripcion = (i == 4) ? null : "gasto " + i + " ñ";
+            gastos.add(rg);
+        }
+
+        List<RegistroGasto> leidos = codec.decodificarGastos(codec.codificarGastos("c1", gastos));
+        assertMismasFilas(gastos, leidos);
+        assertNull(leidos.get(0).fecha);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FormatoInstantanea.class)
+    void laCuentaSeReleeConSusPagosYVersiones(FormatoInstantanea formato) throws IOException {
+        CodecInstantanea codec = CodecInstantanea.de(formato, mapper);
+        String ana = UUID.randomUUID().toString(), luis = UUID.randomUUID().toString();
+        SegmentoCuenta cuenta = new SegmentoCuenta();
+        cuenta.id = UUID.randomUUID().toString();
+        cuenta.nombre = "Piso";
+        cuenta.porcentajesFijos = true;
+        cuenta.participantes = List.of(participante(ana, 60, "12.50"), participante(luis, 40, "-12.50"));
+        RegistroCuenta.RegistroVersion version = new RegistroCuenta.RegistroVersion();
+        version.desde = HOY.minusMonths(2);
+        version.porcentajes = new LinkedHashMap<>(Map.of(ana, 50.0));
+        version.porcentajes.put(luis, 50.0);
+        cuenta.versiones = List.of(version);
+        cuenta.pagos = List.of(pago(ana, luis, "5.00", HOY), pago(luis, ana, "1.25", null));
+
+        SegmentoCuenta leida = codec.decodificarCuenta(codec.codificarCuenta(cuenta));
+        assertEquals(cuenta.id, leida.id);
+        assertEquals("Piso", leida.nombre);
+        assertEquals(true, leida.porcentajesFijos);
+        assertEquals(2, leida.participantes.size());
+        assertEquals(luis, leida.participantes.get(1).personaId);
+        assertEquals(40, leida.participantes.get(1).porcentaje);
+        assertEquals(0, new BigDecimal("-12.50").compareTo(leida.participantes.get(1).saldo));
+        assertEquals(1, leida.versiones.size());
+        assertEquals(version.desde, leida.versiones.get(0).desde);
+        assertEquals(50.0, leida.versiones.get(0).porcentajes.get(luis));
+        assertEquals(2, leida.pagos.size());
+        assertEquals(HOY, leida.pagos.get(0).fecha);
+        assertNull(leida.pagos.get(1).fecha);
+        assertEquals(ana, leida.pagos.get(1).acreedorId);
+        assertEquals(0, new BigDecimal("1.25").compareTo(leida.pagos.get(1).importe));
+    }
+
+    @ParameterizedTest
+    @EnumSource(FormatoInstantanea.class)
+    void elUsuarioSeReleeConAlertasYNotificaciones(FormatoInstantanea formato) throws IOException {
+        CodecInstantanea codec = CodecInstantanea.de(formato, mapper);
+        SegmentoPersona persona = new SegmentoPersona();
+        persona.id = UUID.randomUUID().toString();
+        persona.nombreCompleto = "Ana Muñoz";
+        persona.nombreUsuario = "ana";
+        persona.contraseña = "secreta";
+        persona.cuentas = List.of(UUID.randomUUID().toString(), "cuenta-antigua");
+        Alerta alerta = new Alerta(UUID.randomUUID().toString(), "Ocio", Periodicidad.ULTIMOS_N_DIAS, 10,
+                null, new EstrategiaPorUmbral(80));
+        persona.alertas = List.of(alerta);
+        LocalDateTime cuando = LocalDateTime.of(2026, 10, 1, 9, 30, 15);
+        persona.notificaciones = List.of(
+                new Notificacion("n1", cuando, "Aviso de ocio", alerta.getId(), 2),
+                new Notificacion("n2", cuando.plusDays(1), "Sin alerta"));
+
+        SegmentoPersona leida = codec.decodificarPersona(codec.codificarPersona(persona));
+        assertEquals(persona.id, leida.id);
+        assertEquals("Ana Muñoz", leida.nombreCompleto);
+        assertEquals("ana", leida.nombreUsuario);
+        assertEquals("secreta", leida.contraseña);
+        assertEquals(persona.cuentas, leida.cuentas);
+        assertEquals(1, leida.alertas.size());
+        assertEquals(alerta.getId(), leida.alertas.get(0).getId());
+        assertEquals(10, leida.alertas.get(0).getDias());
+        assertEquals(2, leida.notificaciones.size());
+        assertEquals(cuando, leida.notificaciones.get(0).getFechaHora());
+        assertEquals(alerta.getId(), leida.notificaciones.get(0).getAlertaId());
+        assertEquals(2, leida.notificaciones.get(0).getNivel());
+        assertNull(leida.notificaciones.get(1).getAlertaId());
+        assertEquals("Sin alerta", leida.notificaciones.get(1).getMensaje());
+    }
+
+    private static RegistroCuenta.RegistroParticipante participante(String id, double porcentaje, String saldo) {
+        RegistroCuenta.RegistroParticipante p = new RegistroCuenta.RegistroParticipante();
+        p.personaId = id;
+        p.porcentaje = porcentaje;
+        p.saldo = new BigDecimal(saldo);
+        return p;
+    }
+
+    private static RegistroPago pago(String deudor, String acreedor, String importe, LocalDate fecha) {
+        RegistroPago p = new RegistroPago();
+        p.id = UUID.randomUUID().toString();
+        p.deudorId = deudor;
+        p.acreedorId = acreedor;
+        p.importe = new BigDecimal(importe);
+        p.fecha = fecha;
+        return p;
+    }
+}
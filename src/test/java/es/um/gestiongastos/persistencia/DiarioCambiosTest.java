@@ -0,0 +1,222 @@
+package es.um.gestiongastos.persistencia;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Pago;
+import es.um.gestiongastos.model.Persona;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Reproducir el diario de cambios deja el mismo modelo que se tenía al
+ * anotarlos, también si se reproduce dos veces o si la última línea quedó
+ * a medias. Con volcado agrupado, tras la barrera todo está en el fichero;
+ * al rotar se sigue leyendo en orden.
+ */
+class DiarioCambiosTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+
+    @TempDir
+    Path directorio;
+
+    private final ObjectMapper mapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final List<DiarioCambios> abiertos = new ArrayList<>();
+
+    @AfterEach
+    void cerrar() throws IOException {
+        for (DiarioCambios d : abiertos) d.cerrar();
+    }
+
+    @Test
+    void reproducirElDiarioDejaElMismoModelo() throws IOException {
+        DiarioCambios diario = abrir(Durabilidad.SINCRONA);
+        GastosCompartidos cuenta = anotarHistoria(diario);
+
+        Map<String, Persona> personas = reproducir(diario.leer(), new ConcurrentHashMap<>());
+        assertMismaCuenta(cuenta, personas);
+
+        // Reaplicar todo sobre lo ya reproducido no cambia nada
+        reproducir(diario.leer(), personas);
+        assertMismaCuenta(cuenta, personas);
+    }
+
+    @Test
+    void unaUltimaLineaAMediasSeDescarta() throws IOException {
+        DiarioCambios diario = abrir(Durabilidad.SINCRONA);
+        GastosCompartidos cuenta = anotarHistoria(diario);
+        int registros = diario.leer().size();
+        diario.cerrar();
+        abiertos.clear();
+
+        File fichero = directorio.resolve("cambios.jsonl").toFile();
+        Files.write(fichero.toPath(), "{\"tipo\":\"GASTO_AGREGADO\",\"gasto\":{\"id\":\"g9\",\"imp"
+                .getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        List<RegistroCambio> leidos = abrir(Durabilidad.SINCRONA).leer();
+        assertEquals(registros, leidos.size());
+        assertMismaCuenta(cuenta, reproducir(leidos, new ConcurrentHashMap<>()));
+    }
+
+    @Test
+    void conVolcadoAgrupadoTrasLaBarreraEstaTodoEnOrden() throws Exception {
+        DiarioCambios diario = abrir(Durabilidad.AGRUPADA);
+        List<RegistroCambio> lote = new ArrayList<>();
+        for (int i = 0; i < 200; i++) lote.add(categoria("c" + i));
+        diario.anotar(lote);
+        for (int i = 200; i < 250; i++) diario.anotar(categoria("c" + i));
+        diario.esperarVolcado();
+
+        List<RegistroCambio> leidos = diario.leer();
+        assertEquals(250, leidos.size());
+        for (int i = 0; i < 250; i++) assertEquals("c" + i, leidos.get(i).categoria.getNombre());
+        assertEquals(Files.size(directorio.resolve("cambios.jsonl")), diario.tamaño());
+    }
+
+    @Test
+    void alRotarSeLeeLoRotadoYLuegoLoNuevo() throws Exception {
+        DiarioCambios diario = abrir(Durabilidad.AGRUPADA);
+        diario.anotar(List.of(categoria("a"), categoria("b")));
+        diario.esperarVolcado();
+        diario.rotar();
+        assertEquals(0, diario.tamaño());
+        diario.anotar(categoria("c"));
+        diario.esperarVolcado();
+
+        // Una compactación fallida deja el rotado; al volver a rotar se le añade lo nuevo
+        diario.rotar();
+        diario.anotar(categoria("d"));
+        diario.esperarVolcado();
+        assertEquals(List.of("a", "b", "c", "d"), nombres(diario.leer()));
+
+        diario.borrarRotado();
+        assertEquals(List.of("d"), nombres(diario.leer()));
+        diario.cerrar();
+        abiertos.clear();
+        assertEquals(List.of("d"), nombres(abrir(Durabilidad.SINCRONA).leer()));
+    }
+
+    private static RegistroCambio categoria(String nombre) {
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.CATEGORIA_REGISTRADA);
+        r.categoria = new Categoria(nombre);
+        return r;
+    }
+
+    private static List<String> nombres(List<RegistroCambio> registros) {
+        return registros.stream().map(r -> r.categoria.getNombre()).toList();
+    }
+
+    /**
+     * Dos usuarios con una cuenta: tres gastos, uno modificado y otro borrado,
+     * y un pago. Se anota lo mismo que anotaría {@link RepositorioJSON}.
+     */
+    private GastosCompartidos anotarHistoria(DiarioCambios diario) throws IOException {
+        Persona ana = new Persona("p1", "Ana", "ana", "x");
+        Persona luis = new Persona("p2", "Luis", "luis", "x");
+        for (Persona p : List.of(ana, luis)) {
+            RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.USUARIO_REGISTRADO);
+            r.persona = RegistroPersona.desde(p);
+            diario.anotar(r);
+        }
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+        ana.agregarCuenta(cuenta);
+        luis.agregarCuenta(cuenta);
+        RegistroCambio alta = new RegistroCambio(RegistroCambio.Tipo.CUENTA_CREADA);
+        alta.cuenta = RegistroCuenta.desde(cuenta);
+        diario.anotar(alta);
+
+        Categoria comida = new Categoria("Comida");
+        Gasto g1 = new Gasto("g1", new BigDecimal("30.00"), HOY, comida, ana, "súper", cuenta);
+        Gasto g2 = new Gasto("g2", new BigDecimal("12.50"), HOY, comida, luis, "pan", cuenta);
+        Gasto g3 = new Gasto("g3", new BigDecimal("7.25"), HOY.minusDays(2), new Categoria("Ocio"), luis, "cine", cuenta);
+        for (Gasto g : List.of(g1, g2, g3)) {
+            cuenta.agregarGasto(g);
+            diario.anotar(registroGasto(RegistroCambio.Tipo.GASTO_AGREGADO, g));
+        }
+
+        cuenta.eliminarGasto(g1);
+        g1.setImporte(new BigDecimal("41.10"));
+        g1.setPagador(luis);
+        cuenta.agregarGasto(g1);
+        diario.anotar(registroGasto(RegistroCambio.Tipo.GASTO_MODIFICADO, g1));
+
+        cuenta.eliminarGasto(g2);
+        RegistroCambio baja = new RegistroCambio(RegistroCambio.Tipo.GASTO_ELIMINADO);
+        baja.gasto = new RegistroGasto();
+        baja.gasto.id = g2.getId();
+        baja.gasto.cuentaId = cuenta.getId();
+        diario.anotar(baja);
+
+        Pago pago = new Pago("pa1", ana, luis, new BigDecimal("5.00"), HOY, cuenta);
+        cuenta.registrarPago(pago);
+        RegistroCambio r = new RegistroCambio(RegistroCambio.Tipo.PAGO_REGISTRADO);
+        r.pago = RegistroPago.desde(pago);
+        diario.anotar(r);
+        return cuenta;
+    }
+
+    private static RegistroCambio registroGasto(RegistroCambio.Tipo tipo, Gasto g) {
+        RegistroCambio r = new RegistroCambio(tipo);
+        r.gasto = RegistroGasto.desde(g);
+        return r;
+    }
+
+    private static Map<String, Persona> reproducir(List<RegistroCambio> registros, Map<String, Persona> personas) {
+        ReproductorCambios reproductor = new ReproductorCambios(personas, new HashMap<>(), null);
+        for (RegistroCambio r : registros) reproductor.aplicar(r);
+        return personas;
+    }
+
+    private static void assertMismaCuenta(GastosCompartidos esperada, Map<String, Persona> personas) {
+        assertEquals(Set.of("ana", "luis"), personas.keySet());
+        List<GastosCompartidos> cuentas = personas.get("luis").getCuentas();
+        assertEquals(1, cuentas.size());
+        GastosCompartidos cuenta = cuentas.get(0);
+        assertEquals(ids(esperada), ids(cuenta));
+        assertEquals(0, new BigDecimal("41.10").compareTo(cuenta.buscarGasto("g1").getImporte()));
+        assertEquals("luis", cuenta.buscarGasto("g1").getPagador().getNombreUsuario());
+        assertEquals(1, cuenta.getPagos().size());
+        for (GastosCompartidos.Participante p : cuenta.getParticipantes()) {
+            Persona original = esperada.getParticipantes().stream()
+                    .filter(o -> o.getPersona().getId().equals(p.getPersona().getId()))
+                    .findFirst().orElseThrow().getPersona();
+            assertEquals(esperada.getSaldoDinero(original), p.getSaldoDinero(), p.getPersona().getNombreUsuario());
+        }
+        assertFalse(cuenta.recalcularSaldos());
+    }
+
+    private static Set<String> ids(GastosCompartidos cuenta) {
+        return cuenta.getGastos().stream().map(Gasto::getId).collect(Collectors.toSet());
+    }
+
+    private DiarioCambios abrir(Durabilidad durabilidad) {
+        DiarioCambios diario = new DiarioCambios(directorio.resolve("cambios.jsonl").toFile(), mapper,
+                durabilidad, Duration.ofMillis(20), 64);
+        abiertos.add(diario);
+        return diario;
+    }
+}
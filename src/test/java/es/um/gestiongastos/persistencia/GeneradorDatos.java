@@ -0,0 +1,71 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Persona;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Modelo sintético para las pruebas de rendimiento: un usuario por cada mil
+ * gastos (mínimo 12), en grupos de tres que comparten tres cuentas (tantas
+ * cuentas como usuarios), y los gastos repartidos entre las cuentas, con
+ * fechas de los últimos tres años. Los grupos no se cruzan: en el formato
+ * antiguo cada usuario anida a los demás de su cuenta, y una cadena de
+ * cuentas entre todos daría un JSON anidado tan hondo como usuarios haya.
+ * Siempre la misma semilla, para que las medidas sean comparables.
+ */
+final class GeneradorDatos {
+
+    static final String[] CATEGORIAS = { "Comida", "Transporte", "Ocio", "Hogar", "Salud", "Viajes", "Ropa", "Otros" };
+
+    private GeneradorDatos() {}
+
+    static List<Persona> generar(int numGastos) {
+        Random r = new Random(42);
+        int numUsuarios = Math.max(4, numGastos / 3000) * 3;
+
+        List<Categoria> categorias = new ArrayList<>();
+        for (String nombre : CATEGORIAS) categorias.add(new Categoria(nombre));
+
+        List<Persona> personas = new ArrayList<>(numUsuarios);
+        for (int i = 0; i < numUsuarios; i++) {
+            personas.add(new Persona(uuid(r), "Usuario " + i, "usuario" + i, "clave" + i));
+        }
+
+        List<GastosCompartidos> cuentas = new ArrayList<>(numUsuarios);
+        for (int i = 0; i < numUsuarios; i++) {
+            int grupo = i - i % 3;
+            List<Persona> participantes = List.of(personas.get(grupo), personas.get(grupo + 1), personas.get(grupo + 2));
+            GastosCompartidos c = new GastosCompartidos(uuid(r), "Cuenta " + i, participantes, null);
+            for (Persona p : participantes) p.agregarCuenta(c);
+            cuentas.add(c);
+        }
+
+        LocalDate hoy = LocalDate.now();
+        int porCuenta = numGastos / numUsuarios;
+        for (int i = 0; i < numUsuarios; i++) {
+            GastosCompartidos c = cuentas.get(i);
+            int n = (i == numUsuarios - 1) ? numGastos - porCuenta * (numUsuarios - 1) : porCuenta;
+            List<Gasto> gastos = new ArrayList<>(n);
+            for (int j = 0; j < n; j++) {
+                BigDecimal importe = BigDecimal.valueOf(100 + r.nextInt(20_000), 2);
+                Persona pagador = c.getParticipantes().get(r.nextInt(3)).getPersona();
+                gastos.add(new Gasto(uuid(r), importe, hoy.minusDays(r.nextInt(3 * 365)),
+                        categorias.get(r.nextInt(categorias.size())), pagador, "Gasto " + j, c));
+            }
+            c.agregarGastos(gastos);
+        }
+        return personas;
+    }
+
+    private static String uuid(Random r) {
+        return new UUID(r.nextLong(), r.nextLong()).toString();
+    }
+}
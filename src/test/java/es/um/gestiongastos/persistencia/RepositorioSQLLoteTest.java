@@ -0,0 +1,120 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Categoria;
+import es.um.gestiongastos.model.Gasto;
+import es.um.gestiongastos.model.GastosCompartidos;
+import es.um.gestiongastos.model.Persona;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Un lote de altas, modificaciones y bajas guardado con
+ * {@link Repositorio#guardarLote(LoteGastos)} se vuelve a cargar igual.
+ * Base de datos H2 en memoria, que sobrevive a cerrar la conexión.
+ */
+class RepositorioSQLLoteTest {
+
+    private static final LocalDate HOY = LocalDate.of(2026, 10, 18);
+    private static final String URL = "jdbc:h2:mem:lote-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+
+    private final List<Repositorio> abiertos = new ArrayList<>();
+
+    @AfterEach
+    void cerrar() {
+        abiertos.forEach(Repositorio::cerrar);
+    }
+
+    @Test
+    void elLoteSeRecuperaAlVolverACargar() {
+        Repositorio repositorio = abrir();
+        Persona ana = new Persona("p1", "Ana", "ana", "x");
+        Persona luis = new Persona("p2", "Luis", "luis", "x");
+        repositorio.registrarUsuario(ana);
+        repositorio.registrarUsuario(luis);
+        GastosCompartidos cuenta = new GastosCompartidos("c1", "Piso", List.of(ana, luis), null);
+        ana.agregarCuenta(cuenta);
+        luis.agregarCuenta(cuenta);
+        repositorio.registrarCuenta(cuenta);
+
+        Categoria comida = new Categoria("Comida");
+        Gasto g1 = new Gasto("g1", new BigDecimal("30.00"), HOY, comida, ana, "súper", cuenta);
+        Gasto g2 = new Gasto("g2", new BigDecimal("12.50"), HOY, comida, luis, "pan", cuenta);
+        Gasto g3 = new Gasto("g3", new BigDecimal("7.25"), HOY.minusDays(2), comida, luis, "fruta", cuenta);
+
+        LoteGastos altas = new LoteGastos();
+        altas.altas.addAll(List.of(g1, g2, g3));
+        altas.cuentas.add(cuenta);
+        cuenta.agregarGastos(altas.altas);
+        repositorio.guardarLote(altas);
+
+        // Segundo lote: se modifica g1 y se borra g2
+        LoteGastos cambios = new LoteGastos();
+        cuenta.eliminarGastos(List.of(g1, g2));
+        g1.setImporte(new BigDecimal("40.00"));
+        g1.setPagador(luis);
+        cuenta.agregarGastos(List.of(g1));
+        cambios.modificados.add(g1);
+        cambios.bajas.add(g2);
+        cambios.cuentas.add(cuenta);
+        repositorio.guardarLote(cambios);
+        repositorio.cerrar();
+
+        GastosCompartidos cargada = abrir().buscarUsuarioPorNombre("ana").getCuentas().get(0);
+        Set<String> ids = cargada.getGastos().stream().map(Gasto::getId).collect(Collectors.toSet());
+        assertEquals(Set.of("g1", "g3"), ids);
+        Gasto g1Cargado = cargada.buscarGasto("g1");
+        assertEquals(0, new BigDecimal("40.00").compareTo(g1Cargado.getImporte()));
+        assertEquals("luis", g1Cargado.getPagador().getNombreUsuario());
+        for (GastosCompartidos.Participante p : cargada.getParticipantes()) {
+            assertEquals(cuenta.getSaldoDinero(p.getPersona()), p.getSaldoDinero(), p.getPersona().getNombreUsuario());
+        }
+        assertFalse(cargada.recalcularSaldos());
+    }
+
+    @Test
+    void unLoteQueFallaSeDeshaceEnteroYSeAvisa() {
+        Repositorio repositorio = abrir();
+        Persona eva = new Persona("p3", "Eva", "eva", "x");
+        repositorio.registrarUsuario(eva);
+        GastosCompartidos cuenta = new GastosCompartidos("c2", "Viaje", List.of(eva), null);
+        eva.agregarCuenta(cuenta);
+        repositorio.registrarCuenta(cuenta);
+
+        // El pagador del segundo gasto no está en la base de datos
+        Persona ajena = new Persona("p-ajena", "Ajena", "ajena", "x");
+        Categoria comida = new Categoria("Comida");
+        LoteGastos lote = new LoteGastos();
+        lote.altas.add(new Gasto("g-bien", new BigDecimal("10.00"), HOY, comida, eva, "bien", cuenta));
+        lote.altas.add(new Gasto("g-mal", new BigDecimal("5.00"), HOY, comida, ajena, "mal", cuenta));
+        lote.cuentas.add(cuenta);
+        assertThrows(IllegalStateException.class, () -> repositorio.guardarLote(lote));
+
+        // Un usuario repetido tampoco sustituye al que ya estaba
+        Persona otraEva = new Persona("p4", "Otra Eva", "eva", "x");
+        assertThrows(IllegalStateException.class, () -> repositorio.registrarUsuario(otraEva));
+        assertSame(eva, repositorio.buscarUsuarioPorNombre("eva"));
+        repositorio.cerrar();
+
+        GastosCompartidos cargada = abrir().buscarUsuarioPorNombre("eva").getCuentas().get(0);
+        assertTrue(cargada.getGastos().isEmpty());
+    }
+
+    private Repositorio abrir() {
+        Repositorio r = new RepositorioSQL(URL);
+        abiertos.add(r);
+        return r;
+    }
+}
@@ -0,0 +1,64 @@
+package es.um.gestiongastos.persistencia;
+
+import es.um.gestiongastos.model.Notificacion;
+import es.um.gestiongastos.model.Persona;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cada repositorio aplica su propio tope de notificaciones, en memoria y en
+ * la tabla, sin depender de otros repositorios abiertos.
+ */
+class RepositorioSQLNotificacionesTest {
+
+    private static final String URL = "jdbc:h2:mem:notificaciones-" + System.nanoTime() + ";DB_CLOSE_DELAY=-1";
+
+    private final List<Repositorio> abiertos = new ArrayList<>();
+    private final LocalDateTime ahora = LocalDateTime.now().withNano(0);
+
+    @AfterEach
+    void cerrar() {
+        abiertos.forEach(Repositorio::cerrar);
+    }
+
+    @Test
+    void seGuardanSoloLasQueCabenEnElTopeDelRepositorio() {
+        Repositorio repositorio = abrir(3, 30);
+        Persona ana = new Persona("p1", "Ana", "ana", "x");
+        repositorio.registrarUsuario(ana);
+        registrar(repositorio, ana, "vieja", ahora.minusDays(40));
+        for (int i = 0; i < 5; i++) registrar(repositorio, ana, "n" + i, ahora.plusSeconds(i));
+
+        assertEquals(3, ana.getNumNotificaciones());
+        assertEquals("n4", ana.getNotificaciones().get(0).getId());
+        repositorio.cerrar();
+
+        // La tabla se ha podado igual; con un tope mayor no reaparece nada
+        Persona cargada = abrir(10, 60).buscarUsuarioPorNombre("ana");
+        List<String> ids = cargada.getNotificaciones().stream().map(Notificacion::getId).toList();
+        assertEquals(List.of("n4", "n3", "n2"), ids);
+
+        // Otro repositorio con otro tope no cambia el del primero
+        Persona corta = abrir(1, 60).buscarUsuarioPorNombre("ana");
+        assertEquals(1, corta.getNumNotificaciones());
+        assertEquals(3, cargada.getNumNotificaciones());
+    }
+
+    private void registrar(Repositorio repositorio, Persona persona, String id, LocalDateTime fechaHora) {
+        Notificacion n = new Notificacion(id, fechaHora, "aviso " + id);
+        persona.agregarNotificacion(n);
+        repositorio.registrarNotificacion(persona, n);
+    }
+
+    private Repositorio abrir(int maximo, int dias) {
+        Repositorio r = new RepositorioSQL(URL, maximo, dias);
+        abiertos.add(r);
+        return r;
+    }
+}